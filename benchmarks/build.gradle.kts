@@ -0,0 +1,50 @@
+
+plugins {
+  java
+  id("me.champeau.gradle.jmh") version Versions.jmhPlugin
+}
+
+description = "PostgreSQL JDBC - NG - Benchmarks"
+
+
+dependencies {
+
+  jmh(project(":pgjdbc-ng"))
+  jmh(testFixtures(project(":pgjdbc-ng")))
+  jmh("org.openjdk.jmh:jmh-core:${Versions.jmh}")
+  jmh("org.openjdk.jmh:jmh-generator-annprocess:${Versions.jmh}")
+
+}
+
+
+/**
+ * Server benchmarks (in the `server` package) are only run when the `benchmarkServer`
+ * property is set; they use the same `pgjdbc.test.*` system properties as the driver's
+ * tests to locate the server (e.g. `-PbenchmarkServer -Dpgjdbc.test.port=5432`).
+ *
+ * A subset of benchmarks can be selected via the `benchmarks` property (a regular
+ * expression matched against benchmark names, e.g. `-Pbenchmarks=CodecBenchmark`).
+ */
+val includeServer = project.hasProperty("benchmarkServer")
+
+jmh {
+  jmhVersion = Versions.jmh
+  include = listOf((project.findProperty("benchmarks") ?: ".*") as String)
+  if (!includeServer) {
+    exclude = listOf(".*\\.server\\..*")
+  }
+  fork = 1
+  warmupIterations = 3
+  iterations = 5
+  profilers = listOf("gc")
+  resultFormat = "JSON"
+  jvmArgsAppend = System.getProperties().stringPropertyNames()
+     .filter { it.startsWith("pgjdbc.test.") }
+     .map { "-D$it=${System.getProperty(it)}" }
+  duplicateClassesStrategy = DuplicatesStrategy.EXCLUDE
+}
+
+
+apply {
+  from("$rootDir/shared/src/build/compile-java.gradle.kts")
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.benchmarks;
+
+import com.impossibl.postgres.types.Type;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Binary & text encoding/decoding of each built-in type's codec.
+ *
+ * Sample values are given as text literals (decoded with the type's
+ * own text decoder to produce the Java value) or as Java values
+ * where the text form depends on locale. The binary and text forms
+ * that are decoded are those produced by the type's encoders.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+
+  private static final Map<String, Object> SAMPLES = new HashMap<>();
+
+  static {
+    SAMPLES.put("bool", "t");
+    SAMPLES.put("bytea", "\\x000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f");
+    SAMPLES.put("char", "x");
+    SAMPLES.put("name", "pg_catalog");
+    SAMPLES.put("int2", "12345");
+    SAMPLES.put("int4", "123456789");
+    SAMPLES.put("int8", "1234567890123456789");
+    SAMPLES.put("oid", "123456");
+    SAMPLES.put("float4", "3.14159");
+    SAMPLES.put("float8", "2.718281828459045");
+    SAMPLES.put("numeric", "12345678901234567890.123456789");
+    SAMPLES.put("money", new BigDecimal("1234.56"));
+    SAMPLES.put("text", "The quick brown fox jumps over the lazy dog");
+    SAMPLES.put("varchar", "The quick brown fox jumps over the lazy dog");
+    SAMPLES.put("uuid", "a0eebc99-9c0b-4ef8-bb6d-6bb9bd380a11");
+    SAMPLES.put("date", "2019-10-19");
+    SAMPLES.put("time", "12:34:56.789");
+    SAMPLES.put("timetz", "12:34:56.789+02");
+    SAMPLES.put("timestamp", "2019-10-19 12:34:56.789");
+    SAMPLES.put("timestamptz", "2019-10-19 12:34:56.789+02");
+    SAMPLES.put("interval", "P1Y2M3DT4H5M6.789S");
+    SAMPLES.put("bit", "10110011");
+    SAMPLES.put("varbit", "1011001110001111");
+    SAMPLES.put("inet", "192.168.100.128/25");
+    SAMPLES.put("cidr", "10.1.0.0/16");
+    SAMPLES.put("macaddr", "08:00:2b:01:02:03");
+    SAMPLES.put("point", "(1.5,2.5)");
+    SAMPLES.put("box", "(3,4),(1,2)");
+    SAMPLES.put("json", "{\"a\": 1, \"b\": [1, 2, 3], \"c\": {\"d\": \"e\"}}");
+    SAMPLES.put("jsonb", "{\"a\": 1, \"b\": [1, 2, 3], \"c\": {\"d\": \"e\"}}");
+    SAMPLES.put("xml", "<a><b>text</b><c attr=\"value\"/></a>");
+    SAMPLES.put("_int4", "{1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16}");
+    SAMPLES.put("_int8", "{1,2,3,4,5,6,7,8,9,10,11,12,13,14,15,16}");
+    SAMPLES.put("_float8", "{1.5,2.5,3.5,4.5,5.5,6.5,7.5,8.5}");
+    SAMPLES.put("_numeric", "{1.25,2.50,3.75,4.00,5.25,6.50,7.75,8.00}");
+    SAMPLES.put("_text", "{alpha,beta,gamma,delta,epsilon,zeta,eta,theta}");
+    SAMPLES.put("_timestamp", "{\"2019-10-19 12:34:56.789\",\"2019-10-20 12:34:56.789\",\"2019-10-21 12:34:56.789\"}");
+  }
+
+  @Param({
+      "bool", "bytea", "char", "name", "int2", "int4", "int8", "oid", "float4", "float8", "numeric", "money",
+      "text", "varchar", "uuid", "date", "time", "timetz", "timestamp", "timestamptz", "interval",
+      "bit", "varbit", "inet", "cidr", "macaddr", "point", "box", "json", "jsonb", "xml",
+      "_int4", "_int8", "_float8", "_numeric", "_text", "_timestamp"
+  })
+  public String typeName;
+
+  private OfflineContext context;
+  private Type type;
+  private Object value;
+  private ByteBuf binary;
+  private String text;
+  private ByteBuf binaryOut;
+  private StringBuilder textOut;
+
+  @Setup
+  public void setup() throws IOException {
+
+    context = new OfflineContext();
+    type = context.type(typeName);
+
+    Object sample = SAMPLES.get(typeName);
+    if (sample instanceof String) {
+      value = type.getTextCodec().getDecoder().decode(context, type, type.getLength(), null, (String) sample, null, null);
+    }
+    else {
+      value = sample;
+    }
+
+    binary = Unpooled.buffer();
+    type.getBinaryCodec().getEncoder().encode(context, type, value, null, binary);
+
+    StringBuilder textBuffer = new StringBuilder();
+    type.getTextCodec().getEncoder().encode(context, type, value, null, textBuffer);
+    text = textBuffer.toString();
+
+    binaryOut = Unpooled.buffer();
+    textOut = new StringBuilder();
+  }
+
+  @TearDown
+  public void tearDown() {
+    binary.release();
+    binaryOut.release();
+  }
+
+  @Benchmark
+  public ByteBuf encodeBinary() throws IOException {
+    binaryOut.clear();
+    type.getBinaryCodec().getEncoder().encode(context, type, value, null, binaryOut);
+    return binaryOut;
+  }
+
+  @Benchmark
+  public Object decodeBinary() throws IOException {
+    return type.getBinaryCodec().getDecoder().decode(context, type, type.getLength(), null, binary.duplicate(), null, null);
+  }
+
+  @Benchmark
+  public StringBuilder encodeText() throws IOException {
+    textOut.setLength(0);
+    type.getTextCodec().getEncoder().encode(context, type, value, null, textOut);
+    return textOut;
+  }
+
+  @Benchmark
+  public Object decodeText() throws IOException {
+    return type.getTextCodec().getDecoder().decode(context, type, type.getLength(), null, text, null, null);
+  }
+
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.benchmarks;
+
+import com.impossibl.postgres.datetime.DateTimeFormat;
+import com.impossibl.postgres.datetime.ISODateFormat;
+import com.impossibl.postgres.datetime.ISOIntervalFormat;
+import com.impossibl.postgres.datetime.ISOTimeFormat;
+import com.impossibl.postgres.datetime.ISOTimestampFormat;
+import com.impossibl.postgres.datetime.IntervalFormat;
+import com.impossibl.postgres.protocol.RequestExecutor;
+import com.impossibl.postgres.protocol.ServerConnection;
+import com.impossibl.postgres.system.AbstractContext;
+import com.impossibl.postgres.system.Context;
+import com.impossibl.postgres.system.Metrics;
+import com.impossibl.postgres.system.ServerInfo;
+import com.impossibl.postgres.system.Version;
+import com.impossibl.postgres.system.procs.Procs;
+import com.impossibl.postgres.types.ArrayType;
+import com.impossibl.postgres.types.BaseType;
+import com.impossibl.postgres.types.CompositeType;
+import com.impossibl.postgres.types.QualifiedName;
+import com.impossibl.postgres.types.Registry;
+import com.impossibl.postgres.types.SharedRegistry;
+import com.impossibl.postgres.types.Type;
+import com.impossibl.postgres.types.Type.Category;
+
+import static com.impossibl.postgres.protocol.FieldFormat.Binary;
+import static com.impossibl.postgres.types.Type.CATALOG_NAMESPACE;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * Context for benchmarks that run without a server.
+ *
+ * The registry is pre-populated with the built-in base types (and a
+ * selection of their array types) using the same procedure names the
+ * server reports, so codecs are resolved exactly as they are for a
+ * live connection. Any type not pre-populated is unknown.
+ */
+public class OfflineContext extends AbstractContext {
+
+  public static final ServerInfo SERVER_INFO = new ServerInfo(Version.parse("12.0"), "UTF8", true);
+
+  private Registry registry;
+  private TimeZone timeZone;
+  private DateTimeFormat dateFormat;
+  private DateTimeFormat timeFormat;
+  private DateTimeFormat timestampFormat;
+  private IntervalFormat intervalFormat;
+  private NumberFormat integerFormatter;
+  private NumberFormat decimalFormatter;
+  private NumberFormat currencyFormatter;
+  private Map<String, Class<?>> typeMap;
+
+  public OfflineContext() throws IOException {
+
+    Procs procs = new Procs(SERVER_INFO, OfflineContext.class.getClassLoader());
+
+    SharedRegistry sharedRegistry = new SharedRegistry(SERVER_INFO, OfflineContext.class.getClassLoader());
+    sharedRegistry.addTypes(createBaseTypes(procs));
+
+    this.registry = new Registry(sharedRegistry, new TypeLoader());
+    sharedRegistry.addTypes(createArrayTypes(registry, procs));
+
+    this.timeZone = TimeZone.getTimeZone("UTC");
+    this.dateFormat = new ISODateFormat();
+    this.timeFormat = new ISOTimeFormat();
+    this.timestampFormat = new ISOTimestampFormat();
+    this.intervalFormat = new ISOIntervalFormat();
+    this.typeMap = new HashMap<>();
+
+    integerFormatter = NumberFormat.getIntegerInstance(Locale.ROOT);
+    integerFormatter.setGroupingUsed(false);
+    integerFormatter.setParseIntegerOnly(true);
+
+    decimalFormatter = DecimalFormat.getNumberInstance(Locale.ROOT);
+    decimalFormatter.setGroupingUsed(false);
+    ((DecimalFormat)decimalFormatter).setParseBigDecimal(true);
+
+    currencyFormatter = DecimalFormat.getCurrencyInstance(Locale.ROOT);
+    currencyFormatter.setGroupingUsed(false);
+    ((DecimalFormat)currencyFormatter).setParseBigDecimal(true);
+  }
+
+  private static List<Type> createBaseTypes(Procs procs) {
+
+    List<Type> types = new ArrayList<>();
+
+    types.add(base(114,  "json",        "json_",        -1, 4, Category.User,           199,  procs));
+    types.add(base(142,  "xml",         "xml_",         -1, 4, Category.User,           143,  procs));
+    types.add(base(600,  "point",       "point_",       16, 8, Category.Geometry,       1017, procs));
+    types.add(base(603,  "box",         "box_",         32, 8, Category.Geometry,       1020, procs));
+    types.add(base(650,  "cidr",        "cidr_",        -1, 4, Category.NetworkAddress, 651,  procs));
+    types.add(base(700,  "float4",      "float4",       4,  4, Category.Numeric,        1021, procs));
+    types.add(base(701,  "float8",      "float8",       8,  8, Category.Numeric,        1022, procs));
+    types.add(base(790,  "money",       "cash_",        8,  8, Category.Numeric,        791,  procs));
+    types.add(base(829,  "macaddr",     "macaddr_",     6,  4, Category.User,           1040, procs));
+    types.add(base(869,  "inet",        "inet_",        -1, 4, Category.NetworkAddress, 1041, procs));
+    types.add(base(1043, "varchar",     "varchar",      -1, 4, Category.String,         1015, procs));
+    types.add(base(1082, "date",        "date_",        4,  4, Category.DateTime,       1182, procs));
+    types.add(base(1083, "time",        "time_",        8,  8, Category.DateTime,       1183, procs));
+    types.add(base(1114, "timestamp",   "timestamp_",   8,  8, Category.DateTime,       1115, procs));
+    types.add(base(1184, "timestamptz", "timestamptz_", 8,  8, Category.DateTime,       1185, procs));
+    types.add(base(1186, "interval",    "interval_",    16, 8, Category.Timespan,       1187, procs));
+    types.add(base(1266, "timetz",      "timetz_",      12, 8, Category.DateTime,       1270, procs));
+    types.add(base(1560, "bit",         "bit_",         -1, 4, Category.BitString,      1561, procs));
+    types.add(base(1562, "varbit",      "varbit_",      -1, 4, Category.BitString,      1563, procs));
+    types.add(base(1700, "numeric",     "numeric_",     -1, 4, Category.Numeric,        1231, procs));
+    types.add(base(2950, "uuid",        "uuid_",        16, 1, Category.User,           2951, procs));
+    types.add(base(3802, "jsonb",       "jsonb_",       -1, 4, Category.User,           3807, procs));
+
+    return types;
+  }
+
+  private static List<Type> createArrayTypes(Registry registry, Procs procs) throws IOException {
+
+    List<Type> types = new ArrayList<>();
+
+    types.add(array(1007, "_int4",      registry.loadType(23),   procs));
+    types.add(array(1016, "_int8",      registry.loadType(20),   procs));
+    types.add(array(1009, "_text",      registry.loadType(25),   procs));
+    types.add(array(1022, "_float8",    registry.loadType(701),  procs));
+    types.add(array(1231, "_numeric",   registry.loadType(1700), procs));
+    types.add(array(1115, "_timestamp", registry.loadType(1114), procs));
+
+    return types;
+  }
+
+  private static Type base(int id, String name, String procName, int length, int alignment, Category category, int arrayTypeId, Procs procs) {
+    return new BaseType(id, name, CATALOG_NAMESPACE, (short) length, (byte) alignment, category, ',', arrayTypeId, procName, procs, Binary, Binary);
+  }
+
+  private static Type array(int id, String name, Type elementType, Procs procs) {
+    return new ArrayType(id, name, (short) -1, (byte) 4, Category.Array, ',', 0, procs, Binary, Binary, elementType);
+  }
+
+  /**
+   * Resolves a base type by name (e.g. <code>int4</code> or <code>_text</code>).
+   *
+   * @param name Name of type in the <code>pg_catalog</code> namespace
+   * @return Type instance
+   */
+  public Type type(String name) {
+    return registry.loadBaseType(name);
+  }
+
+  @Override
+  public RequestExecutor getRequestExecutor() {
+    throw new UnsupportedOperationException("No server available");
+  }
+
+  @Override
+  public ByteBufAllocator getAllocator() {
+    return ByteBufAllocator.DEFAULT;
+  }
+
+  @Override
+  public Registry getRegistry() {
+    return registry;
+  }
+
+  @Override
+  public TimeZone getTimeZone() {
+    return timeZone;
+  }
+
+  @Override
+  public ZoneId getTimeZoneId() {
+    return timeZone.toZoneId();
+  }
+
+  @Override
+  public Charset getCharset() {
+    return UTF_8;
+  }
+
+  @Override
+  public ServerInfo getServerInfo() {
+    return SERVER_INFO;
+  }
+
+  @Override
+  public ServerConnection.KeyData getKeyData() {
+    return null;
+  }
+
+  @Override
+  public NumberFormat getClientIntegerFormatter() {
+    return integerFormatter;
+  }
+
+  @Override
+  public NumberFormat getClientDecimalFormatter() {
+    return decimalFormatter;
+  }
+
+  @Override
+  public NumberFormat getServerCurrencyFormatter() {
+    return currencyFormatter;
+  }
+
+  @Override
+  public NumberFormat getClientCurrencyFormatter() {
+    return currencyFormatter;
+  }
+
+  @Override
+  public DateTimeFormat getServerDateFormat() {
+    return dateFormat;
+  }
+
+  @Override
+  public DateTimeFormat getClientDateFormat() {
+    return dateFormat;
+  }
+
+  @Override
+  public DateTimeFormat getServerTimeFormat() {
+    return timeFormat;
+  }
+
+  @Override
+  public DateTimeFormat getClientTimeFormat() {
+    return timeFormat;
+  }
+
+  @Override
+  public DateTimeFormat getServerTimestampFormat() {
+    return timestampFormat;
+  }
+
+  @Override
+  public DateTimeFormat getClientTimestampFormat() {
+    return timestampFormat;
+  }
+
+  @Override
+  public IntervalFormat getServerIntervalFormat() {
+    return intervalFormat;
+  }
+
+  @Override
+  public IntervalFormat getClientIntervalFormat() {
+    return intervalFormat;
+  }
+
+  @Override
+  public Map<String, Class<?>> getCustomTypeMap() {
+    return typeMap;
+  }
+
+  @Override
+  public Metrics getMetrics() {
+    return null;
+  }
+
+  @Override
+  public Context unwrap() {
+    return this;
+  }
+
+  /**
+   * Loader for types not pre-populated; there is no server to load
+   * them from so they are always unknown.
+   */
+  private static class TypeLoader implements Registry.TypeLoader {
+
+    @Override
+    public Type load(int oid) {
+      return null;
+    }
+
+    @Override
+    public CompositeType loadRelation(int relationOid) {
+      return null;
+    }
+
+    @Override
+    public Type load(QualifiedName name) {
+      return null;
+    }
+
+    @Override
+    public Type load(String name) {
+      return null;
+    }
+
+  }
+
+}
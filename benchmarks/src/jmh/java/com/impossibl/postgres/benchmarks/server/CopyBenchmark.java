@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.benchmarks.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * <code>COPY</code> of text formatted rows to and from the server.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CopyBenchmark {
+
+  @Param({"10000", "100000"})
+  public int rowCount;
+
+  private byte[] data;
+  private ByteArrayOutputStream out;
+
+  @Setup
+  public void createTables(ServerState server) throws SQLException {
+
+    server.execute("DROP TABLE IF EXISTS bench_copy_in");
+    server.execute("CREATE UNLOGGED TABLE bench_copy_in (id int4, name text, balance numeric)");
+
+    server.execute("DROP TABLE IF EXISTS bench_copy_out");
+    server.execute("CREATE UNLOGGED TABLE bench_copy_out AS " +
+        "SELECT id, md5(id::text) AS name, id * 1.25 AS balance FROM generate_series(1, " + rowCount + ") AS id");
+
+    StringBuilder text = new StringBuilder();
+    for (int row = 0; row < rowCount; ++row) {
+      text.append(row).append('\t').append("Row number ").append(row).append('\t').append(row * 1.25).append('\n');
+    }
+    data = text.toString().getBytes(UTF_8);
+
+    out = new ByteArrayOutputStream(data.length * 2);
+  }
+
+  @Setup(Level.Iteration)
+  public void truncateTable(ServerState server) throws SQLException {
+    server.execute("TRUNCATE bench_copy_in");
+  }
+
+  @Benchmark
+  public void copyIn(ServerState server) throws SQLException {
+    server.connection.copyFrom("COPY bench_copy_in FROM STDIN", new ByteArrayInputStream(data));
+  }
+
+  @Benchmark
+  public int copyOut(ServerState server) throws SQLException {
+    out.reset();
+    server.connection.copyTo("COPY bench_copy_out TO STDOUT", out);
+    return out.size();
+  }
+
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.benchmarks.server;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Repeated execution of the same query; measuring the cost of
+ * prepared statement (and parsed SQL) cache hits compared to
+ * reusing a single prepared statement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PreparedStatementBenchmark {
+
+  private static final String SQL = "SELECT md5(?), md5(?), ?::int4, ?::int8";
+
+  private static int execute(PreparedStatement ps) throws SQLException {
+    ps.setString(1, "Some text to hash");
+    ps.setString(2, "Some more text to hash");
+    ps.setInt(3, 42);
+    ps.setLong(4, 42L);
+    try (ResultSet rs = ps.executeQuery()) {
+      rs.next();
+      return rs.getString(1).length() + rs.getInt(3);
+    }
+  }
+
+  /**
+   * Prepares, executes & closes the statement for every execution;
+   * all but the first are served from the prepared statement cache.
+   */
+  @Benchmark
+  public int prepareEachExecution(ServerState server) throws SQLException {
+    try (PreparedStatement ps = server.connection.prepareStatement(SQL)) {
+      return execute(ps);
+    }
+  }
+
+  @Benchmark
+  public int reusePrepared(ReusedStatement statement) throws SQLException {
+    return execute(statement.ps);
+  }
+
+  @State(Scope.Thread)
+  public static class ReusedStatement {
+
+    PreparedStatement ps;
+
+    @Setup
+    public void prepare(ServerState server) throws SQLException {
+      ps = server.connection.prepareStatement(SQL);
+    }
+
+    @TearDown
+    public void close() throws SQLException {
+      ps.close();
+    }
+
+  }
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.benchmarks.server;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading large results; either fully materialized (fetch size of
+ * zero) or fetched incrementally via a cursor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ResultStreamingBenchmark {
+
+  private static final String SQL =
+      "SELECT id, md5(id::text) AS descr, id * 1.5 AS amount, now() AS created FROM generate_series(1, ?) AS id";
+
+  @Param({"10000", "100000"})
+  public int rowCount;
+
+  @Param({"0", "1000"})
+  public int fetchSize;
+
+  @Benchmark
+  public int readAll(ServerState server, Blackhole blackhole) throws SQLException {
+
+    boolean autoCommit = server.connection.getAutoCommit();
+
+    // Cursor based fetching requires a transaction
+    server.connection.setAutoCommit(fetchSize == 0);
+    try (PreparedStatement ps = server.connection.prepareStatement(SQL)) {
+
+      ps.setFetchSize(fetchSize);
+      ps.setInt(1, rowCount);
+
+      int rows = 0;
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          blackhole.consume(rs.getInt(1));
+          blackhole.consume(rs.getString(2));
+          blackhole.consume(rs.getBigDecimal(3));
+          blackhole.consume(rs.getTimestamp(4));
+          rows++;
+        }
+      }
+
+      return rows;
+    }
+    finally {
+      if (!server.connection.getAutoCommit()) {
+        server.connection.commit();
+      }
+      server.connection.setAutoCommit(autoCommit);
+    }
+  }
+
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.benchmarks.server;
+
+import com.impossibl.postgres.api.jdbc.PGConnection;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Connection to the benchmark server.
+ *
+ * The server is located using the same system properties as the
+ * driver's tests (<code>pgjdbc.test.server</code>,
+ * <code>pgjdbc.test.port</code>, <code>pgjdbc.test.db</code>,
+ * <code>pgjdbc.test.user</code> &amp; <code>pgjdbc.test.password</code>).
+ */
+@State(Scope.Thread)
+public class ServerState {
+
+  public PGConnection connection;
+
+  public static String getURL() {
+    return "jdbc:pgsql://" +
+        System.getProperty("pgjdbc.test.server", "localhost") + ":" +
+        System.getProperty("pgjdbc.test.port", "5432") + "/" +
+        System.getProperty("pgjdbc.test.db", "test");
+  }
+
+  @Setup
+  public void open() throws SQLException {
+    Properties props = new Properties();
+    props.setProperty("user", System.getProperty("pgjdbc.test.user", "test"));
+    props.setProperty("password", System.getProperty("pgjdbc.test.password", "test"));
+    connection = DriverManager.getConnection(getURL(), props).unwrap(PGConnection.class);
+  }
+
+  @TearDown
+  public void close() throws SQLException {
+    connection.close();
+  }
+
+  public void execute(String sql) throws SQLException {
+    try (Statement stmt = connection.createStatement()) {
+      stmt.execute(sql);
+    }
+  }
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.benchmarks.stub;
+
+import com.impossibl.postgres.stub.StubResult;
+import com.impossibl.postgres.stub.StubServer;
+
+import static com.impossibl.postgres.stub.StubResult.column;
+import static com.impossibl.postgres.stub.StubTypes.FLOAT8;
+import static com.impossibl.postgres.stub.StubTypes.INT4;
+import static com.impossibl.postgres.stub.StubTypes.TEXT;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Round trips and result streaming against the in-process stub
+ * server; isolating the driver's protocol engine from the cost of a
+ * real server and allowing network latency to be simulated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StubQueryBenchmark {
+
+  @Param({"0", "200"})
+  public int latencyMicros;
+
+  @Param({"1000", "100000"})
+  public int rowCount;
+
+  @Param({"0", "1000"})
+  public int fetchSize;
+
+  private StubServer server;
+  private Connection connection;
+
+  @Setup(Level.Trial)
+  public void setup() throws SQLException, InterruptedException {
+
+    StubResult rows =
+        StubResult.rows(column("id", INT4), column("descr", TEXT), column("amount", FLOAT8))
+            .generate(rowCount, row -> new Object[] {(int) row, "row-" + row, row * 1.5});
+
+    server = new StubServer()
+        .setLatency(latencyMicros, TimeUnit.MICROSECONDS)
+        .script("FROM rows", rows)
+        .script("SELECT 1", StubResult.rows(column("one", INT4)).row(1))
+        .start();
+
+    connection = DriverManager.getConnection(server.getURL());
+  }
+
+  @TearDown(Level.Trial)
+  public void teardown() throws SQLException {
+    connection.close();
+    server.close();
+  }
+
+  @Benchmark
+  public int roundTrip() throws SQLException {
+    try (PreparedStatement ps = connection.prepareStatement("SELECT 1")) {
+      try (ResultSet rs = ps.executeQuery()) {
+        rs.next();
+        return rs.getInt(1);
+      }
+    }
+  }
+
+  @Benchmark
+  public int readAll(Blackhole blackhole) throws SQLException {
+
+    // Cursor based fetching requires a transaction
+    connection.setAutoCommit(fetchSize == 0);
+    try (PreparedStatement ps = connection.prepareStatement("SELECT id, descr, amount FROM rows")) {
+
+      ps.setFetchSize(fetchSize);
+
+      int rows = 0;
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          blackhole.consume(rs.getInt(1));
+          blackhole.consume(rs.getString(2));
+          blackhole.consume(rs.getDouble(3));
+          rows++;
+        }
+      }
+
+      return rows;
+    }
+    finally {
+      if (!connection.getAutoCommit()) {
+        connection.commit();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.benchmarks.OfflineContext;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * SQL text parsing, copying (as done for parsed SQL cache hits) and
+ * JDBC escape processing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SQLTextBenchmark {
+
+  public enum Statement {
+
+    Simple("SELECT id, name, created FROM accounts WHERE id = 10"),
+    Parameters("INSERT INTO accounts (id, name, email, created, balance, flags) VALUES (?, ?, ?, ?, ?, ?)"),
+    Literals("SELECT 'it''s a ?', E'escaped \\' ?', $tag$dollar ? quoted$tag$, \"quoted \"\" ident\" FROM t -- comment ?\n" +
+        "WHERE a = ? /* block /* nested */ comment ? */ AND b = ?"),
+    Escapes("SELECT {fn abs(-10)} AS absval, {fn user()}, {fn concat(x, {fn ucase(y)})} AS val, {d '2019-10-19'}, {ts '2019-10-19 12:34:56'} " +
+        "FROM {oj tblA LEFT OUTER JOIN tblB ON x = y} WHERE z = ? {limit 10 offset 20}"),
+    Multiple("UPDATE accounts SET balance = balance - ? WHERE id = ?; UPDATE accounts SET balance = balance + ? WHERE id = ?; " +
+        "INSERT INTO transfers (src, dst, amount) VALUES (?, ?, ?)");
+
+    private String sql;
+
+    Statement(String sql) {
+      this.sql = sql;
+    }
+
+  }
+
+  @Param
+  public Statement statement;
+
+  private OfflineContext context;
+  private SQLText parsed;
+
+  @Setup
+  public void setup() throws IOException, ParseException {
+    context = new OfflineContext();
+    parsed = new SQLText(statement.sql, true);
+  }
+
+  @Benchmark
+  public SQLText parse() throws ParseException {
+    return new SQLText(statement.sql, true);
+  }
+
+  @Benchmark
+  public SQLText copy() {
+    return parsed.copy();
+  }
+
+  @Benchmark
+  public String processEscapes() throws SQLException {
+    SQLText sqlText = parsed.copy();
+    SQLTextEscapes.processEscapes(sqlText, context);
+    return sqlText.toString();
+  }
+
+}
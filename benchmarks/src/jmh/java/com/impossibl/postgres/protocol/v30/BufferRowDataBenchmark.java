@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.protocol.v30;
+
+import com.impossibl.postgres.benchmarks.OfflineContext;
+import com.impossibl.postgres.protocol.FieldFormat;
+import com.impossibl.postgres.protocol.ResultField;
+import com.impossibl.postgres.types.Type;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Field access of a typical row, as received in a DataRow message,
+ * in either result format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BufferRowDataBenchmark {
+
+  private static final String[] TYPE_NAMES = {
+    "int4", "int8", "text", "varchar", "float8", "numeric", "bool", "timestamp", "uuid", "bytea"
+  };
+
+  private static final Object[] VALUES = {
+    123456789, 1234567890123456789L, "The quick brown fox jumps over the lazy dog", "accounts", 2.718281828459045,
+    new BigDecimal("12345678901234567890.123456789"), true, "2019-10-19 12:34:56.789",
+    UUID.fromString("a0eebc99-9c0b-4ef8-bb6d-6bb9bd380a11"), new byte[64]
+  };
+
+  @Param({"Binary", "Text"})
+  public FieldFormat format;
+
+  private OfflineContext context;
+  private ResultField[] fields;
+  private ByteBuf message;
+  private BufferRowData row;
+
+  @Setup
+  public void setup() throws IOException {
+
+    context = new OfflineContext();
+
+    fields = new ResultField[TYPE_NAMES.length];
+    for (int fieldIdx = 0; fieldIdx < fields.length; ++fieldIdx) {
+      Type type = context.type(TYPE_NAMES[fieldIdx]);
+      fields[fieldIdx] = new ResultField("f" + fieldIdx, 0, (short) 0, type, type.getLength(), -1, format);
+    }
+
+    // Build a DataRow message body (field count + length prefixed fields)
+
+    BufferRowData encoded = BufferRowData.encode(context, fields, VALUES);
+    try {
+      message = Unpooled.buffer();
+      message.writeShort(fields.length);
+      message.writeBytes(encoded.content());
+    }
+    finally {
+      encoded.release();
+    }
+
+    row = new BufferRowData(message.retainedDuplicate());
+    row.getFieldCount();
+  }
+
+  @TearDown
+  public void tearDown() {
+    row.release();
+    message.release();
+  }
+
+  /**
+   * Receives a row (locating its fields) and decodes every field to its default type.
+   */
+  @Benchmark
+  public void receiveAndDecode(Blackhole blackhole) throws IOException {
+    BufferRowData received = new BufferRowData(message.retainedDuplicate());
+    try {
+      for (int fieldIdx = 0; fieldIdx < fields.length; ++fieldIdx) {
+        blackhole.consume(received.getField(fieldIdx, fields[fieldIdx], context, null, null));
+      }
+    }
+    finally {
+      received.release();
+    }
+  }
+
+  @Benchmark
+  public void decodeAll(Blackhole blackhole) throws IOException {
+    for (int fieldIdx = 0; fieldIdx < fields.length; ++fieldIdx) {
+      blackhole.consume(row.getField(fieldIdx, fields[fieldIdx], context, null, null));
+    }
+  }
+
+  @Benchmark
+  public void decodeAllAsString(Blackhole blackhole) throws IOException {
+    for (int fieldIdx = 0; fieldIdx < fields.length; ++fieldIdx) {
+      blackhole.consume(row.getField(fieldIdx, fields[fieldIdx], context, String.class, null));
+    }
+  }
+
+  @Benchmark
+  public void fieldBuffers(Blackhole blackhole) {
+    for (int fieldIdx = 0; fieldIdx < fields.length; ++fieldIdx) {
+      blackhole.consume(row.getFieldBuffer(fieldIdx));
+    }
+  }
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.protocol.v30;
+
+import com.impossibl.postgres.benchmarks.OfflineContext;
+import com.impossibl.postgres.protocol.FieldFormat;
+import com.impossibl.postgres.protocol.RequestExecutorHandlers.ExecuteResult;
+import com.impossibl.postgres.protocol.ResultBatch;
+import com.impossibl.postgres.protocol.ResultField;
+import com.impossibl.postgres.protocol.RowData;
+import com.impossibl.postgres.types.Type;
+
+import static com.impossibl.postgres.system.Empty.EMPTY_BUFFERS;
+import static com.impossibl.postgres.system.Empty.EMPTY_FORMATS;
+import static com.impossibl.postgres.utils.ByteBufs.writeCString;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Receipt of a canned execute response (BindComplete, DataRow...,
+ * CommandComplete, ReadyForQuery) through the same framing & dispatch
+ * pipeline used by live connections.
+ *
+ * The response is delivered in socket sized chunks to include the
+ * cost of frame reassembly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageDispatchBenchmark {
+
+  private static final int READ_SIZE = 16 * 1024;
+
+  private static final String[] TYPE_NAMES = {"int4", "int8", "text", "float8", "timestamp"};
+
+  @Param({"1", "100", "10000"})
+  public int rowCount;
+
+  @Param({"false", "true"})
+  public boolean decodeFields;
+
+  private OfflineContext context;
+  private ResultField[] fields;
+  private EmbeddedChannel channel;
+  private ByteBuf response;
+
+  @Setup
+  public void setup() throws IOException {
+
+    context = new OfflineContext();
+
+    fields = new ResultField[TYPE_NAMES.length];
+    for (int fieldIdx = 0; fieldIdx < fields.length; ++fieldIdx) {
+      Type type = context.type(TYPE_NAMES[fieldIdx]);
+      fields[fieldIdx] = new ResultField("f" + fieldIdx, 0, (short) 0, type, type.getLength(), -1, FieldFormat.Binary);
+    }
+
+    channel = new EmbeddedChannel(
+        new LengthFieldBasedFrameDecoder(Integer.MAX_VALUE, 1, 4, -4, 0),
+        new MessageDispatchHandler(UTF_8, null, null)
+    );
+
+    response = Unpooled.buffer();
+
+    // BindComplete
+    response.writeByte('2').writeInt(4);
+
+    for (int row = 0; row < rowCount; ++row) {
+
+      Object[] values = {row, row * 1000L, "Row number " + row, row / 3.0, "2019-10-19 12:34:56.789"};
+
+      BufferRowData rowData = BufferRowData.encode(context, fields, values);
+      try {
+        ByteBuf content = rowData.content();
+        response.writeByte('D').writeInt(4 + 2 + content.readableBytes());
+        response.writeShort(fields.length);
+        response.writeBytes(content, content.readerIndex(), content.readableBytes());
+      }
+      finally {
+        rowData.release();
+      }
+    }
+
+    // CommandComplete
+    int completeStart = response.writerIndex();
+    response.writeByte('C').writeInt(-1);
+    writeCString(response, "SELECT " + rowCount, UTF_8);
+    response.setInt(completeStart + 1, response.writerIndex() - completeStart - 1);
+
+    // ReadyForQuery
+    response.writeByte('Z').writeInt(5).writeByte('I');
+  }
+
+  @TearDown
+  public void tearDown() {
+    response.release();
+    channel.finishAndReleaseAll();
+  }
+
+  @Benchmark
+  public long receive(Blackhole blackhole) throws IOException {
+
+    ExecuteResult result = new ExecuteResult(fields);
+
+    channel.writeOutbound(new ExecuteStatementRequest(null, null, EMPTY_FORMATS, EMPTY_BUFFERS, EMPTY_FORMATS, 0, result));
+    releaseOutbound();
+
+    for (int offset = 0; offset < response.writerIndex(); offset += READ_SIZE) {
+      int length = Math.min(READ_SIZE, response.writerIndex() - offset);
+      channel.writeInbound(response.retainedSlice(offset, length));
+    }
+
+    try (ResultBatch batch = result.getBatch()) {
+
+      if (decodeFields) {
+        for (RowData row : batch.borrowRows().borrowAll()) {
+          for (int fieldIdx = 0; fieldIdx < fields.length; ++fieldIdx) {
+            blackhole.consume(row.getField(fieldIdx, fields[fieldIdx], context, null, null));
+          }
+        }
+      }
+
+      return batch.getRowsAffected();
+    }
+  }
+
+  private void releaseOutbound() {
+    Object msg;
+    while ((msg = channel.readOutbound()) != null) {
+      ReferenceCountUtil.release(msg);
+    }
+  }
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.protocol.v30;
+
+import com.impossibl.postgres.protocol.FieldFormat;
+import com.impossibl.postgres.protocol.FieldFormatRef;
+import com.impossibl.postgres.protocol.ServerObjectType;
+import com.impossibl.postgres.protocol.TypeOid;
+import com.impossibl.postgres.protocol.TypeRef;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Encoding of frontend messages for the common request types.
+ *
+ * Messages are written to an {@link EmbeddedChannel} and released
+ * as soon as they are flushed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProtocolChannelBenchmark {
+
+  private static final String QUERY =
+      "INSERT INTO accounts (id, name, email, created, balance, flags) VALUES ($1, $2, $3, $4, $5, $6)";
+
+  private EmbeddedChannel channel;
+  private ProtocolChannel protocolChannel;
+  private TypeRef[] parameterTypes;
+  private FieldFormatRef[] parameterFormats;
+  private ByteBuf[] parameterBuffers;
+  private FieldFormatRef[] resultFormats;
+
+  @Setup
+  public void setup() {
+
+    channel = new EmbeddedChannel();
+    protocolChannel = new ProtocolChannel(channel, UTF_8);
+
+    parameterTypes = new TypeRef[] {
+      TypeOid.valueOf(23), TypeOid.valueOf(25), TypeOid.valueOf(25), TypeOid.valueOf(1114), TypeOid.valueOf(1700), TypeOid.valueOf(23)
+    };
+
+    parameterFormats = new FieldFormatRef[] {
+      FieldFormat.Binary, FieldFormat.Text, FieldFormat.Text, FieldFormat.Binary, FieldFormat.Binary, FieldFormat.Binary
+    };
+
+    parameterBuffers = new ByteBuf[] {
+      Unpooled.buffer(4).writeInt(123456789),
+      Unpooled.copiedBuffer("The quick brown fox", UTF_8),
+      Unpooled.copiedBuffer("fox@example.com", UTF_8),
+      Unpooled.buffer(8).writeLong(624976496789000L),
+      Unpooled.buffer(16).writeShort(2).writeShort(0).writeShort(0).writeShort(2).writeShort(1234).writeShort(5600),
+      Unpooled.buffer(4).writeInt(7),
+    };
+
+    resultFormats = new FieldFormatRef[] {FieldFormat.Binary};
+  }
+
+  @TearDown
+  public void tearDown() {
+    for (ByteBuf parameterBuffer : parameterBuffers) {
+      parameterBuffer.release();
+    }
+    channel.finishAndReleaseAll();
+  }
+
+  private int drain() {
+    channel.flushOutbound();
+    int count = 0;
+    Object msg;
+    while ((msg = channel.readOutbound()) != null) {
+      ReferenceCountUtil.release(msg);
+      count++;
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int simpleQuery() {
+    protocolChannel
+        .writeQuery(QUERY)
+        .flush();
+    return drain();
+  }
+
+  /**
+   * Unprepared execution; parse, bind, describe & execute.
+   */
+  @Benchmark
+  public int extendedQuery() throws IOException {
+    protocolChannel
+        .writeParse(null, QUERY, parameterTypes)
+        .writeBind(null, null, parameterFormats, parameterBuffers, resultFormats)
+        .writeDescribe(ServerObjectType.Portal, null)
+        .writeExecute(null, 0)
+        .writeSync()
+        .flush();
+    return drain();
+  }
+
+  /**
+   * Prepared execution; bind & execute only.
+   */
+  @Benchmark
+  public int preparedQuery() throws IOException {
+    protocolChannel
+        .writeBind(null, "S1", parameterFormats, parameterBuffers, resultFormats)
+        .writeExecute(null, 0)
+        .writeSync()
+        .flush();
+    return drain();
+  }
+
+  @Benchmark
+  public int copyData() throws IOException {
+    for (int c = 0; c < 16; ++c) {
+      protocolChannel.writeCopyData(parameterBuffers[1].duplicate());
+    }
+    protocolChannel
+        .writeCopyDone()
+        .writeSync()
+        .flush();
+    return drain();
+  }
+
+}
@@ -29,6 +29,11 @@ object Versions {
   const val compilerTesting = "0.15"
   const val checkstyle = "6.18"
 
+  /**
+   * Benchmark dependencies
+   */
+  const val jmh = "1.23"
+
   /**
    * Plugin dependencies
    */
@@ -40,5 +45,6 @@ object Versions {
   const val aptIdeaPlugin = "0.20"
   const val testLoggerPlugin = "1.6.0"
   const val githubReleasePlugin = "2.2.10"
+  const val jmhPlugin = "0.5.0"
 
 }
@@ -1,6 +1,7 @@
 
 plugins {
   `java-library`
+  `java-test-fixtures`
   id("net.ltgt.apt-idea") version Versions.aptIdeaPlugin
   id("com.adarshr.test-logger") version Versions.testLoggerPlugin
 }
@@ -0,0 +1,328 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.api.jdbc;
+
+import java.util.Arrays;
+
+/**
+ * Columnar sink for result set values (see
+ * {@link PGResultSet#readColumns(PGColumnVector...)}).
+ *
+ * Vectors use the Apache Arrow memory layout; each holds a validity
+ * bitmap (one bit per value, least significant bit first, set when
+ * the value is not <code>NULL</code>) along with a value buffer of
+ * the vector's type. Variable width vectors additionally hold an
+ * offsets buffer where the value at index <code>i</code> occupies
+ * <code>data[offsets[i] .. offsets[i + 1])</code>.
+ *
+ * Buffers are exposed directly and reused between batches; vectors
+ * are reset before each batch is read into them.
+ */
+public abstract class PGColumnVector {
+
+  private final int capacity;
+  private final byte[] validity;
+  private int valueCount;
+  private int nullCount;
+
+  PGColumnVector(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Invalid capacity");
+    }
+    this.capacity = capacity;
+    this.validity = new byte[(capacity + 7) >>> 3];
+  }
+
+  /**
+   * @return Maximum number of values the vector can hold
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return Number of values read into the vector
+   */
+  public int getValueCount() {
+    return valueCount;
+  }
+
+  public void setValueCount(int valueCount) {
+    this.valueCount = valueCount;
+  }
+
+  public int getNullCount() {
+    return nullCount;
+  }
+
+  public byte[] getValidityBuffer() {
+    return validity;
+  }
+
+  public boolean isNull(int index) {
+    return (validity[index >>> 3] & (1 << (index & 7))) == 0;
+  }
+
+  public void setNull(int index) {
+    validity[index >>> 3] &= ~(1 << (index & 7));
+    nullCount++;
+  }
+
+  void setValid(int index) {
+    validity[index >>> 3] |= 1 << (index & 7);
+  }
+
+  /**
+   * Clears all values from the vector
+   */
+  public void reset() {
+    Arrays.fill(validity, (byte) 0);
+    valueCount = 0;
+    nullCount = 0;
+  }
+
+  /**
+   * 32-bit integer values; accepts <code>int2</code>, <code>int4</code>
+   * and <code>oid</code> columns.
+   */
+  public static final class Int extends PGColumnVector {
+
+    private final int[] values;
+
+    public Int(int capacity) {
+      super(capacity);
+      this.values = new int[capacity];
+    }
+
+    public int[] getValueBuffer() {
+      return values;
+    }
+
+    public int get(int index) {
+      return values[index];
+    }
+
+    public void set(int index, int value) {
+      values[index] = value;
+      setValid(index);
+    }
+
+  }
+
+  /**
+   * 64-bit integer values; accepts <code>int8</code> columns as well
+   * as any column accepted by {@link Int}.
+   */
+  public static final class BigInt extends PGColumnVector {
+
+    private final long[] values;
+
+    public BigInt(int capacity) {
+      super(capacity);
+      this.values = new long[capacity];
+    }
+
+    public long[] getValueBuffer() {
+      return values;
+    }
+
+    public long get(int index) {
+      return values[index];
+    }
+
+    public void set(int index, long value) {
+      values[index] = value;
+      setValid(index);
+    }
+
+  }
+
+  /**
+   * Double precision floating point values; accepts <code>float4</code>
+   * and <code>float8</code> columns.
+   */
+  public static final class Float8 extends PGColumnVector {
+
+    private final double[] values;
+
+    public Float8(int capacity) {
+      super(capacity);
+      this.values = new double[capacity];
+    }
+
+    public double[] getValueBuffer() {
+      return values;
+    }
+
+    public double get(int index) {
+      return values[index];
+    }
+
+    public void set(int index, double value) {
+      values[index] = value;
+      setValid(index);
+    }
+
+  }
+
+  /**
+   * Boolean values, stored as a bitmap with the same layout as the
+   * validity bitmap; accepts <code>bool</code> columns.
+   */
+  public static final class Bit extends PGColumnVector {
+
+    private final byte[] values;
+
+    public Bit(int capacity) {
+      super(capacity);
+      this.values = new byte[(capacity + 7) >>> 3];
+    }
+
+    public byte[] getValueBuffer() {
+      return values;
+    }
+
+    public boolean get(int index) {
+      return (values[index >>> 3] & (1 << (index & 7))) != 0;
+    }
+
+    public void set(int index, boolean value) {
+      if (value) {
+        values[index >>> 3] |= 1 << (index & 7);
+      }
+      else {
+        values[index >>> 3] &= ~(1 << (index & 7));
+      }
+      setValid(index);
+    }
+
+    @Override
+    public void reset() {
+      super.reset();
+      Arrays.fill(values, (byte) 0);
+    }
+
+  }
+
+  /**
+   * Variable width byte values; accepts <code>bytea</code> columns,
+   * which are stored as their raw bytes, and character columns, which
+   * are stored as UTF-8 encoded text (as Arrow's <code>Utf8</code> type).
+   *
+   * Columns of any other type transferred in text format are stored
+   * as their UTF-8 encoded text representation.
+   *
+   * The data buffer grows as needed to accommodate the values read.
+   */
+  public static final class VarBinary extends PGColumnVector {
+
+    private final int[] offsets;
+    private byte[] data;
+
+    public VarBinary(int capacity) {
+      this(capacity, capacity * 16);
+    }
+
+    public VarBinary(int capacity, int dataCapacity) {
+      super(capacity);
+      this.offsets = new int[capacity + 1];
+      this.data = new byte[dataCapacity];
+    }
+
+    public int[] getOffsetBuffer() {
+      return offsets;
+    }
+
+    /**
+     * @return Data buffer; may be replaced when values are added
+     */
+    public byte[] getDataBuffer() {
+      return data;
+    }
+
+    /**
+     * @return Number of bytes of the data buffer in use
+     */
+    public int getDataLength() {
+      return offsets[getValueCount()];
+    }
+
+    public int getLength(int index) {
+      return offsets[index + 1] - offsets[index];
+    }
+
+    public byte[] get(int index) {
+      return Arrays.copyOfRange(data, offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * Allocates space for the value at <code>index</code>; values must
+     * be added in index order.
+     *
+     * @param index Index of the value
+     * @param length Length of the value in bytes
+     * @return Offset in the data buffer where the value must be written
+     */
+    public int allocate(int index, int length) {
+      int offset = offsets[index];
+      int end = offset + length;
+      if (end > data.length) {
+        data = Arrays.copyOf(data, Math.max(end, data.length * 2));
+      }
+      offsets[index + 1] = end;
+      setValid(index);
+      return offset;
+    }
+
+    /**
+     * Sets the final length of the value at <code>index</code>, for
+     * values whose length is only known after they are written.
+     *
+     * @param index Index of the value
+     * @param length Length of the value in bytes
+     */
+    public void truncate(int index, int length) {
+      offsets[index + 1] = offsets[index] + length;
+    }
+
+    @Override
+    public void setNull(int index) {
+      super.setNull(index);
+      offsets[index + 1] = offsets[index];
+    }
+
+    @Override
+    public void reset() {
+      super.reset();
+      offsets[0] = 0;
+    }
+
+  }
+
+}
@@ -31,7 +31,12 @@ package com.impossibl.postgres.api.jdbc;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLType;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Public API for PGConnection
@@ -165,4 +170,134 @@ public interface PGConnection extends Connection {
    */
   void copyTo(String sql, OutputStream outputStream) throws SQLException;
 
+  /**
+   * Starts a binary <code>COPY ... FROM STDIN</code> command, returning
+   * a writer that encodes typed rows using the binary codecs of the
+   * given column types.
+   *
+   * @param sql SQL text for a valid <code>COPY ... FROM STDIN (FORMAT binary)</code> command.
+   * @param columnTypes Type of each column copied (e.g. {@link PGType} or
+   *                    {@link java.sql.JDBCType} values)
+   * @return Writer for the copy's rows
+   * @throws SQLException If the command fails to start or does not
+   *         use the binary format
+   */
+  PGCopyRowWriter copyRowWriter(String sql, SQLType... columnTypes) throws SQLException;
+
+  /**
+   * Starts a binary <code>COPY ... TO STDOUT</code> command, returning
+   * a reader that decodes typed rows using the binary codecs of the
+   * given column types.
+   *
+   * @param sql SQL text for a valid <code>COPY ... TO STDOUT (FORMAT binary)</code> command.
+   * @param columnTypes Type of each column copied (e.g. {@link PGType} or
+   *                    {@link java.sql.JDBCType} values)
+   * @return Reader for the copy's rows
+   * @throws SQLException If the command fails to start or does not
+   *         use the binary format
+   */
+  PGCopyRowReader copyRowReader(String sql, SQLType... columnTypes) throws SQLException;
+
+  /**
+   * Starts streaming changes from a logical replication slot
+   * (via <code>START_REPLICATION SLOT ... LOGICAL</code>).
+   *
+   * The connection must have been opened in replication mode (i.e.
+   * with the <code>replication</code> setting set to <code>database</code>)
+   * and cannot be used for other requests until the stream is closed.
+   *
+   * @param slotName Name of an existing logical replication slot
+   * @param startLsn WAL position to start streaming from; zero starts from
+   *                 the slot's confirmed position
+   * @param options Options passed to the slot's output plugin (may be <code>null</code>)
+   * @return Stream of the slot's changes
+   * @throws SQLException If the connection is not in replication mode or
+   *         replication fails to start
+   * @see PGReplicationStream#parseLsn(String)
+   */
+  PGReplicationStream startLogicalReplication(String slotName, long startLsn, Map<String, String> options) throws SQLException;
+
+  /**
+   * Asynchronously executes the given SQL query; without waiting for
+   * the results of the query or any previously issued requests.
+   *
+   * Multiple asynchronous requests can be in flight on a connection
+   * simultaneously; requests are sent immediately, and each request
+   * is synchronized individually so an error in one request doesn't
+   * cause unrelated requests to fail. When in manual-commit mode,
+   * however, an error aborts the current transaction and therefore
+   * causes all requests that follow it to fail.
+   *
+   * The returned {@link ResultSet} is fully materialized and its
+   * statement is closed when the result set is closed.
+   *
+   * NOTE: The future completes on a thread other than the caller's;
+   * dependent actions should not expect to run on the calling thread.
+   *
+   * @param sql SQL text of a single query
+   * @return Future completed with the query's result set or the error
+   *         that occurred during execution.
+   */
+  CompletableFuture<ResultSet> executeQueryAsync(String sql);
+
+  /**
+   * Asynchronously executes the given SQL command; without waiting for
+   * the results of the command or any previously issued requests.
+   *
+   * The same execution semantics as {@link #executeQueryAsync(String)}
+   * apply.
+   *
+   * @param sql SQL text of a single command
+   * @return Future completed with the number of rows affected by the
+   *         command or the error that occurred during execution.
+   */
+  CompletableFuture<Long> executeUpdateAsync(String sql);
+
+  /**
+   * Creates a publisher that streams the rows of the given SQL query.
+   *
+   * The query is executed upon subscription and rows are fetched
+   * from the server only as they are requested by the subscriber;
+   * allowing arbitrarily large results to be consumed with bounded
+   * memory. Subscriber callbacks are delivered on the common
+   * {@link java.util.concurrent.ForkJoinPool}.
+   *
+   * The connection must not be used for other requests while
+   * a stream is active.
+   *
+   * @param sql SQL text of a single query
+   * @return Publisher of the query's rows
+   */
+  PGRowPublisher streamQuery(String sql);
+
+  /**
+   * Creates a publisher that streams the rows of the given SQL query,
+   * delivering subscriber callbacks via the provided executor.
+   *
+   * @param sql SQL text of a single query
+   * @param executor Executor used to deliver subscriber callbacks
+   * @return Publisher of the query's rows
+   * @see #streamQuery(String)
+   */
+  PGRowPublisher streamQuery(String sql, Executor executor);
+
+  /**
+   * Adds a metrics listener to this connection.
+   *
+   * Listeners receive events synchronously, often on the connection's
+   * I/O thread, and therefore must not block.
+   *
+   * @param listener Metrics listener
+   * @throws SQLException If metrics are not enabled for the connection
+   *         (see the <code>metrics.enabled</code> setting)
+   */
+  void addMetricsListener(PGMetricsListener listener) throws SQLException;
+
+  /**
+   * Removes a metrics listener from this connection
+   *
+   * @param listener Listener instance to remove
+   */
+  void removeMetricsListener(PGMetricsListener listener);
+
 }
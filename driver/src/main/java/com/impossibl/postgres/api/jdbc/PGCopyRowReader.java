@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.api.jdbc;
+
+import java.sql.SQLException;
+
+/**
+ * Reads typed rows from a binary <code>COPY ... TO STDOUT</code>
+ * command.
+ *
+ * Rows are decoded on access, directly from the buffers received from
+ * the server, using the binary codec of each column's type. Data is
+ * received while rows are being read; reading from the server is
+ * suspended when the reader falls behind.
+ *
+ * Closing a reader before all rows are read discards the remaining
+ * rows. The connection must not be used for other requests while a
+ * copy is active.
+ *
+ * @see PGConnection#copyRowReader(String, java.sql.SQLType...)
+ */
+public interface PGCopyRowReader extends AutoCloseable {
+
+  /**
+   * @return Number of columns in each row
+   */
+  int getColumnCount();
+
+  /**
+   * Moves to the next row
+   *
+   * @return <code>true</code> if positioned on a row or
+   *         <code>false</code> if all rows have been read
+   * @throws SQLException If the copy failed or the data is not in
+   *         binary <code>COPY</code> format
+   */
+  boolean next() throws SQLException;
+
+  /**
+   * @param columnIndex 1-based index of the column
+   * @return Value of the column decoded as the default type of the
+   *         column's type or <code>null</code> for SQL <code>NULL</code>
+   * @throws SQLException If the column index is invalid, the reader is
+   *         not positioned on a row or the value cannot be decoded
+   */
+  Object getObject(int columnIndex) throws SQLException;
+
+  /**
+   * @param columnIndex 1-based index of the column
+   * @param type Class of the value to decode
+   * @return Value of the column or <code>null</code> for SQL <code>NULL</code>
+   * @throws SQLException If the column index is invalid, the reader is
+   *         not positioned on a row or the value cannot be decoded
+   *         into the requested type
+   */
+  <T> T getObject(int columnIndex, Class<T> type) throws SQLException;
+
+  /**
+   * @return Number of rows copied, as reported by the server, once all
+   *         rows have been read; otherwise <code>null</code>
+   */
+  Long getRowCount();
+
+  /**
+   * Closes the reader; if rows remain unread the copy is cancelled
+   * or, within an explicit transaction (which cancelling would abort),
+   * its remaining rows are received and discarded.
+   *
+   * @throws SQLException If an error occurs completing the copy
+   */
+  @Override
+  void close() throws SQLException;
+
+}
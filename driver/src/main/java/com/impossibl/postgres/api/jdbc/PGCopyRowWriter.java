@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.api.jdbc;
+
+import java.sql.SQLException;
+
+/**
+ * Writes typed rows to a binary <code>COPY ... FROM STDIN</code>
+ * command.
+ *
+ * Values are encoded directly into PostgreSQL's binary <code>COPY</code>
+ * format using the binary codec of each column's type, and sent to the
+ * server in batches as rows are written; no text is produced or
+ * escaped.
+ *
+ * The copy must be completed with {@link #endCopy()}; closing a writer
+ * that has not been completed cancels the copy. The connection cannot
+ * be used for other requests while a copy is active; attempts to do so
+ * fail with an {@link SQLException}.
+ *
+ * @see PGConnection#copyRowWriter(String, java.sql.SQLType...)
+ */
+public interface PGCopyRowWriter extends AutoCloseable {
+
+  /**
+   * @return Number of columns in each row
+   */
+  int getColumnCount();
+
+  /**
+   * Writes a row
+   *
+   * @param values Value of each column; <code>null</code> values are
+   *               written as SQL <code>NULL</code>
+   * @throws SQLException If the number of values does not match the
+   *         number of columns, a value cannot be encoded or the copy
+   *         has failed
+   */
+  void writeRow(Object... values) throws SQLException;
+
+  /**
+   * Completes the copy, sending any buffered rows and waiting for the
+   * server to acknowledge them.
+   *
+   * @return Number of rows copied
+   * @throws SQLException If the copy failed
+   */
+  long endCopy() throws SQLException;
+
+  /**
+   * Cancels the copy; no rows are copied.
+   *
+   * @throws SQLException If an error occurs cancelling the copy
+   */
+  void cancelCopy() throws SQLException;
+
+  /**
+   * Cancels the copy, if it has not been completed.
+   *
+   * @throws SQLException If an error occurs cancelling the copy
+   */
+  @Override
+  void close() throws SQLException;
+
+}
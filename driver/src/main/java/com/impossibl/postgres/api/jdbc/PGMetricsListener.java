@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.api.jdbc;
+
+/**
+ * Receives instrumentation events from connections with metrics
+ * enabled (see the {@code metrics.enabled} setting).
+ *
+ * Events are delivered synchronously on the thread that produced them,
+ * often a network I/O thread; implementations must be thread-safe and
+ * must not block.
+ *
+ * @see PGConnection#addMetricsListener(PGMetricsListener)
+ */
+public interface PGMetricsListener {
+
+  /**
+   * @param type Protocol message type
+   * @param length Total length of the message in bytes
+   */
+  default void messageSent(char type, int length) {
+  }
+
+  /**
+   * @param type Protocol message type
+   * @param length Total length of the message in bytes
+   */
+  default void messageReceived(char type, int length) {
+  }
+
+  /**
+   * Issued when the first message following a flush of requests is received.
+   *
+   * @param nanos Time between the flush and the first response
+   */
+  default void roundTrip(long nanos) {
+  }
+
+  /**
+   * @param depth Number of requests awaiting responses after a new request is queued
+   */
+  default void requestQueued(int depth) {
+  }
+
+  default void rowDecoded() {
+  }
+
+  /**
+   * @param typeOid OID of the field's type
+   * @param nanos Time taken to decode the field
+   */
+  default void fieldDecoded(int typeOid, long nanos) {
+  }
+
+  /**
+   * @param nanos Time the calling thread was blocked executing a request
+   */
+  default void awaited(long nanos) {
+  }
+
+  default void preparedStatementCacheHit() {
+  }
+
+  default void preparedStatementCacheMiss() {
+  }
+
+  default void preparedStatementCacheEviction() {
+  }
+
+  default void parsedSqlCacheHit() {
+  }
+
+  default void parsedSqlCacheMiss() {
+  }
+
+  /**
+   * @param typeOid OID of the type loaded from the server
+   */
+  default void typeLoaded(int typeOid) {
+  }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.api.jdbc;
+
+import java.sql.SQLException;
+
+/**
+ * Sequential reader of the attributes of a binary composite value.
+ *
+ * Each read consumes the next attribute. Primitive reads of attributes
+ * with matching types are decoded directly from the value's data;
+ * others are decoded using the attribute type's decoder.
+ *
+ * @see PGSQLDataDecoder
+ */
+public interface PGRecordReader {
+
+  /**
+   * @return Number of attributes in the value
+   */
+  int getAttributeCount();
+
+  /**
+   * @return <code>true</code> if the last attribute read was <code>NULL</code>
+   */
+  boolean wasNull();
+
+  boolean readBoolean() throws SQLException;
+
+  short readShort() throws SQLException;
+
+  int readInt() throws SQLException;
+
+  long readLong() throws SQLException;
+
+  float readFloat() throws SQLException;
+
+  double readDouble() throws SQLException;
+
+  String readString() throws SQLException;
+
+  <T> T readObject(Class<T> type) throws SQLException;
+
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.api.jdbc;
+
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+
+/**
+ * Stream of logical replication messages, started by
+ * {@link PGConnection#startLogicalReplication(String, long, java.util.Map)}.
+ *
+ * Mirrors the semantics of the Reactive Streams {@code Publisher} (and
+ * Java 9's {@code java.util.concurrent.Flow.Publisher}) in the same
+ * manner as {@link PGRowPublisher}. Demand signaled via
+ * {@link Subscription#request(long)} controls reading from the server;
+ * while there is no outstanding demand the connection stops reading,
+ * applying backpressure to the server. Subscribers that only require
+ * callbacks can simply request {@link Long#MAX_VALUE} messages.
+ *
+ * Subscriber callbacks are delivered on the connection's I/O thread and
+ * must not block; messages can be handed to other threads for processing.
+ *
+ * Positions acknowledged via {@link #setFlushedLsn(long)} and
+ * {@link #setAppliedLsn(long)} are not sent immediately; they are
+ * reported to the server by standby status updates sent on a timer
+ * (see the <code>replication.status-interval</code> setting).
+ *
+ * A stream can only be subscribed to once.
+ */
+public interface PGReplicationStream extends AutoCloseable {
+
+  /**
+   * A single <code>XLogData</code> message.
+   *
+   * The message's data references the network buffer it was received
+   * in, without copying; it remains valid after the delivering callback
+   * returns, until the message is released.
+   */
+  interface Message {
+
+    /**
+     * @return WAL position of the start of the message's data
+     */
+    long getWalStart();
+
+    /**
+     * @return Current end of WAL on the server
+     */
+    long getWalEnd();
+
+    /**
+     * @return Server's clock when the message was sent, in milliseconds
+     *         since the epoch
+     */
+    long getSendTime();
+
+    /**
+     * @return Read-only view of the message's data (as produced by the
+     *         slot's output plugin)
+     */
+    ByteBuffer getData();
+
+    /**
+     * Releases the message's data. Must be called exactly once for each
+     * delivered message.
+     */
+    void release();
+
+  }
+
+  /**
+   * Receiver of messages from a {@link PGReplicationStream}.
+   */
+  interface Subscriber {
+
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Delivers the next message of the stream. The subscriber takes
+     * ownership of the message and must release it.
+     *
+     * @param message Next message of the stream
+     */
+    void onNext(Message message);
+
+    void onError(Throwable throwable);
+
+    /**
+     * Called when the server ends the stream.
+     */
+    void onComplete();
+
+  }
+
+  /**
+   * Link between a {@link PGReplicationStream} and its {@link Subscriber}.
+   */
+  interface Subscription {
+
+    /**
+     * Requests up to {@code n} additional messages be delivered.
+     *
+     * @param n Number of additional messages; must be positive
+     */
+    void request(long n);
+
+    /**
+     * Cancels the stream, ending replication after a final status
+     * update. No further messages are delivered after cancellation
+     * has been processed.
+     */
+    void cancel();
+
+  }
+
+  void subscribe(Subscriber subscriber);
+
+  /**
+   * @return WAL position of the last message received from the server
+   */
+  long getLastReceivedLsn();
+
+  /**
+   * Acknowledges that all changes up to the given WAL position have
+   * been durably stored by the client; allowing the server to discard
+   * WAL retained by the replication slot.
+   *
+   * @param lsn Flushed WAL position
+   */
+  void setFlushedLsn(long lsn);
+
+  /**
+   * Acknowledges that all changes up to the given WAL position have
+   * been applied by the client.
+   *
+   * @param lsn Applied WAL position
+   */
+  void setAppliedLsn(long lsn);
+
+  /**
+   * @return <code>true</code> if replication has ended and the
+   *         connection can be used for other requests
+   */
+  boolean isClosed();
+
+  /**
+   * Ends replication, after sending a final status update, and waits
+   * for the server to return to normal query processing. Undelivered
+   * messages are released.
+   *
+   * @throws SQLException If an error occurs ending replication
+   */
+  @Override
+  void close() throws SQLException;
+
+  /**
+   * Parses a WAL position from its textual form (e.g. <code>16/B374D848</code>)
+   *
+   * @param lsn Textual WAL position
+   * @return WAL position
+   * @throws IllegalArgumentException If the text is not a valid WAL position
+   */
+  static long parseLsn(String lsn) {
+
+    int slashIdx = lsn.indexOf('/');
+    if (slashIdx <= 0 || slashIdx == lsn.length() - 1) {
+      throw new IllegalArgumentException("Invalid LSN: " + lsn);
+    }
+
+    try {
+      long high = Long.parseLong(lsn.substring(0, slashIdx), 16);
+      long low = Long.parseLong(lsn.substring(slashIdx + 1), 16);
+      if (high > 0xFFFFFFFFL || low > 0xFFFFFFFFL || high < 0 || low < 0) {
+        throw new IllegalArgumentException("Invalid LSN: " + lsn);
+      }
+      return (high << 32) | low;
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid LSN: " + lsn, e);
+    }
+  }
+
+  /**
+   * Formats a WAL position in its textual form (e.g. <code>16/B374D848</code>)
+   *
+   * @param lsn WAL position
+   * @return Textual WAL position
+   */
+  static String formatLsn(long lsn) {
+    return String.format("%X/%X", lsn >>> 32, lsn & 0xFFFFFFFFL);
+  }
+
+}
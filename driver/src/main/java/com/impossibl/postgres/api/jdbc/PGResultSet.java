@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.api.jdbc;
+
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Public API for PGResultSet
+ *
+ * Obtain via {@link ResultSet#unwrap(Class)}.
+ */
+public interface PGResultSet extends ResultSet {
+
+  /**
+   * Retrieves the raw data of a column, exactly as it was received from
+   * the server, without decoding or copying.
+   *
+   * The format of the data (text or binary) depends on the format the
+   * column was transferred in.
+   *
+   * NOTE: The returned buffer is a read-only view of the result set's
+   * internal buffers; it is only valid until the cursor is moved or
+   * the result set is closed.
+   *
+   * @param columnIndex 1-based index of the column
+   * @return Read-only view of the column's data or <code>null</code> if
+   *         the value is SQL <code>NULL</code>
+   * @throws SQLException If the column index is invalid or the result set
+   *         is not positioned on a row
+   */
+  ByteBuffer getRawBytes(int columnIndex) throws SQLException;
+
+  /**
+   * @param columnLabel Label of the column
+   * @return Read-only view of the column's data
+   * @throws SQLException If no column with the label exists
+   * @see #getRawBytes(int)
+   */
+  default ByteBuffer getRawBytes(String columnLabel) throws SQLException {
+    return getRawBytes(findColumn(columnLabel));
+  }
+
+  /**
+   * Reads a batch of rows, starting with the row following the
+   * cursor, directly into the given columnar vectors.
+   *
+   * Values are decoded in place from the buffers received from the
+   * server, without allocating an object per value. Rows are read
+   * until the capacity of the smallest vector is reached or the result
+   * set is exhausted; the vectors are reset before reading and the
+   * cursor is left positioned on the last row read.
+   *
+   * @param vectors Vector for each column of the result set;
+   *                <code>null</code> entries skip the column
+   * @return Number of rows read or <code>0</code> if no rows remain
+   * @throws SQLException If the number of vectors does not match the
+   *         number of columns or a vector is incompatible with the
+   *         type of its column
+   * @see PGColumnVector
+   */
+  int readColumns(PGColumnVector... vectors) throws SQLException;
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.api.jdbc;
+
+/**
+ * Publisher of rows produced by a streaming query.
+ *
+ * Mirrors the semantics of the Reactive Streams {@code Publisher}
+ * (and Java 9's {@code java.util.concurrent.Flow.Publisher}) so it
+ * can be trivially adapted to any reactive library. Demand
+ * signaled via {@link Subscription#request(long)} is translated
+ * directly into the number of rows requested from the server;
+ * rows are never fetched before they are requested.
+ *
+ * A publisher can only be subscribed to once.
+ *
+ * @see PGConnection#streamQuery(String)
+ */
+public interface PGRowPublisher {
+
+  /**
+   * Receiver of rows from a {@link PGRowPublisher}.
+   */
+  interface Subscriber {
+
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * Delivers the next row of the result. The provided row is only
+     * valid for the duration of the call; values must be extracted
+     * before returning.
+     *
+     * @param row Current row of the result
+     */
+    void onNext(PGRow row);
+
+    void onError(Throwable throwable);
+
+    void onComplete();
+
+  }
+
+  /**
+   * Link between a {@link PGRowPublisher} and its {@link Subscriber}.
+   */
+  interface Subscription {
+
+    /**
+     * Requests up to {@code n} additional rows be delivered.
+     *
+     * @param n Number of additional rows; must be positive
+     */
+    void request(long n);
+
+    /**
+     * Cancels the stream, closing the server portal. No further rows
+     * are delivered after cancellation has been processed.
+     */
+    void cancel();
+
+  }
+
+  void subscribe(Subscriber subscriber);
+
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.api.jdbc;
+
+import java.sql.SQLData;
+import java.sql.SQLException;
+
+/**
+ * Decodes binary composite values directly into instances of a
+ * {@link SQLData} class, bypassing reflective instantiation and the
+ * generic {@link java.sql.SQLInput} used by {@link SQLData#readSQL}.
+ *
+ * Decoders are discovered using {@link java.util.ServiceLoader}, from the
+ * class loader of the class they decode, by listing them in
+ * <code>META-INF/services/com.impossibl.postgres.api.jdbc.PGSQLDataDecoder</code>.
+ * The UDT generator produces decoders for the classes it generates.
+ *
+ * Encoding of values is unaffected and continues to use
+ * {@link SQLData#writeSQL}.
+ *
+ * @param <T> Class of decoded values
+ */
+public interface PGSQLDataDecoder<T extends SQLData> {
+
+  /**
+   * @return Class of values produced by this decoder
+   */
+  Class<T> getJavaType();
+
+  /**
+   * Decodes a single composite value.
+   *
+   * @param in Reader of the value's attributes
+   * @param typeName Qualified name of the composite type being decoded
+   * @return Decoded value
+   * @throws SQLException If an error occurs decoding the value
+   */
+  T decode(PGRecordReader in, String typeName) throws SQLException;
+
+}
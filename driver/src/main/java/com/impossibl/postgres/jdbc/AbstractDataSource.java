@@ -39,6 +39,7 @@ import static com.impossibl.postgres.jdbc.DataSourceSettings.DATASOURCE_NAME;
 import static com.impossibl.postgres.jdbc.DataSourceSettings.DS;
 import static com.impossibl.postgres.jdbc.DataSourceSettings.LOCAL_SERVER_NAME;
 import static com.impossibl.postgres.jdbc.DataSourceSettings.LOGIN_TIMEOUT;
+import static com.impossibl.postgres.jdbc.DataSourceSettings.POOL;
 import static com.impossibl.postgres.jdbc.DataSourceSettings.PORT_NUMBER;
 import static com.impossibl.postgres.jdbc.DataSourceSettings.SERVER_ADDRESSES;
 import static com.impossibl.postgres.jdbc.DataSourceSettings.SERVER_NAME;
@@ -74,7 +75,7 @@ import io.netty.channel.unix.DomainSocketAddress;
  */
 public abstract class AbstractDataSource implements CommonDataSource {
 
-  protected Settings settings = new Settings(DS, JDBC, SYS, PROTO);
+  protected Settings settings = new Settings(DS, POOL, JDBC, SYS, PROTO);
 
   private Map<ServerConnectionInfo, SharedRegistry> sharedRegistries;
 
@@ -120,6 +121,7 @@ public abstract class AbstractDataSource implements CommonDataSource {
 
       // Strip DataSource specific settings
       settings.unsetAll(DS.getAllOwnedSettings());
+      settings.unsetAll(POOL.getAllOwnedSettings());
 
       PGDirectConnection connection = ConnectionUtil.createConnection(url, settings.asProperties(), sharedRegistryFactory);
       if (connection == null) {
@@ -138,6 +140,7 @@ public abstract class AbstractDataSource implements CommonDataSource {
 
       // Strip DataSource specific settings
       settings.unsetAll(DS.getAllOwnedSettings());
+      settings.unsetAll(POOL.getAllOwnedSettings());
 
       return ConnectionUtil.createConnection(connSpec.getAddresses(), settings, sharedRegistryFactory);
     }
@@ -0,0 +1,369 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.protocol.ResultField;
+import com.impossibl.postgres.protocol.RowData;
+import com.impossibl.postgres.protocol.RowDataSet;
+
+import static com.impossibl.postgres.jdbc.Exceptions.NOT_SUPPORTED;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static java.util.Collections.emptyList;
+
+import io.netty.buffer.ByteBufHolder;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Snapshot of catalog metadata used by {@link PGDatabaseMetaData},
+ * shared by all connections using the same
+ * {@link com.impossibl.postgres.types.SharedRegistry}.
+ *
+ * Metadata is loaded in bulk (e.g. all tables of a schema) and indexed
+ * by relation name, allowing repeated requests for individual relations
+ * to be answered from memory.
+ *
+ * All entries belong to a generation identified by a catalog version,
+ * computed from the server's cumulative tuple statistics (inserted,
+ * updated & deleted counts) of the relevant catalog tables, avoiding a
+ * scan of the catalogs. Once the validation interval elapses the
+ * version is recomputed and, if it changed, the generation is
+ * discarded. Statistics are reported asynchronously by the server, so
+ * changes made by other clients may be detected with a small delay;
+ * catalog changes made through the driver invalidate the cache
+ * immediately. When <code>track_counts</code> is disabled the version
+ * falls back to the row counts and newest <code>xmin</code> of the
+ * catalogs.
+ */
+final class CatalogCache {
+
+  private static final String[] VERSIONED_CATALOGS = {
+    "pg_namespace", "pg_class", "pg_attribute", "pg_attrdef", "pg_index", "pg_constraint", "pg_description",
+  };
+
+  private static final String VERSION_SQL;
+
+  static {
+    StringBuilder sql = new StringBuilder(
+        "SELECT CASE WHEN pg_catalog.current_setting('track_counts')::boolean " +
+        " THEN (SELECT '' FROM pg_catalog.pg_stat_clear_snapshot())");
+    for (String catalog : VERSIONED_CATALOGS) {
+      String oid = "'pg_catalog." + catalog + "'::pg_catalog.regclass";
+      sql.append(" || '/' || pg_catalog.pg_stat_get_tuples_inserted(").append(oid).append(")")
+          .append(" || ':' || pg_catalog.pg_stat_get_tuples_updated(").append(oid).append(")")
+          .append(" || ':' || pg_catalog.pg_stat_get_tuples_deleted(").append(oid).append(")");
+    }
+    sql.append(" ELSE ''");
+    for (String catalog : VERSIONED_CATALOGS) {
+      sql.append(" || '/' || (SELECT count(*) || ':' || coalesce(max(xmin::text::bigint), 0) FROM pg_catalog.")
+          .append(catalog).append(")");
+    }
+    sql.append(" END");
+    VERSION_SQL = sql.toString();
+  }
+
+  interface Loader<T> {
+
+    T load() throws SQLException;
+
+  }
+
+  /**
+   * Items indexed by relation name, maintaining their load order.
+   */
+  static class Indexed<T> {
+
+    private List<T> items = new ArrayList<>();
+    private List<String> names = new ArrayList<>();
+    private Map<String, List<T>> itemsByName = new HashMap<>();
+
+    void add(String name, T item) {
+      items.add(item);
+      names.add(name);
+      itemsByName.computeIfAbsent(name, key -> new ArrayList<>()).add(item);
+    }
+
+    /**
+     * Selects the items with the given name
+     *
+     * @param name Name to select
+     * @return List of items with the name in load order
+     */
+    List<T> select(String name) {
+      return itemsByName.getOrDefault(name, emptyList());
+    }
+
+    /**
+     * Selects the items with names matching the given <code>LIKE</code>
+     * pattern
+     *
+     * @param namePattern <code>LIKE</code> pattern to match or <code>null</code> to select all
+     * @return List of matching items in load order
+     */
+    List<T> selectMatching(String namePattern) {
+
+      if (namePattern == null || namePattern.isEmpty()) {
+        return items;
+      }
+
+      Pattern pattern = compileLikePattern(namePattern);
+      if (pattern == null) {
+        return select(unescapeLikePattern(namePattern));
+      }
+
+      List<T> selected = new ArrayList<>();
+      for (int idx = 0; idx < items.size(); ++idx) {
+        String name = names.get(idx);
+        if (name != null && pattern.matcher(name).matches()) {
+          selected.add(items.get(idx));
+        }
+      }
+      return selected;
+    }
+
+  }
+
+  /**
+   * Result rows, copied to unpooled memory, indexed by the value of a
+   * name field.
+   */
+  static class Rows extends Indexed<RowData> {
+
+    private ResultField[] resultFields;
+
+    Rows(ResultField[] resultFields) {
+      this.resultFields = resultFields;
+    }
+
+    static Rows load(PGMetaData metaData, String sql, List<Object> params, String nameFieldLabel) throws SQLException {
+
+      try (PGResultSet rs = metaData.execForResultSet(sql, params)) {
+
+        Rows rows = new Rows(rs.getResultFields());
+
+        int nameFieldIdx = rs.findColumn(nameFieldLabel);
+
+        while (rs.next()) {
+          RowData rowData = rs.getRowData();
+          if (!(rowData instanceof ByteBufHolder)) {
+            throw NOT_SUPPORTED;
+          }
+          ByteBufHolder rowDataHolder = (ByteBufHolder) rowData;
+          rows.add(rs.getString(nameFieldIdx), (RowData) rowDataHolder.replace(Unpooled.copiedBuffer(rowDataHolder.content())));
+        }
+
+        return rows;
+      }
+
+    }
+
+    /**
+     * Creates a result set from the given selection of rows
+     *
+     * @param metaData Metadata instance creating the result set
+     * @param rows Selection of rows from this instance
+     * @return Result set of rows
+     * @throws SQLException If an error occurs creating the result set
+     */
+    PGResultSet createResultSet(PGMetaData metaData, List<RowData> rows) throws SQLException {
+
+      RowDataSet rowDataSet = new RowDataSet(rows.size());
+      for (RowData row : rows) {
+        rowDataSet.add(ReferenceCountUtil.retain(row));
+      }
+
+      return metaData.createResultSet(resultFields, rowDataSet);
+    }
+
+  }
+
+  private static class Generation {
+    String version;
+    volatile long validated;
+    ConcurrentMap<List<Object>, Object> entries = new ConcurrentHashMap<>();
+
+    Generation(String version, long validated) {
+      this.version = version;
+      this.validated = validated;
+    }
+
+  }
+
+  private volatile Generation generation;
+
+  static CatalogCache get(PGDirectConnection connection) {
+    return connection.getRegistry().getShared().getCache(CatalogCache.class, CatalogCache::new);
+  }
+
+  /**
+   * Retrieves a cached entry, loading it if necessary.
+   *
+   * @param metaData Metadata instance used to validate the cache
+   * @param key Key of the entry
+   * @param loader Loader used to load the entry if it is not cached
+   * @return Cached entry
+   * @throws SQLException If an error occurs validating the cache or loading the entry
+   */
+  @SuppressWarnings("unchecked")
+  <T> T get(PGMetaData metaData, List<Object> key, Loader<T> loader) throws SQLException {
+
+    Generation current = validate(metaData);
+
+    Object entry = current.entries.get(key);
+    if (entry == null) {
+      entry = loader.load();
+      current.entries.putIfAbsent(key, entry);
+    }
+
+    return (T) entry;
+  }
+
+  /**
+   * Discards all cached entries
+   */
+  void invalidate() {
+    generation = null;
+  }
+
+  private Generation validate(PGMetaData metaData) throws SQLException {
+
+    long now = System.nanoTime();
+    long validationInterval =
+        TimeUnit.MILLISECONDS.toNanos(metaData.connection.getSetting(JDBCSettings.CATALOG_CACHE_VALIDATION_INTERVAL));
+
+    Generation current = generation;
+    if (current != null && validationInterval > 0 && now - current.validated < validationInterval) {
+      return current;
+    }
+
+    String version = metaData.connection.executeForString(VERSION_SQL);
+
+    if (current != null && current.version.equals(version)) {
+      current.validated = now;
+      return current;
+    }
+
+    current = new Generation(version, now);
+    generation = current;
+
+    return current;
+  }
+
+  /**
+   * Checks if the command tag is that of a command that (possibly)
+   * modifies the catalog.
+   *
+   * Commands creating tables from queries report a {@code SELECT} tag
+   * and must be detected from their SQL text instead
+   * (see {@link SQLTextUtils#isCreateTableAs(SQLText)}).
+   *
+   * @param command Command tag
+   * @return <code>true</code> if the command modifies the catalog
+   */
+  static boolean isCatalogCommand(String command) {
+    if (command == null) return false;
+    return command.startsWith("CREATE") || command.startsWith("ALTER") || command.startsWith("DROP") ||
+        command.startsWith("COMMENT") || command.startsWith("GRANT") || command.startsWith("REVOKE") ||
+        command.startsWith("IMPORT FOREIGN SCHEMA");
+  }
+
+  /*
+   * Compiles a LIKE pattern (using the default '\' escape) into a
+   * regular expression, or returns null if the pattern contains no
+   * wildcards
+   */
+  private static Pattern compileLikePattern(String likePattern) {
+
+    StringBuilder regex = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
+    boolean wildcards = false;
+
+    for (int idx = 0; idx < likePattern.length(); ++idx) {
+      char ch = likePattern.charAt(idx);
+      switch (ch) {
+        case '\\':
+          if (idx + 1 < likePattern.length()) {
+            literal.append(likePattern.charAt(++idx));
+          }
+          break;
+        case '%':
+          appendLiteral(regex, literal);
+          regex.append(".*");
+          wildcards = true;
+          break;
+        case '_':
+          appendLiteral(regex, literal);
+          regex.append('.');
+          wildcards = true;
+          break;
+        default:
+          literal.append(ch);
+      }
+    }
+
+    if (!wildcards) {
+      return null;
+    }
+
+    appendLiteral(regex, literal);
+
+    return Pattern.compile(regex.toString(), Pattern.DOTALL);
+  }
+
+  private static void appendLiteral(StringBuilder regex, StringBuilder literal) {
+    if (literal.length() != 0) {
+      regex.append(Pattern.quote(literal.toString()));
+      literal.setLength(0);
+    }
+  }
+
+  private static String unescapeLikePattern(String likePattern) {
+
+    StringBuilder unescaped = new StringBuilder(likePattern.length());
+    for (int idx = 0; idx < likePattern.length(); ++idx) {
+      char ch = likePattern.charAt(idx);
+      if (ch == '\\' && idx + 1 < likePattern.length()) {
+        ch = likePattern.charAt(++idx);
+      }
+      unescaped.append(ch);
+    }
+    return unescaped.toString();
+  }
+
+}
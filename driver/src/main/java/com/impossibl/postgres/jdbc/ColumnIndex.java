@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.protocol.ResultField;
+
+import static java.lang.Math.max;
+
+/**
+ * Case-insensitive hash table mapping result field labels to
+ * their (1-based) column index.
+ *
+ * When multiple fields share a label the first is found, as
+ * required by JDBC.
+ */
+final class ColumnIndex {
+
+  private final String[] labels;
+  private final int[] indexes;
+  private final int mask;
+
+  ColumnIndex(ResultField[] fields) {
+
+    int capacity = Integer.highestOneBit(max(fields.length, 1) * 2 - 1) << 1;
+    this.labels = new String[capacity];
+    this.indexes = new int[capacity];
+    this.mask = capacity - 1;
+
+    for (int c = 0; c < fields.length; ++c) {
+
+      String label = fields[c].getName();
+
+      int slot = hash(label) & mask;
+      while (labels[slot] != null && !labels[slot].equalsIgnoreCase(label)) {
+        slot = (slot + 1) & mask;
+      }
+
+      if (labels[slot] == null) {
+        labels[slot] = label;
+        indexes[slot] = c + 1;
+      }
+    }
+  }
+
+  /**
+   * Finds the column index of a label
+   *
+   * @param label Label to find (case insensitive)
+   * @return 1-based index of the column or <code>0</code> if no
+   *         column has the label.
+   */
+  int find(String label) {
+    if (label == null) {
+      return 0;
+    }
+
+    int slot = hash(label) & mask;
+    while (labels[slot] != null) {
+      if (labels[slot].equalsIgnoreCase(label)) {
+        return indexes[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    return 0;
+  }
+
+  /**
+   * Hash consistent with {@link String#equalsIgnoreCase(String)}
+   */
+  private static int hash(String label) {
+    int hash = 0;
+    for (int c = 0; c < label.length(); ++c) {
+      hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(label.charAt(c)));
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+}
@@ -0,0 +1,328 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.api.jdbc.PGColumnVector;
+import com.impossibl.postgres.protocol.FieldFormat;
+import com.impossibl.postgres.protocol.ResultField;
+import com.impossibl.postgres.protocol.RowData;
+import com.impossibl.postgres.protocol.v30.BufferRowData;
+import com.impossibl.postgres.system.Context;
+import com.impossibl.postgres.types.Type;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Decodes result set rows into columnar vectors.
+ *
+ * Fields are decoded in place, directly from the buffer each row was
+ * received in, using the binary layout of the column's type; no
+ * objects are allocated per value. Text format fields are parsed
+ * from their ASCII representation (with the exception of floating
+ * point values, which are parsed via {@link Double#parseDouble(String)}).
+ */
+final class ColumnarReader {
+
+  private static final int BOOL_OID = 16;
+  private static final int BYTEA_OID = 17;
+  private static final int INT8_OID = 20;
+  private static final int INT2_OID = 21;
+  private static final int INT4_OID = 23;
+  private static final int OID_OID = 26;
+  private static final int FLOAT4_OID = 700;
+  private static final int FLOAT8_OID = 701;
+
+  private interface FieldDecoder {
+
+    void decode(ByteBuf buffer, int index, int length, int row);
+
+  }
+
+  private final PGColumnVector[] vectors;
+  private final FieldDecoder[] decoders;
+  private final int capacity;
+
+  private ColumnarReader(PGColumnVector[] vectors, FieldDecoder[] decoders, int capacity) {
+    this.vectors = vectors;
+    this.decoders = decoders;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Creates a reader for the given columns
+   *
+   * @param fields Result fields of the columns
+   * @param vectors Vector for each column; <code>null</code> entries skip the column
+   * @param context Context used to resolve column types
+   * @return Reader decoding into the provided vectors
+   * @throws SQLException If a vector is incompatible with its column's type
+   */
+  static ColumnarReader create(ResultField[] fields, PGColumnVector[] vectors, Context context) throws SQLException {
+
+    if (vectors.length != fields.length) {
+      throw new PGSQLSimpleException("Vector count (" + vectors.length + ") does not match column count (" + fields.length + ")");
+    }
+
+    FieldDecoder[] decoders = new FieldDecoder[vectors.length];
+    int capacity = Integer.MAX_VALUE;
+
+    for (int idx = 0; idx < vectors.length; ++idx) {
+      PGColumnVector vector = vectors[idx];
+      if (vector == null) {
+        continue;
+      }
+
+      ResultField field = fields[idx];
+
+      Type type;
+      try {
+        type = field.getDecodePlan(context).getType();
+      }
+      catch (IOException e) {
+        throw new PGSQLSimpleException("Error resolving column type", e);
+      }
+
+      decoders[idx] = createDecoder(field, type != null ? type.unwrap() : null, vector);
+      if (decoders[idx] == null) {
+        throw new PGSQLSimpleException("Column " + (idx + 1) + " (" + field + ") cannot be read into " + vector.getClass().getSimpleName() + " vector");
+      }
+
+      capacity = Math.min(capacity, vector.getCapacity());
+    }
+
+    return new ColumnarReader(vectors, decoders, capacity == Integer.MAX_VALUE ? 0 : capacity);
+  }
+
+  private static FieldDecoder createDecoder(ResultField field, Type type, PGColumnVector vector) {
+
+    int typeId = type != null ? type.getId() : field.getTypeRef().getOid();
+    boolean binary = field.getFormat() == FieldFormat.Binary;
+
+    if (vector instanceof PGColumnVector.Int) {
+      PGColumnVector.Int ints = (PGColumnVector.Int) vector;
+      switch (typeId) {
+        case INT2_OID:
+          if (binary) return (buffer, index, length, row) -> ints.set(row, buffer.getShort(index));
+          return (buffer, index, length, row) -> ints.set(row, (int) parseLong(buffer, index, length));
+        case INT4_OID:
+        case OID_OID:
+          if (binary) return (buffer, index, length, row) -> ints.set(row, buffer.getInt(index));
+          return (buffer, index, length, row) -> ints.set(row, (int) parseLong(buffer, index, length));
+        default:
+          return null;
+      }
+    }
+
+    if (vector instanceof PGColumnVector.BigInt) {
+      PGColumnVector.BigInt longs = (PGColumnVector.BigInt) vector;
+      switch (typeId) {
+        case INT2_OID:
+          if (binary) return (buffer, index, length, row) -> longs.set(row, buffer.getShort(index));
+          break;
+        case INT4_OID:
+          if (binary) return (buffer, index, length, row) -> longs.set(row, buffer.getInt(index));
+          break;
+        case OID_OID:
+          if (binary) return (buffer, index, length, row) -> longs.set(row, buffer.getUnsignedInt(index));
+          break;
+        case INT8_OID:
+          if (binary) return (buffer, index, length, row) -> longs.set(row, buffer.getLong(index));
+          break;
+        default:
+          return null;
+      }
+      return (buffer, index, length, row) -> longs.set(row, parseLong(buffer, index, length));
+    }
+
+    if (vector instanceof PGColumnVector.Float8) {
+      PGColumnVector.Float8 doubles = (PGColumnVector.Float8) vector;
+      switch (typeId) {
+        case FLOAT4_OID:
+          if (binary) return (buffer, index, length, row) -> doubles.set(row, buffer.getFloat(index));
+          break;
+        case FLOAT8_OID:
+          if (binary) return (buffer, index, length, row) -> doubles.set(row, buffer.getDouble(index));
+          break;
+        default:
+          return null;
+      }
+      return (buffer, index, length, row) -> doubles.set(row, Double.parseDouble(buffer.toString(index, length, US_ASCII)));
+    }
+
+    if (vector instanceof PGColumnVector.Bit) {
+      PGColumnVector.Bit bits = (PGColumnVector.Bit) vector;
+      if (typeId != BOOL_OID) {
+        return null;
+      }
+      if (binary) return (buffer, index, length, row) -> bits.set(row, buffer.getByte(index) != 0);
+      return (buffer, index, length, row) -> bits.set(row, buffer.getByte(index) == 't');
+    }
+
+    if (vector instanceof PGColumnVector.VarBinary) {
+      PGColumnVector.VarBinary bytes = (PGColumnVector.VarBinary) vector;
+      if (typeId == BYTEA_OID && !binary) {
+        return (buffer, index, length, row) -> decodeHex(buffer, index, length, row, bytes);
+      }
+      if (typeId == BYTEA_OID || !binary || (type != null && type.getCategory() == Type.Category.String)) {
+        return (buffer, index, length, row) -> {
+          int offset = bytes.allocate(row, length);
+          buffer.getBytes(index, bytes.getDataBuffer(), offset, length);
+        };
+      }
+      return null;
+    }
+
+    return null;
+  }
+
+  /**
+   * @return Maximum number of rows that can be read into the vectors
+   */
+  int getCapacity() {
+    return capacity;
+  }
+
+  void reset() {
+    for (PGColumnVector vector : vectors) {
+      if (vector != null) {
+        vector.reset();
+      }
+    }
+  }
+
+  /**
+   * Decodes a row into the vectors
+   *
+   * @param rowData Row to decode
+   * @param row Index of the row within the vectors
+   * @throws SQLException If a field cannot be decoded
+   */
+  void read(RowData rowData, int row) throws SQLException {
+
+    try {
+      if (rowData instanceof BufferRowData) {
+        BufferRowData bufferRowData = (BufferRowData) rowData;
+        ByteBuf buffer = bufferRowData.content();
+
+        for (int idx = 0; idx < decoders.length; ++idx) {
+          FieldDecoder decoder = decoders[idx];
+          if (decoder == null) continue;
+
+          int offset = bufferRowData.getFieldOffset(idx);
+          int length = buffer.getInt(offset);
+          if (length == -1) {
+            vectors[idx].setNull(row);
+          }
+          else {
+            decoder.decode(buffer, offset + 4, length, row);
+          }
+        }
+      }
+      else {
+        for (int idx = 0; idx < decoders.length; ++idx) {
+          FieldDecoder decoder = decoders[idx];
+          if (decoder == null) continue;
+
+          ByteBuf buffer = rowData.getFieldBuffer(idx);
+          if (buffer == null) {
+            vectors[idx].setNull(row);
+          }
+          else {
+            decoder.decode(buffer, buffer.readerIndex(), buffer.readableBytes(), row);
+          }
+        }
+      }
+    }
+    catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+      throw new PGSQLSimpleException("Error decoding column", e);
+    }
+  }
+
+  void setValueCount(int valueCount) {
+    for (PGColumnVector vector : vectors) {
+      if (vector != null) {
+        vector.setValueCount(valueCount);
+      }
+    }
+  }
+
+  private static long parseLong(ByteBuf buffer, int index, int length) {
+
+    int end = index + length;
+
+    boolean negative = length > 0 && buffer.getByte(index) == '-';
+    if (negative) {
+      index++;
+    }
+
+    if (index == end) {
+      throw new NumberFormatException("Invalid integer");
+    }
+
+    // Accumulate negatively to handle Long.MIN_VALUE
+    long value = 0;
+    for (; index < end; ++index) {
+      int digit = buffer.getByte(index) - '0';
+      if (digit < 0 || digit > 9) {
+        throw new NumberFormatException("Invalid integer");
+      }
+      value = value * 10 - digit;
+    }
+
+    return negative ? value : -value;
+  }
+
+  private static void decodeHex(ByteBuf buffer, int index, int length, int row, PGColumnVector.VarBinary bytes) {
+
+    if (length < 2 || buffer.getByte(index) != '\\' || buffer.getByte(index + 1) != 'x') {
+      throw new IllegalArgumentException("Unsupported bytea format (only hex is supported)");
+    }
+
+    int count = (length - 2) / 2;
+    int offset = bytes.allocate(row, count);
+    byte[] data = bytes.getDataBuffer();
+
+    for (int idx = index + 2, end = index + 2 + count * 2; idx < end; idx += 2) {
+      data[offset++] = (byte) ((hexValue(buffer.getByte(idx)) << 4) | hexValue(buffer.getByte(idx + 1)));
+    }
+  }
+
+  private static int hexValue(byte digit) {
+    if (digit >= '0' && digit <= '9') return digit - '0';
+    if (digit >= 'a' && digit <= 'f') return digit - 'a' + 10;
+    if (digit >= 'A' && digit <= 'F') return digit - 'A' + 10;
+    throw new IllegalArgumentException("Invalid hex digit");
+  }
+
+}
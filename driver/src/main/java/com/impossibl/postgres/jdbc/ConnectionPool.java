@@ -0,0 +1,648 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.api.jdbc.PGConnection;
+import com.impossibl.postgres.protocol.TransactionStatus;
+
+import java.lang.ref.WeakReference;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+
+/**
+ * Connection pool used by {@link PGDataSource} when pooling is enabled.
+ *
+ * Borrowing is lock-free. A thread first attempts to reclaim the connection
+ * it most recently returned, then takes the most recently returned idle
+ * connection from a shared bag. When the pool is exhausted, borrowers wait
+ * for a connection to be handed off directly by a returning thread.
+ *
+ * Borrowers receive a {@link PGConnectionHandle} that is valid for a single
+ * checkout; once the connection is returned, the handle (and any statements
+ * created from it) report being closed, even after the connection has been
+ * lent to another borrower.
+ *
+ * Connections are validated using the transaction status reported by the
+ * server with every request; validation never requires a round trip.
+ * Returned connections have their session state reset via
+ * {@link PGDirectConnection#resetSession()}, which requires at most one
+ * round trip and only when the session was modified.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+  private static final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+
+  private static final long MAINTENANCE_PERIOD = 5000;
+
+  interface Connector {
+    PGDirectConnection connect() throws SQLException;
+  }
+
+  /**
+   * Pool bookkeeping for a single physical connection
+   */
+  static final class Entry {
+
+    static final int IDLE = 0;
+    static final int IN_USE = 1;
+    static final int RESERVED = 2;
+    static final int REMOVED = 3;
+
+    final ConnectionPool pool;
+    final PGDirectConnection connection;
+    final AtomicInteger state = new AtomicInteger(IN_USE);
+    final AtomicBoolean queued = new AtomicBoolean(false);
+    final long createdAt;
+    volatile long lastAccessedAt;
+    volatile long borrowedAt;
+    volatile long checkout;
+    volatile StackTraceElement[] borrowStackTrace;
+    volatile boolean leakReported;
+
+    Entry(ConnectionPool pool, PGDirectConnection connection) {
+      this.pool = pool;
+      this.connection = connection;
+      this.createdAt = System.nanoTime();
+      this.lastAccessedAt = createdAt;
+    }
+
+    boolean isInUse() {
+      return state.get() == IN_USE;
+    }
+
+    /**
+     * Returns the connection to the pool; ignored if the connection
+     * is not currently borrowed.
+     */
+    void release() {
+      if (state.compareAndSet(IN_USE, RESERVED)) {
+        pool.release(this);
+      }
+    }
+
+    /**
+     * Removes the connection from the pool, e.g. because it has been
+     * closed by the server or aborted.
+     */
+    void discard() {
+      pool.discard(this);
+    }
+
+  }
+
+  /**
+   * Point in time snapshot of pool metrics.
+   */
+  public static final class Metrics {
+
+    private final int totalConnections;
+    private final int idleConnections;
+    private final int activeConnections;
+    private final int pendingRequests;
+    private final long acquireCount;
+    private final long acquireTimeoutCount;
+    private final long totalAcquireWaitNanos;
+    private final long maxAcquireWaitNanos;
+    private final long totalUsageNanos;
+    private final long leakCount;
+    private final long createdCount;
+    private final long closedCount;
+
+    Metrics(int totalConnections, int idleConnections, int activeConnections, int pendingRequests,
+            long acquireCount, long acquireTimeoutCount, long totalAcquireWaitNanos, long maxAcquireWaitNanos,
+            long totalUsageNanos, long leakCount, long createdCount, long closedCount) {
+      this.totalConnections = totalConnections;
+      this.idleConnections = idleConnections;
+      this.activeConnections = activeConnections;
+      this.pendingRequests = pendingRequests;
+      this.acquireCount = acquireCount;
+      this.acquireTimeoutCount = acquireTimeoutCount;
+      this.totalAcquireWaitNanos = totalAcquireWaitNanos;
+      this.maxAcquireWaitNanos = maxAcquireWaitNanos;
+      this.totalUsageNanos = totalUsageNanos;
+      this.leakCount = leakCount;
+      this.createdCount = createdCount;
+      this.closedCount = closedCount;
+    }
+
+    public int getTotalConnections() {
+      return totalConnections;
+    }
+
+    public int getIdleConnections() {
+      return idleConnections;
+    }
+
+    public int getActiveConnections() {
+      return activeConnections;
+    }
+
+    public int getPendingRequests() {
+      return pendingRequests;
+    }
+
+    public long getAcquireCount() {
+      return acquireCount;
+    }
+
+    public long getAcquireTimeoutCount() {
+      return acquireTimeoutCount;
+    }
+
+    public long getTotalAcquireWaitTime(TimeUnit unit) {
+      return unit.convert(totalAcquireWaitNanos, NANOSECONDS);
+    }
+
+    public long getMaxAcquireWaitTime(TimeUnit unit) {
+      return unit.convert(maxAcquireWaitNanos, NANOSECONDS);
+    }
+
+    public long getTotalUsageTime(TimeUnit unit) {
+      return unit.convert(totalUsageNanos, NANOSECONDS);
+    }
+
+    public long getLeakCount() {
+      return leakCount;
+    }
+
+    public long getCreatedCount() {
+      return createdCount;
+    }
+
+    public long getClosedCount() {
+      return closedCount;
+    }
+
+    @Override
+    public String toString() {
+      return "Metrics{" +
+          "total=" + totalConnections +
+          ", idle=" + idleConnections +
+          ", active=" + activeConnections +
+          ", pending=" + pendingRequests +
+          ", acquires=" + acquireCount +
+          ", timeouts=" + acquireTimeoutCount +
+          ", maxWaitMillis=" + NANOSECONDS.toMillis(maxAcquireWaitNanos) +
+          ", leaks=" + leakCount +
+          ", created=" + createdCount +
+          ", closed=" + closedCount +
+          '}';
+    }
+
+  }
+
+  private final Connector connector;
+  private final int maxSize;
+  private final int minIdle;
+  private final long acquireTimeout;
+  private final long idleTimeout;
+  private final long maxLifetime;
+  private final long leakDetectionThreshold;
+
+  private final CopyOnWriteArrayList<Entry> entries = new CopyOnWriteArrayList<>();
+  private final ConcurrentLinkedDeque<Entry> idle = new ConcurrentLinkedDeque<>();
+  private final SynchronousQueue<Entry> handoff = new SynchronousQueue<>(true);
+  private final ThreadLocal<WeakReference<Entry>> lastReleased = new ThreadLocal<>();
+  private final AtomicInteger totalConnections = new AtomicInteger();
+  private final AtomicInteger waiters = new AtomicInteger();
+  private final ScheduledExecutorService maintenanceExecutor;
+  private volatile boolean closed;
+
+  private final LongAdder acquireCount = new LongAdder();
+  private final LongAdder acquireTimeoutCount = new LongAdder();
+  private final LongAdder totalAcquireWaitNanos = new LongAdder();
+  private final AtomicLong maxAcquireWaitNanos = new AtomicLong();
+  private final LongAdder totalUsageNanos = new LongAdder();
+  private final LongAdder leakCount = new LongAdder();
+  private final LongAdder createdCount = new LongAdder();
+  private final LongAdder closedCount = new LongAdder();
+
+  ConnectionPool(Connector connector, int maxSize, int minIdle, long acquireTimeout, long idleTimeout, long maxLifetime, long leakDetectionThreshold) {
+    this.connector = connector;
+    this.maxSize = maxSize;
+    this.minIdle = Math.min(minIdle, maxSize);
+    this.acquireTimeout = MILLISECONDS.toNanos(acquireTimeout);
+    this.idleTimeout = MILLISECONDS.toNanos(idleTimeout);
+    this.maxLifetime = MILLISECONDS.toNanos(maxLifetime);
+    this.leakDetectionThreshold = MILLISECONDS.toNanos(leakDetectionThreshold);
+
+    this.maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "PG-JDBC Pool Maintenance");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.maintenanceExecutor.scheduleWithFixedDelay(this::maintain, MAINTENANCE_PERIOD, MAINTENANCE_PERIOD, MILLISECONDS);
+  }
+
+  /**
+   * Borrows a connection from the pool, creating one if the pool is not
+   * at capacity, or waiting for one to be returned.
+   *
+   * @return Handle to the borrowed connection, valid until the connection is returned
+   * @throws SQLException If the pool is closed, a connection cannot be established or
+   *                      a connection was not available within the acquire timeout
+   */
+  PGConnection borrow() throws SQLException {
+
+    if (closed) {
+      throw new SQLException("connection pool closed", "08003");
+    }
+
+    long start = System.nanoTime();
+
+    Entry entry = takeIdle();
+    if (entry == null) {
+      entry = tryCreate();
+      if (entry == null) {
+        entry = awaitHandoff(start);
+      }
+    }
+
+    long waitNanos = System.nanoTime() - start;
+
+    acquireCount.increment();
+    totalAcquireWaitNanos.add(waitNanos);
+    long maxWait;
+    while (waitNanos > (maxWait = maxAcquireWaitNanos.get())) {
+      if (maxAcquireWaitNanos.compareAndSet(maxWait, waitNanos)) {
+        break;
+      }
+    }
+
+    entry.borrowedAt = System.nanoTime();
+    entry.leakReported = false;
+    if (leakDetectionThreshold > 0) {
+      entry.borrowStackTrace = new Exception().getStackTrace();
+    }
+    entry.checkout++;
+
+    PGConnectionHandle handle = new PGConnectionHandle(entry);
+    entry.connection.handle = handle;
+
+    return handle;
+  }
+
+  private Entry takeIdle() {
+
+    WeakReference<Entry> lastReleasedRef = lastReleased.get();
+    if (lastReleasedRef != null) {
+      Entry entry = lastReleasedRef.get();
+      if (entry != null && entry.state.compareAndSet(Entry.IDLE, Entry.IN_USE)) {
+        if (isValid(entry)) {
+          return entry;
+        }
+        discard(entry);
+      }
+    }
+
+    Entry entry;
+    while ((entry = idle.pollFirst()) != null) {
+      entry.queued.set(false);
+      if (entry.state.compareAndSet(Entry.IDLE, Entry.IN_USE)) {
+        if (isValid(entry)) {
+          return entry;
+        }
+        discard(entry);
+      }
+    }
+
+    return null;
+  }
+
+  private Entry tryCreate() throws SQLException {
+
+    int total;
+    while ((total = totalConnections.get()) < maxSize) {
+      if (totalConnections.compareAndSet(total, total + 1)) {
+        return create();
+      }
+    }
+
+    return null;
+  }
+
+  private Entry create() throws SQLException {
+
+    PGDirectConnection connection;
+    try {
+      connection = connector.connect();
+    }
+    catch (SQLException | RuntimeException e) {
+      totalConnections.decrementAndGet();
+      throw e;
+    }
+
+    Entry entry = new Entry(this, connection);
+    connection.poolEntry = entry;
+    entries.add(entry);
+    createdCount.increment();
+
+    return entry;
+  }
+
+  private Entry awaitHandoff(long start) throws SQLException {
+
+    waiters.incrementAndGet();
+    try {
+
+      while (!closed) {
+
+        long remaining = acquireTimeout > 0 ? acquireTimeout - (System.nanoTime() - start) : MILLISECONDS.toNanos(MAINTENANCE_PERIOD);
+        if (remaining <= 0) {
+          break;
+        }
+
+        Entry entry = handoff.poll(remaining, NANOSECONDS);
+        if (entry != null && entry.state.compareAndSet(Entry.IDLE, Entry.IN_USE)) {
+          if (isValid(entry)) {
+            return entry;
+          }
+          discard(entry);
+        }
+
+        // Handoffs can be missed; retry the bag & capacity
+
+        entry = takeIdle();
+        if (entry == null) {
+          entry = tryCreate();
+        }
+        if (entry != null) {
+          return entry;
+        }
+      }
+
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("interrupted while waiting for pooled connection", "08001", e);
+    }
+    finally {
+      waiters.decrementAndGet();
+    }
+
+    if (closed) {
+      throw new SQLException("connection pool closed", "08003");
+    }
+
+    acquireTimeoutCount.increment();
+
+    throw new SQLTimeoutException("timeout waiting for pooled connection (" + metrics() + ")", "08001");
+  }
+
+  private boolean isValid(Entry entry) {
+
+    if (maxLifetime > 0 && System.nanoTime() - entry.createdAt > maxLifetime) {
+      return false;
+    }
+
+    // Transaction status is reported by the server after every
+    // request; no round trip is required to check it.
+    try {
+      return entry.connection.isServerConnected() &&
+          entry.connection.getTransactionStatus() == TransactionStatus.Idle;
+    }
+    catch (SQLException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Resets the connection's session and returns it to the pool
+   */
+  private void release(Entry entry) {
+
+    long now = System.nanoTime();
+
+    totalUsageNanos.add(now - entry.borrowedAt);
+    entry.borrowStackTrace = null;
+
+    if (closed || (maxLifetime > 0 && now - entry.createdAt > maxLifetime)) {
+      discard(entry);
+      return;
+    }
+
+    try {
+      entry.connection.resetSession();
+    }
+    catch (SQLException e) {
+      logger.log(Level.FINE, "Unable to reset pooled connection session", e);
+      discard(entry);
+      return;
+    }
+
+    entry.lastAccessedAt = now;
+
+    if (!entry.state.compareAndSet(Entry.RESERVED, Entry.IDLE)) {
+      return;
+    }
+
+    WeakReference<Entry> lastReleasedRef = lastReleased.get();
+    if (lastReleasedRef == null || lastReleasedRef.get() != entry) {
+      lastReleased.set(new WeakReference<>(entry));
+    }
+
+    if (entry.queued.compareAndSet(false, true)) {
+      idle.offerFirst(entry);
+    }
+
+    // Hand the connection directly to a waiting borrower, if any
+    for (int spin = 0; waiters.get() > 0; ++spin) {
+      if (entry.state.get() != Entry.IDLE || handoff.offer(entry)) {
+        return;
+      }
+      if ((spin & 0xff) == 0xff) {
+        LockSupport.parkNanos(MICROSECONDS.toNanos(10));
+      }
+      else {
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * Removes the connection from the pool and closes it
+   */
+  private void discard(Entry entry) {
+
+    if (entry.state.getAndSet(Entry.REMOVED) == Entry.REMOVED) {
+      return;
+    }
+
+    entries.remove(entry);
+    totalConnections.decrementAndGet();
+    closedCount.increment();
+
+    entry.connection.poolEntry = null;
+    entry.connection.close();
+  }
+
+  private void maintain() {
+
+    try {
+
+      long now = System.nanoTime();
+
+      Iterator<Entry> entryIter = entries.iterator();
+      while (entryIter.hasNext()) {
+        Entry entry = entryIter.next();
+
+        if (entry.isInUse()) {
+          reportLeak(entry, now);
+          continue;
+        }
+
+        boolean lifetimeExpired = maxLifetime > 0 && now - entry.createdAt > maxLifetime;
+        boolean idleExpired = idleTimeout > 0 && now - entry.lastAccessedAt > idleTimeout && totalConnections.get() > minIdle;
+
+        if ((lifetimeExpired || idleExpired || !entry.connection.isServerConnected()) &&
+            entry.state.compareAndSet(Entry.IDLE, Entry.RESERVED)) {
+          discard(entry);
+        }
+      }
+
+      fillIdle();
+
+    }
+    catch (Throwable t) {
+      logger.log(Level.WARNING, "Error during connection pool maintenance", t);
+    }
+  }
+
+  private void reportLeak(Entry entry, long now) {
+
+    StackTraceElement[] borrowStackTrace = entry.borrowStackTrace;
+
+    if (leakDetectionThreshold <= 0 || entry.leakReported || borrowStackTrace == null ||
+        now - entry.borrowedAt < leakDetectionThreshold) {
+      return;
+    }
+
+    entry.leakReported = true;
+    leakCount.increment();
+
+    StringBuilder trace = new StringBuilder();
+    for (StackTraceElement element : borrowStackTrace) {
+      trace.append("  at ").append(element).append('\n');
+    }
+
+    logger.log(Level.WARNING,
+        "Possible connection leak; connection borrowed " + NANOSECONDS.toMillis(now - entry.borrowedAt) + "ms ago\n" +
+        "Borrow occurred @\n" + trace);
+  }
+
+  private void fillIdle() throws SQLException {
+
+    while (!closed && idle.size() < minIdle) {
+
+      Entry entry = tryCreate();
+      if (entry == null) {
+        return;
+      }
+
+      entry.state.set(Entry.RESERVED);
+      entry.borrowedAt = System.nanoTime();
+      release(entry);
+    }
+  }
+
+  /**
+   * Captures a snapshot of the pool's current metrics
+   *
+   * @return Pool metrics
+   */
+  public Metrics metrics() {
+
+    int total = totalConnections.get();
+    int idleCount = 0;
+    int activeCount = 0;
+    for (Entry entry : entries) {
+      switch (entry.state.get()) {
+        case Entry.IDLE:
+          ++idleCount;
+          break;
+        case Entry.IN_USE:
+          ++activeCount;
+          break;
+        default:
+          break;
+      }
+    }
+
+    return new Metrics(total, idleCount, activeCount, waiters.get(),
+        acquireCount.sum(), acquireTimeoutCount.sum(), totalAcquireWaitNanos.sum(), maxAcquireWaitNanos.get(),
+        totalUsageNanos.sum(), leakCount.sum(), createdCount.sum(), closedCount.sum());
+  }
+
+  boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Closes the pool. Idle connections are closed immediately, borrowed
+   * connections are closed when they are returned.
+   */
+  @Override
+  public void close() {
+
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    maintenanceExecutor.shutdownNow();
+
+    for (Entry entry : entries) {
+      if (entry.state.compareAndSet(Entry.IDLE, Entry.RESERVED)) {
+        discard(entry);
+      }
+    }
+
+    idle.clear();
+  }
+
+}
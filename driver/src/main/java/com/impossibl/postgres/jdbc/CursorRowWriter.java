@@ -0,0 +1,347 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.protocol.FieldFormatRef;
+import com.impossibl.postgres.protocol.RequestExecutorHandlers.ExecuteResult;
+import com.impossibl.postgres.protocol.RequestExecutorHandlers.PrepareResult;
+import com.impossibl.postgres.protocol.ResultBatch;
+import com.impossibl.postgres.protocol.ResultField;
+import com.impossibl.postgres.types.Type;
+
+import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLException;
+import static com.impossibl.postgres.system.Empty.EMPTY_BUFFERS;
+import static com.impossibl.postgres.system.Empty.EMPTY_FORMATS;
+import static com.impossibl.postgres.system.Empty.EMPTY_TYPES;
+import static com.impossibl.postgres.utils.ByteBufs.releaseAll;
+import static com.impossibl.postgres.utils.ByteBufs.retainedDuplicateAll;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Writes changes made through an updatable, cursor based, result set
+ * back to the cursor's relation.
+ *
+ * The INSERT, UPDATE &amp; DELETE statements are prepared once, as named
+ * statements, and executed without awaiting their completion. Because
+ * requests are processed in order, queued writes complete before the
+ * cursor's next FETCH/MOVE; allowing the results to be collected after
+ * the cursor movement without an extra round trip. Any error is
+ * reported along with the row that caused it.
+ *
+ * Writes are also flushed when the transaction is completed and when
+ * the result set is closed. Deletes are awaited immediately, as the
+ * cursor's position depends on their outcome.
+ *
+ * Writers are flushed by the connection as well as their result set,
+ * possibly from different threads, so access to the queued writes is
+ * synchronized.
+ */
+final class CursorRowWriter {
+
+  private enum Operation {
+    Insert,
+    Update,
+    Delete,
+  }
+
+  private static class PendingWrite {
+    Operation operation;
+    int row;
+    ExecuteResult result;
+    ByteBuf[] parameterBuffers;
+    long rowsAffected;
+
+    PendingWrite(Operation operation, int row, ExecuteResult result, ByteBuf[] parameterBuffers) {
+      this.operation = operation;
+      this.row = row;
+      this.result = result;
+      this.parameterBuffers = parameterBuffers;
+    }
+
+  }
+
+  private PGDirectConnection connection;
+  private String cursorName;
+  private ResultField[] resultFields;
+  private String[] statementNames = new String[Operation.values().length];
+  private List<PendingWrite> pendingWrites = new ArrayList<>();
+
+  CursorRowWriter(PGDirectConnection connection, String cursorName, ResultField[] resultFields) {
+    this.connection = connection;
+    this.cursorName = cursorName;
+    this.resultFields = resultFields;
+  }
+
+  synchronized boolean hasPendingWrites() {
+    return !pendingWrites.isEmpty();
+  }
+
+  /**
+   * Queues the insertion of a row
+   *
+   * @param fieldBuffers Buffers of the row's fields
+   * @throws SQLException If an error occurs preparing or issuing the write
+   */
+  void insert(ByteBuf[] fieldBuffers) throws SQLException {
+    write(Operation.Insert, 0, resultFields, fieldBuffers);
+  }
+
+  /**
+   * Queues the update of the cursor's current row
+   *
+   * @param row Index of the cursor's current row (negative when relative to the end)
+   * @param fieldBuffers Buffers of the row's fields
+   * @throws SQLException If an error occurs preparing or issuing the write
+   */
+  void update(int row, ByteBuf[] fieldBuffers) throws SQLException {
+    write(Operation.Update, row, resultFields, fieldBuffers);
+  }
+
+  /**
+   * Deletes the cursor's current row, awaiting its completion
+   *
+   * Queued writes are flushed first, so their errors are reported
+   * before the row is deleted.
+   *
+   * @param row Index of the cursor's current row (negative when relative to the end)
+   * @return Number of rows deleted
+   * @throws SQLException If an error is reported by a queued write or the delete
+   */
+  synchronized long delete(int row) throws SQLException {
+    flush();
+    PendingWrite write = write(Operation.Delete, row, EMPTY_FORMATS, EMPTY_BUFFERS);
+    flush();
+    return write.rowsAffected;
+  }
+
+  /**
+   * Collects the results of all queued writes, awaiting any that are
+   * still in flight.
+   *
+   * @throws SQLException The first error produced by a write, with
+   *                      errors of following writes chained to it.
+   */
+  synchronized void flush() throws SQLException {
+
+    if (pendingWrites.isEmpty()) {
+      return;
+    }
+
+    connection.rowWriterFlushed(this);
+
+    SQLException error = null;
+
+    while (!pendingWrites.isEmpty()) {
+      PendingWrite write = pendingWrites.remove(0);
+      try {
+
+        connection.execute(timeout -> {
+          write.result.await(timeout, MILLISECONDS);
+          return null;
+        });
+
+        try (ResultBatch resultBatch = write.result.getBatch()) {
+          if (resultBatch != null && resultBatch.getRowsAffected() != null) {
+            write.rowsAffected = resultBatch.getRowsAffected();
+          }
+        }
+
+      }
+      catch (SQLException e) {
+        SQLException writeError = makeWriteError(write, e);
+        if (error == null) {
+          error = writeError;
+        }
+        else {
+          error.setNextException(writeError);
+        }
+      }
+      finally {
+        releaseAll(write.parameterBuffers);
+      }
+    }
+
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /**
+   * Flushes all queued writes and closes the prepared statements
+   *
+   * @throws SQLException If an error is reported by a queued write
+   */
+  synchronized void close() throws SQLException {
+
+    try {
+      flush();
+    }
+    finally {
+
+      for (int idx = 0; idx < statementNames.length; ++idx) {
+        if (statementNames[idx] != null) {
+          try {
+            connection.closeStatement(statementNames[idx]);
+          }
+          catch (IOException ignored) {
+            // Close errors can be ignored
+          }
+          statementNames[idx] = null;
+        }
+      }
+
+    }
+  }
+
+  private synchronized PendingWrite write(Operation operation, int row, FieldFormatRef[] parameterFormats, ByteBuf[] parameterBuffers) throws SQLException {
+
+    String statementName = prepare(operation);
+
+    ByteBuf[] retainedParameterBuffers = retainedDuplicateAll(parameterBuffers);
+    ExecuteResult result = new ExecuteResult(null);
+    try {
+
+      connection.execute(timeout -> {
+        connection.getRequestExecutor().execute(null, statementName, parameterFormats, retainedParameterBuffers, EMPTY_FORMATS, 0, result);
+        return null;
+      });
+
+    }
+    catch (SQLException e) {
+      releaseAll(retainedParameterBuffers);
+      throw e;
+    }
+
+    PendingWrite write = new PendingWrite(operation, row, result, retainedParameterBuffers);
+    pendingWrites.add(write);
+
+    connection.rowWriterPending(this);
+
+    return write;
+  }
+
+  private String prepare(Operation operation) throws SQLException {
+
+    String statementName = statementNames[operation.ordinal()];
+    if (statementName != null) {
+      return statementName;
+    }
+
+    String sql = buildSQL(operation);
+    String newStatementName = "rw" + connection.getNextStatementName();
+
+    connection.execute(timeout -> {
+      PrepareResult handler = new PrepareResult();
+      connection.getRequestExecutor().prepare(newStatementName, sql, EMPTY_TYPES, handler);
+      handler.await(timeout, MILLISECONDS);
+      return handler;
+    });
+
+    statementNames[operation.ordinal()] = newStatementName;
+
+    return newStatementName;
+  }
+
+  private String buildSQL(Operation operation) throws SQLException {
+
+    Type relType;
+    try {
+      relType = connection.getRegistry().loadRelationType(resultFields[0].getRelationId());
+    }
+    catch (IOException e) {
+      throw makeSQLException(e);
+    }
+
+    StringBuilder sb = new StringBuilder();
+
+    switch (operation) {
+      case Insert:
+        sb.append("INSERT INTO ").append('"').append(relType.getName()).append('"');
+        sb.append(" VALUES (");
+        for (int pid = 0; pid < resultFields.length; ++pid) {
+          if (pid > 0) {
+            sb.append(", ");
+          }
+          sb.append('$').append(pid + 1);
+        }
+        sb.append(")");
+        break;
+
+      case Update:
+        sb.append("UPDATE ").append('"').append(relType.getName()).append('"');
+        sb.append(" SET ");
+        for (int pid = 0; pid < resultFields.length; ++pid) {
+          if (pid > 0) {
+            sb.append(", ");
+          }
+          sb.append('"').append(resultFields[pid].getName()).append('"');
+          sb.append(" = $").append(pid + 1);
+        }
+        sb.append(" WHERE CURRENT OF ").append(cursorName);
+        break;
+
+      case Delete:
+        sb.append("DELETE FROM ").append('"').append(relType.getName()).append('"');
+        sb.append(" WHERE CURRENT OF ").append(cursorName);
+        break;
+
+      default:
+        throw new IllegalStateException();
+    }
+
+    return sb.toString();
+  }
+
+  private static SQLException makeWriteError(PendingWrite write, SQLException cause) {
+
+    String reason;
+    switch (write.operation) {
+      case Insert:
+        reason = "Error inserting row";
+        break;
+      case Update:
+        reason = "Error updating row " + write.row;
+        break;
+      default:
+        reason = "Error deleting row " + write.row;
+        break;
+    }
+
+    return new PGSQLSimpleException(reason + ": " + cause.getMessage(), cause.getSQLState(), cause);
+  }
+
+}
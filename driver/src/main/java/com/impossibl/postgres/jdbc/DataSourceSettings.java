@@ -99,6 +99,81 @@ public class DataSourceSettings {
   )
   public static final Setting<Integer> LOGIN_TIMEOUT = Setting.declare();
 
+  @Setting.Group.Info(
+      id = "jdbc-pool", desc = "JDBC DataSource Connection Pool Settings", order = 4
+  )
+  public static final Setting.Group POOL = Setting.Group.declare();
+
+  @Setting.Info(
+      desc = "Enables the connection pool built into `PGDataSource`.\n\n" +
+          "When enabled, connections requested with the data source's configured credentials are " +
+          "borrowed from, and returned to, a pool of physical connections.",
+      def = "false",
+      name = "pool.enabled",
+      group = "jdbc-pool",
+      alternateNames = {"poolEnabled"}
+  )
+  public static final Setting<Boolean> POOL_ENABLED = Setting.declare();
+
+  @Setting.Info(
+      desc = "Maximum number of physical connections maintained by the pool.",
+      def = "10", min = 1,
+      name = "pool.max-size",
+      group = "jdbc-pool",
+      alternateNames = {"poolMaxSize"}
+  )
+  public static final Setting<Integer> POOL_MAX_SIZE = Setting.declare();
+
+  @Setting.Info(
+      desc = "Minimum number of idle connections the pool attempts to maintain.",
+      def = "0", min = 0,
+      name = "pool.min-idle",
+      group = "jdbc-pool",
+      alternateNames = {"poolMinIdle"}
+  )
+  public static final Setting<Integer> POOL_MIN_IDLE = Setting.declare();
+
+  @Setting.Info(
+      desc = "Maximum time (in milliseconds) to wait for a pooled connection to become available.\n\n" +
+          "A value of zero waits indefinitely.",
+      def = "30000", min = 0,
+      name = "pool.acquire.timeout",
+      group = "jdbc-pool",
+      alternateNames = {"poolAcquireTimeout"}
+  )
+  public static final Setting<Integer> POOL_ACQUIRE_TIMEOUT = Setting.declare();
+
+  @Setting.Info(
+      desc = "Time (in milliseconds) a connection may sit idle in the pool before it is closed.\n\n" +
+          "A value of zero disables idle eviction.",
+      def = "600000", min = 0,
+      name = "pool.idle.timeout",
+      group = "jdbc-pool",
+      alternateNames = {"poolIdleTimeout"}
+  )
+  public static final Setting<Integer> POOL_IDLE_TIMEOUT = Setting.declare();
+
+  @Setting.Info(
+      desc = "Maximum lifetime (in milliseconds) of a pooled connection; connections are retired " +
+          "when returned after this time has elapsed.\n\n" +
+          "A value of zero disables the limit.",
+      def = "1800000", min = 0,
+      name = "pool.max-lifetime",
+      group = "jdbc-pool",
+      alternateNames = {"poolMaxLifetime"}
+  )
+  public static final Setting<Integer> POOL_MAX_LIFETIME = Setting.declare();
+
+  @Setting.Info(
+      desc = "Time (in milliseconds) a connection may be borrowed before it is reported as a possible leak.\n\n" +
+          "A value of zero disables leak detection.",
+      def = "0", min = 0,
+      name = "pool.leak-detection.threshold",
+      group = "jdbc-pool",
+      alternateNames = {"poolLeakDetectionThreshold"}
+  )
+  public static final Setting<Integer> POOL_LEAK_DETECTION_THRESHOLD = Setting.declare();
+
   static {
     DataSourceSettingsInit.init();
   }
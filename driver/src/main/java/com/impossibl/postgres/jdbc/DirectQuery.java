@@ -41,12 +41,17 @@ import com.impossibl.postgres.protocol.RequestExecutorHandlers.AnyQueryResult;
 import com.impossibl.postgres.protocol.RequestExecutorHandlers.CompositeQueryResults;
 import com.impossibl.postgres.protocol.RequestExecutorHandlers.ExecuteResult;
 import com.impossibl.postgres.protocol.RequestExecutorHandlers.QueryResult;
+import com.impossibl.postgres.protocol.RequestExecutorHandlers.StreamedResults;
 import com.impossibl.postgres.protocol.ResultBatch;
 import com.impossibl.postgres.protocol.ResultField;
+import com.impossibl.postgres.protocol.TransactionStatus;
 
 import static com.impossibl.postgres.jdbc.ErrorUtils.chainWarnings;
 import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLException;
+import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLWarningChain;
+import static com.impossibl.postgres.protocol.FieldFormats.REQUEST_ALL_BINARY;
 import static com.impossibl.postgres.protocol.ResultBatches.transformFieldTypes;
+import static com.impossibl.postgres.system.Empty.EMPTY_TYPES;
 import static com.impossibl.postgres.utils.Nulls.firstNonNull;
 
 import java.io.IOException;
@@ -63,6 +68,11 @@ import io.netty.buffer.ByteBuf;
 
 public class DirectQuery implements Query {
 
+  /**
+   * SQL state reported when a result field's type has no binary output function
+   */
+  private static final String NO_BINARY_OUTPUT_STATE = "42883";
+
   private String sql;
   private FieldFormatRef[] parameterFormats;
   private ByteBuf[] parameterBuffers;
@@ -73,6 +83,9 @@ public class DirectQuery implements Query {
   private int maxRows;
   private List<ResultBatch> resultBatches;
   private ResultField[] suspendedResultFields;
+  private boolean negotiateResultFormats;
+  private boolean streamResults;
+  private StreamedResults streamedResults;
 
   DirectQuery(String sql, FieldFormatRef[] parameterFormats, ByteBuf[] parameterBuffers, FieldFormatRef[] resultFieldFormats) {
     this.sql = sql;
@@ -108,6 +121,31 @@ public class DirectQuery implements Query {
     return resultBatches;
   }
 
+  /**
+   * Enables negotiation of binary result formats. The SQL must be
+   * a single statement.
+   *
+   * Once the results of the SQL have been described (by a previous
+   * execution or preparation), and when all result fields can be
+   * decoded from binary, an unnamed extended query requesting binary
+   * results is used in place of the (text only) simple query.
+   */
+  void enableResultFormatNegotiation() {
+    this.negotiateResultFormats = true;
+  }
+
+  /**
+   * Enables streaming of results. The SQL can contain multiple
+   * statements.
+   *
+   * Only the first result is available after execution; each
+   * following result is taken, as it arrives, via
+   * {@link #fetchNextResult(PGDirectConnection)}.
+   */
+  void enableResultStreaming() {
+    this.streamResults = true;
+  }
+
   private boolean requiresPortal() {
     return maxRows > 0;
   }
@@ -139,9 +177,134 @@ public class DirectQuery implements Query {
       throw makeSQLException(e);
     }
 
+    // Remember the description to negotiate formats next time (copied, as the batch's fields are handed out)
+    if (negotiateResultFormats && resultBatches.size() == 1 && !connection.isReplication()) {
+      ResultField[] fields = resultBatches.get(0).getFields();
+      if (fields != null && fields.length != 0) {
+        connection.cacheStatementDescription(new StatementCacheKey(sql, EMPTY_TYPES), new StatementDescription(EMPTY_TYPES, copyFields(fields)));
+      }
+    }
+
     return chainWarnings(null, results);
   }
 
+  private static ResultField[] copyFields(ResultField[] fields) {
+    ResultField[] copies = new ResultField[fields.length];
+    for (int c = 0; c < fields.length; ++c) {
+      ResultField field = fields[c];
+      copies[c] = new ResultField(field.getName(), field.getRelationId(), field.getRelationAttributeNumber(), field.getTypeRef(),
+          field.getTypeLength(), field.getTypeModifier(), field.getFormat());
+    }
+    return copies;
+  }
+
+  /**
+   * Executes the SQL as an extended query requesting binary results, based on
+   * a cached description of its results.
+   *
+   * The description may be stale (e.g. after DDL or a change of
+   * {@code search_path}) and include types that cannot be sent in binary.
+   * When the server rejects the binary format the description is dropped and,
+   * if the failure was isolated to an implicit transaction, the SQL is
+   * re-executed as a simple query.
+   */
+  private SQLWarning executeNegotiated(PGDirectConnection connection, String sql) throws SQLException {
+
+    boolean implicitTransaction = connection.getAutoCommit() && connection.getTransactionStatus() == TransactionStatus.Idle;
+
+    FieldFormatRef[] previousResultFieldFormats = resultFieldFormats;
+    resultFieldFormats = REQUEST_ALL_BINARY;
+    try {
+      return executeExtended(connection, sql);
+    }
+    catch (SQLException e) {
+
+      if (!NO_BINARY_OUTPUT_STATE.equals(e.getSQLState())) {
+        throw e;
+      }
+
+      connection.uncacheStatementDescription(new StatementCacheKey(sql, EMPTY_TYPES));
+
+      if (!implicitTransaction) {
+        throw e;
+      }
+
+      return executeSimple(connection, sql);
+    }
+    finally {
+      resultFieldFormats = previousResultFieldFormats;
+    }
+  }
+
+  private SQLWarning executeStreamed(PGDirectConnection connection, String sql) throws SQLException {
+
+    portalName = null;
+
+    StreamedResults results = connection.executeTimed(this.timeout, (timeout) -> {
+      StreamedResults handler = connection.createStreamedResults(null);
+      connection.getRequestExecutor().query(sql, handler);
+      return handler;
+    });
+
+    streamedResults = results;
+
+    resultBatches = new ArrayList<>();
+
+    ResultBatch resultBatch = fetchNextResult(connection);
+    if (resultBatch != null) {
+      resultBatches.add(resultBatch);
+    }
+
+    return makeSQLWarningChain(results.getNotices());
+  }
+
+  @Override
+  public ResultBatch fetchNextResult(PGDirectConnection connection) throws SQLException {
+
+    StreamedResults results = streamedResults;
+    if (results == null) {
+      return null;
+    }
+
+    ResultBatch resultBatch;
+    try {
+      resultBatch = connection.executeTimed(this.timeout, (timeout) -> results.next(timeout, MILLISECONDS));
+    }
+    catch (SQLException e) {
+      streamedResults = null;
+      throw e;
+    }
+
+    if (resultBatch == null) {
+      streamedResults = null;
+      return null;
+    }
+
+    // Cache referenced types...
+    try {
+      transformFieldTypes(resultBatch, connection.getRegistry()::resolve);
+    }
+    catch (IOException e) {
+      resultBatch.release();
+      throw makeSQLException(e);
+    }
+
+    return resultBatch;
+  }
+
+  @Override
+  public void discardResults(PGDirectConnection connection) throws SQLException {
+
+    StreamedResults results = streamedResults;
+    if (results == null) {
+      return;
+    }
+
+    streamedResults = null;
+
+    connection.execute((long timeout) -> results.discard(timeout, MILLISECONDS));
+  }
+
   private SQLWarning executeExtended(PGDirectConnection connection, String sql) throws SQLException {
 
     if (requiresPortal()) {
@@ -222,9 +385,16 @@ public class DirectQuery implements Query {
       }
 
 
-      if (requiresPortal() || hasParameters()) {
+      if (streamResults) {
+        // Multiple statements cannot use portals, results are streamed instead
+        return executeStreamed(connection, sql);
+      }
+      else if (requiresPortal() || hasParameters()) {
         return executeExtended(connection, sql);
       }
+      else if (negotiateResultFormats && isBinaryResultsAvailable(connection)) {
+        return executeNegotiated(connection, sql);
+      }
       else {
         return executeSimple(connection, sql);
       }
@@ -237,9 +407,31 @@ public class DirectQuery implements Query {
     }
   }
 
+  private boolean isBinaryResultsAvailable(PGDirectConnection connection) throws SQLException {
+
+    // Replication connections (walsender) only support the simple query protocol
+    if (connection.isReplication() || !connection.isBinaryResultFormatPreferred()) {
+      return false;
+    }
+
+    StatementDescription description = connection.findCachedStatementDescription(new StatementCacheKey(sql, EMPTY_TYPES));
+    if (description == null || description.resultFields.length == 0) {
+      return false;
+    }
+
+    try {
+      return description.isBinaryResultsSupported(connection.getRegistry());
+    }
+    catch (IOException e) {
+      throw makeSQLException(e);
+    }
+  }
+
   @Override
   public void dispose(PGDirectConnection connection) throws SQLException {
 
+    discardResults(connection);
+
     if (portalName != null) {
       connection.execute((timeout) -> {
         RequestExecutorHandlers.SynchronizedResult finish = new RequestExecutorHandlers.SynchronizedResult();
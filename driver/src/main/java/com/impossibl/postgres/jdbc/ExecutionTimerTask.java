@@ -35,7 +35,9 @@
  */
 package com.impossibl.postgres.jdbc;
 
+import static com.impossibl.postgres.utils.Await.awaitUninterruptibly;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
 
 
@@ -49,6 +51,7 @@ abstract class ExecutionTimerTask implements Runnable {
   }
 
   private final AtomicReference<State> state = new AtomicReference<>(State.NotStarted);
+  private final CountDownLatch completed = new CountDownLatch(1);
   private Thread thread;
 
   protected abstract void go();
@@ -71,9 +74,7 @@ abstract class ExecutionTimerTask implements Runnable {
     }
     finally {
       state.set(State.Completed);
-      synchronized (state) {
-        state.notify();
-      }
+      completed.countDown();
     }
 
   }
@@ -84,17 +85,7 @@ abstract class ExecutionTimerTask implements Runnable {
 
       thread.interrupt();
 
-      synchronized (state) {
-
-        while (state.get() == State.Cancelling) {
-          try {
-            state.wait();
-          }
-          catch (InterruptedException e) {
-            // Ignore
-          }
-        }
-      }
+      awaitUninterruptibly(completed::await);
 
     }
 
@@ -28,6 +28,7 @@
  */
 package com.impossibl.postgres.jdbc;
 
+import java.util.Map;
 
 
 
@@ -89,4 +90,16 @@ public interface Housekeeper {
    */
   void setLogLeakedReferences(boolean value);
 
+  /**
+   * Number of leaked references cleaned up, by kind
+   *
+   * @return Map of reference kind (e.g. "statement") to count
+   */
+  Map<String, Long> getLeakedReferenceCounts();
+
+  /**
+   * Number of references currently being tracked
+   */
+  int getTrackedReferenceCount();
+
 }
@@ -75,6 +75,15 @@ public class JDBCSettings {
   )
   public static final Setting<Integer> PREPARED_STATEMENT_CACHE_THRESHOLD = Setting.declare();
 
+  @Setting.Info(
+      desc = "# of times the SQL of a simple (non-prepared) statement is executed before it is promoted to a cached prepared statement.\n\nA value of zero disables promotion.",
+      def = "5", min = 0,
+      name = "prepared-statement.cache.simple-threshold",
+      group = "jdbc",
+      alternateNames = "preparedStatementCacheSimpleThreshold"
+  )
+  public static final Setting<Integer> PREPARED_STATEMENT_CACHE_SIMPLE_THRESHOLD = Setting.declare();
+
   @Setting.Info(
       desc = "Size of the query description cache.\n\nA value of zero disables the cache.",
       def = "250", min = 0,
@@ -84,6 +93,63 @@ public class JDBCSettings {
   )
   public static final Setting<Integer> DESCRIPTION_CACHE_SIZE = Setting.declare();
 
+  @Setting.Info(
+      desc = "Interval (in milliseconds) during which cached relation metadata is trusted without revalidation.\n\n" +
+          "Once the interval has elapsed the cached metadata is checked against the server's catalog before it is used. " +
+          "A value of zero revalidates the metadata every time it is requested.",
+      def = "0", min = 0,
+      name = "metadata.relation-cache.validation-interval",
+      group = "jdbc",
+      alternateNames = "relationMetadataValidationInterval"
+  )
+  public static final Setting<Integer> RELATION_METADATA_VALIDATION_INTERVAL = Setting.declare();
+
+  @Setting.Info(
+      desc = "Enables or disables the catalog cache used by <code>DatabaseMetaData</code>.\n\n" +
+          "When enabled, table, column, key &amp; index metadata is loaded in bulk (per schema) and subsequent " +
+          "requests are answered from memory until a change to the catalog is detected.",
+      def = "false",
+      name = "metadata.catalog-cache.enabled",
+      group = "jdbc",
+      alternateNames = "catalogCacheEnabled"
+  )
+  public static final Setting<Boolean> CATALOG_CACHE_ENABLED = Setting.declare();
+
+  @Setting.Info(
+      desc = "Interval (in milliseconds) during which the catalog cache is trusted without checking the server's " +
+          "catalog for changes.\n\n" +
+          "Catalog changes made through the driver invalidate the cache immediately. " +
+          "A value of zero checks the catalog every time the cache is used.",
+      def = "1000", min = 0,
+      name = "metadata.catalog-cache.validation-interval",
+      group = "jdbc",
+      alternateNames = "catalogCacheValidationInterval"
+  )
+  public static final Setting<Integer> CATALOG_CACHE_VALIDATION_INTERVAL = Setting.declare();
+
+  @Setting.Info(
+      desc = "Enables or disables streaming of multiple results.\n\n" +
+          "When enabled, the results of SQL text containing multiple statements are handed out, one at a time, " +
+          "through <code>getResultSet()</code> &amp; <code>getMoreResults()</code> as they arrive; rather than " +
+          "collecting every result before execution completes. Prepared statements containing multiple statements " +
+          "are executed as a pipeline of individually prepared statements, with a single synchronization.",
+      def = "false",
+      name = "multi-result.streaming",
+      group = "jdbc",
+      alternateNames = "multiResultStreaming"
+  )
+  public static final Setting<Boolean> MULTI_RESULT_STREAMING = Setting.declare();
+
+  @Setting.Info(
+      desc = "Interval, in milliseconds, between standby status updates sent by replication streams.\n\n" +
+          "Positions acknowledged by the client are reported to the server with the next update.",
+      def = "10000", min = 1,
+      name = "replication.status-interval",
+      group = "jdbc",
+      alternateNames = "replicationStatusInterval"
+  )
+  public static final Setting<Integer> REPLICATION_STATUS_INTERVAL = Setting.declare();
+
   @Setting.Info(
       desc = "Default timeout for network communication.\n\nValue can be changed at runtime through API.\n\nValue of zero disables the timeout.",
       def = "0", min = 0,
@@ -95,14 +95,13 @@ public class PGCallableStatement extends PGPreparedStatement implements Callable
   private ResultField[] outParameterFields;
   private RowData outParameterData;
   private Boolean nullFlag;
+  private TypeMapContext typeMapContext;
 
   private static final Map<Integer, Pattern> PARAM_REPLACE_REGEXES = new ConcurrentHashMap<>();
   private static final Pattern CLEANUP_LEADING_COMMAS_REGEX = Pattern.compile("\\(\\s*,+");
   private static final Pattern CLEANUP_MIDDLE_COMMAS_REGEX = Pattern.compile(",\\s*,");
   private static final Pattern CLEANUP_TAILING_COMMAS_REGEX = Pattern.compile(",+\\s*\\)");
 
-  private static final ThreadLocal<TypeMapContext> TYPE_MAP_CONTEXTS = ThreadLocal.withInitial(TypeMapContext::new);
-
   PGCallableStatement(PGDirectConnection connection, int type, int concurrency, int holdability, String sqlText, int parameterCount, String cursorName, boolean hasAssign) throws SQLException {
     super(connection, type, concurrency, holdability, sqlText, 0, cursorName);
 
@@ -621,8 +620,10 @@ public class PGCallableStatement extends PGPreparedStatement implements Callable
   public Object getObject(int parameterIndex, Map<String, Class<?>> map) throws SQLException {
     checkClosed();
 
-    TypeMapContext context = TYPE_MAP_CONTEXTS.get();
-    context.reset(this.connection, map);
+    TypeMapContext context = typeMapContext;
+    if (context == null || context.getCustomTypeMap() != map) {
+      context = typeMapContext = new TypeMapContext(connection, map);
+    }
 
     return getObj(parameterIndex, context, null, null);
   }
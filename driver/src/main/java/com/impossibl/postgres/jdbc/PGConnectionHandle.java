@@ -0,0 +1,590 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.api.jdbc.PGAnyType;
+import com.impossibl.postgres.api.jdbc.PGConnection;
+import com.impossibl.postgres.api.jdbc.PGCopyRowReader;
+import com.impossibl.postgres.api.jdbc.PGCopyRowWriter;
+import com.impossibl.postgres.api.jdbc.PGMetricsListener;
+import com.impossibl.postgres.api.jdbc.PGNotificationListener;
+import com.impossibl.postgres.api.jdbc.PGReplicationStream;
+import com.impossibl.postgres.api.jdbc.PGRowPublisher;
+
+import static com.impossibl.postgres.jdbc.Exceptions.UNWRAP_ERROR;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLType;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Collections.emptyMap;
+
+/**
+ * Connection handle given to a borrower of a {@link ConnectionPool} for a
+ * single checkout of a pooled connection.
+ *
+ * The handle delegates directly to the pooled connection until it is closed
+ * or the connection is returned; afterwards it behaves as a closed
+ * connection. Statements, result sets and metadata created through the
+ * handle report the handle, not the pooled connection, as their connection.
+ */
+final class PGConnectionHandle implements PGConnection {
+
+  private final ConnectionPool.Entry entry;
+  private final PGDirectConnection connection;
+  private final long checkout;
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  PGConnectionHandle(ConnectionPool.Entry entry) {
+    this.entry = entry;
+    this.connection = entry.connection;
+    this.checkout = entry.checkout;
+  }
+
+  private boolean isCheckedOut() {
+    return !closed.get() && entry.checkout == checkout && entry.isInUse();
+  }
+
+  private void checkCheckedOut() throws SQLException {
+    if (!isCheckedOut()) {
+      throw new SQLException("connection closed", "08003");
+    }
+  }
+
+  private void checkCheckedOutState() {
+    if (!isCheckedOut()) {
+      throw new IllegalStateException("connection closed");
+    }
+  }
+
+  private static <T> CompletableFuture<T> closedFuture() {
+    CompletableFuture<T> failed = new CompletableFuture<>();
+    failed.completeExceptionally(new SQLException("connection closed", "08003"));
+    return failed;
+  }
+
+  @Override
+  public void close() {
+    if (closed.compareAndSet(false, true) && entry.checkout == checkout) {
+      connection.close();
+    }
+  }
+
+  @Override
+  public boolean isClosed() {
+    return !isCheckedOut() || connection.isClosed();
+  }
+
+  @Override
+  public boolean isValid(int timeout) throws SQLException {
+    if (!isCheckedOut()) {
+      return false;
+    }
+    return connection.isValid(timeout);
+  }
+
+  @Override
+  public void abort(Executor executor) {
+    if (!isCheckedOut()) {
+      return;
+    }
+    connection.abort(executor);
+  }
+
+  @Override
+  public boolean isServerMinimumVersion(int major, int minor) {
+    return connection.isServerMinimumVersion(major, minor);
+  }
+
+  @Override
+  public void addNotificationListener(String name, String channelNameFilter, PGNotificationListener listener) {
+    checkCheckedOutState();
+    connection.addNotificationListener(name, channelNameFilter, listener);
+  }
+
+  @Override
+  public void addNotificationListener(String channelNameFilter, PGNotificationListener listener) {
+    checkCheckedOutState();
+    connection.addNotificationListener(channelNameFilter, listener);
+  }
+
+  @Override
+  public void addNotificationListener(PGNotificationListener listener) {
+    checkCheckedOutState();
+    connection.addNotificationListener(listener);
+  }
+
+  @Override
+  public void removeNotificationListener(String name) {
+    checkCheckedOutState();
+    connection.removeNotificationListener(name);
+  }
+
+  @Override
+  public void removeNotificationListener(PGNotificationListener listener) {
+    checkCheckedOutState();
+    connection.removeNotificationListener(listener);
+  }
+
+  @Override
+  public void setStrictMode(boolean v) {
+    checkCheckedOutState();
+    connection.setStrictMode(v);
+  }
+
+  @Override
+  public boolean isStrictMode() {
+    checkCheckedOutState();
+    return connection.isStrictMode();
+  }
+
+  @Override
+  public void setDefaultFetchSize(Integer v) {
+    checkCheckedOutState();
+    connection.setDefaultFetchSize(v);
+  }
+
+  @Override
+  public Integer getDefaultFetchSize() {
+    checkCheckedOutState();
+    return connection.getDefaultFetchSize();
+  }
+
+  @Override
+  public PGAnyType resolveType(String name) throws SQLException {
+    checkCheckedOut();
+    return connection.resolveType(name);
+  }
+
+  @Override
+  public void copyFrom(String sql, InputStream inputStream) throws SQLException {
+    checkCheckedOut();
+    connection.copyFrom(sql, inputStream);
+  }
+
+  @Override
+  public void copyTo(String sql, OutputStream outputStream) throws SQLException {
+    checkCheckedOut();
+    connection.copyTo(sql, outputStream);
+  }
+
+  @Override
+  public PGCopyRowWriter copyRowWriter(String sql, SQLType... columnTypes) throws SQLException {
+    checkCheckedOut();
+    return connection.copyRowWriter(sql, columnTypes);
+  }
+
+  @Override
+  public PGCopyRowReader copyRowReader(String sql, SQLType... columnTypes) throws SQLException {
+    checkCheckedOut();
+    return connection.copyRowReader(sql, columnTypes);
+  }
+
+  @Override
+  public PGReplicationStream startLogicalReplication(String slotName, long startLsn, Map<String, String> options) throws SQLException {
+    checkCheckedOut();
+    return connection.startLogicalReplication(slotName, startLsn, options);
+  }
+
+  @Override
+  public CompletableFuture<ResultSet> executeQueryAsync(String sql) {
+    if (!isCheckedOut()) {
+      return closedFuture();
+    }
+    return connection.executeQueryAsync(sql);
+  }
+
+  @Override
+  public CompletableFuture<Long> executeUpdateAsync(String sql) {
+    if (!isCheckedOut()) {
+      return closedFuture();
+    }
+    return connection.executeUpdateAsync(sql);
+  }
+
+  @Override
+  public PGRowPublisher streamQuery(String sql) {
+    if (!isCheckedOut()) {
+      return PGRowStream.failed(new SQLException("connection closed", "08003"));
+    }
+    return connection.streamQuery(sql);
+  }
+
+  @Override
+  public PGRowPublisher streamQuery(String sql, Executor executor) {
+    if (!isCheckedOut()) {
+      return PGRowStream.failed(new SQLException("connection closed", "08003"));
+    }
+    return connection.streamQuery(sql, executor);
+  }
+
+  @Override
+  public void addMetricsListener(PGMetricsListener listener) throws SQLException {
+    checkCheckedOut();
+    connection.addMetricsListener(listener);
+  }
+
+  @Override
+  public void removeMetricsListener(PGMetricsListener listener) {
+    checkCheckedOutState();
+    connection.removeMetricsListener(listener);
+  }
+
+  @Override
+  public Statement createStatement() throws SQLException {
+    checkCheckedOut();
+    return connection.createStatement();
+  }
+
+  @Override
+  public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+    checkCheckedOut();
+    return connection.createStatement(resultSetType, resultSetConcurrency);
+  }
+
+  @Override
+  public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    checkCheckedOut();
+    return connection.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql) throws SQLException {
+    checkCheckedOut();
+    return connection.prepareStatement(sql);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+    checkCheckedOut();
+    return connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    checkCheckedOut();
+    return connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+    checkCheckedOut();
+    return connection.prepareStatement(sql, autoGeneratedKeys);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+    checkCheckedOut();
+    return connection.prepareStatement(sql, columnIndexes);
+  }
+
+  @Override
+  public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+    checkCheckedOut();
+    return connection.prepareStatement(sql, columnNames);
+  }
+
+  @Override
+  public CallableStatement prepareCall(String sql) throws SQLException {
+    checkCheckedOut();
+    return connection.prepareCall(sql);
+  }
+
+  @Override
+  public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+    checkCheckedOut();
+    return connection.prepareCall(sql, resultSetType, resultSetConcurrency);
+  }
+
+  @Override
+  public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+    checkCheckedOut();
+    return connection.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+  }
+
+  @Override
+  public String nativeSQL(String sql) throws SQLException {
+    checkCheckedOut();
+    return connection.nativeSQL(sql);
+  }
+
+  @Override
+  public void setAutoCommit(boolean autoCommit) throws SQLException {
+    checkCheckedOut();
+    connection.setAutoCommit(autoCommit);
+  }
+
+  @Override
+  public boolean getAutoCommit() throws SQLException {
+    checkCheckedOut();
+    return connection.getAutoCommit();
+  }
+
+  @Override
+  public void commit() throws SQLException {
+    checkCheckedOut();
+    connection.commit();
+  }
+
+  @Override
+  public void rollback() throws SQLException {
+    checkCheckedOut();
+    connection.rollback();
+  }
+
+  @Override
+  public DatabaseMetaData getMetaData() throws SQLException {
+    checkCheckedOut();
+    return connection.getMetaData();
+  }
+
+  @Override
+  public void setReadOnly(boolean readOnly) throws SQLException {
+    checkCheckedOut();
+    connection.setReadOnly(readOnly);
+  }
+
+  @Override
+  public boolean isReadOnly() throws SQLException {
+    checkCheckedOut();
+    return connection.isReadOnly();
+  }
+
+  @Override
+  public void setCatalog(String catalog) throws SQLException {
+    checkCheckedOut();
+    connection.setCatalog(catalog);
+  }
+
+  @Override
+  public String getCatalog() throws SQLException {
+    checkCheckedOut();
+    return connection.getCatalog();
+  }
+
+  @Override
+  public void setTransactionIsolation(int level) throws SQLException {
+    checkCheckedOut();
+    connection.setTransactionIsolation(level);
+  }
+
+  @Override
+  public int getTransactionIsolation() throws SQLException {
+    checkCheckedOut();
+    return connection.getTransactionIsolation();
+  }
+
+  @Override
+  public SQLWarning getWarnings() throws SQLException {
+    checkCheckedOut();
+    return connection.getWarnings();
+  }
+
+  @Override
+  public void clearWarnings() throws SQLException {
+    checkCheckedOut();
+    connection.clearWarnings();
+  }
+
+  @Override
+  public Map<String, Class<?>> getTypeMap() throws SQLException {
+    checkCheckedOut();
+    return connection.getTypeMap();
+  }
+
+  @Override
+  public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+    checkCheckedOut();
+    connection.setTypeMap(map);
+  }
+
+  @Override
+  public void setHoldability(int holdability) throws SQLException {
+    checkCheckedOut();
+    connection.setHoldability(holdability);
+  }
+
+  @Override
+  public int getHoldability() throws SQLException {
+    checkCheckedOut();
+    return connection.getHoldability();
+  }
+
+  @Override
+  public Savepoint setSavepoint() throws SQLException {
+    checkCheckedOut();
+    return connection.setSavepoint();
+  }
+
+  @Override
+  public Savepoint setSavepoint(String name) throws SQLException {
+    checkCheckedOut();
+    return connection.setSavepoint(name);
+  }
+
+  @Override
+  public void rollback(Savepoint savepoint) throws SQLException {
+    checkCheckedOut();
+    connection.rollback(savepoint);
+  }
+
+  @Override
+  public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+    checkCheckedOut();
+    connection.releaseSavepoint(savepoint);
+  }
+
+  @Override
+  public Clob createClob() throws SQLException {
+    checkCheckedOut();
+    return connection.createClob();
+  }
+
+  @Override
+  public Blob createBlob() throws SQLException {
+    checkCheckedOut();
+    return connection.createBlob();
+  }
+
+  @Override
+  public NClob createNClob() throws SQLException {
+    checkCheckedOut();
+    return connection.createNClob();
+  }
+
+  @Override
+  public SQLXML createSQLXML() throws SQLException {
+    checkCheckedOut();
+    return connection.createSQLXML();
+  }
+
+  @Override
+  public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+    checkCheckedOut();
+    return connection.createArrayOf(typeName, elements);
+  }
+
+  @Override
+  public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+    checkCheckedOut();
+    return connection.createStruct(typeName, attributes);
+  }
+
+  @Override
+  public void setClientInfo(String name, String value) throws SQLClientInfoException {
+    if (!isCheckedOut()) {
+      throw new SQLClientInfoException("connection closed", "08003", emptyMap());
+    }
+    connection.setClientInfo(name, value);
+  }
+
+  @Override
+  public void setClientInfo(Properties properties) throws SQLClientInfoException {
+    if (!isCheckedOut()) {
+      throw new SQLClientInfoException("connection closed", "08003", emptyMap());
+    }
+    connection.setClientInfo(properties);
+  }
+
+  @Override
+  public String getClientInfo(String name) throws SQLException {
+    checkCheckedOut();
+    return connection.getClientInfo(name);
+  }
+
+  @Override
+  public Properties getClientInfo() throws SQLException {
+    checkCheckedOut();
+    return connection.getClientInfo();
+  }
+
+  @Override
+  public void setSchema(String schema) throws SQLException {
+    checkCheckedOut();
+    connection.setSchema(schema);
+  }
+
+  @Override
+  public String getSchema() throws SQLException {
+    checkCheckedOut();
+    return connection.getSchema();
+  }
+
+  @Override
+  public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+    checkCheckedOut();
+    connection.setNetworkTimeout(executor, milliseconds);
+  }
+
+  @Override
+  public int getNetworkTimeout() throws SQLException {
+    checkCheckedOut();
+    return connection.getNetworkTimeout();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    if (!iface.isInstance(this)) {
+      throw UNWRAP_ERROR;
+    }
+
+    return iface.cast(this);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) {
+    return iface.isInstance(this);
+  }
+
+  @Override
+  public String toString() {
+    return "Pooled" + connection;
+  }
+
+}
@@ -0,0 +1,381 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.protocol.CopyFormat;
+import com.impossibl.postgres.protocol.RequestExecutorHandlers.StreamedCopyData;
+import com.impossibl.postgres.system.Context;
+import com.impossibl.postgres.types.Type;
+import com.impossibl.postgres.utils.BlockingReadTimeoutException;
+
+import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLException;
+import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLWarningChain;
+import static com.impossibl.postgres.jdbc.Exceptions.CLOSED_RESULT_SET;
+import static com.impossibl.postgres.jdbc.Exceptions.COLUMN_INDEX_OUT_OF_BOUNDS;
+import static com.impossibl.postgres.jdbc.Exceptions.ROW_INDEX_OUT_OF_BOUNDS;
+import static com.impossibl.postgres.jdbc.PGCopyRowWriter.SIGNATURE;
+import static com.impossibl.postgres.protocol.TransactionStatus.Idle;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import static java.lang.Math.max;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+
+/**
+ * Binary <code>COPY ... TO STDOUT</code> row reader.
+ *
+ * Received <code>CopyData</code> buffers are parsed in place; each
+ * row's field offsets are located within the buffer and values are
+ * decoded only when accessed. Rows spanning multiple messages are
+ * handled by accumulating the messages into a composite buffer.
+ *
+ * Closing the reader before the copy completes cancels the copy,
+ * rather than reading its remaining data, when it executes in its
+ * own implicit transaction. Within an explicit transaction the
+ * cancellation would abort the transaction, so the remaining data is
+ * received and discarded instead.
+ */
+class PGCopyRowReader implements com.impossibl.postgres.api.jdbc.PGCopyRowReader {
+
+  private static final int HEADER_LENGTH = SIGNATURE.length + 8;
+
+  private PGDirectConnection connection;
+  private Context context;
+  private Type[] types;
+  private Type.Codec.Decoder<ByteBuf>[] decoders;
+  private StreamedCopyData data;
+  private ByteBuf pending;
+  private int[] fieldOffsets;
+  private boolean headerRead;
+  private boolean onRow;
+  private boolean trailerRead;
+  private boolean completed;
+  private boolean closed;
+
+  @SuppressWarnings("unchecked")
+  private PGCopyRowReader(PGDirectConnection connection, Type[] types) {
+    this.connection = connection;
+    this.context = connection;
+    this.types = types;
+    this.decoders = new Type.Codec.Decoder[types.length];
+    for (int idx = 0; idx < types.length; ++idx) {
+      decoders[idx] = types[idx].getBinaryCodec().getDecoder();
+    }
+    this.fieldOffsets = new int[types.length];
+    this.data = connection.createStreamedCopyData();
+  }
+
+  /**
+   * Starts the copy, waiting for its first data
+   *
+   * @param connection Connection to copy on
+   * @param sql SQL text of the copy command
+   * @param types Type of each column
+   * @return Reader positioned before the first row
+   * @throws SQLException If the copy could not be started
+   */
+  static PGCopyRowReader start(PGDirectConnection connection, String sql, Type[] types) throws SQLException {
+
+    PGCopyRowReader reader = new PGCopyRowReader(connection, types);
+
+    connection.execute((long timeout) -> connection.getRequestExecutor().copyOut(sql, reader.data));
+
+    if (reader.receive() && reader.data.getFormat() != CopyFormat.Binary) {
+      reader.close();
+      throw new PGSQLSimpleException("COPY command must use binary format");
+    }
+
+    return reader;
+  }
+
+  private void checkClosed() throws SQLException {
+    if (closed) {
+      throw CLOSED_RESULT_SET;
+    }
+  }
+
+  private void checkRow() throws SQLException {
+    if (!onRow) {
+      throw ROW_INDEX_OUT_OF_BOUNDS;
+    }
+  }
+
+  private void checkColumnIndex(int columnIndex) throws SQLException {
+    if (columnIndex < 1 || columnIndex > types.length) {
+      throw COLUMN_INDEX_OUT_OF_BOUNDS;
+    }
+  }
+
+  @Override
+  public int getColumnCount() {
+    return types.length;
+  }
+
+  @Override
+  public boolean next() throws SQLException {
+    checkClosed();
+
+    onRow = false;
+
+    while (!trailerRead) {
+
+      if (parseRow()) {
+        return onRow = true;
+      }
+
+      if (!trailerRead && !receive()) {
+        if (pending != null && pending.isReadable()) {
+          throw new PGSQLSimpleException("Unexpected end of COPY data");
+        }
+        return false;
+      }
+    }
+
+    // Consume the remainder of the copy to report its completion (or failure)
+    while (receive()) {
+      pending.skipBytes(pending.readableBytes());
+    }
+
+    return false;
+  }
+
+  /**
+   * Receives the next data buffer, appending it to the pending data
+   *
+   * @return <code>true</code> if data was received, <code>false</code>
+   *         if the copy is complete
+   */
+  private boolean receive() throws SQLException {
+
+    if (completed) {
+      return false;
+    }
+
+    ByteBuf next;
+    try {
+      next = data.next(connection.getNetworkTimeout(), MILLISECONDS);
+    }
+    catch (BlockingReadTimeoutException e) {
+      throw new SQLTimeoutException("Timeout waiting for COPY data", e);
+    }
+    catch (IOException e) {
+      complete();
+      release();
+      throw makeSQLException(e);
+    }
+
+    if (next == null) {
+      complete();
+      return false;
+    }
+
+    if (pending == null) {
+      pending = next;
+    }
+    else if (!pending.isReadable()) {
+      pending.release();
+      pending = next;
+    }
+    else {
+      CompositeByteBuf composite;
+      if (pending instanceof CompositeByteBuf) {
+        composite = (CompositeByteBuf) pending;
+      }
+      else {
+        composite = connection.getAllocator().compositeBuffer().addComponent(true, pending);
+      }
+      composite.addComponent(true, next);
+      composite.discardReadComponents();
+      pending = composite;
+    }
+
+    return true;
+  }
+
+  /**
+   * Parses the next row from the pending data
+   *
+   * @return <code>true</code> if a complete row was parsed
+   */
+  private boolean parseRow() throws SQLException {
+
+    if (pending == null) {
+      return false;
+    }
+
+    if (!headerRead) {
+
+      if (pending.readableBytes() < HEADER_LENGTH) {
+        return false;
+      }
+
+      int start = pending.readerIndex();
+      for (int idx = 0; idx < SIGNATURE.length; ++idx) {
+        if (pending.getByte(start + idx) != SIGNATURE[idx]) {
+          throw new PGSQLSimpleException("Invalid binary COPY signature");
+        }
+      }
+
+      int extensionLength = pending.getInt(start + SIGNATURE.length + 4);
+      if (pending.readableBytes() < HEADER_LENGTH + extensionLength) {
+        return false;
+      }
+
+      pending.skipBytes(HEADER_LENGTH + extensionLength);
+      headerRead = true;
+    }
+
+    if (pending.readableBytes() < 2) {
+      return false;
+    }
+
+    int start = pending.readerIndex();
+    int end = pending.writerIndex();
+
+    short fieldCount = pending.getShort(start);
+    if (fieldCount == -1) {
+      pending.skipBytes(2);
+      trailerRead = true;
+      return false;
+    }
+
+    if (fieldCount != types.length) {
+      throw new PGSQLSimpleException("Row column count (" + fieldCount + ") does not match column count (" + types.length + ")");
+    }
+
+    int offset = start + 2;
+    for (int idx = 0; idx < fieldCount; ++idx) {
+      if (offset + 4 > end) {
+        return false;
+      }
+      fieldOffsets[idx] = offset;
+      offset += 4 + max(pending.getInt(offset), 0);
+      if (offset > end) {
+        return false;
+      }
+    }
+
+    pending.readerIndex(offset);
+
+    return true;
+  }
+
+  @Override
+  public Object getObject(int columnIndex) throws SQLException {
+    return getObject(columnIndex, null);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+    checkClosed();
+    checkRow();
+    checkColumnIndex(columnIndex);
+
+    int fieldIdx = columnIndex - 1;
+    int offset = fieldOffsets[fieldIdx];
+    int length = pending.getInt(offset);
+    if (length == -1) {
+      return null;
+    }
+
+    Type fieldType = types[fieldIdx];
+    Short fieldLength = fieldType.getLength();
+
+    // Fixed width values are read in place; decoders retain any data they keep
+    boolean fixedWidth = fieldLength != null && fieldLength > 0 && length == fieldLength;
+
+    ByteBuf fieldBuffer = fixedWidth ? pending.slice(offset + 4, length) : pending.retainedSlice(offset + 4, length);
+    try {
+      Object value = decoders[fieldIdx].decode(context, fieldType, fieldLength, null, fieldBuffer, type, null);
+      return type != null ? type.cast(value) : (T) value;
+    }
+    catch (IOException | ClassCastException e) {
+      throw new PGSQLSimpleException("Error decoding column", e);
+    }
+    finally {
+      if (!fixedWidth) {
+        fieldBuffer.release();
+      }
+    }
+  }
+
+  private void complete() {
+    completed = true;
+    connection.addWarning(makeSQLWarningChain(data.getNotices()));
+  }
+
+  @Override
+  public Long getRowCount() {
+    return completed ? data.getRowsAffected() : null;
+  }
+
+  private void release() {
+    if (pending != null) {
+      pending.release();
+      pending = null;
+    }
+  }
+
+  @Override
+  public void close() throws SQLException {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+    onRow = false;
+
+    release();
+
+    if (!completed) {
+      completed = true;
+
+      // Cancel the copy instead of receiving the remainder of its data, unless
+      // doing so would abort the enclosing transaction
+      boolean implicitTransaction = connection.getAutoCommit() && connection.getTransactionStatus() == Idle;
+      if (!data.isComplete() && implicitTransaction) {
+        connection.requestCancel();
+      }
+
+      try {
+        data.discard(connection.getNetworkTimeout(), MILLISECONDS);
+      }
+      catch (IOException e) {
+        throw makeSQLException(e);
+      }
+    }
+  }
+
+}
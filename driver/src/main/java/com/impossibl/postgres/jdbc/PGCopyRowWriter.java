@@ -0,0 +1,324 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.protocol.CopyDataWriter;
+import com.impossibl.postgres.protocol.CopyFormat;
+import com.impossibl.postgres.protocol.FieldFormat;
+import com.impossibl.postgres.protocol.Notice;
+import com.impossibl.postgres.protocol.RequestExecutor.CopyInHandler;
+import com.impossibl.postgres.protocol.TransactionStatus;
+import com.impossibl.postgres.system.Context;
+import com.impossibl.postgres.types.Type;
+import com.impossibl.postgres.utils.BlockingReadTimeoutException;
+
+import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLException;
+import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLWarningChain;
+import static com.impossibl.postgres.utils.Await.awaitUninterruptibly;
+import static com.impossibl.postgres.utils.ByteBufs.lengthEncodeBinary;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Binary <code>COPY ... FROM STDIN</code> row writer.
+ *
+ * Rows are encoded into a pooled buffer that is handed to the
+ * connection, as a single <code>CopyData</code> message, whenever it
+ * reaches {@link #BATCH_SIZE}.
+ */
+class PGCopyRowWriter implements com.impossibl.postgres.api.jdbc.PGCopyRowWriter {
+
+  static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0};
+
+  private static final int BATCH_SIZE = 64 * 1024;
+
+  private class Handler implements CopyInHandler {
+
+    @Override
+    public void handleStart(CopyFormat format, FieldFormat[] fieldFormats, CopyDataWriter writer) throws IOException {
+      if (format != CopyFormat.Binary) {
+        writer.writeFail("Binary format required");
+        error = new PGSQLSimpleException("COPY command must use binary format");
+      }
+      else {
+        PGCopyRowWriter.this.writer = writer;
+      }
+      started.countDown();
+    }
+
+    @Override
+    public void handleComplete(Long rowsAffected) {
+      PGCopyRowWriter.this.rowsAffected = rowsAffected;
+    }
+
+    @Override
+    public void handleError(Throwable cause, List<Notice> notices) {
+      connection.addWarning(makeSQLWarningChain(notices));
+      if (error == null) {
+        error = cause;
+      }
+      started.countDown();
+    }
+
+    @Override
+    public void handleReady(TransactionStatus transactionStatus) {
+      started.countDown();
+      ready.countDown();
+    }
+
+  }
+
+  private PGDirectConnection connection;
+  private Context context;
+  private Type[] types;
+  private Type.Codec.Encoder<ByteBuf>[] encoders;
+  private CountDownLatch started = new CountDownLatch(1);
+  private CountDownLatch ready = new CountDownLatch(1);
+  private volatile CopyDataWriter writer;
+  private volatile Throwable error;
+  private volatile Long rowsAffected;
+  private ByteBuf buffer;
+  private long rowCount;
+  private boolean completed;
+
+  @SuppressWarnings("unchecked")
+  private PGCopyRowWriter(PGDirectConnection connection, Type[] types) {
+    this.connection = connection;
+    this.context = connection;
+    this.types = types;
+    this.encoders = new Type.Codec.Encoder[types.length];
+    for (int idx = 0; idx < types.length; ++idx) {
+      encoders[idx] = types[idx].getBinaryCodec().getEncoder();
+    }
+  }
+
+  /**
+   * Starts the copy, waiting for the server to be ready to receive rows
+   *
+   * @param connection Connection to copy on
+   * @param sql SQL text of the copy command
+   * @param types Type of each column
+   * @return Writer ready to receive rows
+   * @throws SQLException If the copy could not be started
+   */
+  static PGCopyRowWriter start(PGDirectConnection connection, String sql, Type[] types) throws SQLException {
+
+    PGCopyRowWriter rowWriter = new PGCopyRowWriter(connection, types);
+
+    connection.execute((long timeout) -> {
+
+      // Marked active as the copy is submitted, so statement closes from
+      // other threads are deferred rather than sent during the copy
+      Lock submissionLock = connection.getRequestExecutor().getSubmissionLock();
+      submissionLock.lock();
+      try {
+        connection.copyInStarted(rowWriter);
+        connection.getRequestExecutor().copyIn(sql, rowWriter.new Handler());
+      }
+      finally {
+        submissionLock.unlock();
+      }
+
+      if (!awaitUninterruptibly(timeout, MILLISECONDS, rowWriter.started::await)) {
+        throw new BlockingReadTimeoutException();
+      }
+
+    });
+
+    if (rowWriter.writer == null) {
+      rowWriter.completed = true;
+      rowWriter.awaitReady();
+      connection.copyInCompleted(rowWriter);
+      throw rowWriter.failure();
+    }
+
+    rowWriter.buffer = rowWriter.writer.getAllocator().buffer(BATCH_SIZE);
+    rowWriter.buffer.writeBytes(SIGNATURE);
+    rowWriter.buffer.writeInt(0);
+    rowWriter.buffer.writeInt(0);
+
+    return rowWriter;
+  }
+
+  /**
+   * Checks if the server has finished the copy, either because it was
+   * ended or because it failed.
+   */
+  boolean isFinished() {
+    return ready.getCount() == 0;
+  }
+
+  private void checkActive() throws SQLException {
+    if (completed) {
+      throw new PGSQLSimpleException("COPY completed");
+    }
+    if (error != null) {
+      cancel();
+      throw failure();
+    }
+  }
+
+  @Override
+  public int getColumnCount() {
+    return types.length;
+  }
+
+  @Override
+  public void writeRow(Object... values) throws SQLException {
+    checkActive();
+
+    if (values.length != types.length) {
+      throw new PGSQLSimpleException("Value count (" + values.length + ") does not match column count (" + types.length + ")");
+    }
+
+    int rowStart = buffer.writerIndex();
+    try {
+      buffer.writeShort(types.length);
+      for (int idx = 0; idx < types.length; ++idx) {
+        lengthEncodeBinary(encoders[idx], context, types[idx], values[idx], null, buffer);
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      // Drop the partially encoded row
+      buffer.writerIndex(rowStart);
+      throw new PGSQLSimpleException("Error encoding row", e);
+    }
+
+    rowCount++;
+
+    if (buffer.readableBytes() >= BATCH_SIZE) {
+      send(writer.getAllocator().buffer(BATCH_SIZE));
+    }
+  }
+
+  private void send(ByteBuf next) throws SQLException {
+
+    ByteBuf data = buffer;
+    buffer = next;
+
+    try {
+      writer.writeData(data);
+    }
+    catch (IOException e) {
+      throw makeSQLException(e);
+    }
+  }
+
+  @Override
+  public long endCopy() throws SQLException {
+    checkActive();
+
+    completed = true;
+
+    try {
+      buffer.writeShort(-1);
+      send(null);
+
+      writer.writeDone();
+    }
+    catch (IOException e) {
+      throw makeSQLException(e);
+    }
+    finally {
+      connection.copyInCompleted(this);
+    }
+
+    awaitReady();
+
+    if (error != null) {
+      throw failure();
+    }
+
+    return rowsAffected != null ? rowsAffected : rowCount;
+  }
+
+  @Override
+  public void cancelCopy() throws SQLException {
+    if (completed) {
+      return;
+    }
+
+    cancel();
+    awaitReady();
+  }
+
+  private void cancel() throws SQLException {
+
+    completed = true;
+
+    if (buffer != null) {
+      buffer.release();
+      buffer = null;
+    }
+
+    try {
+      writer.writeFail("COPY cancelled by client");
+    }
+    catch (IOException e) {
+      throw makeSQLException(e);
+    }
+    finally {
+      connection.copyInCompleted(this);
+    }
+  }
+
+  private void awaitReady() throws SQLException {
+
+    // Awaited directly; the copy is already executing
+    if (!awaitUninterruptibly(connection.getNetworkTimeout(), MILLISECONDS, ready::await)) {
+      throw new SQLTimeoutException("Timeout waiting for COPY to complete");
+    }
+  }
+
+  private SQLException failure() {
+    Throwable error = this.error;
+    if (error instanceof SQLException) {
+      return (SQLException) error;
+    }
+    if (error instanceof Exception) {
+      return makeSQLException((Exception) error);
+    }
+    return new PGSQLSimpleException("COPY failed", error);
+  }
+
+  @Override
+  public void close() throws SQLException {
+    cancelCopy();
+  }
+
+}
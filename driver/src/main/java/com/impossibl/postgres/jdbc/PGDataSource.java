@@ -28,10 +28,18 @@
  */
 package com.impossibl.postgres.jdbc;
 
+import static com.impossibl.postgres.jdbc.DataSourceSettings.POOL_ACQUIRE_TIMEOUT;
+import static com.impossibl.postgres.jdbc.DataSourceSettings.POOL_ENABLED;
+import static com.impossibl.postgres.jdbc.DataSourceSettings.POOL_IDLE_TIMEOUT;
+import static com.impossibl.postgres.jdbc.DataSourceSettings.POOL_LEAK_DETECTION_THRESHOLD;
+import static com.impossibl.postgres.jdbc.DataSourceSettings.POOL_MAX_LIFETIME;
+import static com.impossibl.postgres.jdbc.DataSourceSettings.POOL_MAX_SIZE;
+import static com.impossibl.postgres.jdbc.DataSourceSettings.POOL_MIN_IDLE;
 import static com.impossibl.postgres.jdbc.Exceptions.UNWRAP_ERROR;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Objects;
 
 import javax.naming.Reference;
 import javax.naming.Referenceable;
@@ -39,9 +47,18 @@ import javax.sql.DataSource;
 
 /**
  * DataSource implementation
+ *
+ * When the {@code pool.enabled} setting is enabled, connections requested
+ * using the configured credentials are served from a built-in
+ * {@link ConnectionPool}. Closing a pooled connection returns it to the
+ * pool; each borrowed connection is a handle that reports being closed once
+ * it has been returned.
+ *
  * @author <a href="mailto:jesper.pedersen@redhat.com">Jesper Pedersen</a>
  */
-public class PGDataSource extends AbstractGeneratedDataSource implements DataSource, Referenceable {
+public class PGDataSource extends AbstractGeneratedDataSource implements DataSource, Referenceable, AutoCloseable {
+
+  private volatile ConnectionPool pool;
 
   /**
    * Constructor
@@ -68,9 +85,64 @@ public class PGDataSource extends AbstractGeneratedDataSource implements DataSou
    */
   @Override
   public Connection getConnection(String user, String password) throws SQLException {
+
+    if (settings.enabled(POOL_ENABLED) && Objects.equals(user, getUser()) && Objects.equals(password, getPassword())) {
+      return APITracing.setupIfEnabled(getPool().borrow(), settings);
+    }
+
     return APITracing.setupIfEnabled(createConnection(user, password), settings);
   }
 
+  private ConnectionPool getPool() {
+
+    ConnectionPool pool = this.pool;
+    if (pool == null) {
+      synchronized (this) {
+        pool = this.pool;
+        if (pool == null) {
+          String user = getUser();
+          String password = getPassword();
+          pool = new ConnectionPool(() -> createConnection(user, password),
+              settings.get(POOL_MAX_SIZE), settings.get(POOL_MIN_IDLE), settings.get(POOL_ACQUIRE_TIMEOUT),
+              settings.get(POOL_IDLE_TIMEOUT), settings.get(POOL_MAX_LIFETIME), settings.get(POOL_LEAK_DETECTION_THRESHOLD));
+          this.pool = pool;
+        }
+      }
+    }
+
+    return pool;
+  }
+
+  /**
+   * Retrieves a snapshot of the built-in connection pool's metrics.
+   *
+   * @return Pool metrics or null if the pool has not been started
+   */
+  public ConnectionPool.Metrics getPoolMetrics() {
+
+    ConnectionPool pool = this.pool;
+    if (pool == null) {
+      return null;
+    }
+
+    return pool.metrics();
+  }
+
+  /**
+   * Closes the built-in connection pool, if started. Idle connections are
+   * closed immediately and borrowed connections are closed when returned.
+   * A subsequent request for a pooled connection starts a new pool.
+   */
+  @Override
+  public synchronized void close() {
+
+    ConnectionPool pool = this.pool;
+    if (pool != null) {
+      this.pool = null;
+      pool.close();
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
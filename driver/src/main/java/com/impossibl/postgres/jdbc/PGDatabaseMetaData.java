@@ -29,6 +29,7 @@
 package com.impossibl.postgres.jdbc;
 
 import com.impossibl.postgres.api.data.ACLItem;
+import com.impossibl.postgres.api.jdbc.PGConnection;
 import com.impossibl.postgres.protocol.FieldFormat;
 import com.impossibl.postgres.protocol.ResultField;
 import com.impossibl.postgres.system.Setting;
@@ -40,6 +41,7 @@ import com.impossibl.postgres.utils.guava.Joiner;
 import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLException;
 import static com.impossibl.postgres.jdbc.Exceptions.NOT_IMPLEMENTED;
 import static com.impossibl.postgres.jdbc.Exceptions.UNWRAP_ERROR;
+import static com.impossibl.postgres.jdbc.JDBCSettings.CATALOG_CACHE_ENABLED;
 import static com.impossibl.postgres.jdbc.JDBCSettings.CLIENT_INFO;
 import static com.impossibl.postgres.system.SystemSettings.CREDENTIALS_USERNAME;
 import static com.impossibl.postgres.system.SystemSettings.DATABASE_URL;
@@ -727,6 +729,14 @@ class PGDatabaseMetaData extends PGMetaData implements DatabaseMetaData {
     return false;
   }
 
+  /*
+   * Checks if the shared catalog cache is enabled and usable by the
+   * current transaction
+   */
+  private boolean isCatalogCacheUsable() throws SQLException {
+    return connection.getSetting(CATALOG_CACHE_ENABLED) && !connection.isCatalogModifiedInTransaction();
+  }
+
   @Override
   public ResultSet getProcedures(String catalog, String schemaPattern, String procedureNamePattern) throws SQLException {
 
@@ -945,8 +955,28 @@ class PGDatabaseMetaData extends PGMetaData implements DatabaseMetaData {
   @Override
   public ResultSet getTables(String catalog, String schemaPattern, String tableNamePattern, String[] types) throws SQLException {
 
-    StringBuilder sql = new StringBuilder();
+    if (isCatalogCacheUsable()) {
+
+      List<Object> key = Arrays.asList("tables", schemaPattern, types != null ? Arrays.asList(types) : null);
+
+      CatalogCache.Rows tables = CatalogCache.get(connection).get(this, key, () -> {
+        List<Object> params = new ArrayList<>();
+        String sql = getTablesSQL(schemaPattern, null, types, params);
+        return CatalogCache.Rows.load(this, sql, params, "TABLE_NAME");
+      });
+
+      return tables.createResultSet(this, tables.selectMatching(tableNamePattern));
+    }
+
     List<Object> params = new ArrayList<>();
+    String sql = getTablesSQL(schemaPattern, tableNamePattern, types, params);
+
+    return execForResultSet(sql, params);
+  }
+
+  private String getTablesSQL(String schemaPattern, String tableNamePattern, String[] types, List<Object> params) {
+
+    StringBuilder sql = new StringBuilder();
 
     sql.append(
         "SELECT NULL AS \"TABLE_CAT\", n.nspname AS \"TABLE_SCHEM\", c.relname AS \"TABLE_NAME\", " +
@@ -1014,7 +1044,7 @@ class PGDatabaseMetaData extends PGMetaData implements DatabaseMetaData {
 
     sql.append(" ORDER BY \"TABLE_TYPE\",\"TABLE_SCHEM\",\"TABLE_NAME\" ");
 
-    return execForResultSet(sql.toString(), params);
+    return sql.toString();
   }
 
   private static final Map<String, String> tableTypeClauses;
@@ -1105,33 +1135,36 @@ class PGDatabaseMetaData extends PGMetaData implements DatabaseMetaData {
 
     Registry registry = connection.getRegistry();
 
-    StringBuilder whereConditions = new StringBuilder(" AND a.attnum > 0");
-    List<Object> params = new ArrayList<>();
-
-    if (schemaPattern != null) {
-      whereConditions.append(" AND n.nspname LIKE ?");
-      params.add(schemaPattern);
-    }
+    List<ColumnData> columnsData;
 
-    if (!isNullOrEmpty(tableNamePattern)) {
-      whereConditions.append(" AND c.relname LIKE ?");
-      params.add(tableNamePattern);
-    }
+    if (isCatalogCacheUsable()) {
 
-    StringBuilder sql = new StringBuilder("SELECT * FROM (");
+      List<Object> key = Arrays.asList("columns", schemaPattern);
 
-    sql.append(getColumnSQL(whereConditions));
+      CatalogCache.Indexed<ColumnData> columns = CatalogCache.get(connection).get(this, key, () -> {
+        List<Object> params = new ArrayList<>();
+        String sql = getColumnsSQL(schemaPattern, null, null, params);
+        CatalogCache.Indexed<ColumnData> loaded = new CatalogCache.Indexed<>();
+        for (ColumnData columnData : getColumnData(sql, params)) {
+          loaded.add(columnData.tableName, columnData);
+        }
+        return loaded;
+      });
 
-    sql.append(") c");
+      CatalogCache.Indexed<ColumnData> tablesColumns = new CatalogCache.Indexed<>();
+      for (ColumnData columnData : columns.selectMatching(tableNamePattern)) {
+        tablesColumns.add(columnData.columnName, columnData);
+      }
 
-    if (!isNullOrEmpty(columnNamePattern)) {
-      sql.append(" WHERE attname LIKE ?");
-      params.add(columnNamePattern);
+      columnsData = tablesColumns.selectMatching(columnNamePattern);
     }
+    else {
 
-    sql.append(" ORDER BY nspname,c.relname,attnum ");
+      List<Object> params = new ArrayList<>();
+      String sql = getColumnsSQL(schemaPattern, tableNamePattern, columnNamePattern, params);
 
-    List<ColumnData> columnsData = getColumnData(sql.toString(), params);
+      columnsData = getColumnData(sql, params);
+    }
 
     //Build result set (manually)
 
@@ -1218,6 +1251,36 @@ class PGDatabaseMetaData extends PGMetaData implements DatabaseMetaData {
     return createResultSet(resultFields, results);
   }
 
+  private String getColumnsSQL(String schemaPattern, String tableNamePattern, String columnNamePattern, List<Object> params) {
+
+    StringBuilder whereConditions = new StringBuilder(" AND a.attnum > 0");
+
+    if (schemaPattern != null) {
+      whereConditions.append(" AND n.nspname LIKE ?");
+      params.add(schemaPattern);
+    }
+
+    if (!isNullOrEmpty(tableNamePattern)) {
+      whereConditions.append(" AND c.relname LIKE ?");
+      params.add(tableNamePattern);
+    }
+
+    StringBuilder sql = new StringBuilder("SELECT * FROM (");
+
+    sql.append(getColumnSQL(whereConditions));
+
+    sql.append(") c");
+
+    if (!isNullOrEmpty(columnNamePattern)) {
+      sql.append(" WHERE attname LIKE ?");
+      params.add(columnNamePattern);
+    }
+
+    sql.append(" ORDER BY nspname,c.relname,attnum ");
+
+    return sql.toString();
+  }
+
   @Override
   public ResultSet getColumnPrivileges(String catalog, String schemaPattern, String table, String columnNamePattern) throws SQLException {
 
@@ -1652,8 +1715,28 @@ class PGDatabaseMetaData extends PGMetaData implements DatabaseMetaData {
   @Override
   public ResultSet getPrimaryKeys(String catalog, String schemaPattern, String table) throws SQLException {
 
-    StringBuilder sql = new StringBuilder();
+    if (isCatalogCacheUsable()) {
+
+      List<Object> key = Arrays.asList("primaryKeys", schemaPattern);
+
+      CatalogCache.Rows primaryKeys = CatalogCache.get(connection).get(this, key, () -> {
+        List<Object> params = new ArrayList<>();
+        String sql = getPrimaryKeysSQL(schemaPattern, null, true, params);
+        return CatalogCache.Rows.load(this, sql, params, "TABLE_NAME");
+      });
+
+      return primaryKeys.createResultSet(this, primaryKeys.select(table));
+    }
+
     List<Object> params = new ArrayList<>();
+    String sql = getPrimaryKeysSQL(schemaPattern, table, false, params);
+
+    return execForResultSet(sql, params);
+  }
+
+  private String getPrimaryKeysSQL(String schemaPattern, String table, boolean allTables, List<Object> params) {
+
+    StringBuilder sql = new StringBuilder();
 
     sql.append(
         "SELECT NULL AS \"TABLE_CAT\", n.nspname AS \"TABLE_SCHEM\", " +
@@ -1666,24 +1749,53 @@ class PGDatabaseMetaData extends PGMetaData implements DatabaseMetaData {
         "             information_schema._pg_expandarray(i.indkey) AS keys " +
         "        FROM pg_catalog.pg_index i) i " +
         "    ON (a.attnum = (i.keys).x AND a.attrelid = i.indrelid) " +
-        "  JOIN pg_catalog.pg_class ci ON (ci.oid = i.indexrelid) ");
+        "  JOIN pg_catalog.pg_class ci ON (ci.oid = i.indexrelid) " +
+        "WHERE i.indisprimary ");
 
     if (schemaPattern != null) {
-      sql.append(" WHERE n.nspname = ?");
+      sql.append(" AND n.nspname = ?");
       params.add(schemaPattern);
     }
 
-    sql.append(" AND ct.relname = ?");
-    params.add(table);
+    // A null table matches no relations, the catalog cache requests all of them
+    if (!allTables) {
+      sql.append(" AND ct.relname = ?");
+      params.add(table);
+    }
 
-    sql.append(" AND i.indisprimary ORDER BY \"TABLE_NAME\", \"PK_NAME\", \"KEY_SEQ\"");
+    sql.append(" ORDER BY \"TABLE_NAME\", \"PK_NAME\", \"KEY_SEQ\"");
 
-    return execForResultSet(sql.toString(), params);
+    return sql.toString();
   }
 
   protected ResultSet getImportedExportedKeys(String primaryCatalog, String primarySchema, String primaryTable, String foreignCatalog, String foreignSchema, String foreignTable) throws SQLException {
-    StringBuilder sql = new StringBuilder();
+
+    // Cross references (both tables specified) are not cached
+    if (isNullOrEmpty(primaryTable) != isNullOrEmpty(foreignTable) && isCatalogCacheUsable()) {
+
+      boolean exported = !isNullOrEmpty(primaryTable);
+      boolean orderByForeign = primaryTable != null;
+
+      List<Object> key = Arrays.asList("keys", primarySchema, foreignSchema, exported, orderByForeign);
+
+      CatalogCache.Rows keys = CatalogCache.get(connection).get(this, key, () -> {
+        List<Object> params = new ArrayList<>();
+        String sql = getImportedExportedKeysSQL(primarySchema, null, foreignSchema, null, orderByForeign, params);
+        return CatalogCache.Rows.load(this, sql, params, exported ? "PKTABLE_NAME" : "FKTABLE_NAME");
+      });
+
+      return keys.createResultSet(this, keys.select(exported ? primaryTable : foreignTable));
+    }
+
     List<Object> params = new ArrayList<>();
+    String sql = getImportedExportedKeysSQL(primarySchema, primaryTable, foreignSchema, foreignTable, primaryTable != null, params);
+
+    return execForResultSet(sql, params);
+  }
+
+  private String getImportedExportedKeysSQL(String primarySchema, String primaryTable, String foreignSchema, String foreignTable, boolean orderByForeign, List<Object> params) throws SQLException {
+
+    StringBuilder sql = new StringBuilder();
 
     sql.append(
         "SELECT NULL::text AS \"PKTABLE_CAT\", pkn.nspname AS \"PKTABLE_SCHEM\", pkc.relname AS \"PKTABLE_NAME\", pka.attname AS \"PKCOLUMN_NAME\", " +
@@ -1736,14 +1848,14 @@ class PGDatabaseMetaData extends PGMetaData implements DatabaseMetaData {
       params.add(foreignTable);
     }
 
-    if (primaryTable != null) {
+    if (orderByForeign) {
       sql.append(" ORDER BY fkn.nspname,fkc.relname,pos.n");
     }
     else {
       sql.append(" ORDER BY pkn.nspname,pkc.relname,pos.n");
     }
 
-    return execForResultSet(sql.toString(), params);
+    return sql.toString();
   }
 
   @Override
@@ -1835,8 +1947,28 @@ class PGDatabaseMetaData extends PGMetaData implements DatabaseMetaData {
   @Override
   public ResultSet getIndexInfo(String catalog, String schemaPattern, String table, boolean unique, boolean approximate) throws SQLException {
 
-    StringBuilder sql = new StringBuilder();
+    if (isCatalogCacheUsable()) {
+
+      List<Object> key = Arrays.asList("indexInfo", schemaPattern, unique);
+
+      CatalogCache.Rows indexes = CatalogCache.get(connection).get(this, key, () -> {
+        List<Object> params = new ArrayList<>();
+        String sql = getIndexInfoSQL(schemaPattern, null, true, unique, params);
+        return CatalogCache.Rows.load(this, sql, params, "TABLE_NAME");
+      });
+
+      return indexes.createResultSet(this, indexes.select(table));
+    }
+
     List<Object> params = new ArrayList<>();
+    String sql = getIndexInfoSQL(schemaPattern, table, false, unique, params);
+
+    return execForResultSet(sql, params);
+  }
+
+  private String getIndexInfoSQL(String schemaPattern, String table, boolean allTables, boolean unique, List<Object> params) {
+
+    StringBuilder sql = new StringBuilder();
 
     sql.append(
         "SELECT NULL AS \"TABLE_CAT\", n.nspname AS \"TABLE_SCHEM\", " +
@@ -1887,15 +2019,18 @@ class PGDatabaseMetaData extends PGMetaData implements DatabaseMetaData {
       params.add(schemaPattern);
     }
 
-    sql.append(" AND ct.relname = ?");
-    params.add(table);
+    // A null table matches no relations, the catalog cache requests all of them
+    if (!allTables) {
+      sql.append(" AND ct.relname = ?");
+      params.add(table);
+    }
 
     if (unique) {
       sql.append(" AND i.indisunique ");
     }
     sql.append(" ORDER BY \"NON_UNIQUE\", \"TYPE\", \"INDEX_NAME\", \"ORDINAL_POSITION\" ");
 
-    return execForResultSet(sql.toString(), params);
+    return sql.toString();
   }
 
   @Override
@@ -2340,8 +2475,8 @@ class PGDatabaseMetaData extends PGMetaData implements DatabaseMetaData {
   }
 
   @Override
-  public PGDirectConnection getConnection() throws SQLException {
-    return connection;
+  public PGConnection getConnection() throws SQLException {
+    return handle;
   }
 
   @Override
@@ -30,25 +30,34 @@ package com.impossibl.postgres.jdbc;
 
 import com.impossibl.postgres.api.jdbc.PGAnyType;
 import com.impossibl.postgres.api.jdbc.PGConnection;
+import com.impossibl.postgres.api.jdbc.PGMetricsListener;
 import com.impossibl.postgres.api.jdbc.PGNotificationListener;
+import com.impossibl.postgres.api.jdbc.PGRowPublisher;
 import com.impossibl.postgres.jdbc.Housekeeper.CleanupRunnable;
 import com.impossibl.postgres.jdbc.SQLTextTree.ParameterPiece;
 import com.impossibl.postgres.jdbc.SQLTextTree.Processor;
+import com.impossibl.postgres.jdbc.SQLTextTree.StatementNode;
+import com.impossibl.postgres.protocol.FieldFormat;
 import com.impossibl.postgres.protocol.FieldFormatRef;
 import com.impossibl.postgres.protocol.Notice;
 import com.impossibl.postgres.protocol.RequestExecutor.CopyFromHandler;
 import com.impossibl.postgres.protocol.RequestExecutor.CopyToHandler;
+import com.impossibl.postgres.protocol.RequestExecutorHandlers.FutureQueryResult;
+import com.impossibl.postgres.protocol.RequestExecutorHandlers.StreamedCopyData;
+import com.impossibl.postgres.protocol.RequestExecutorHandlers.StreamedResults;
 import com.impossibl.postgres.protocol.ResultBatch;
 import com.impossibl.postgres.protocol.ResultField;
 import com.impossibl.postgres.protocol.RowData;
 import com.impossibl.postgres.protocol.ServerConnection;
 import com.impossibl.postgres.protocol.TransactionStatus;
 import com.impossibl.postgres.system.BasicContext;
+import com.impossibl.postgres.system.Metrics;
 import com.impossibl.postgres.system.ParameterNames;
 import com.impossibl.postgres.system.Setting;
 import com.impossibl.postgres.system.Settings;
 import com.impossibl.postgres.types.ArrayType;
 import com.impossibl.postgres.types.CompositeType;
+import com.impossibl.postgres.types.Registry;
 import com.impossibl.postgres.types.SharedRegistry;
 import com.impossibl.postgres.types.Type;
 import com.impossibl.postgres.utils.Await;
@@ -61,7 +70,10 @@ import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLWarningChain;
 import static com.impossibl.postgres.jdbc.Exceptions.CLOSED_CONNECTION;
 import static com.impossibl.postgres.jdbc.Exceptions.INVALID_COMMAND_FOR_GENERATED_KEYS;
 import static com.impossibl.postgres.jdbc.Exceptions.NOT_SUPPORTED;
+import static com.impossibl.postgres.jdbc.Exceptions.NO_RESULT_COUNT_AVAILABLE;
+import static com.impossibl.postgres.jdbc.Exceptions.NO_RESULT_SET_AVAILABLE;
 import static com.impossibl.postgres.jdbc.Exceptions.UNWRAP_ERROR;
+import static com.impossibl.postgres.jdbc.JDBCSettings.CATALOG_CACHE_ENABLED;
 import static com.impossibl.postgres.jdbc.JDBCSettings.CI_APPLICATION_NAME;
 import static com.impossibl.postgres.jdbc.JDBCSettings.CI_CLIENT_USER;
 import static com.impossibl.postgres.jdbc.JDBCSettings.CLIENT_INFO;
@@ -69,11 +81,18 @@ import static com.impossibl.postgres.jdbc.JDBCSettings.DEFAULT_FETCH_SIZE;
 import static com.impossibl.postgres.jdbc.JDBCSettings.DEFAULT_NETWORK_TIMEOUT;
 import static com.impossibl.postgres.jdbc.JDBCSettings.DESCRIPTION_CACHE_SIZE;
 import static com.impossibl.postgres.jdbc.JDBCSettings.JDBC;
+import static com.impossibl.postgres.jdbc.JDBCSettings.MULTI_RESULT_STREAMING;
 import static com.impossibl.postgres.jdbc.JDBCSettings.PARSED_SQL_CACHE_SIZE;
+import static com.impossibl.postgres.jdbc.JDBCSettings.PREPARED_STATEMENT_CACHE_SIMPLE_THRESHOLD;
 import static com.impossibl.postgres.jdbc.JDBCSettings.PREPARED_STATEMENT_CACHE_SIZE;
 import static com.impossibl.postgres.jdbc.JDBCSettings.PREPARED_STATEMENT_CACHE_THRESHOLD;
 import static com.impossibl.postgres.jdbc.JDBCSettings.READ_ONLY;
+import static com.impossibl.postgres.jdbc.JDBCSettings.REPLICATION_STATUS_INTERVAL;
 import static com.impossibl.postgres.jdbc.JDBCSettings.STRICT_MODE;
+import static com.impossibl.postgres.jdbc.SQLTextUtils.SESSION_CURSORS;
+import static com.impossibl.postgres.jdbc.SQLTextUtils.SESSION_LISTENS;
+import static com.impossibl.postgres.jdbc.SQLTextUtils.SESSION_SETTINGS;
+import static com.impossibl.postgres.jdbc.SQLTextUtils.SESSION_TEMP_OBJECTS;
 import static com.impossibl.postgres.jdbc.SQLTextUtils.appendReturningClause;
 import static com.impossibl.postgres.jdbc.SQLTextUtils.escapeLiteral;
 import static com.impossibl.postgres.jdbc.SQLTextUtils.getBeginText;
@@ -84,18 +103,27 @@ import static com.impossibl.postgres.jdbc.SQLTextUtils.getIsolationLevel;
 import static com.impossibl.postgres.jdbc.SQLTextUtils.getReleaseSavepointText;
 import static com.impossibl.postgres.jdbc.SQLTextUtils.getRollbackText;
 import static com.impossibl.postgres.jdbc.SQLTextUtils.getRollbackToText;
+import static com.impossibl.postgres.jdbc.SQLTextUtils.getSessionModifications;
 import static com.impossibl.postgres.jdbc.SQLTextUtils.getSetSavepointText;
 import static com.impossibl.postgres.jdbc.SQLTextUtils.getSetSessionIsolationLevelText;
 import static com.impossibl.postgres.jdbc.SQLTextUtils.getSetSessionReadabilityText;
+import static com.impossibl.postgres.jdbc.SQLTextUtils.isCreateTableAs;
 import static com.impossibl.postgres.jdbc.SQLTextUtils.isTrue;
 import static com.impossibl.postgres.jdbc.SQLTextUtils.prependCursorDeclaration;
+import static com.impossibl.postgres.protocol.ResultBatches.transformFieldTypes;
+import static com.impossibl.postgres.protocol.ServerObjectType.Statement;
 import static com.impossibl.postgres.protocol.TransactionStatus.Idle;
+import static com.impossibl.postgres.system.Empty.EMPTY_BUFFERS;
+import static com.impossibl.postgres.system.Empty.EMPTY_FORMATS;
 import static com.impossibl.postgres.system.Empty.EMPTY_TYPES;
 import static com.impossibl.postgres.system.SystemSettings.DATABASE_URL;
+import static com.impossibl.postgres.system.SystemSettings.FIELD_FORMAT_PREF;
+import static com.impossibl.postgres.system.SystemSettings.METRICS_ENABLED;
 import static com.impossibl.postgres.system.SystemSettings.PROTO;
 import static com.impossibl.postgres.system.SystemSettings.SERVER;
 import static com.impossibl.postgres.system.SystemSettings.STANDARD_CONFORMING_STRINGS;
 import static com.impossibl.postgres.system.SystemSettings.SYS;
+import static com.impossibl.postgres.utils.Await.syncUninterruptibly;
 import static com.impossibl.postgres.utils.Nulls.firstNonNull;
 import static com.impossibl.postgres.utils.guava.Strings.nullToEmpty;
 
@@ -118,7 +146,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
 import java.sql.SQLTimeoutException;
+import java.sql.SQLType;
 import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Savepoint;
@@ -128,15 +158,23 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -150,6 +188,7 @@ import static java.sql.ResultSet.TYPE_FORWARD_ONLY;
 import static java.sql.Statement.RETURN_GENERATED_KEYS;
 import static java.util.Arrays.asList;
 import static java.util.Collections.synchronizedMap;
+import static java.util.Collections.synchronizedSet;
 import static java.util.Collections.unmodifiableMap;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -220,12 +259,30 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
   private List<WeakReference<PGStatement>> activeStatements;
   private Map<StatementCacheKey, StatementDescription> descriptionCache;
   private Map<StatementCacheKey, PreparedStatementDescription> preparedStatementCache;
+  private final Queue<String> evictedStatementNames = new ConcurrentLinkedQueue<>();
+  private final Lock validationLock = new ReentrantLock();
   private int preparedStatementCacheThreshold;
   private Map<StatementCacheKey, Integer> preparedStatementHeat;
+  private int simpleStatementPromotionThreshold;
+  private Map<StatementCacheKey, Integer> simpleStatementHeat;
+  private final boolean binaryResultFormatPreferred;
+  private final boolean multiResultStreaming;
+  private final boolean catalogCacheEnabled;
+  private boolean catalogModified;
+  private final Set<CursorRowWriter> pendingRowWriters = synchronizedSet(new LinkedHashSet<>());
+  private volatile PGCopyRowWriter activeCopyWriter;
+  private final Queue<String> deferredStatementNames = new ConcurrentLinkedQueue<>();
   private Integer defaultFetchSize;
   private Map<NotificationKey, PGNotificationListener> notificationListeners;
   final Housekeeper.Ref housekeeper;
   private final Object cleanupKey;
+  volatile ConnectionPool.Entry poolEntry;
+  /**
+   * Connection reported by statements and metadata; the current
+   * checkout's handle when the connection is pooled
+   */
+  PGConnection handle = this;
+  private int sessionModifications;
 
   private static Map<String, SQLText> parsedSqlCache;
 
@@ -244,12 +301,13 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
 
     final int statementCacheSize = getSetting(PREPARED_STATEMENT_CACHE_SIZE);
     if (statementCacheSize > 0) {
-      WeakReference<PGDirectConnection> weakThis = new WeakReference<>(this);
+      // Evicted statements are disposed after the cache's monitor is released
+      // (see disposeEvictedStatements) to avoid blocking on I/O while holding it
       preparedStatementCache = synchronizedMap(new CacheMap<>(statementCacheSize, 1.1f, true, eldest -> {
-        try {
-          PGStatement.dispose(weakThis.get(), eldest.getValue().name);
-        }
-        catch (SQLException ignored) {
+        evictedStatementNames.add(eldest.getValue().name);
+        Metrics metrics = getMetrics();
+        if (metrics != null) {
+          metrics.preparedStatementCacheEviction();
         }
       }));
     }
@@ -260,6 +318,13 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
       preparedStatementHeat = new ConcurrentHashMap<>();
     }
 
+    final int simpleStatementThreshold = getSetting(PREPARED_STATEMENT_CACHE_SIMPLE_THRESHOLD);
+    if (simpleStatementThreshold > 0 && preparedStatementCache != null && !isReplication()) {
+      simpleStatementPromotionThreshold = simpleStatementThreshold;
+      // Simple statements commonly embed literals; bound the number tracked
+      simpleStatementHeat = synchronizedMap(new CacheMap<>(statementCacheSize * 4, 1.1f, true));
+    }
+
     final int sqlCacheSize = getSetting(PARSED_SQL_CACHE_SIZE);
     if (sqlCacheSize > 0) {
       synchronized (PGDirectConnection.class) {
@@ -271,9 +336,17 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
 
     this.defaultFetchSize = getSetting(DEFAULT_FETCH_SIZE);
 
-    prepareUtilQuery("TB", getBeginText());
-    prepareUtilQuery("TC", getCommitText());
-    prepareUtilQuery("TR", getRollbackText());
+    // Matches the preference used by types (see Type#getResultFormat)
+    this.binaryResultFormatPreferred = FIELD_FORMAT_PREF.getSystem() == FieldFormat.Binary;
+    this.multiResultStreaming = getSetting(MULTI_RESULT_STREAMING);
+    this.catalogCacheEnabled = getSetting(CATALOG_CACHE_ENABLED);
+
+    // Replication connections only support the simple query protocol
+    if (!isReplication()) {
+      prepareUtilQuery("TB", getBeginText());
+      prepareUtilQuery("TC", getCommitText());
+      prepareUtilQuery("TR", getRollbackText());
+    }
 
     this.housekeeper = housekeeper;
     if (this.housekeeper != null)
@@ -421,22 +494,99 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
     activeStatements.clear();
   }
 
+  /**
+   * Restores the connection to the state of a newly established connection
+   * before it is reused by a {@link ConnectionPool}.
+   *
+   * Server session state is only reset when it is known to have been modified
+   * and all required commands are sent as a single request, ensuring the reset
+   * requires at most one round trip. Server prepared statements are kept to
+   * preserve the statement cache.
+   *
+   * @throws SQLException If an error occurs resetting the session
+   */
+  void resetSession() throws SQLException {
+
+    closeStatements();
+
+    warningChain = null;
+    notificationListeners.clear();
+    strict = getSetting(STRICT_MODE);
+    networkTimeout = getSetting(DEFAULT_NETWORK_TIMEOUT);
+    defaultFetchSize = getSetting(DEFAULT_FETCH_SIZE);
+    holdability = 0;
+    autoCommit = true;
+    if (!typeMap.isEmpty()) {
+      typeMap = new HashMap<>();
+    }
+
+    StringBuilder resetText = new StringBuilder();
+
+    if (getTransactionStatus() != Idle) {
+      resetText.append(getRollbackText()).append(';');
+    }
+
+    if ((sessionModifications & SESSION_CURSORS) != 0) {
+      resetText.append("CLOSE ALL;");
+    }
+
+    if ((sessionModifications & SESSION_SETTINGS) != 0) {
+      resetText.append("SET SESSION AUTHORIZATION DEFAULT;RESET ALL;");
+      if (settings.enabled(READ_ONLY)) {
+        resetText.append(getSetSessionReadabilityText(true)).append(';');
+      }
+    }
+
+    if ((sessionModifications & SESSION_LISTENS) != 0) {
+      resetText.append("UNLISTEN *;");
+    }
+
+    if ((sessionModifications & SESSION_TEMP_OBJECTS) != 0) {
+      resetText.append("DISCARD TEMP;");
+    }
+
+    sessionModifications = 0;
+
+    if (resetText.length() != 0) {
+      execute(resetText.toString());
+    }
+  }
+
   SQLText parseSQL(String sqlText) throws SQLException {
 
     try {
       final boolean standardConformingStrings = getSetting(STANDARD_CONFORMING_STRINGS, false);
 
+      SQLText parsedSql;
+
       if (parsedSqlCache == null) {
-        return new SQLText(sqlText, standardConformingStrings);
+        parsedSql = new SQLText(sqlText, standardConformingStrings);
       }
+      else {
 
-      SQLText parsedSql = parsedSqlCache.get(sqlText);
-      if (parsedSql == null) {
-        parsedSql = new SQLText(sqlText, standardConformingStrings);
-        parsedSqlCache.put(sqlText, parsedSql);
+        Metrics metrics = getMetrics();
+
+        parsedSql = parsedSqlCache.get(sqlText);
+        if (parsedSql == null) {
+          if (metrics != null) {
+            metrics.parsedSqlCacheMiss();
+          }
+          parsedSql = new SQLText(sqlText, standardConformingStrings);
+          parsedSqlCache.put(sqlText, parsedSql);
+        }
+        else if (metrics != null) {
+          metrics.parsedSqlCacheHit();
+        }
+
+        parsedSql = parsedSql.copy();
+      }
+
+      // Track session modifications so pooled connections can be reset cheaply
+      if (poolEntry != null) {
+        sessionModifications |= getSessionModifications(parsedSql);
       }
 
-      return parsedSql.copy();
+      return parsedSql;
     }
     catch (ParseException e) {
       throw new SQLException("Error parsing SQL at position " + e.getErrorOffset() +
@@ -480,6 +630,11 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
    */
   <T> T execute(QueryResultFunction<T> function) throws SQLException {
 
+    checkNoActiveCopy();
+
+    Metrics metrics = getMetrics();
+    long start = metrics != null ? System.nanoTime() : 0;
+
     try {
       if (!autoCommit && getTransactionStatus() == Idle) {
         getRequestExecutor().lazyExecute("TB");
@@ -508,6 +663,11 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
 
       throw makeSQLException(e);
     }
+    finally {
+      if (metrics != null) {
+        metrics.awaited(System.nanoTime() - start);
+      }
+    }
 
   }
 
@@ -522,13 +682,21 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
     // This ensures we don't cancel a request _after_ this one
     // by mistake.
 
-    synchronized (getRequestExecutor()) {
+    Lock submissionLock = getRequestExecutor().getSubmissionLock();
+    submissionLock.lock();
+    try {
 
-      // Schedule task to run at execution timeout
+      // Schedule timeout to cancel the request at execution timeout
 
-      ExecutionTimerTask task = new CancelRequestTask(getServerConnection().getRemoteAddress(), getKeyData());
+      StatementTimeout timeout = new StatementTimeout(getServerConnection());
 
-      ScheduledFuture<?> taskHandle = getServerConnection().getIOExecutor().schedule(task, executionTimeout, MILLISECONDS);
+      try {
+        timeout.setTimeout(getServerConnection().scheduleTimeout(timeout, executionTimeout, MILLISECONDS));
+      }
+      catch (ClosedChannelException e) {
+        internalClose();
+        throw CLOSED_CONNECTION;
+      }
 
       try {
 
@@ -537,16 +705,16 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
       }
       finally {
 
-        // Cancel the scheduled running (if it hasn't began to run)
-        taskHandle.cancel(true);
-
-        // Also, ensure any task that is currently running also gets
-        // completely cancelled, or finishes, before returning
-        task.cancel();
+        // Cancel the timeout (if it hasn't expired) or ensure any
+        // cancel request it issued is delivered before returning
+        timeout.complete();
 
       }
 
     }
+    finally {
+      submissionLock.unlock();
+    }
 
   }
 
@@ -700,6 +868,11 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
   @Override
   protected void connectionClosed() {
 
+    ConnectionPool.Entry poolEntry = this.poolEntry;
+    if (poolEntry != null) {
+      poolEntry.discard();
+    }
+
     cleanupClosed();
 
     reportClosed();
@@ -715,7 +888,7 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
   }
 
   @Override
-  public synchronized boolean isValid(int timeout) throws SQLException {
+  public boolean isValid(int timeout) throws SQLException {
 
     //Not valid if connection is closed
     if (isClosed())
@@ -725,16 +898,22 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
       throw new SQLException("Timeout is less than 0");
 
     boolean result;
-    int origNetworkTimeout = networkTimeout;
+    validationLock.lock();
     try {
-      networkTimeout = (int) SECONDS.toMillis(timeout);
-      execute("SELECT '1'::char");
-      result = true;
+      int origNetworkTimeout = networkTimeout;
+      try {
+        networkTimeout = (int) SECONDS.toMillis(timeout);
+        execute("SELECT '1'::char");
+        result = true;
+      }
+      catch (Exception se) {
+        result = false;
+      }
+      networkTimeout = origNetworkTimeout;
     }
-    catch (Exception se) {
-      result = false;
+    finally {
+      validationLock.unlock();
     }
-    networkTimeout = origNetworkTimeout;
 
     return result;
   }
@@ -793,6 +972,10 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
     if (this.autoCommit == autoCommit)
       return;
 
+    if (!autoCommit && isReplication()) {
+      throw new SQLFeatureNotSupportedException("Manual commit mode is not supported by replication connections");
+    }
+
     // Commit any in-flight transaction (cannot call commit as it will start a
     // new transaction since we would still be in manual commit mode)
     if (!this.autoCommit && getTransactionStatus() != Idle) {
@@ -820,6 +1003,8 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
     }
 
     execute(getSetSessionReadabilityText(readOnly));
+
+    sessionModifications |= SESSION_SETTINGS;
   }
 
   @Override
@@ -845,6 +1030,8 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
     }
 
     execute(getSetSessionIsolationLevelText(level));
+
+    sessionModifications |= SESSION_SETTINGS;
   }
 
   @Override
@@ -852,11 +1039,16 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
     checkClosed();
     checkManualCommit();
 
+    // Report write-back errors before committing
+    flushRowWriters();
+
     // Commit the current transaction
     if (getTransactionStatus() != Idle) {
       execute("@TC");
     }
 
+    isCatalogModifiedInTransaction();
+
   }
 
   @Override
@@ -864,11 +1056,21 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
     checkClosed();
     checkManualCommit();
 
+    // Discard write-back results; they're being rolled back
+    try {
+      flushRowWriters();
+    }
+    catch (SQLException ignored) {
+      // Write-back errors can be ignored
+    }
+
     // Roll back the current transaction
     if (getTransactionStatus() != Idle) {
       execute("@TR");
     }
 
+    isCatalogModifiedInTransaction();
+
   }
 
   @Override
@@ -978,6 +1180,8 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
 
       release(executeForResultBatch(format("SET SCHEMA '%s'", schema)));
     }
+
+    sessionModifications |= SESSION_SETTINGS;
   }
 
   @Override
@@ -1066,6 +1270,29 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
 
     PGPreparedStatement statement =
         new PGPreparedStatement(this, resultSetType, resultSetConcurrency, resultSetHoldability, sqlText.toString(), parameterCount[0], cursorName);
+    statement.createsTableAs = isCreateTableAs(sqlText);
+
+    if (multiResultStreaming && cursorName == null && sqlText.getStatementCount() > 1) {
+
+      // Statements are prepared individually & executed as a pipeline
+
+      int statementCount = sqlText.getStatementCount();
+      String[] statementTexts = new String[statementCount];
+      int[] statementParameterCounts = new int[statementCount];
+
+      for (int statementIdx = 0; statementIdx < statementCount; ++statementIdx) {
+        final int idx = statementIdx;
+        StatementNode statementNode = sqlText.getStatement(idx);
+        statementNode.process(node -> {
+          if (node instanceof ParameterPiece)
+            statementParameterCounts[idx] += 1;
+          return node;
+        }, true);
+        statementTexts[idx] = statementNode.toString();
+      }
+
+      statement.setPipelinedStatements(statementTexts, statementParameterCounts);
+    }
 
     activeStatements.add(new WeakReference<>(statement));
 
@@ -1278,6 +1505,8 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
 
   private void setClientInfo(Setting<?> setting, String value) throws SQLException {
 
+    sessionModifications |= SESSION_SETTINGS;
+
     if (setting == CI_APPLICATION_NAME) {
 
       String sqlValue = escapeLiteral(value, settings.enabled(STANDARD_CONFORMING_STRINGS));
@@ -1354,7 +1583,18 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
 
   @Override
   public boolean isClosed() {
-    return !getServerConnection().isConnected();
+    ConnectionPool.Entry poolEntry = this.poolEntry;
+    return !isServerConnected() || (poolEntry != null && !poolEntry.isInUse());
+  }
+
+  /**
+   * Checks the state of the underlying server connection, regardless of
+   * whether the connection has been returned to a pool.
+   *
+   * @return true if connected to the server
+   */
+  boolean isServerConnected() {
+    return getServerConnection().isConnected();
   }
 
   @Override
@@ -1364,6 +1604,13 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
     if (isClosed())
       return;
 
+    // Pooled connections are returned to the pool
+    ConnectionPool.Entry poolEntry = this.poolEntry;
+    if (poolEntry != null) {
+      poolEntry.release();
+      return;
+    }
+
     internalClose();
   }
 
@@ -1385,10 +1632,15 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
 
     executor.execute(new CancelRequestTask(serverAddress, getKeyData()));
 
-    shutdown.syncUninterruptibly();
+    syncUninterruptibly(shutdown);
 
     if (housekeeper != null)
       housekeeper.remove(cleanupKey);
+
+    ConnectionPool.Entry poolEntry = this.poolEntry;
+    if (poolEntry != null) {
+      poolEntry.discard();
+    }
   }
 
   @Override
@@ -1533,6 +1785,18 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
     return preparedStatementCache != null;
   }
 
+  private void disposeEvictedStatements() {
+
+    String statementName;
+    while ((statementName = evictedStatementNames.poll()) != null) {
+      try {
+        PGStatement.dispose(this, statementName);
+      }
+      catch (SQLException ignored) {
+      }
+    }
+  }
+
   interface StatementDescriptionLoader {
     StatementDescription load() throws IOException, SQLException;
   }
@@ -1541,14 +1805,7 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
 
     StatementCacheKey key = new StatementCacheKey(sql, EMPTY_TYPES);
 
-    // Check prepared statement cache...
-    if (preparedStatementCache != null) {
-      PreparedStatementDescription cached = preparedStatementCache.get(key);
-      if (cached != null) return cached;
-    }
-
-    // Check description cache
-    StatementDescription cached = descriptionCache.get(key);
+    StatementDescription cached = findCachedStatementDescription(key);
     if (cached != null) return cached;
 
     try {
@@ -1564,6 +1821,179 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
   }
 
 
+  /**
+   * Finds a cached description of the SQL text, without loading it
+   * when none is available.
+   *
+   * @param key Cache key of the SQL text
+   * @return Cached description or null if not cached
+   */
+  StatementDescription findCachedStatementDescription(StatementCacheKey key) {
+
+    // Check prepared statement cache...
+    if (preparedStatementCache != null) {
+      PreparedStatementDescription cached = preparedStatementCache.get(key);
+      if (cached != null) return cached;
+    }
+
+    // Check description cache
+    if (descriptionCache != null) {
+      return descriptionCache.get(key);
+    }
+
+    return null;
+  }
+
+  void cacheStatementDescription(StatementCacheKey key, StatementDescription description) {
+    if (descriptionCache != null) {
+      descriptionCache.putIfAbsent(key, description);
+    }
+  }
+
+  void uncacheStatementDescription(StatementCacheKey key) {
+    if (descriptionCache != null) {
+      descriptionCache.remove(key);
+    }
+  }
+
+  boolean isBinaryResultFormatPreferred() {
+    return binaryResultFormatPreferred;
+  }
+
+  boolean isMultiResultStreaming() {
+    return multiResultStreaming;
+  }
+
+  /**
+   * Creates a handler that streams the results of a request producing
+   * multiple results; applying backpressure to the connection while
+   * results are waiting to be taken.
+   *
+   * @param describedResultFields Result fields of each executed statement
+   *                              or {@code null} for self-describing results
+   * @return Streamed results handler
+   */
+  StreamedResults createStreamedResults(ResultField[][] describedResultFields) {
+    return new StreamedResults(getServerConnection(), describedResultFields);
+  }
+
+  /**
+   * Creates a handler that queues the data received by a copy-out
+   * request; applying backpressure to the connection while data is
+   * waiting to be taken.
+   *
+   * @return Streamed copy data handler
+   */
+  StreamedCopyData createStreamedCopyData() {
+    return new StreamedCopyData(getServerConnection());
+  }
+
+  /**
+   * Called by updatable result sets to notify the connection that
+   * they have queued writes
+   *
+   * @param writer Writer with queued writes
+   */
+  void rowWriterPending(CursorRowWriter writer) {
+    pendingRowWriters.add(writer);
+  }
+
+  /**
+   * Called by updatable result sets to notify the connection that
+   * their queued writes have been flushed
+   *
+   * @param writer Flushed writer
+   */
+  void rowWriterFlushed(CursorRowWriter writer) {
+    pendingRowWriters.remove(writer);
+  }
+
+  private void flushRowWriters() throws SQLException {
+
+    // Writers are also flushed by their result sets (e.g. when closed by the housekeeper)
+    List<CursorRowWriter> writers;
+    synchronized (pendingRowWriters) {
+      if (pendingRowWriters.isEmpty()) {
+        return;
+      }
+      writers = new ArrayList<>(pendingRowWriters);
+    }
+
+    SQLException error = null;
+
+    for (CursorRowWriter writer : writers) {
+      try {
+        writer.flush();
+      }
+      catch (SQLException e) {
+        if (error == null) {
+          error = e;
+        }
+        else {
+          error.setNextException(e);
+        }
+      }
+    }
+
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /**
+   * Inspects the results of executed commands, invalidating the shared
+   * catalog cache when any of them modified the catalog.
+   *
+   * Connections not using the catalog cache skip the inspection; other
+   * connections detect their changes when revalidating the cache.
+   *
+   * @param resultBatches Results of the executed commands
+   * @param createsTableAs Whether the executed SQL text creates a table from
+   *                       a query, which cannot be detected from its results
+   */
+  void checkCatalogModified(List<ResultBatch> resultBatches, boolean createsTableAs) {
+
+    if (!catalogCacheEnabled) {
+      return;
+    }
+
+    boolean modified = createsTableAs;
+    for (int idx = 0; idx < resultBatches.size() && !modified; ++idx) {
+      modified = CatalogCache.isCatalogCommand(resultBatches.get(idx).getCommand());
+    }
+
+    if (modified) {
+      catalogModified = true;
+      CatalogCache.get(this).invalidate();
+    }
+
+  }
+
+  /**
+   * Checks if the current transaction has modified the catalog, in which
+   * case the shared catalog cache cannot be used.
+   *
+   * Upon completion of a transaction that modified the catalog the
+   * shared catalog cache is invalidated again, as other connections may
+   * have loaded the catalog in the meantime.
+   *
+   * @return <code>true</code> if the current transaction modified the catalog
+   */
+  boolean isCatalogModifiedInTransaction() throws SQLException {
+
+    if (!catalogCacheEnabled) {
+      return false;
+    }
+
+    if (catalogModified && getTransactionStatus() == Idle) {
+      catalogModified = false;
+      CatalogCache.get(this).invalidate();
+    }
+
+    return catalogModified;
+  }
+
+
   interface PreparedStatementDescriptionLoader {
     PreparedStatementDescription load() throws IOException, SQLException;
 
@@ -1580,9 +2010,19 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
       }
     }
 
+    Metrics metrics = getMetrics();
+
     PreparedStatementDescription cached = preparedStatementCache.get(key);
-    if (cached != null) return cached;
+    if (cached != null) {
+      if (metrics != null) {
+        metrics.preparedStatementCacheHit();
+      }
+      return cached;
+    }
 
+    if (metrics != null) {
+      metrics.preparedStatementCacheMiss();
+    }
 
     if (preparedStatementHeat != null) {
       Integer heat = preparedStatementHeat.computeIfPresent(key, (k, h) -> h + 1);
@@ -1595,6 +2035,68 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
       }
     }
 
+    return loadCachedPreparedStatement(key, loader);
+  }
+
+  /**
+   * Looks up the prepared statement for the SQL text of a simple
+   * statement. Until the SQL has been executed enough times to
+   * reach the promotion threshold no statement is prepared and
+   * <code>null</code> is returned.
+   *
+   * @param key Cache key of the simple statement's SQL text
+   * @param loader Loader used to prepare the statement when promoted
+   * @return Cached prepared statement or null if the SQL should
+   *         be executed directly.
+   */
+  PreparedStatementDescription getPromotedStatement(StatementCacheKey key, PreparedStatementDescriptionLoader loader) throws SQLException {
+
+    if (simpleStatementHeat == null) {
+      return null;
+    }
+
+    PreparedStatementDescription cached = preparedStatementCache.get(key);
+    if (cached != null) {
+      Metrics metrics = getMetrics();
+      if (metrics != null) {
+        metrics.preparedStatementCacheHit();
+      }
+      return cached;
+    }
+
+    Integer heat = simpleStatementHeat.merge(key, 1, Integer::sum);
+    if (heat < simpleStatementPromotionThreshold) {
+      return null;
+    }
+
+    simpleStatementHeat.remove(key);
+
+    return loadCachedPreparedStatement(key, loader);
+  }
+
+  /**
+   * Evicts a promoted statement whose server statement is no longer valid,
+   * e.g. because DDL changed its result type. The SQL is executed directly
+   * until it is promoted again.
+   *
+   * @param key Cache key of the simple statement's SQL text
+   * @param promoted Promoted statement to evict
+   */
+  void evictPromotedStatement(StatementCacheKey key, PreparedStatementDescription promoted) {
+
+    if (preparedStatementCache.remove(key, promoted)) {
+      evictedStatementNames.add(promoted.name);
+    }
+
+    simpleStatementHeat.remove(key);
+    uncacheStatementDescription(key);
+
+    disposeEvictedStatements();
+  }
+
+  private PreparedStatementDescription loadCachedPreparedStatement(StatementCacheKey key, PreparedStatementDescriptionLoader loader) throws SQLException {
+
+    PreparedStatementDescription cached;
     try {
       cached = loader.load();
     }
@@ -1603,10 +2105,13 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
     }
 
     preparedStatementCache.put(key, cached);
+    disposeEvictedStatements();
 
     // Save a copy in the description cache as well. This cache uses no parameter types for
     // more general lookup capability.
-    descriptionCache.putIfAbsent(new StatementCacheKey(key.getSql(), EMPTY_TYPES), cached);
+    if (descriptionCache != null) {
+      descriptionCache.putIfAbsent(new StatementCacheKey(key.getSql(), EMPTY_TYPES), cached);
+    }
 
     return cached;
   }
@@ -1705,6 +2210,291 @@ public class PGDirectConnection extends BasicContext implements PGConnection {
 
   }
 
+  /**
+   * Called by copy row writers, while holding the submission lock, as
+   * their copy is submitted; until completed no other requests can be
+   * executed.
+   *
+   * @param writer Started writer
+   */
+  void copyInStarted(PGCopyRowWriter writer) {
+    activeCopyWriter = writer;
+  }
+
+  /**
+   * Called by copy row writers once their copy has been ended or failed.
+   * Statement closes deferred during the copy are sent.
+   *
+   * @param writer Completed writer
+   */
+  void copyInCompleted(PGCopyRowWriter writer) {
+
+    Lock submissionLock = getRequestExecutor().getSubmissionLock();
+    submissionLock.lock();
+    try {
+
+      if (activeCopyWriter != writer) {
+        return;
+      }
+
+      activeCopyWriter = null;
+
+      String statementName;
+      while ((statementName = deferredStatementNames.poll()) != null) {
+        try {
+          getRequestExecutor().close(Statement, statementName);
+        }
+        catch (IOException ignored) {
+          // Close errors can be ignored
+        }
+      }
+
+    }
+    finally {
+      submissionLock.unlock();
+    }
+  }
+
+  private boolean isCopyInActive() {
+    PGCopyRowWriter copyWriter = activeCopyWriter;
+    return copyWriter != null && !copyWriter.isFinished();
+  }
+
+  private void checkNoActiveCopy() throws SQLException {
+    if (isCopyInActive()) {
+      throw new PGSQLSimpleException("COPY IN in progress; end or cancel the copy before executing other statements", "55000");
+    }
+  }
+
+  /**
+   * Closes a server statement without waiting for its completion.
+   *
+   * Closes are issued by statement closing and housekeeping, which cannot
+   * be rejected; while a COPY IN is active, when the server accepts only
+   * copy data, the close is deferred until the copy completes.
+   *
+   * @param statementName Name of the statement to close
+   * @throws IOException If an error occurs sending the close
+   */
+  void closeStatement(String statementName) throws IOException {
+
+    Lock submissionLock = getRequestExecutor().getSubmissionLock();
+    submissionLock.lock();
+    try {
+
+      if (isCopyInActive()) {
+        deferredStatementNames.add(statementName);
+        return;
+      }
+
+      getRequestExecutor().close(Statement, statementName);
+    }
+    finally {
+      submissionLock.unlock();
+    }
+  }
+
+  /**
+   * Asks the server to cancel the request it is currently executing
+   */
+  void requestCancel() {
+    new CancelRequestTask(getServerConnection().getRemoteAddress(), getKeyData()).go();
+  }
+
+  @Override
+  public PGCopyRowWriter copyRowWriter(String sql, SQLType... columnTypes) throws SQLException {
+    checkClosed();
+
+    return PGCopyRowWriter.start(this, sql, resolveCopyTypes(columnTypes));
+  }
+
+  @Override
+  public PGCopyRowReader copyRowReader(String sql, SQLType... columnTypes) throws SQLException {
+    checkClosed();
+
+    return PGCopyRowReader.start(this, sql, resolveCopyTypes(columnTypes));
+  }
+
+  private Type[] resolveCopyTypes(SQLType[] columnTypes) throws SQLException {
+
+    Type[] types = new Type[columnTypes.length];
+    for (int idx = 0; idx < columnTypes.length; ++idx) {
+      Type type = JDBCTypeMapping.getType(columnTypes[idx], null, registry);
+      if (type == null || !type.isParameterFormatSupported(FieldFormat.Binary) || !type.isResultFormatSupported(FieldFormat.Binary)) {
+        throw new PGSQLSimpleException("Column type " + columnTypes[idx].getName() + " does not support binary COPY");
+      }
+      types[idx] = type;
+    }
+
+    return types;
+  }
+
+  @Override
+  public PGReplicationStream startLogicalReplication(String slotName, long startLsn, Map<String, String> options) throws SQLException {
+    checkClosed();
+
+    if (!isReplication()) {
+      throw new PGSQLSimpleException("Connection not in replication mode (see the replication setting)");
+    }
+
+    return PGReplicationStream.start(this, getServerConnection(), slotName, startLsn, options, getSetting(REPLICATION_STATUS_INTERVAL));
+  }
+
+  interface AsyncResultFunction<T> {
+    T apply(PGStatement statement, ResultBatch resultBatch) throws SQLException;
+  }
+
+  @Override
+  public CompletableFuture<ResultSet> executeQueryAsync(String sql) {
+
+    return executeAsync(sql, (statement, resultBatch) -> {
+
+      if (!resultBatch.hasRows()) {
+        resultBatch.release();
+        statement.close();
+        throw NO_RESULT_SET_AVAILABLE;
+      }
+
+      statement.closeOnCompletion();
+
+      ResultField[] resultFields = resultBatch.getFields();
+
+      return statement.createResultSet(resultFields, resultBatch.takeRows(), true, typeMap);
+    });
+  }
+
+  @Override
+  public CompletableFuture<Long> executeUpdateAsync(String sql) {
+
+    return executeAsync(sql, (statement, resultBatch) -> {
+
+      try (ResultBatch batch = resultBatch) {
+
+        if (batch.hasRows()) {
+          throw NO_RESULT_COUNT_AVAILABLE;
+        }
+
+        return firstNonNull(batch.getRowsAffected(), 0L);
+      }
+      finally {
+        statement.close();
+      }
+    });
+  }
+
+  @Override
+  public PGRowPublisher streamQuery(String sql) {
+    return streamQuery(sql, ForkJoinPool.commonPool());
+  }
+
+  @Override
+  public PGRowPublisher streamQuery(String sql, Executor executor) {
+
+    try {
+      checkClosed();
+
+      SQLText sqlText = parseSQL(sql);
+      if (sqlText.getStatementCount() > 1) {
+        throw new SQLException("Streaming requires a single statement");
+      }
+
+      SQLTextEscapes.processEscapes(sqlText, this);
+
+      return new PGRowStream(this, sqlText.toString(), executor);
+    }
+    catch (SQLException e) {
+      return PGRowStream.failed(e);
+    }
+  }
+
+  @Override
+  public void addMetricsListener(PGMetricsListener listener) throws SQLException {
+    checkClosed();
+
+    Metrics metrics = getMetrics();
+    if (metrics == null) {
+      throw new SQLException("Metrics are not enabled (" + METRICS_ENABLED.getName() + ")");
+    }
+
+    metrics.addListener(listener);
+  }
+
+  @Override
+  public void removeMetricsListener(PGMetricsListener listener) {
+    Metrics metrics = getMetrics();
+    if (metrics != null) {
+      metrics.removeListener(listener);
+    }
+  }
+
+  /**
+   * Issues the given SQL text as an extended query without awaiting its
+   * completion. The completion handler is called on an I/O thread, so the
+   * result is transformed on another thread to allow dependent actions to
+   * issue blocking requests on this connection.
+   *
+   * @param sql SQL text to execute
+   * @param resultFunction Function to produce the future's result
+   * @return Future completed with the result of {@code resultFunction}
+   */
+  private <T> CompletableFuture<T> executeAsync(String sql, AsyncResultFunction<T> resultFunction) {
+
+    PGStatement statement;
+    FutureQueryResult handler = new FutureQueryResult();
+    try {
+      checkClosed();
+
+      SQLText sqlText = parseSQL(sql);
+      if (sqlText.getStatementCount() > 1) {
+        throw new SQLException("Asynchronous execution requires a single statement");
+      }
+
+      SQLTextEscapes.processEscapes(sqlText, this);
+
+      String nativeSql = sqlText.toString();
+
+      statement = createStatement();
+
+      execute((long timeout) ->
+          getRequestExecutor().query(nativeSql, null, EMPTY_FORMATS, EMPTY_BUFFERS, EMPTY_FORMATS, 0, handler)
+      );
+    }
+    catch (SQLException e) {
+      CompletableFuture<T> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      return failed;
+    }
+
+    return handler.getFuture()
+        .handleAsync((resultBatch, error) -> {
+
+          try {
+
+            if (error != null) {
+              statement.close();
+              if (error instanceof Exception) {
+                throw makeSQLException((Exception) error);
+              }
+              throw new CompletionException(error);
+            }
+
+            statement.warningChain = makeSQLWarningChain(handler.getNotices());
+
+            transformFieldTypes(resultBatch, getRegistry()::resolve);
+
+            return resultFunction.apply(statement, resultBatch);
+          }
+          catch (IOException e) {
+            resultBatch.release();
+            throw new CompletionException(makeSQLException(e));
+          }
+          catch (SQLException e) {
+            throw new CompletionException(e);
+          }
+
+        });
+  }
+
 }
 
 class StatementCacheKey {
@@ -1767,12 +2557,45 @@ class StatementDescription {
 
   Type[] parameterTypes;
   ResultField[] resultFields;
+  private ColumnIndex columnIndex;
+  private Boolean binaryResultsSupported;
 
   StatementDescription(Type[] parameterTypes, ResultField[] resultFields) {
     this.parameterTypes = parameterTypes;
     this.resultFields = resultFields;
   }
 
+  /**
+   * Checks if every result field can be decoded from the binary format
+   *
+   * @param registry Registry used to resolve field types
+   * @return <code>true</code> if all fields support binary results
+   */
+  boolean isBinaryResultsSupported(Registry registry) throws IOException {
+    Boolean supported = binaryResultsSupported;
+    if (supported == null) {
+      supported = true;
+      for (ResultField resultField : resultFields) {
+        Type type = registry.resolve(resultField.getTypeRef());
+        if (type == null || !type.isResultFormatSupported(FieldFormat.Binary)) {
+          supported = false;
+          break;
+        }
+      }
+      binaryResultsSupported = supported;
+    }
+    return supported;
+  }
+
+  ColumnIndex getColumnIndex() {
+    ColumnIndex columnIndex = this.columnIndex;
+    if (columnIndex == null) {
+      columnIndex = new ColumnIndex(resultFields);
+      this.columnIndex = columnIndex;
+    }
+    return columnIndex;
+  }
+
 }
 
 class PreparedStatementDescription extends StatementDescription {
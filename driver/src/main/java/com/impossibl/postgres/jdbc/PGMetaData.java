@@ -28,6 +28,7 @@
  */
 package com.impossibl.postgres.jdbc;
 
+import com.impossibl.postgres.api.jdbc.PGConnection;
 import com.impossibl.postgres.protocol.ResultField;
 import com.impossibl.postgres.protocol.RowDataSet;
 import com.impossibl.postgres.protocol.v30.BufferRowData;
@@ -96,18 +97,20 @@ abstract class PGMetaData {
   }
 
   PGDirectConnection connection;
+  PGConnection handle;
 
   PGMetaData(PGDirectConnection connection) {
     this.connection = connection;
+    this.handle = connection.handle;
   }
 
-  public PGDirectConnection getConnection() throws SQLException {
-    return connection;
+  public PGConnection getConnection() throws SQLException {
+    return handle;
   }
 
   int execForInteger(String query) throws SQLException {
 
-    String res = getConnection().executeForString(query);
+    String res = connection.executeForString(query);
     if (res == null) {
       throw SERVER_VERSION_NOT_SUPPORTED;
     }
@@ -128,7 +131,7 @@ abstract class PGMetaData {
 
   PGResultSet execForResultSet(String sql, List<Object> params) throws SQLException {
 
-    PGPreparedStatement ps = getConnection().prepareStatement(sql);
+    PGPreparedStatement ps = connection.prepareStatement(sql);
     ps.closeOnCompletion();
 
     for (int c = 0; c < params.size(); ++c) {
@@ -143,16 +146,21 @@ abstract class PGMetaData {
     RowDataSet rows = new RowDataSet(results.size());
     for (Object[] resultValues : results) {
       try {
-        rows.add(BufferRowData.encode(getConnection(), resultFields, resultValues));
+        rows.add(BufferRowData.encode(connection, resultFields, resultValues));
       }
       catch (IOException e) {
         throw new PGSQLSimpleException("Error encoding row value", e);
       }
     }
 
-    PGStatement stmt = getConnection().createStatement();
+    return createResultSet(resultFields, rows);
+  }
+
+  PGResultSet createResultSet(ResultField[] resultFields, RowDataSet rows) throws SQLException {
+
+    PGStatement stmt = connection.createStatement();
     stmt.closeOnCompletion();
-    return stmt.createResultSet(resultFields, rows, true, getConnection().getTypeMap());
+    return stmt.createResultSet(resultFields, rows, true, connection.getTypeMap());
   }
 
   List<ColumnData> getColumnData(String sql, List<Object> params) throws SQLException {
@@ -30,7 +30,12 @@ package com.impossibl.postgres.jdbc;
 
 import com.impossibl.postgres.api.jdbc.PGAnyType;
 import com.impossibl.postgres.api.jdbc.PGConnection;
+import com.impossibl.postgres.api.jdbc.PGCopyRowReader;
+import com.impossibl.postgres.api.jdbc.PGCopyRowWriter;
+import com.impossibl.postgres.api.jdbc.PGMetricsListener;
 import com.impossibl.postgres.api.jdbc.PGNotificationListener;
+import com.impossibl.postgres.api.jdbc.PGReplicationStream;
+import com.impossibl.postgres.api.jdbc.PGRowPublisher;
 
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -41,8 +46,10 @@ import java.sql.Clob;
 import java.sql.DatabaseMetaData;
 import java.sql.NClob;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
+import java.sql.SQLType;
 import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Savepoint;
@@ -50,6 +57,7 @@ import java.sql.Statement;
 import java.sql.Struct;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 
 /**
@@ -184,6 +192,51 @@ public class PGPooledConnectionDelegator implements PGConnection {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public PGCopyRowWriter copyRowWriter(String sql, SQLType... columnTypes) throws SQLException {
+    try {
+      checkClosed();
+      return delegator.copyRowWriter(sql, columnTypes);
+    }
+    catch (SQLException se) {
+      owner.fireConnectionError(se);
+      throw se;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public PGCopyRowReader copyRowReader(String sql, SQLType... columnTypes) throws SQLException {
+    try {
+      checkClosed();
+      return delegator.copyRowReader(sql, columnTypes);
+    }
+    catch (SQLException se) {
+      owner.fireConnectionError(se);
+      throw se;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public PGReplicationStream startLogicalReplication(String slotName, long startLsn, Map<String, String> options) throws SQLException {
+    try {
+      checkClosed();
+      return delegator.startLogicalReplication(slotName, startLsn, options);
+    }
+    catch (SQLException se) {
+      owner.fireConnectionError(se);
+      throw se;
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -1046,6 +1099,89 @@ public class PGPooledConnectionDelegator implements PGConnection {
     return delegator.resolveType(name);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<ResultSet> executeQueryAsync(String sql) {
+    try {
+      checkClosed();
+    }
+    catch (SQLException se) {
+      CompletableFuture<ResultSet> failed = new CompletableFuture<>();
+      failed.completeExceptionally(se);
+      return failed;
+    }
+    return delegator.executeQueryAsync(sql);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CompletableFuture<Long> executeUpdateAsync(String sql) {
+    try {
+      checkClosed();
+    }
+    catch (SQLException se) {
+      CompletableFuture<Long> failed = new CompletableFuture<>();
+      failed.completeExceptionally(se);
+      return failed;
+    }
+    return delegator.executeUpdateAsync(sql);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public PGRowPublisher streamQuery(String sql) {
+    try {
+      checkClosed();
+    }
+    catch (SQLException se) {
+      return PGRowStream.failed(se);
+    }
+    return delegator.streamQuery(sql);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public PGRowPublisher streamQuery(String sql, Executor executor) {
+    try {
+      checkClosed();
+    }
+    catch (SQLException se) {
+      return PGRowStream.failed(se);
+    }
+    return delegator.streamQuery(sql, executor);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void addMetricsListener(PGMetricsListener listener) throws SQLException {
+    checkClosed();
+    delegator.addMetricsListener(listener);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeMetricsListener(PGMetricsListener listener) {
+    try {
+      checkClosed();
+      delegator.removeMetricsListener(listener);
+    }
+    catch (SQLException se) {
+      // Nothing to do
+    }
+  }
+
   void reset() {
     if (delegator != null) {
       automatic = true;
@@ -35,7 +35,6 @@ import com.impossibl.postgres.protocol.RequestExecutorHandlers.PrepareResult;
 import com.impossibl.postgres.protocol.ResultBatch;
 import com.impossibl.postgres.protocol.ResultField;
 import com.impossibl.postgres.protocol.RowDataSet;
-import com.impossibl.postgres.protocol.ServerObjectType;
 import com.impossibl.postgres.protocol.TransactionStatus;
 import com.impossibl.postgres.types.Type;
 import com.impossibl.postgres.utils.ByteBufs;
@@ -92,7 +91,6 @@ import java.util.Calendar;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static java.lang.Integer.toHexString;
 import static java.lang.Long.min;
 import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -118,6 +116,9 @@ class PGPreparedStatement extends PGStatement implements PreparedStatement {
   private List<ByteBuf[]> batchParameterBuffers;
   private boolean wantsGeneratedKeys;
   protected boolean parsed;
+  private String[] pipelinedSqlTexts;
+  private int[] pipelinedParameterCounts;
+  private PreparedStatementDescription[] pipelinedStatements;
 
 
   PGPreparedStatement(PGDirectConnection connection, int type, int concurrency, int holdability, String sqlText, int parameterCount, String cursorName) {
@@ -135,6 +136,18 @@ class PGPreparedStatement extends PGStatement implements PreparedStatement {
     this.wantsGeneratedKeys = true;
   }
 
+  /**
+   * Executes the SQL text's statements as a pipeline of individually
+   * prepared statements, instead of a single statement.
+   *
+   * @param sqlTexts SQL text of each statement
+   * @param parameterCounts Number of parameters in each statement
+   */
+  void setPipelinedStatements(String[] sqlTexts, int[] parameterCounts) {
+    this.pipelinedSqlTexts = sqlTexts;
+    this.pipelinedParameterCounts = parameterCounts;
+  }
+
   private int checkParameterIndex(int parameterIdx) throws SQLException {
 
     if (parameterIdx < 1 || parameterIdx > parameterTypes.length) {
@@ -210,6 +223,15 @@ class PGPreparedStatement extends PGStatement implements PreparedStatement {
   @Override
   void internalClose() throws SQLException {
 
+    if (pipelinedStatements != null) {
+      for (PreparedStatementDescription pipelinedStatement : pipelinedStatements) {
+        if (!pipelinedStatement.name.startsWith(CACHED_STATEMENT_PREFIX)) {
+          dispose(connection, pipelinedStatement.name);
+        }
+      }
+      pipelinedStatements = null;
+    }
+
     super.internalClose();
 
     releaseAll(parameterBuffers);
@@ -241,8 +263,36 @@ class PGPreparedStatement extends PGStatement implements PreparedStatement {
       return;
     }
 
+    if (pipelinedSqlTexts != null) {
+
+      // Each statement is described individually
+      Type[] describedTypes = new Type[parameterCount];
+      int parameterOffset = 0;
+      for (int idx = 0; idx < pipelinedSqlTexts.length; ++idx) {
+        StatementDescription description = describe(pipelinedSqlTexts[idx]);
+        if (description == null) {
+          return;
+        }
+        copyParameterTypes(description.parameterTypes, describedTypes, parameterOffset, pipelinedParameterCounts[idx]);
+        parameterOffset += pipelinedParameterCounts[idx];
+      }
+
+      parameterTypesParsed = describedTypes;
+      return;
+    }
+
     // First, check statement cache
-    StatementDescription cachedDescription = connection.getCachedStatementDescription(sqlText, () -> {
+    StatementDescription cachedDescription = describe(sqlText);
+
+    if (cachedDescription != null) {
+      parameterTypesParsed = cachedDescription.parameterTypes;
+    }
+
+  }
+
+  private StatementDescription describe(String sqlText) throws SQLException {
+
+    return connection.getCachedStatementDescription(sqlText, () -> {
 
       PrepareResult result = connection.execute(timeout -> {
         PrepareResult handler = new PrepareResult();
@@ -253,11 +303,47 @@ class PGPreparedStatement extends PGStatement implements PreparedStatement {
 
       return new StatementDescription(result.getDescribedParameterTypes(connection), result.getDescribedResultFields());
     });
+  }
 
-    if (cachedDescription != null) {
-      parameterTypesParsed = cachedDescription.parameterTypes;
+  private static void copyParameterTypes(Type[] statementTypes, Type[] types, int offset, int count) {
+    System.arraycopy(statementTypes, 0, types, offset, Math.min(statementTypes.length, count));
+  }
+
+  private void parsePipelined() throws SQLException {
+
+    PreparedStatementDescription[] statements = new PreparedStatementDescription[pipelinedSqlTexts.length];
+    Type[] parsedTypes = new Type[parameterCount];
+
+    int parameterOffset = 0;
+    for (int idx = 0; idx < pipelinedSqlTexts.length; ++idx) {
+
+      int statementParameterCount = pipelinedParameterCounts[idx];
+      Type[] statementParameterTypes = Arrays.copyOfRange(parameterTypes, parameterOffset, parameterOffset + statementParameterCount);
+
+      final StatementCacheKey key = new StatementCacheKey(pipelinedSqlTexts[idx], statementParameterTypes);
+
+      PreparedStatementDescription statement = connection.getCachedPreparedStatement(key, () -> prepare(key));
+      if (statement == null) {
+        // Not (yet) cached, prepare it for the lifetime of this statement
+        try {
+          statement = prepare(connection.getNextStatementName(), key);
+        }
+        catch (IOException e) {
+          throw makeSQLException(e);
+        }
+      }
+
+      statements[idx] = statement;
+
+      copyParameterTypes(statement.parameterTypes, parsedTypes, parameterOffset, statementParameterCount);
+      parameterOffset += statementParameterCount;
     }
 
+    pipelinedStatements = statements;
+    parameterTypesParsed = parsedTypes;
+    resultFields = statements[0].resultFields;
+    resultColumnIndex = statements[0].getColumnIndex();
+    parsed = true;
   }
 
   void parseIfNeeded() throws SQLException {
@@ -270,47 +356,29 @@ class PGPreparedStatement extends PGStatement implements PreparedStatement {
 
       if (name != null && !name.startsWith(CACHED_STATEMENT_PREFIX)) {
         try {
-          connection.getRequestExecutor().close(ServerObjectType.Statement, name);
+          connection.closeStatement(name);
         }
         catch (IOException ignored) {
           // Close errors can be ignored
         }
       }
 
+      if (pipelinedSqlTexts != null) {
+        parsePipelined();
+        return;
+      }
+
       PreparedStatementDescription cachedStatement;
 
       final StatementCacheKey key = new StatementCacheKey(sqlText, parameterTypes);
 
-      cachedStatement = connection.getCachedPreparedStatement(key, () -> {
-
-        String name = connection.isCacheEnabled() ?
-            CACHED_STATEMENT_PREFIX + toHexString(key.hashCode()) : NO_CACHE_STATEMENT_PREFIX + toHexString(key.hashCode());
-
-        PrepareResult prep = connection.execute((timeout) -> {
-          PrepareResult handler = new PrepareResult();
-          connection.getRequestExecutor().prepare(name, sqlText, parameterTypes, handler);
-          handler.await(timeout, MILLISECONDS);
-          return handler;
-        });
-
-        warningChain = chainWarnings(warningChain, prep);
-
-        // Results are always described as "Text"... update them to our preferred format.
-        ResultField[] describedResultFields = prep.getDescribedResultFields().clone();
-        for (ResultField describedResultField : describedResultFields) {
-          Type type = connection.getRegistry().resolve(describedResultField.getTypeRef());
-          if (type != null) {
-            describedResultField.setFormat(type.getResultFormat());
-          }
-        }
-
-        return new PreparedStatementDescription(name, prep.getDescribedParameterTypes(connection), describedResultFields);
-      });
+      cachedStatement = connection.getCachedPreparedStatement(key, () -> prepare(key));
 
       if (cachedStatement != null) {
         name = cachedStatement.name;
         parameterTypesParsed = cachedStatement.parameterTypes;
         resultFields = cachedStatement.resultFields;
+        resultColumnIndex = cachedStatement.getColumnIndex();
         parsed = true;
       }
 
@@ -318,6 +386,27 @@ class PGPreparedStatement extends PGStatement implements PreparedStatement {
 
   }
 
+  private boolean executePipelined() throws SQLException {
+
+    int statementCount = pipelinedStatements.length;
+    String[] statementNames = new String[statementCount];
+    FieldFormat[][] statementParameterFormats = new FieldFormat[statementCount][];
+    ByteBuf[][] statementParameterBuffers = new ByteBuf[statementCount][];
+    ResultField[][] statementResultFields = new ResultField[statementCount][];
+
+    int parameterOffset = 0;
+    for (int idx = 0; idx < statementCount; ++idx) {
+      int parameterEnd = parameterOffset + pipelinedParameterCounts[idx];
+      statementNames[idx] = pipelinedStatements[idx].name;
+      statementParameterFormats[idx] = Arrays.copyOfRange(parameterFormats, parameterOffset, parameterEnd);
+      statementParameterBuffers[idx] = Arrays.copyOfRange(parameterBuffers, parameterOffset, parameterEnd);
+      statementResultFields[idx] = pipelinedStatements[idx].resultFields;
+      parameterOffset = parameterEnd;
+    }
+
+    return super.executePipelined(statementNames, statementParameterFormats, statementParameterBuffers, statementResultFields);
+  }
+
   boolean allowBatchSelects() {
     return false;
   }
@@ -332,7 +421,10 @@ class PGPreparedStatement extends PGStatement implements PreparedStatement {
 
     boolean res;
 
-    if (name == null) {
+    if (pipelinedStatements != null) {
+      res = executePipelined();
+    }
+    else if (name == null) {
       res = super.executeDirect(sqlText, parameterFormats, parameterBuffers, resultFields);
     }
     else {
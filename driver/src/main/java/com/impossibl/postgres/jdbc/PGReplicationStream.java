@@ -0,0 +1,579 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.protocol.CopyDataWriter;
+import com.impossibl.postgres.protocol.CopyFormat;
+import com.impossibl.postgres.protocol.FieldFormat;
+import com.impossibl.postgres.protocol.Notice;
+import com.impossibl.postgres.protocol.RequestExecutor.CopyBothHandler;
+import com.impossibl.postgres.protocol.ServerConnection;
+import com.impossibl.postgres.protocol.TransactionStatus;
+import com.impossibl.postgres.system.NoticeException;
+import com.impossibl.postgres.utils.BlockingReadTimeoutException;
+
+import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLException;
+import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLWarningChain;
+import static com.impossibl.postgres.utils.Await.awaitUninterruptibly;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Logical replication stream, running <code>START_REPLICATION</code>
+ * in copy-both mode.
+ *
+ * <code>XLogData</code> messages are delivered as retained slices of the
+ * received buffers. All stream state is confined to the connection's I/O
+ * thread; calls from other threads are submitted to it. Reading from
+ * the server is suspended whenever messages are pending with no demand
+ * to deliver them, and standby status updates are sent by a fixed rate
+ * timer on the I/O thread.
+ */
+class PGReplicationStream implements com.impossibl.postgres.api.jdbc.PGReplicationStream {
+
+  private static final byte XLOG_DATA = 'w';
+  private static final byte PRIMARY_KEEPALIVE = 'k';
+  private static final byte STANDBY_STATUS_UPDATE = 'r';
+
+  // Server times are in microseconds since 2000-01-01 00:00:00 UTC
+  private static final long SERVER_EPOCH_MILLIS = 946684800000L;
+
+  static class Message implements com.impossibl.postgres.api.jdbc.PGReplicationStream.Message {
+
+    private static final AtomicReferenceFieldUpdater<Message, ByteBuf> DATA =
+        AtomicReferenceFieldUpdater.newUpdater(Message.class, ByteBuf.class, "data");
+
+    private long walStart;
+    private long walEnd;
+    private long sendTime;
+    private volatile ByteBuf data;
+
+    Message(long walStart, long walEnd, long sendTime, ByteBuf data) {
+      this.walStart = walStart;
+      this.walEnd = walEnd;
+      this.sendTime = sendTime;
+      this.data = data;
+    }
+
+    @Override
+    public long getWalStart() {
+      return walStart;
+    }
+
+    @Override
+    public long getWalEnd() {
+      return walEnd;
+    }
+
+    @Override
+    public long getSendTime() {
+      return sendTime / 1000 + SERVER_EPOCH_MILLIS;
+    }
+
+    @Override
+    public ByteBuffer getData() {
+      ByteBuf data = this.data;
+      if (data == null) {
+        throw new IllegalStateException("Message released");
+      }
+      return data.nioBuffer().asReadOnlyBuffer();
+    }
+
+    @Override
+    public void release() {
+      ByteBuf data = DATA.getAndSet(this, null);
+      if (data != null) {
+        data.release();
+      }
+    }
+
+  }
+
+  private class Handler implements CopyBothHandler {
+
+    @Override
+    public void handleStart(CopyFormat format, FieldFormat[] fieldFormats, CopyDataWriter writer) {
+      PGReplicationStream.this.writer = writer;
+      statusTimer = executor.scheduleAtFixedRate(PGReplicationStream.this::statusTimerFired, statusInterval, statusInterval, MILLISECONDS);
+      started.countDown();
+    }
+
+    @Override
+    public void handleData(ByteBuf data) throws IOException {
+
+      switch (data.readByte()) {
+        case XLOG_DATA: {
+          long walStart = data.readLong();
+          long walEnd = data.readLong();
+          long sendTime = data.readLong();
+
+          if (walStart > receivedLsn) {
+            receivedLsn = walStart;
+          }
+
+          // Messages received after the client ended its side are discarded
+          if (done) {
+            return;
+          }
+
+          pending.add(new Message(walStart, walEnd, sendTime, data.retainedSlice()));
+          drain();
+          break;
+        }
+
+        case PRIMARY_KEEPALIVE: {
+          data.skipBytes(16);
+          if (data.readBoolean()) {
+            sendStatus();
+          }
+          break;
+        }
+
+        default:
+          // Ignore unknown messages
+      }
+    }
+
+    @Override
+    public void handleDone() throws IOException {
+      if (!done) {
+        end();
+      }
+    }
+
+    @Override
+    public void handleComplete() {
+    }
+
+    @Override
+    public void handleError(Throwable cause, List<Notice> notices) {
+      connection.addWarning(makeSQLWarningChain(notices));
+      if (error == null) {
+        error = cause;
+      }
+      started.countDown();
+
+      // Connection level failures are not followed by a ready message
+      if (!(cause instanceof NoticeException)) {
+        terminate();
+      }
+    }
+
+    @Override
+    public void handleReady(TransactionStatus transactionStatus) {
+      started.countDown();
+      terminate();
+    }
+
+  }
+
+  private PGDirectConnection connection;
+  private ServerConnection serverConnection;
+  private ScheduledExecutorService executor;
+  private long statusInterval;
+  private CountDownLatch started = new CountDownLatch(1);
+  private CountDownLatch ready = new CountDownLatch(1);
+  private volatile CopyDataWriter writer;
+  private volatile Throwable error;
+  private volatile long receivedLsn;
+  private AtomicLong flushedLsn = new AtomicLong();
+  private AtomicLong appliedLsn = new AtomicLong();
+
+  // Confined to the I/O thread
+  private ArrayDeque<Message> pending = new ArrayDeque<>();
+  private ScheduledFuture<?> statusTimer;
+  private Subscriber subscriber;
+  private long demand;
+  private boolean done;
+  private boolean cancelled;
+  private boolean terminated;
+  private boolean signaled;
+
+  private PGReplicationStream(PGDirectConnection connection, ServerConnection serverConnection, long statusInterval) {
+    this.connection = connection;
+    this.serverConnection = serverConnection;
+    this.executor = serverConnection.getIOExecutor();
+    this.statusInterval = statusInterval;
+  }
+
+  /**
+   * Starts replication, waiting for the server to enter copy-both mode
+   *
+   * @param connection Connection to replicate on
+   * @param serverConnection Server connection of <code>connection</code>
+   * @param slotName Name of logical replication slot
+   * @param startLsn WAL position to start from
+   * @param options Output plugin options
+   * @param statusInterval Interval, in milliseconds, between status updates
+   * @return Stream ready for subscription
+   * @throws SQLException If replication could not be started
+   */
+  static PGReplicationStream start(PGDirectConnection connection, ServerConnection serverConnection,
+                                   String slotName, long startLsn, Map<String, String> options,
+                                   long statusInterval) throws SQLException {
+
+    String sql = buildStartSQL(slotName, startLsn, options);
+
+    PGReplicationStream stream = new PGReplicationStream(connection, serverConnection, statusInterval);
+
+    connection.execute((long timeout) -> {
+
+      connection.getRequestExecutor().copyBoth(sql, stream.new Handler());
+
+      if (!awaitUninterruptibly(timeout, MILLISECONDS, stream.started::await)) {
+        throw new BlockingReadTimeoutException();
+      }
+
+    });
+
+    if (stream.writer == null) {
+      stream.awaitReady();
+      throw stream.failure();
+    }
+
+    return stream;
+  }
+
+  static String buildStartSQL(String slotName, long startLsn, Map<String, String> options) {
+
+    StringBuilder sql = new StringBuilder("START_REPLICATION SLOT ");
+    appendIdentifier(sql, slotName);
+    sql.append(" LOGICAL ").append(com.impossibl.postgres.api.jdbc.PGReplicationStream.formatLsn(startLsn));
+
+    if (options != null && !options.isEmpty()) {
+      sql.append(" (");
+      boolean first = true;
+      for (Map.Entry<String, String> option : options.entrySet()) {
+        if (!first) {
+          sql.append(", ");
+        }
+        first = false;
+        appendIdentifier(sql, option.getKey());
+        if (option.getValue() != null) {
+          sql.append(" '").append(option.getValue().replace("'", "''")).append('\'');
+        }
+      }
+      sql.append(')');
+    }
+
+    return sql.toString();
+  }
+
+  private static void appendIdentifier(StringBuilder sql, String identifier) {
+    sql.append('"').append(identifier.replace("\"", "\"\"")).append('"');
+  }
+
+  @Override
+  public void subscribe(Subscriber subscriber) {
+
+    submit(() -> {
+
+      if (this.subscriber != null) {
+        subscriber.onSubscribe(new Subscription() {
+          @Override
+          public void request(long n) {
+          }
+
+          @Override
+          public void cancel() {
+          }
+        });
+        subscriber.onError(new IllegalStateException("Stream already subscribed"));
+        return;
+      }
+
+      this.subscriber = subscriber;
+
+      subscriber.onSubscribe(new Subscription() {
+
+        @Override
+        public void request(long n) {
+          submit(() -> {
+            if (n <= 0) {
+              failSubscriber(new IllegalArgumentException("Request must be positive"));
+              return;
+            }
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            drain();
+          });
+        }
+
+        @Override
+        public void cancel() {
+          submit(() -> {
+            cancelled = true;
+            stop();
+          });
+        }
+
+      });
+
+      drain();
+    });
+  }
+
+  /**
+   * Delivers pending messages while there is demand, suspending reading
+   * from the server when there is none.
+   */
+  private void drain() {
+
+    while (!cancelled && subscriber != null && demand > 0 && !pending.isEmpty()) {
+      if (demand != Long.MAX_VALUE) {
+        demand--;
+      }
+      Message message = pending.poll();
+      try {
+        subscriber.onNext(message);
+      }
+      catch (Throwable t) {
+        failSubscriber(t);
+        return;
+      }
+    }
+
+    if (terminated) {
+      if (pending.isEmpty() || error != null) {
+        signalTerminated();
+      }
+    }
+    else if (!done) {
+      if (demand > 0 && pending.isEmpty()) {
+        serverConnection.resumeReading();
+      }
+      else {
+        serverConnection.suspendReading();
+      }
+    }
+  }
+
+  private void signalTerminated() {
+
+    releasePending();
+
+    if (subscriber == null || signaled || cancelled) {
+      return;
+    }
+    signaled = true;
+
+    if (error != null) {
+      subscriber.onError(error);
+    }
+    else {
+      subscriber.onComplete();
+    }
+  }
+
+  private void failSubscriber(Throwable cause) {
+    Subscriber subscriber = this.subscriber;
+    cancelled = true;
+    stop();
+    if (!signaled) {
+      signaled = true;
+      subscriber.onError(cause);
+    }
+  }
+
+  /**
+   * Ends the client's side of the copy, if not already ended, allowing
+   * the server to complete the command.
+   */
+  private void stop() {
+
+    releasePending();
+
+    if (done || terminated) {
+      return;
+    }
+
+    try {
+      end();
+    }
+    catch (IOException e) {
+      if (error == null) {
+        error = e;
+      }
+    }
+  }
+
+  private void end() throws IOException {
+
+    done = true;
+    cancelStatusTimer();
+
+    sendStatus();
+    writer.writeDone();
+
+    // Must read the server's response, regardless of demand
+    serverConnection.resumeReading();
+  }
+
+  private void terminate() {
+
+    if (terminated) {
+      return;
+    }
+
+    terminated = true;
+    done = true;
+    cancelStatusTimer();
+    drain();
+    ready.countDown();
+  }
+
+  private void statusTimerFired() {
+    try {
+      sendStatus();
+    }
+    catch (IOException e) {
+      if (error == null) {
+        error = e;
+      }
+    }
+  }
+
+  private void sendStatus() throws IOException {
+
+    CopyDataWriter writer = this.writer;
+    if (writer == null || terminated) {
+      return;
+    }
+
+    long flushed = flushedLsn.get();
+    long applied = appliedLsn.get();
+
+    ByteBuf status = writer.getAllocator().buffer(34);
+    status.writeByte(STANDBY_STATUS_UPDATE);
+    status.writeLong(Math.max(receivedLsn, flushed));
+    status.writeLong(flushed);
+    status.writeLong(applied);
+    status.writeLong((System.currentTimeMillis() - SERVER_EPOCH_MILLIS) * 1000);
+    status.writeByte(0);
+
+    writer.writeData(status);
+  }
+
+  private void cancelStatusTimer() {
+    if (statusTimer != null) {
+      statusTimer.cancel(false);
+      statusTimer = null;
+    }
+  }
+
+  private void releasePending() {
+    Message message;
+    while ((message = pending.poll()) != null) {
+      message.release();
+    }
+  }
+
+  private boolean submit(Runnable task) {
+    try {
+      executor.execute(task);
+      return true;
+    }
+    catch (RejectedExecutionException ignored) {
+      // Connection's I/O thread has stopped
+      return false;
+    }
+  }
+
+  private void awaitReady() throws SQLException {
+
+    // Awaited directly; the command is already executing
+    if (!awaitUninterruptibly(connection.getNetworkTimeout(), MILLISECONDS, ready::await)) {
+      throw new SQLTimeoutException("Timeout waiting for replication to end");
+    }
+  }
+
+  private SQLException failure() {
+    Throwable error = this.error;
+    if (error instanceof SQLException) {
+      return (SQLException) error;
+    }
+    if (error instanceof Exception) {
+      return makeSQLException((Exception) error);
+    }
+    return new PGSQLSimpleException("Replication failed", error);
+  }
+
+  @Override
+  public long getLastReceivedLsn() {
+    return receivedLsn;
+  }
+
+  @Override
+  public void setFlushedLsn(long lsn) {
+    flushedLsn.accumulateAndGet(lsn, Math::max);
+  }
+
+  @Override
+  public void setAppliedLsn(long lsn) {
+    appliedLsn.accumulateAndGet(lsn, Math::max);
+  }
+
+  @Override
+  public boolean isClosed() {
+    return ready.getCount() == 0;
+  }
+
+  @Override
+  public void close() throws SQLException {
+
+    if (isClosed()) {
+      return;
+    }
+
+    boolean submitted = submit(() -> {
+      cancelled = true;
+      stop();
+    });
+
+    if (submitted) {
+      awaitReady();
+    }
+  }
+
+}
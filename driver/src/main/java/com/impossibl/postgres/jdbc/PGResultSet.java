@@ -28,6 +28,7 @@
  */
 package com.impossibl.postgres.jdbc;
 
+import com.impossibl.postgres.api.jdbc.PGColumnVector;
 import com.impossibl.postgres.jdbc.Housekeeper.CleanupRunnable;
 import com.impossibl.postgres.protocol.FieldBuffersRowData;
 import com.impossibl.postgres.protocol.ResultBatch;
@@ -38,11 +39,9 @@ import com.impossibl.postgres.protocol.UpdatableRowData;
 import com.impossibl.postgres.system.Context;
 import com.impossibl.postgres.system.SettingsContext;
 import com.impossibl.postgres.system.TypeMapContext;
-import com.impossibl.postgres.types.Type;
 import com.impossibl.postgres.utils.guava.ByteStreams;
 import com.impossibl.postgres.utils.guava.CharStreams;
 
-import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLException;
 import static com.impossibl.postgres.jdbc.Exceptions.CLOSED_RESULT_SET;
 import static com.impossibl.postgres.jdbc.Exceptions.COLUMN_INDEX_OUT_OF_BOUNDS;
 import static com.impossibl.postgres.jdbc.Exceptions.CURSOR_NOT_SCROLLABLE;
@@ -62,12 +61,15 @@ import static com.impossibl.postgres.system.SystemSettings.FIELD_LENGTH_MAX;
 import static com.impossibl.postgres.utils.Nulls.firstNonNull;
 
 import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.math.BigDecimal;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.sql.Array;
 import java.sql.Blob;
 import java.sql.Clob;
@@ -85,6 +87,7 @@ import java.sql.SQLXML;
 import java.sql.Statement;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
@@ -95,11 +98,12 @@ import static java.nio.charset.StandardCharsets.US_ASCII;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 
 import static io.netty.util.ReferenceCountUtil.release;
 
 
-class PGResultSet implements ResultSet {
+class PGResultSet implements com.impossibl.postgres.api.jdbc.PGResultSet {
 
   /**
    * Cleans up server resources in the event of leaking resultset
@@ -160,15 +164,17 @@ class PGResultSet implements ResultSet {
 
   PGStatement statement;
   private Scroller scroller;
+  private ColumnIndex columnIndex;
   private int fetchDirection;
   private Integer fetchSize;
   private SQLWarning warningChain;
   private Boolean nullFlag;
   private final SettingsContext context;
+  private TypeMapContext typeMapContext;
+  private List<Closeable> fieldStreams;
   private final Housekeeper.Ref housekeeper;
   private final Object cleanupKey;
-
-  private static final ThreadLocal<TypeMapContext> TYPE_MAP_CONTEXTS = ThreadLocal.withInitial(TypeMapContext::new);
+  int registryHandle = ResultSetRegistry.NO_HANDLE;
 
   PGResultSet(PGStatement statement, Query query, ResultField[] resultFields, RowDataSet results) throws SQLException {
     this(statement, query, null);
@@ -208,11 +214,16 @@ class PGResultSet implements ResultSet {
     this.context = new SettingsContext(statement.connection, typeMap);
     updateMaxFieldSize(statement.maxFieldSize);
 
-    this.housekeeper = statement.housekeeper;
-    if (this.housekeeper != null)
+    // Only result sets holding server resources (i.e. an open portal)
+    // need cleanup when leaked
+    if (statement.housekeeper != null && query != null) {
+      this.housekeeper = statement.housekeeper;
       this.cleanupKey = housekeeper.add(this, new Cleanup(statement, query));
-    else
+    }
+    else {
+      this.housekeeper = null;
       this.cleanupKey = null;
+    }
   }
 
   void updateMaxFieldSize(Integer maxFieldSize) {
@@ -304,9 +315,53 @@ class PGResultSet implements ResultSet {
       throw new PGSQLSimpleException("Error decoding column", e);
     }
     nullFlag = val == null;
+
+    // Streams reading directly from the row's data hold a reference to it
+    if (val instanceof ByteBufInputStream || val instanceof InputStreamReader) {
+      if (fieldStreams == null) {
+        fieldStreams = new ArrayList<>();
+      }
+      fieldStreams.add((Closeable) val);
+    }
+
     return val;
   }
 
+  private boolean isReaderSupported(int columnIndex) throws PGSQLSimpleException {
+
+    ResultField.DecodePlan plan;
+    try {
+      plan = scroller.getResultFields()[columnIndex - 1].getDecodePlan(context);
+    }
+    catch (IOException e) {
+      throw new PGSQLSimpleException("Error decoding column", e);
+    }
+
+    return plan.getBinaryDecoder() != null && plan.getBinaryDecoder().isReaderSupported();
+  }
+
+  /**
+   * Closes streams returned for fields of the current row; releasing
+   * their reference to the row's data. Called whenever the current
+   * row changes or the result set is closed.
+   */
+  private void closeFieldStreams() {
+
+    if (fieldStreams == null || fieldStreams.isEmpty())
+      return;
+
+    for (Closeable stream : fieldStreams) {
+      try {
+        stream.close();
+      }
+      catch (IOException ignored) {
+        // Closing in-memory streams cannot fail
+      }
+    }
+
+    fieldStreams.clear();
+  }
+
   void set(int columnIndex, Object source, Object sourceContext) throws SQLException {
     checkClosed();
     checkColumnIndex(columnIndex);
@@ -330,6 +385,12 @@ class PGResultSet implements ResultSet {
     return scroller.getResultFields();
   }
 
+  RowData getRowData() throws SQLException {
+    checkClosed();
+    checkRow();
+    return scroller.getRowData();
+  }
+
   @Override
   public Statement getStatement() throws SQLException {
     checkClosed();
@@ -429,6 +490,8 @@ class PGResultSet implements ResultSet {
   public void beforeFirst() throws SQLException {
     checkClosed();
 
+    closeFieldStreams();
+
     scroller.beforeFirst();
   }
 
@@ -436,6 +499,8 @@ class PGResultSet implements ResultSet {
   public void afterLast() throws SQLException {
     checkClosed();
 
+    closeFieldStreams();
+
     scroller.afterLast();
   }
 
@@ -443,6 +508,8 @@ class PGResultSet implements ResultSet {
   public boolean first() throws SQLException {
     checkClosed();
 
+    closeFieldStreams();
+
     return scroller.first();
   }
 
@@ -450,6 +517,8 @@ class PGResultSet implements ResultSet {
   public boolean last() throws SQLException {
     checkClosed();
 
+    closeFieldStreams();
+
     return scroller.last();
   }
 
@@ -464,6 +533,8 @@ class PGResultSet implements ResultSet {
   public boolean absolute(int row) throws SQLException {
     checkClosed();
 
+    closeFieldStreams();
+
     return scroller.absolute(row);
   }
 
@@ -471,6 +542,8 @@ class PGResultSet implements ResultSet {
   public boolean relative(int rows) throws SQLException {
     checkClosed();
 
+    closeFieldStreams();
+
     return scroller.relative(rows);
   }
 
@@ -478,6 +551,8 @@ class PGResultSet implements ResultSet {
   public boolean next() throws SQLException {
     checkClosed();
 
+    closeFieldStreams();
+
     return scroller.next();
   }
 
@@ -485,6 +560,8 @@ class PGResultSet implements ResultSet {
   public boolean previous() throws SQLException {
     checkClosed();
 
+    closeFieldStreams();
+
     return scroller.previous();
   }
 
@@ -515,6 +592,8 @@ class PGResultSet implements ResultSet {
   public void insertRow() throws SQLException {
     checkClosed();
 
+    closeFieldStreams();
+
     scroller.insert();
   }
 
@@ -523,6 +602,8 @@ class PGResultSet implements ResultSet {
     checkClosed();
     checkRow();
 
+    closeFieldStreams();
+
     scroller.update();
   }
 
@@ -531,6 +612,8 @@ class PGResultSet implements ResultSet {
     checkClosed();
     checkRow();
 
+    closeFieldStreams();
+
     scroller.delete();
   }
 
@@ -539,6 +622,8 @@ class PGResultSet implements ResultSet {
     checkClosed();
     checkRow();
 
+    closeFieldStreams();
+
     scroller.refresh();
   }
 
@@ -547,6 +632,8 @@ class PGResultSet implements ResultSet {
     checkClosed();
     checkRow();
 
+    closeFieldStreams();
+
     scroller.cancel();
   }
 
@@ -555,6 +642,8 @@ class PGResultSet implements ResultSet {
     checkClosed();
     checkUpdatable();
 
+    closeFieldStreams();
+
     scroller.createInsertRowData();
   }
 
@@ -563,6 +652,8 @@ class PGResultSet implements ResultSet {
     checkClosed();
     checkUpdatable();
 
+    closeFieldStreams();
+
     scroller.cancel();
   }
 
@@ -588,6 +679,8 @@ class PGResultSet implements ResultSet {
 
     //Release resources
 
+    closeFieldStreams();
+
     if (scroller != null)
       scroller.close();
 
@@ -796,6 +889,14 @@ class PGResultSet implements ResultSet {
 
   @Override
   public Reader getCharacterStream(int columnIndex) throws SQLException {
+    checkClosed();
+    checkRow();
+    checkColumnIndex(columnIndex);
+
+    // Textual types provide readers directly over the column's data
+    if (isReaderSupported(columnIndex)) {
+      return (Reader) getObj(columnIndex, context, Reader.class, null);
+    }
 
     String data = getString(columnIndex);
     if (data == null)
@@ -834,6 +935,42 @@ class PGResultSet implements ResultSet {
     return getVal(columnIndex, context, InputStream.class, null);
   }
 
+  @Override
+  public ByteBuffer getRawBytes(int columnIndex) throws SQLException {
+    checkClosed();
+    checkRow();
+    checkColumnIndex(columnIndex);
+
+    ByteBuf buffer = scroller.getRowData().getFieldBuffer(columnIndex - 1);
+    nullFlag = buffer == null;
+    if (buffer == null) {
+      return null;
+    }
+
+    return buffer.nioBuffer().asReadOnlyBuffer();
+  }
+
+  @Override
+  public int readColumns(PGColumnVector... vectors) throws SQLException {
+    checkClosed();
+
+    ColumnarReader reader = ColumnarReader.create(scroller.getResultFields(), vectors, context);
+    reader.reset();
+
+    closeFieldStreams();
+
+    int capacity = reader.getCapacity();
+    int rowCount = 0;
+    while (rowCount < capacity && scroller.next()) {
+      reader.read(scroller.getRowData(), rowCount++);
+    }
+
+    reader.setValueCount(rowCount);
+    nullFlag = null;
+
+    return rowCount;
+  }
+
   @Override
   public Blob getBlob(int columnIndex) throws SQLException {
     checkClosed();
@@ -876,8 +1013,12 @@ class PGResultSet implements ResultSet {
     checkRow();
     checkColumnIndex(columnIndex);
 
-    TypeMapContext typeMapContext = TYPE_MAP_CONTEXTS.get();
-    typeMapContext.reset(context, typeMap);
+    // Decoded values may retain their context, so a context is only
+    // reused for the same type map and never reset.
+    TypeMapContext typeMapContext = this.typeMapContext;
+    if (typeMapContext == null || typeMapContext.getCustomTypeMap() != typeMap) {
+      typeMapContext = this.typeMapContext = new TypeMapContext(context, typeMap);
+    }
 
     return getObj(columnIndex, typeMapContext, null, null);
   }
@@ -928,16 +1069,16 @@ class PGResultSet implements ResultSet {
   public int findColumn(String columnLabel) throws SQLException {
     checkClosed();
 
-    ResultField[] resultFields = scroller.getResultFields();
-
-    for (int c = 0; c < resultFields.length; ++c) {
+    if (columnIndex == null) {
+      columnIndex = statement.getColumnIndex(scroller.getResultFields());
+    }
 
-      if (resultFields[c].getName().equalsIgnoreCase(columnLabel)) {
-        return c + 1;
-      }
+    int column = columnIndex.find(columnLabel);
+    if (column == 0) {
+      throw INVALID_COLUMN_NAME;
     }
 
-    throw INVALID_COLUMN_NAME;
+    return column;
   }
 
   @Override
@@ -2114,6 +2255,7 @@ class CursorScroller extends Scroller {
   private Integer rowCountCache;
   private int rowIndexSign;
   private RowData result;
+  private CursorRowWriter writer;
 
   CursorScroller(PGResultSet resultSet, String cursorName, int type, int holdability, ResultField[] resultFields) {
     this.connection = resultSet.statement.connection;
@@ -2121,6 +2263,7 @@ class CursorScroller extends Scroller {
     this.type = type;
     this.holdability = holdability;
     this.resultFields = resultFields;
+    this.writer = new CursorRowWriter(connection, cursorName, resultFields);
     setRowIndex(0, true);
   }
 
@@ -2138,7 +2281,19 @@ class CursorScroller extends Scroller {
   private boolean fetch(String type, Object loc) throws SQLException {
 
     String sb = "FETCH " + type + " " + loc + " FROM " + cursorName;
-    setResult(connection.executeForResult(sb));
+    try {
+      setResult(connection.executeForResult(sb));
+    }
+    catch (SQLException | RuntimeException e) {
+      SQLException writeError = flushWriter(e);
+      if (writeError != null) {
+        throw writeError;
+      }
+      throw e;
+    }
+
+    // Queued writes completed before the fetch, report their results
+    writer.flush();
 
     return result != null;
   }
@@ -2148,7 +2303,41 @@ class CursorScroller extends Scroller {
     setResult(null);
 
     String sb = "MOVE " + type + " " + loc + " IN " + cursorName;
-    return (int) connection.executeForRowsAffected(sb);
+    int rows;
+    try {
+      rows = (int) connection.executeForRowsAffected(sb);
+    }
+    catch (SQLException | RuntimeException e) {
+      SQLException writeError = flushWriter(e);
+      if (writeError != null) {
+        throw writeError;
+      }
+      throw e;
+    }
+
+    // Queued writes completed before the move, report their results
+    writer.flush();
+
+    return rows;
+  }
+
+  /**
+   * Flushes queued writes after a failed FETCH or MOVE. A failed write
+   * is the cause of the cursor error (e.g. by aborting the transaction),
+   * so its error is reported with the cursor error attached as suppressed.
+   *
+   * @param cursorError Error produced by the cursor movement
+   * @return Error of the queued writes or null if they all succeeded
+   */
+  private SQLException flushWriter(Exception cursorError) {
+    try {
+      writer.flush();
+      return null;
+    }
+    catch (SQLException e) {
+      e.addSuppressed(cursorError);
+      return e;
+    }
   }
 
   private int getRealRowCount() throws SQLException {
@@ -2163,10 +2352,17 @@ class CursorScroller extends Scroller {
   @Override
   void close() throws SQLException {
 
-    setResult(null);
+    try {
+      writer.close();
+    }
+    finally {
+
+      setResult(null);
+
+      if (holdability == ResultSet.HOLD_CURSORS_OVER_COMMIT) {
+        PGStatement.closeCursor(connection, cursorName);
+      }
 
-    if (holdability == ResultSet.HOLD_CURSORS_OVER_COMMIT) {
-      PGStatement.closeCursor(connection, cursorName);
     }
 
   }
@@ -2381,33 +2577,7 @@ class CursorScroller extends Scroller {
 
     UpdatableRowData rowData = (UpdatableRowData) result;
 
-    Type relType;
-    try {
-      relType = connection.getRegistry().loadRelationType(resultFields[0].getRelationId());
-    }
-    catch (IOException e) {
-      throw makeSQLException(e);
-    }
-
-    StringBuilder sb = new StringBuilder("INSERT INTO ");
-
-    sb.append('"').append(relType.getName()).append('"');
-
-    sb.append(" VALUES (");
-
-    for (int pid = 0; pid < resultFields.length; ++pid) {
-      sb.append("$");
-      sb.append(pid + 1);
-      if (pid < resultFields.length - 1) {
-        sb.append(", ");
-      }
-    }
-
-    sb.append(")");
-
-    ByteBuf[] paramBuffers = rowData.getFieldBuffers();
-
-    connection.executeForRowsAffected(sb.toString(), resultFields, paramBuffers);
+    writer.insert(rowData.getFieldBuffers());
   }
 
   @Override
@@ -2419,35 +2589,7 @@ class CursorScroller extends Scroller {
 
     UpdatableRowData rowData = (UpdatableRowData) result;
 
-    Type relType;
-    try {
-      relType = connection.getRegistry().loadRelationType(resultFields[0].getRelationId());
-    }
-    catch (IOException e) {
-      throw makeSQLException(e);
-    }
-
-    StringBuilder sb = new StringBuilder("UPDATE ");
-
-    sb.append('"').append(relType.getName()).append('"');
-
-    sb.append(" SET ");
-
-    for (int pid = 0; pid < resultFields.length; ++pid) {
-      sb.append(resultFields[pid].getName());
-      sb.append(" = $");
-      sb.append(pid + 1);
-      if (pid < resultFields.length - 1) {
-        sb.append(", ");
-      }
-    }
-
-    sb.append("WHERE CURRENT OF ");
-    sb.append(cursorName);
-
-    ByteBuf[] paramBuffers = rowData.getFieldBuffers();
-
-    connection.executeForRowsAffected(sb.toString(), resultFields, paramBuffers);
+    writer.update(rowIndexValue * rowIndexSign, rowData.getFieldBuffers());
   }
 
   @Override
@@ -2456,16 +2598,7 @@ class CursorScroller extends Scroller {
     if (!isValidRow())
       throw ROW_INDEX_OUT_OF_BOUNDS;
 
-    Type relType;
-    try {
-      relType = connection.getRegistry().loadRelationType(resultFields[0].getRelationId());
-    }
-    catch (IOException e) {
-      throw makeSQLException(e);
-    }
-
-    String sql = "DELETE FROM " + '"' + relType.getName() + '"' + " WHERE CURRENT OF " + cursorName;
-    long rows = connection.executeForRowsAffected(sql);
+    long rows = writer.delete(rowIndexValue * rowIndexSign);
     if (rows != 0) {
       if (rowCountCache != null) {
         rowCountCache--;
@@ -42,12 +42,11 @@ import static com.impossibl.postgres.system.SystemSettings.DATABASE_NAME;
 import java.io.IOException;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import static java.util.Collections.emptyList;
-import static java.util.Collections.singletonList;
 
 class PGResultSetMetaData extends PGMetaData implements ResultSetMetaData {
 
@@ -58,7 +57,6 @@ class PGResultSetMetaData extends PGMetaData implements ResultSetMetaData {
   PGResultSetMetaData(PGDirectConnection connection, ResultField[] resultFields, Map<String, Class<?>> typeMap) {
     super(connection);
     this.resultFields = resultFields;
-    this.relationsColumnsData = new HashMap<>();
     this.typeMap = typeMap;
   }
 
@@ -75,18 +73,27 @@ class PGResultSetMetaData extends PGMetaData implements ResultSetMetaData {
   private List<ColumnData> getRelationColumnsData(int relationId) throws SQLException {
     if (relationId == 0) return emptyList();
 
-    List<ColumnData> data;
-    if ((data = relationsColumnsData.get(relationId)) == null) {
-      data = loadRelationColumsData(relationId);
-      relationsColumnsData.put(relationId, data);
+    if (relationsColumnsData == null) {
+      relationsColumnsData = loadRelationsColumnsData();
     }
-    return data;
+
+    return relationsColumnsData.getOrDefault(relationId, emptyList());
   }
 
-  private List<ColumnData> loadRelationColumsData(int relationId) throws SQLException {
-    String sql = getColumnSQL(" AND c.oid = ?").toString();
+  /*
+   * Loads the column data for all relations referenced by the result
+   * fields at once, via the relation metadata shared by all connections
+   */
+  private Map<Integer, List<ColumnData>> loadRelationsColumnsData() throws SQLException {
+
+    List<Integer> relationIds = new ArrayList<>();
+    for (ResultField resultField : resultFields) {
+      if (resultField.getRelationId() != 0) {
+        relationIds.add(resultField.getRelationId());
+      }
+    }
 
-    return getColumnData(sql, singletonList(relationId));
+    return RelationColumnsCache.get(connection).load(this, relationIds);
   }
 
   /**
@@ -0,0 +1,481 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.api.jdbc.PGRow;
+import com.impossibl.postgres.api.jdbc.PGRowPublisher;
+import com.impossibl.postgres.protocol.Notice;
+import com.impossibl.postgres.protocol.RequestExecutor.ExtendedQueryHandler;
+import com.impossibl.postgres.protocol.RequestExecutor.ResumeHandler;
+import com.impossibl.postgres.protocol.RequestExecutor.SynchronizedHandler;
+import com.impossibl.postgres.protocol.ResultField;
+import com.impossibl.postgres.protocol.RowData;
+import com.impossibl.postgres.protocol.RowDataSet;
+import com.impossibl.postgres.protocol.TransactionStatus;
+import com.impossibl.postgres.protocol.TypeRef;
+import com.impossibl.postgres.system.SettingsContext;
+
+import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLException;
+import static com.impossibl.postgres.jdbc.Exceptions.COLUMN_INDEX_OUT_OF_BOUNDS;
+import static com.impossibl.postgres.jdbc.Exceptions.INVALID_COLUMN_NAME;
+import static com.impossibl.postgres.protocol.ResultBatches.transformFieldTypes;
+import static com.impossibl.postgres.system.Empty.EMPTY_BUFFERS;
+import static com.impossibl.postgres.system.Empty.EMPTY_FORMATS;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.Objects.requireNonNull;
+
+import static io.netty.util.ReferenceCountUtil.release;
+
+
+/**
+ * Streams the rows of a query to a single subscriber.
+ *
+ * Subscriber demand is mapped directly onto the portal's
+ * {@code Execute(maxRows)}; a fetch for at most the outstanding
+ * demand (capped at {@link #MAX_FETCH_SIZE}) is issued only when
+ * all previously fetched rows have been delivered, so the server never
+ * sends rows that were not requested.
+ *
+ * All requests are issued asynchronously and their handlers (running on
+ * the netty event loop) only queue rows and schedule a drain; all
+ * subscriber signals, and any potentially blocking work (e.g. type
+ * resolution), happen in the drain loop on the provided executor.
+ */
+class PGRowStream implements PGRowPublisher {
+
+  private static final Logger logger = Logger.getLogger(PGRowStream.class.getName());
+
+  static final int MAX_FETCH_SIZE = 1000;
+
+  private PGDirectConnection connection;
+  private String sql;
+  private Executor executor;
+  private AtomicBoolean subscribed = new AtomicBoolean();
+
+  PGRowStream(PGDirectConnection connection, String sql, Executor executor) {
+    this.connection = connection;
+    this.sql = sql;
+    this.executor = executor;
+  }
+
+  @Override
+  public void subscribe(Subscriber subscriber) {
+    requireNonNull(subscriber);
+
+    if (!subscribed.compareAndSet(false, true)) {
+      failed(new IllegalStateException("Row publishers only support a single subscriber")).subscribe(subscriber);
+      return;
+    }
+
+    new StreamSubscription(subscriber).schedule();
+  }
+
+  /**
+   * Creates a publisher that immediately signals the given error
+   * to any subscriber.
+   *
+   * @param error Error to signal
+   * @return Publisher that always fails with {@code error}
+   */
+  static PGRowPublisher failed(Throwable error) {
+    return subscriber -> {
+      subscriber.onSubscribe(new Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onError(error);
+    };
+  }
+
+  private class StreamSubscription implements Subscription, PGRow {
+
+    private Subscriber subscriber;
+    private AtomicLong demand = new AtomicLong();
+    private AtomicInteger wip = new AtomicInteger();
+    private Queue<RowData> rows = new ConcurrentLinkedQueue<>();
+    private volatile ResultField[] fields;
+    private ColumnIndex columnIndex;
+    private volatile boolean fetching;
+    private volatile boolean exhausted;
+    private volatile boolean cancelled;
+    private volatile boolean finished;
+    private volatile Throwable error;
+
+    // Accessed only from the drain loop
+    private boolean started;
+    private boolean resolved;
+    private boolean finishing;
+    private boolean done;
+    private String portalName;
+    private SettingsContext context;
+    private RowData current;
+
+    StreamSubscription(Subscriber subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        fail(new IllegalArgumentException("Non-positive request: " + n));
+      }
+      else {
+        demand.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+      }
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      schedule();
+    }
+
+    void schedule() {
+      if (wip.getAndIncrement() != 0) {
+        return;
+      }
+      try {
+        executor.execute(this::drain);
+      }
+      catch (RejectedExecutionException e) {
+        logger.log(Level.WARNING, "Row stream executor rejected drain", e);
+      }
+    }
+
+    private void fail(Throwable cause) {
+      if (error == null) {
+        error = cause;
+      }
+    }
+
+    private void drain() {
+      int missed = 1;
+      do {
+        try {
+          drainOnce();
+        }
+        catch (Throwable t) {
+          fail(t);
+          cancelled = true;
+        }
+        missed = wip.addAndGet(-missed);
+      }
+      while (missed != 0);
+    }
+
+    private void drainOnce() throws SQLException, IOException {
+
+      if (done) {
+        releaseQueued();
+        return;
+      }
+
+      if (!started) {
+        started = true;
+        context = new SettingsContext(connection, connection.getTypeMap());
+        subscriber.onSubscribe(this);
+      }
+
+      if (cancelled || error != null) {
+        releaseQueued();
+        terminate();
+        return;
+      }
+
+      long requested = demand.get();
+      long emitted = 0;
+
+      while (emitted != requested && !cancelled) {
+
+        RowData rowData = rows.poll();
+        if (rowData == null) {
+          break;
+        }
+
+        if (!resolved) {
+          // Resolve referenced types off the event loop
+          transformFieldTypes(fields, connection.getRegistry()::resolve);
+          resolved = true;
+        }
+
+        current = rowData;
+        try {
+          subscriber.onNext(this);
+        }
+        catch (Throwable t) {
+          logger.log(Level.WARNING, "Row stream subscriber failed; cancelling stream", t);
+          cancelled = true;
+        }
+        finally {
+          current = null;
+          release(rowData);
+        }
+
+        ++emitted;
+      }
+
+      if (emitted != 0 && requested != Long.MAX_VALUE) {
+        demand.addAndGet(-emitted);
+      }
+
+      if (cancelled || error != null) {
+        releaseQueued();
+        terminate();
+        return;
+      }
+
+      // Read before checking the queue; rows are always queued
+      // before the exhaustion flag is raised
+      boolean complete = exhausted;
+
+      if (rows.isEmpty()) {
+
+        if (complete) {
+          terminate();
+        }
+        else if (!fetching && demand.get() > 0) {
+          fetch((int) Math.min(demand.get(), MAX_FETCH_SIZE));
+        }
+
+      }
+
+    }
+
+    private void fetch(int maxRows) throws SQLException {
+
+      fetching = true;
+
+      if (portalName == null) {
+        portalName = connection.getNextPortalName();
+        connection.execute((long timeout) ->
+            connection.getRequestExecutor().query(sql, portalName, EMPTY_FORMATS, EMPTY_BUFFERS, EMPTY_FORMATS, maxRows, new QueryHandler())
+        );
+      }
+      else {
+        connection.execute((long timeout) ->
+            connection.getRequestExecutor().resume(portalName, maxRows, new FetchHandler())
+        );
+      }
+
+    }
+
+    /**
+     * Closes the portal (if necessary) and, once the connection is
+     * synchronized, delivers the terminal signal to the subscriber.
+     */
+    private void terminate() throws SQLException {
+
+      if (portalName != null && !finishing) {
+        finishing = true;
+        connection.execute((long timeout) ->
+            connection.getRequestExecutor().finish(portalName, new FinishHandler())
+        );
+        return;
+      }
+
+      if (portalName != null && !finished) {
+        return;
+      }
+
+      done = true;
+
+      if (cancelled) {
+        return;
+      }
+
+      Throwable cause = error;
+      if (cause != null) {
+        subscriber.onError(cause instanceof IOException ? makeSQLException((IOException) cause) : cause);
+      }
+      else {
+        subscriber.onComplete();
+      }
+    }
+
+    private void releaseQueued() {
+      RowData rowData;
+      while ((rowData = rows.poll()) != null) {
+        release(rowData);
+      }
+    }
+
+    private void enqueue(ResultField[] resultFields, RowDataSet rowDataSet, boolean complete) {
+      if (resultFields != null) {
+        fields = resultFields;
+      }
+      for (int c = 0; c < rowDataSet.size(); ++c) {
+        rows.add(rowDataSet.copy(c));
+      }
+      exhausted = complete;
+      fetching = false;
+      schedule();
+    }
+
+    private void fetchFailed(Throwable cause) {
+      fail(cause);
+      fetching = false;
+      schedule();
+    }
+
+    private class QueryHandler implements ExtendedQueryHandler {
+
+      @Override
+      public void handleComplete(String command, Long rowsAffected, Long insertedOid, TypeRef[] parameterTypes, ResultField[] resultFields, RowDataSet rows, List<Notice> notices) {
+        enqueue(resultFields, rows, true);
+      }
+
+      @Override
+      public void handleSuspend(TypeRef[] parameterTypes, ResultField[] resultFields, RowDataSet rows, List<Notice> notices) {
+        enqueue(resultFields, rows, false);
+      }
+
+      @Override
+      public void handleReady(TransactionStatus transactionStatus) {
+      }
+
+      @Override
+      public void handleError(Throwable cause, List<Notice> notices) {
+        fetchFailed(cause);
+      }
+
+    }
+
+    private class FetchHandler implements ResumeHandler {
+
+      @Override
+      public void handleComplete(String command, Long rowsAffected, Long insertedOid, RowDataSet rows, List<Notice> notices) {
+        enqueue(null, rows, true);
+      }
+
+      @Override
+      public void handleSuspend(RowDataSet rows, List<Notice> notices) {
+        enqueue(null, rows, false);
+      }
+
+      @Override
+      public void handleError(Throwable cause, List<Notice> notices) {
+        fetchFailed(cause);
+      }
+
+    }
+
+    private class FinishHandler implements SynchronizedHandler {
+
+      @Override
+      public void handleReady(TransactionStatus transactionStatus) {
+        finished = true;
+        schedule();
+      }
+
+      @Override
+      public void handleError(Throwable cause, List<Notice> notices) {
+        fail(cause);
+        finished = true;
+        schedule();
+      }
+
+    }
+
+    /*
+     * PGRow; valid only for the duration of Subscriber.onNext
+     */
+
+    @Override
+    public int getColumnCount() {
+      return fields.length;
+    }
+
+    @Override
+    public String getColumnLabel(int columnIndex) throws SQLException {
+      checkColumnIndex(columnIndex);
+      return fields[columnIndex - 1].getName();
+    }
+
+    @Override
+    public int findColumn(String columnLabel) throws SQLException {
+      if (columnIndex == null) {
+        columnIndex = new ColumnIndex(fields);
+      }
+      int column = columnIndex.find(columnLabel);
+      if (column == 0) {
+        throw INVALID_COLUMN_NAME;
+      }
+      return column;
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+      return getField(columnIndex, null);
+    }
+
+    @Override
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+      return type.cast(getField(columnIndex, type));
+    }
+
+    private Object getField(int columnIndex, Class<?> targetClass) throws SQLException {
+      if (current == null) {
+        throw new SQLException("Row accessed outside of onNext");
+      }
+      checkColumnIndex(columnIndex);
+      try {
+        return current.getField(columnIndex - 1, fields[columnIndex - 1], context, targetClass, null);
+      }
+      catch (IOException e) {
+        throw new PGSQLSimpleException("Error decoding column", e);
+      }
+    }
+
+    private void checkColumnIndex(int columnIndex) throws SQLException {
+      if (columnIndex < 1 || columnIndex > fields.length)
+        throw COLUMN_INDEX_OUT_OF_BOUNDS;
+    }
+
+  }
+
+}
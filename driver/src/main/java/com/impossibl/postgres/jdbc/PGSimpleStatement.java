@@ -30,13 +30,19 @@ package com.impossibl.postgres.jdbc;
 
 import com.impossibl.postgres.protocol.ResultBatch;
 import com.impossibl.postgres.protocol.ResultBatches;
+import com.impossibl.postgres.protocol.TransactionStatus;
 
 import static com.impossibl.postgres.jdbc.Exceptions.INVALID_COMMAND_FOR_GENERATED_KEYS;
 import static com.impossibl.postgres.jdbc.Exceptions.NOT_SUPPORTED;
 import static com.impossibl.postgres.jdbc.Exceptions.NO_RESULT_COUNT_AVAILABLE;
 import static com.impossibl.postgres.jdbc.Exceptions.NO_RESULT_SET_AVAILABLE;
 import static com.impossibl.postgres.jdbc.SQLTextUtils.appendReturningClause;
+import static com.impossibl.postgres.jdbc.SQLTextUtils.isCreateTableAs;
+import static com.impossibl.postgres.jdbc.SQLTextUtils.isPreparable;
 import static com.impossibl.postgres.jdbc.SQLTextUtils.prependCursorDeclaration;
+import static com.impossibl.postgres.system.Empty.EMPTY_BUFFERS;
+import static com.impossibl.postgres.system.Empty.EMPTY_FORMATS;
+import static com.impossibl.postgres.system.Empty.EMPTY_TYPES;
 
 import java.sql.BatchUpdateException;
 import java.sql.ResultSet;
@@ -49,6 +55,16 @@ import static java.util.Arrays.asList;
 
 class PGSimpleStatement extends PGStatement {
 
+  /**
+   * SQL state reported when a cached plan's result type changed
+   */
+  private static final String CACHED_PLAN_CHANGED_STATE = "0A000";
+
+  /**
+   * SQL state reported when a prepared statement no longer exists
+   */
+  private static final String INVALID_STATEMENT_NAME_STATE = "26000";
+
   private SQLText batchCommands;
 
   PGSimpleStatement(PGDirectConnection connection, int type, int concurrency, int holdability) {
@@ -91,7 +107,59 @@ class PGSimpleStatement extends PGStatement {
 
     setup(sqlText);
 
-    boolean result = executeDirect(sqlText.toString());
+    createsTableAs = isCreateTableAs(sqlText);
+
+    String sql = sqlText.toString();
+
+    boolean preparable = cursorName == null && isPreparable(sqlText);
+
+    // Hot SQL is transparently promoted to a cached prepared statement
+    PreparedStatementDescription promoted = null;
+    if (preparable) {
+      StatementCacheKey key = new StatementCacheKey(sql, EMPTY_TYPES);
+      promoted = connection.getPromotedStatement(key, () -> prepare(key));
+    }
+
+    boolean result = false;
+    if (promoted != null) {
+      boolean implicitTransaction = connection.getAutoCommit() && connection.getTransactionStatus() == TransactionStatus.Idle;
+      try {
+        resultFields = promoted.resultFields;
+        resultColumnIndex = promoted.getColumnIndex();
+        result = executeStatement(promoted.name, EMPTY_FORMATS, EMPTY_BUFFERS);
+      }
+      catch (SQLException e) {
+
+        // DDL can invalidate the promoted statement's plan (e.g. by changing its result
+        // type), which plain statements were previously immune to; drop it and, if the
+        // failure was isolated to an implicit transaction, execute directly instead
+        if (!isInvalidatedStatement(e)) {
+          throw e;
+        }
+
+        connection.evictPromotedStatement(new StatementCacheKey(sql, EMPTY_TYPES), promoted);
+
+        if (!implicitTransaction) {
+          throw e;
+        }
+
+        promoted = null;
+      }
+    }
+
+    if (promoted == null) {
+      resultFields = null;
+      resultColumnIndex = null;
+      if (preparable) {
+        result = executeDirectNegotiated(sql);
+      }
+      else if (sqlText.getStatementCount() > 1 && connection.isMultiResultStreaming()) {
+        result = executeDirectStreamed(sql);
+      }
+      else {
+        result = executeDirect(sql);
+      }
+    }
 
     if (cursorName != null) {
       result = executeDirect("FETCH ABSOLUTE 0 FROM " + cursorName);
@@ -100,6 +168,10 @@ class PGSimpleStatement extends PGStatement {
     return result;
   }
 
+  private static boolean isInvalidatedStatement(SQLException e) {
+    return CACHED_PLAN_CHANGED_STATE.equals(e.getSQLState()) || INVALID_STATEMENT_NAME_STATE.equals(e.getSQLState());
+  }
+
   @Override
   public boolean execute(String sql) throws SQLException {
     checkClosed();
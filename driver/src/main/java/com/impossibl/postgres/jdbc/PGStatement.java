@@ -28,32 +28,36 @@
  */
 package com.impossibl.postgres.jdbc;
 
+import com.impossibl.postgres.api.jdbc.PGConnection;
 import com.impossibl.postgres.jdbc.Housekeeper.CleanupRunnable;
 import com.impossibl.postgres.protocol.FieldFormat;
 import com.impossibl.postgres.protocol.FieldFormatRef;
+import com.impossibl.postgres.protocol.RequestExecutorHandlers.PrepareResult;
 import com.impossibl.postgres.protocol.ResultBatch;
 import com.impossibl.postgres.protocol.ResultBatches;
 import com.impossibl.postgres.protocol.ResultField;
 import com.impossibl.postgres.protocol.RowDataSet;
+import com.impossibl.postgres.types.Type;
 
+import static com.impossibl.postgres.jdbc.ErrorUtils.chainWarnings;
+import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLException;
 import static com.impossibl.postgres.jdbc.Exceptions.CLOSED_STATEMENT;
 import static com.impossibl.postgres.jdbc.Exceptions.ILLEGAL_ARGUMENT;
 import static com.impossibl.postgres.jdbc.Exceptions.NOT_IMPLEMENTED;
 import static com.impossibl.postgres.jdbc.Exceptions.UNWRAP_ERROR;
-import static com.impossibl.postgres.protocol.ServerObjectType.Statement;
 import static com.impossibl.postgres.system.Empty.EMPTY_FIELDS;
 
-import java.lang.ref.WeakReference;
+import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.sql.Statement;
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import static java.lang.Integer.toHexString;
 import static java.lang.Long.min;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import io.netty.buffer.ByteBuf;
@@ -74,10 +78,10 @@ abstract class PGStatement implements Statement {
 
     PGDirectConnection connection;
     String name;
-    List<WeakReference<PGResultSet>> resultSets;
+    ResultSetRegistry resultSets;
     StackTraceElement[] allocationStackTrace;
 
-    private Cleanup(PGDirectConnection connection, String name, List<WeakReference<PGResultSet>> resultSets) {
+    private Cleanup(PGDirectConnection connection, String name, ResultSetRegistry resultSets) {
       this.connection = connection;
       this.name = name;
       this.resultSets = resultSets;
@@ -115,6 +119,7 @@ abstract class PGStatement implements Statement {
 
 
   PGDirectConnection connection;
+  final PGConnection handle;
   String cursorName;
   int resultSetType;
   int resultSetConcurrency;
@@ -122,14 +127,16 @@ abstract class PGStatement implements Statement {
   int fetchDirection;
   String name;
   boolean processEscapes;
+  boolean createsTableAs;
   ResultField[] resultFields;
+  ColumnIndex resultColumnIndex;
   Integer maxRows;
   Integer fetchSize;
   Integer maxFieldSize;
   Query query;
   List<ResultBatch> resultBatches;
   boolean autoClose;
-  List<WeakReference<PGResultSet>> activeResultSets;
+  ResultSetRegistry activeResultSets;
   PGResultSet generatedKeysResultSet;
   SQLWarning warningChain;
   int queryTimeout;
@@ -141,6 +148,7 @@ abstract class PGStatement implements Statement {
     super();
 
     this.connection = connection;
+    this.handle = connection.handle;
     this.resultSetType = resultSetType;
     this.resultSetConcurrency = resultSetConcurrency;
     this.resultSetHoldability = resultSetHoldability;
@@ -148,11 +156,11 @@ abstract class PGStatement implements Statement {
     this.name = name;
     this.processEscapes = true;
     this.resultFields = resultFields;
-    this.activeResultSets = new ArrayList<>();
     this.generatedKeysResultSet = null;
     this.fetchSize = connection.getDefaultFetchSize();
 
     this.housekeeper = connection.housekeeper;
+    this.activeResultSets = new ResultSetRegistry(housekeeper != null);
     if (this.housekeeper != null)
       this.cleanupKey = this.housekeeper.add(this, new Cleanup(connection, name, activeResultSets));
     else
@@ -184,7 +192,12 @@ abstract class PGStatement implements Statement {
     if (statementName == null)
       return;
 
-    connection.execute((long timeout) -> connection.getRequestExecutor().close(Statement, statementName));
+    try {
+      connection.closeStatement(statementName);
+    }
+    catch (IOException e) {
+      throw makeSQLException(e);
+    }
   }
 
   static void closeCursor(PGDirectConnection connection, String cursorName) throws SQLException {
@@ -199,21 +212,16 @@ abstract class PGStatement implements Statement {
    * Closes the given list of result-sets
    *
    */
-  private static void closeResultSets(List<WeakReference<PGResultSet>> resultSets) {
-
-    for (WeakReference<PGResultSet> resultSetRef : resultSets) {
-
-      PGResultSet resultSet = resultSetRef.get();
-      if (resultSet != null) {
-        try {
-          resultSet.internalClose();
-        }
-        catch (SQLException e) {
-          //Ignore...
-        }
-      }
+  private static void closeResultSets(ResultSetRegistry resultSets) {
 
-    }
+    resultSets.forEach(resultSet -> {
+      try {
+        resultSet.internalClose();
+      }
+      catch (SQLException e) {
+        //Ignore...
+      }
+    });
 
     resultSets.clear();
 
@@ -241,19 +249,12 @@ abstract class PGStatement implements Statement {
    */
   void handleResultSetClosure(PGResultSet resultSet) throws SQLException {
 
-    //Remove given & abandoned result sets
-    Iterator<WeakReference<PGResultSet>> resultSetRefIter = activeResultSets.iterator();
-    while (resultSetRefIter.hasNext()) {
-
-      WeakReference<PGResultSet> resultSetRef = resultSetRefIter.next();
-      PGResultSet rs = resultSetRef.get();
-      if (rs == null) {
-        resultSetRefIter.remove();
-      }
-      else if (rs == resultSet) {
-        resultSetRefIter.remove();
-        break;
-      }
+    //Remove given or abandoned result sets
+    if (resultSet != null) {
+      activeResultSets.remove(resultSet.registryHandle, resultSet);
+    }
+    else {
+      activeResultSets.prune();
     }
 
     //Handle auto closing
@@ -270,6 +271,13 @@ abstract class PGStatement implements Statement {
    */
   void internalClose() throws SQLException {
 
+    try {
+      discardResults();
+    }
+    catch (SQLException ignored) {
+      // Connection failures are reported by the connection
+    }
+
     closeResultSets();
     resultBatches = ResultBatches.releaseAll(resultBatches);
 
@@ -283,6 +291,7 @@ abstract class PGStatement implements Statement {
     connection = null;
     query = null;
     resultFields = null;
+    resultColumnIndex = null;
     generatedKeysResultSet = null;
   }
 
@@ -314,14 +323,47 @@ abstract class PGStatement implements Statement {
    *          If an error occurred during statement execution
    */
   boolean executeDirect(String sqlText, FieldFormat[] parameterFormats, ByteBuf[] parameterBuffers, FieldFormatRef[] resultFieldFormats) throws SQLException {
+    return execute(new DirectQuery(sqlText, parameterFormats, parameterBuffers, resultFieldFormats));
+  }
+
+  /**
+   * Execute the single statement sql text, negotiating binary result
+   * formats (see {@link DirectQuery#enableResultFormatNegotiation()}).
+   *
+   * @param sqlText SQL text of a single statement to execute
+   * @return true if command returned results or false if not
+   * @throws SQLException
+   *          If an error occurred during statement execution
+   */
+  boolean executeDirectNegotiated(String sqlText) throws SQLException {
+    DirectQuery query = new DirectQuery(sqlText, null, null, null);
+    query.enableResultFormatNegotiation();
+    return execute(query);
+  }
+
+  /**
+   * Execute the sql text, which can contain multiple statements, using
+   * the simple query cycle; streaming its results.
+   *
+   * @param sqlText SQL text to execute
+   * @return true if the first result has rows or false if not
+   * @throws SQLException
+   *          If an error occurred during statement execution
+   */
+  boolean executeDirectStreamed(String sqlText) throws SQLException {
+    DirectQuery query = new DirectQuery(sqlText, null, null, null);
+    query.enableResultStreaming();
+    return execute(query);
+  }
+
+  private boolean execute(Query query) throws SQLException {
 
     try {
 
+      discardResults();
       closeResultSets();
       resultBatches = ResultBatches.releaseAll(resultBatches);
 
-      Query query = new DirectQuery(sqlText, parameterFormats, parameterBuffers, resultFieldFormats);
-
       query.setTimeout(SECONDS.toMillis(queryTimeout));
 
       if (shouldUseFetchSize()) {
@@ -333,6 +375,8 @@ abstract class PGStatement implements Statement {
       this.query = query;
       this.resultBatches = query.getResultBatches();
 
+      connection.checkCatalogModified(resultBatches, createsTableAs);
+
       return hasResults();
     }
     catch (SQLException e) {
@@ -359,6 +403,7 @@ abstract class PGStatement implements Statement {
 
     try {
 
+      discardResults();
       closeResultSets();
       resultBatches = ResultBatches.releaseAll(resultBatches);
 
@@ -375,6 +420,8 @@ abstract class PGStatement implements Statement {
       this.query = query;
       this.resultBatches = query.getResultBatches();
 
+      connection.checkCatalogModified(resultBatches, createsTableAs);
+
       return hasResults();
     }
     catch (SQLException e) {
@@ -386,32 +433,131 @@ abstract class PGStatement implements Statement {
 
   }
 
+  /**
+   * Execute the named statements as a pipeline, with a single
+   * synchronization, streaming their results. Each statement must
+   * have previously been parsed and be ready to be bound and executed.
+   *
+   * @param statementNames Names of backend statements to execute
+   * @param parameterFormats Parameter formats of each statement
+   * @param parameterValues Parameter values of each statement
+   * @param resultFields Result fields of each statement
+   * @return true if the first statement returned results or false if not
+   * @throws SQLException
+   *          If an error occurred during statement execution
+   */
+  boolean executePipelined(String[] statementNames, FieldFormat[][] parameterFormats, ByteBuf[][] parameterValues, ResultField[][] resultFields) throws SQLException {
+    return execute(new PipelinedQuery(statementNames, parameterFormats, parameterValues, resultFields));
+  }
+
+  /**
+   * Discards any streamed results of the current query that have
+   * not been retrieved.
+   *
+   * @throws SQLException
+   *          If an error occurs waiting for the query to complete
+   */
+  private void discardResults() throws SQLException {
+
+    if (query != null) {
+      query.discardResults(connection);
+    }
+  }
+
+  /**
+   * Retrieves a column index for result fields; reusing the statement's
+   * precompiled index when the fields are the statement's own.
+   *
+   * @param fields Result fields to index
+   * @return Column index of the result fields
+   */
+  ColumnIndex getColumnIndex(ResultField[] fields) {
+    ColumnIndex columnIndex = resultColumnIndex;
+    if (columnIndex == null || fields != resultFields) {
+      return new ColumnIndex(fields);
+    }
+    return columnIndex;
+  }
+
+  /**
+   * Prepares a named server statement suitable for storing in the
+   * connection's prepared statement cache.
+   *
+   * @param key Cache key providing SQL text and parameter types
+   * @return Description of the prepared statement
+   * @throws IOException
+   *          If an error occurs resolving described types
+   * @throws SQLException
+   *          If an error occurs preparing the statement
+   */
+  PreparedStatementDescription prepare(StatementCacheKey key) throws IOException, SQLException {
+
+    String name = connection.isCacheEnabled() ?
+        CACHED_STATEMENT_PREFIX + toHexString(key.hashCode()) : NO_CACHE_STATEMENT_PREFIX + toHexString(key.hashCode());
+
+    return prepare(name, key);
+  }
+
+  /**
+   * Prepares a server statement using the given name.
+   *
+   * @param name Name of the server statement
+   * @param key Cache key providing SQL text and parameter types
+   * @return Description of the prepared statement
+   * @throws IOException
+   *          If an error occurs resolving described types
+   * @throws SQLException
+   *          If an error occurs preparing the statement
+   */
+  PreparedStatementDescription prepare(String name, StatementCacheKey key) throws IOException, SQLException {
+
+    PrepareResult prep = connection.execute((timeout) -> {
+      PrepareResult handler = new PrepareResult();
+      connection.getRequestExecutor().prepare(name, key.getSql(), key.getParameterTypes(), handler);
+      handler.await(timeout, MILLISECONDS);
+      return handler;
+    });
+
+    warningChain = chainWarnings(warningChain, prep);
+
+    // Results are always described as "Text"... update them to our preferred format.
+    ResultField[] describedResultFields = prep.getDescribedResultFields().clone();
+    for (ResultField describedResultField : describedResultFields) {
+      Type type = connection.getRegistry().resolve(describedResultField.getTypeRef());
+      if (type != null) {
+        describedResultField.setFormat(type.getResultFormat());
+      }
+    }
+
+    return new PreparedStatementDescription(name, prep.getDescribedParameterTypes(connection), describedResultFields);
+  }
+
   PGResultSet createResultSet(ResultField[] resultFields, RowDataSet results, boolean releaseResults, Map<String, Class<?>> typeMap) throws SQLException {
 
     PGResultSet resultSet = new PGResultSet(this, resultFields, results, releaseResults, typeMap);
-    activeResultSets.add(new WeakReference<>(resultSet));
+    resultSet.registryHandle = activeResultSets.add(resultSet);
     return resultSet;
   }
 
   private PGResultSet createResultSet(Query query, ResultField[] resultFields, RowDataSet results) throws SQLException {
 
     PGResultSet resultSet = new PGResultSet(this, query, resultFields, results);
-    activeResultSets.add(new WeakReference<>(resultSet));
+    resultSet.registryHandle = activeResultSets.add(resultSet);
     return resultSet;
   }
 
   private PGResultSet createResultSet(String cursorName, int resultSetType, int resultSetHoldability, ResultField[] resultFields) throws SQLException {
 
     PGResultSet resultSet = new PGResultSet(this, cursorName, resultSetType, resultSetHoldability, resultFields);
-    activeResultSets.add(new WeakReference<>(resultSet));
+    resultSet.registryHandle = activeResultSets.add(resultSet);
     return resultSet;
   }
 
   @Override
-  public PGDirectConnection getConnection() throws SQLException {
+  public PGConnection getConnection() throws SQLException {
     checkClosed();
 
-    return connection;
+    return handle;
   }
 
   @Override
@@ -480,12 +626,8 @@ abstract class PGStatement implements Statement {
     else
       maxFieldSize = max;
 
-    for (WeakReference<PGResultSet> resultSetRef : activeResultSets) {
-      PGResultSet resultSet = resultSetRef.get();
-      if (resultSet != null) {
-        resultSet.updateMaxFieldSize(maxFieldSize);
-      }
-    }
+    Integer maxFieldSize = this.maxFieldSize;
+    activeResultSets.forEach(resultSet -> resultSet.updateMaxFieldSize(maxFieldSize));
   }
 
   @Override
@@ -672,6 +814,15 @@ abstract class PGStatement implements Statement {
     ResultBatch finishedBatch = resultBatches.remove(0);
     finishedBatch.release();
 
+    // Take the next streamed result (if any)
+    if (resultBatches.isEmpty() && query != null) {
+      ResultBatch nextBatch = query.fetchNextResult(connection);
+      if (nextBatch != null) {
+        resultBatches.add(nextBatch);
+        connection.checkCatalogModified(resultBatches, createsTableAs);
+      }
+    }
+
     return hasResults();
   }
 
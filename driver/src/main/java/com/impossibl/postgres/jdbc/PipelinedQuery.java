@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.protocol.FieldFormatRef;
+import com.impossibl.postgres.protocol.RequestExecutorHandlers.StreamedResults;
+import com.impossibl.postgres.protocol.ResultBatch;
+import com.impossibl.postgres.protocol.ResultField;
+
+import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLException;
+import static com.impossibl.postgres.jdbc.ErrorUtils.makeSQLWarningChain;
+import static com.impossibl.postgres.protocol.ResultBatches.transformFieldTypes;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import io.netty.buffer.ByteBuf;
+
+
+/**
+ * Executes a sequence of prepared statements as a pipeline; with a
+ * single synchronization for the whole sequence.
+ *
+ * Results are streamed. Only the first result is available after
+ * execution; each following result is taken, as it arrives, via
+ * {@link #fetchNextResult(PGDirectConnection)}. Statements are always
+ * executed to completion, so the maximum rows setting is ignored.
+ */
+public class PipelinedQuery implements Query {
+
+  private String[] statementNames;
+  private FieldFormatRef[][] parameterFormats;
+  private ByteBuf[][] parameterBuffers;
+  private ResultField[][] resultFields;
+  private Status status;
+  private Long timeout;
+  private List<ResultBatch> resultBatches;
+  private StreamedResults streamedResults;
+
+  PipelinedQuery(String[] statementNames, FieldFormatRef[][] parameterFormats, ByteBuf[][] parameterBuffers, ResultField[][] resultFields) {
+    this.statementNames = statementNames;
+    this.parameterFormats = parameterFormats;
+    this.parameterBuffers = parameterBuffers;
+    this.resultFields = resultFields;
+    this.status = Status.Initialized;
+    this.resultBatches = new ArrayList<>();
+  }
+
+  @Override
+  public Status getStatus() {
+    return status;
+  }
+
+  @Override
+  public Long getTimeout() {
+    return timeout;
+  }
+
+  @Override
+  public void setTimeout(Long timeout) {
+    this.timeout = timeout;
+  }
+
+  @Override
+  public void setMaxRows(int maxRows) {
+    // Pipelined statements cannot be suspended
+  }
+
+  @Override
+  public List<ResultBatch> getResultBatches() {
+    return resultBatches;
+  }
+
+  @Override
+  public SQLWarning execute(PGDirectConnection connection) throws SQLException {
+
+    status = Status.InProgress;
+    try {
+
+      StreamedResults results = connection.executeTimed(this.timeout, (timeout) -> {
+        StreamedResults handler = connection.createStreamedResults(resultFields);
+        connection.getRequestExecutor().executeAll(statementNames, parameterFormats, parameterBuffers, resultFields, handler);
+        return handler;
+      });
+
+      streamedResults = results;
+
+      resultBatches = new ArrayList<>();
+
+      ResultBatch resultBatch = fetchNextResult(connection);
+      if (resultBatch != null) {
+        resultBatches.add(resultBatch);
+      }
+
+      return makeSQLWarningChain(results.getNotices());
+    }
+    finally {
+      status = Status.Completed;
+    }
+  }
+
+  @Override
+  public ResultBatch fetchNextResult(PGDirectConnection connection) throws SQLException {
+
+    StreamedResults results = streamedResults;
+    if (results == null) {
+      return null;
+    }
+
+    ResultBatch resultBatch;
+    try {
+      resultBatch = connection.executeTimed(this.timeout, (timeout) -> results.next(timeout, MILLISECONDS));
+    }
+    catch (SQLException e) {
+      streamedResults = null;
+      throw e;
+    }
+
+    if (resultBatch == null) {
+      streamedResults = null;
+      return null;
+    }
+
+    // Cache referenced types...
+    try {
+      transformFieldTypes(resultBatch, connection.getRegistry()::resolve);
+    }
+    catch (IOException e) {
+      resultBatch.release();
+      throw makeSQLException(e);
+    }
+
+    return resultBatch;
+  }
+
+  @Override
+  public void discardResults(PGDirectConnection connection) throws SQLException {
+
+    StreamedResults results = streamedResults;
+    if (results == null) {
+      return;
+    }
+
+    streamedResults = null;
+
+    connection.execute((long timeout) -> results.discard(timeout, MILLISECONDS));
+  }
+
+  @Override
+  public void dispose(PGDirectConnection connection) throws SQLException {
+    discardResults(connection);
+  }
+
+  @Override
+  public String toString() {
+    return "PipelinedQuery{" +
+        "statementNames=" + Arrays.toString(statementNames) +
+        ", status=" + status +
+        '}';
+  }
+
+}
@@ -70,6 +70,29 @@ public interface Query {
 
   void dispose(PGDirectConnection connection) throws SQLException;
 
+  /**
+   * Takes the next result of a query whose results are streamed; where
+   * only the first result is available after execution and each following
+   * result is taken as it arrives.
+   *
+   * @param connection Connection the query was executed on
+   * @return Next result or {@code null} if no more results are available.
+   * @throws SQLException If the result's statement failed
+   */
+  default ResultBatch fetchNextResult(PGDirectConnection connection) throws SQLException {
+    return null;
+  }
+
+  /**
+   * Discards all streamed results that have not been taken via
+   * {@link #fetchNextResult(PGDirectConnection)}.
+   *
+   * @param connection Connection the query was executed on
+   * @throws SQLException If an error occurs waiting for the query to complete
+   */
+  default void discardResults(PGDirectConnection connection) throws SQLException {
+  }
+
   static Query create(String sqlText) {
     return new DirectQuery(sqlText, EMPTY_FORMATS, EMPTY_BUFFERS, EMPTY_FORMATS);
   }
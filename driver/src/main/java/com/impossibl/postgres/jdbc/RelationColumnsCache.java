@@ -0,0 +1,214 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.jdbc.PGMetaData.ColumnData;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Cache of relation column metadata shared by all connections using
+ * the same {@link com.impossibl.postgres.types.SharedRegistry}.
+ *
+ * Entries are keyed by relation id and tagged with a version derived
+ * from the <code>xmin</code> of the relation's <code>pg_class</code>
+ * &amp; <code>pg_attribute</code> rows along with its attribute count.
+ * Before cached entries are used (once the configured validation
+ * interval elapses) their versions are checked against the catalog in
+ * a single query; relations that are missing or have changed are then
+ * loaded, together, in a second query.
+ */
+final class RelationColumnsCache {
+
+  /*
+   * Version of each relation covering every catalog row the column metadata
+   * is loaded from: the relation & its schema, attributes & their (domain)
+   * types, defaults and comments.
+   */
+  private static final String VERSION_SQL =
+      "SELECT c.oid," +
+      "   c.xmin::text || '/' || c.relnatts || '/' || n.xmin::text || '/' ||" +
+      "     coalesce((SELECT max(a.xmin::text::bigint) || ':' || max(t.xmin::text::bigint) " +
+      "       FROM pg_catalog.pg_attribute a JOIN pg_catalog.pg_type t ON (a.atttypid = t.oid) " +
+      "       WHERE a.attrelid = c.oid), '') || '/' ||" +
+      "     (SELECT count(*) || ':' || coalesce(max(def.xmin::text::bigint), 0) " +
+      "       FROM pg_catalog.pg_attrdef def WHERE def.adrelid = c.oid) || '/' ||" +
+      "     (SELECT count(*) || ':' || coalesce(max(dsc.xmin::text::bigint), 0) " +
+      "       FROM pg_catalog.pg_description dsc " +
+      "       WHERE dsc.objoid = c.oid AND dsc.classoid = 'pg_catalog.pg_class'::pg_catalog.regclass) AS version " +
+      " FROM pg_catalog.pg_class c " +
+      " JOIN pg_catalog.pg_namespace n ON (c.relnamespace = n.oid) " +
+      " WHERE c.oid = ANY(?::oid[])";
+
+  private static class Entry {
+    String version;
+    List<ColumnData> columnsData;
+    volatile long validated;
+
+    Entry(String version, List<ColumnData> columnsData, long validated) {
+      this.version = version;
+      this.columnsData = columnsData;
+      this.validated = validated;
+    }
+
+  }
+
+  private ConcurrentMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+
+  static RelationColumnsCache get(PGDirectConnection connection) {
+    return connection.getRegistry().getShared().getCache(RelationColumnsCache.class, RelationColumnsCache::new);
+  }
+
+  /**
+   * Retrieves the column metadata of the requested relations, loading
+   * and/or revalidating as necessary.
+   *
+   * @param metaData Metadata instance used to query the catalog
+   * @param relationIds Ids of the requested relations
+   * @return Map of relation id to the relation's column metadata. Relations
+   *         that no longer exist are not included.
+   * @throws SQLException If an error occurs querying the catalog
+   */
+  Map<Integer, List<ColumnData>> load(PGMetaData metaData, Iterable<Integer> relationIds) throws SQLException {
+
+    long now = System.nanoTime();
+    long validationInterval =
+        TimeUnit.MILLISECONDS.toNanos(metaData.connection.getSetting(JDBCSettings.RELATION_METADATA_VALIDATION_INTERVAL));
+
+    Map<Integer, List<ColumnData>> result = new HashMap<>();
+    List<Integer> unvalidatedIds = new ArrayList<>();
+
+    for (Integer relationId : relationIds) {
+      if (result.containsKey(relationId) || unvalidatedIds.contains(relationId)) continue;
+
+      Entry entry = entries.get(relationId);
+      if (entry != null && validationInterval > 0 && now - entry.validated < validationInterval) {
+        result.put(relationId, entry.columnsData);
+      }
+      else {
+        unvalidatedIds.add(relationId);
+      }
+    }
+
+    if (unvalidatedIds.isEmpty()) {
+      return result;
+    }
+
+    Map<Integer, String> versions = loadVersions(metaData, unvalidatedIds);
+
+    List<Integer> changedIds = new ArrayList<>();
+
+    for (Integer relationId : unvalidatedIds) {
+
+      String version = versions.get(relationId);
+      if (version == null) {
+        // Relation was dropped
+        entries.remove(relationId);
+        continue;
+      }
+
+      Entry entry = entries.get(relationId);
+      if (entry != null && entry.version.equals(version)) {
+        entry.validated = now;
+        result.put(relationId, entry.columnsData);
+      }
+      else {
+        changedIds.add(relationId);
+      }
+    }
+
+    if (changedIds.isEmpty()) {
+      return result;
+    }
+
+    Map<Integer, List<ColumnData>> loaded = loadColumnsData(metaData, changedIds);
+
+    for (Integer relationId : changedIds) {
+
+      List<ColumnData> columnsData = unmodifiableList(loaded.getOrDefault(relationId, emptyList()));
+
+      entries.put(relationId, new Entry(versions.get(relationId), columnsData, now));
+      result.put(relationId, columnsData);
+    }
+
+    return result;
+  }
+
+  private static Map<Integer, String> loadVersions(PGMetaData metaData, List<Integer> relationIds) throws SQLException {
+
+    Map<Integer, String> versions = new HashMap<>();
+
+    try (ResultSet rs = metaData.execForResultSet(VERSION_SQL, formatOidArray(relationIds))) {
+      while (rs.next()) {
+        versions.put(rs.getInt(1), Objects.toString(rs.getString(2), ""));
+      }
+    }
+
+    return versions;
+  }
+
+  private static Map<Integer, List<ColumnData>> loadColumnsData(PGMetaData metaData, List<Integer> relationIds) throws SQLException {
+
+    String sql = metaData.getColumnSQL(" AND c.oid = ANY(?::oid[])").toString();
+
+    Map<Integer, List<ColumnData>> columnsData = new HashMap<>();
+    for (ColumnData columnData : metaData.getColumnData(sql, formatOidArray(relationIds))) {
+      columnsData.computeIfAbsent(columnData.relationId, key -> new ArrayList<>()).add(columnData);
+    }
+
+    return columnsData;
+  }
+
+  private static List<Object> formatOidArray(List<Integer> relationIds) {
+
+    StringBuilder array = new StringBuilder("{");
+    for (int c = 0; c < relationIds.size(); ++c) {
+      if (c > 0) array.append(',');
+      array.append(Integer.toUnsignedLong(relationIds.get(c)));
+    }
+    array.append('}');
+
+    List<Object> params = new ArrayList<>();
+    params.add(array.toString());
+    return params;
+  }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Registry of a statement's active result sets.
+ *
+ * Each registered result set is assigned an integer handle (its slot)
+ * that allows it to be removed in constant time. Freed slots are kept
+ * on an intrusive free list and reused by later registrations.
+ *
+ * When leak tracking is enabled result sets are held weakly, allowing
+ * abandoned result sets to be collected (and cleaned up by the
+ * housekeeper); otherwise they are held directly and no reference
+ * objects are allocated.
+ */
+final class ResultSetRegistry {
+
+  static final int NO_HANDLE = -1;
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  private final boolean weak;
+  private Object[] entries;
+  private int[] nextFree;
+  private int freeHead;
+  private int limit;
+  private int size;
+
+  ResultSetRegistry(boolean weak) {
+    this.weak = weak;
+    this.entries = new Object[INITIAL_CAPACITY];
+    this.nextFree = new int[INITIAL_CAPACITY];
+    this.freeHead = NO_HANDLE;
+  }
+
+  /**
+   * Registers a result set
+   *
+   * @param resultSet Result set to register
+   * @return Handle used to remove the result set
+   */
+  int add(PGResultSet resultSet) {
+
+    if (freeHead == NO_HANDLE && limit == entries.length) {
+      prune();
+      if (freeHead == NO_HANDLE) {
+        entries = Arrays.copyOf(entries, entries.length * 2);
+        nextFree = Arrays.copyOf(nextFree, nextFree.length * 2);
+      }
+    }
+
+    int handle;
+    if (freeHead != NO_HANDLE) {
+      handle = freeHead;
+      freeHead = nextFree[handle];
+    }
+    else {
+      handle = limit++;
+    }
+
+    entries[handle] = weak ? new WeakReference<>(resultSet) : resultSet;
+    size++;
+
+    return handle;
+  }
+
+  /**
+   * Removes a result set using the handle it was registered with
+   *
+   * @param handle Handle returned from {@link #add(PGResultSet)}
+   * @param resultSet Result set registered with the handle
+   */
+  void remove(int handle, PGResultSet resultSet) {
+
+    if (handle < 0 || handle >= limit)
+      return;
+
+    Object entry = entries[handle];
+    if (entry == null)
+      return;
+
+    // Slot may have been reused after the registry was cleared
+    PGResultSet registered = get(entry);
+    if (registered != null && registered != resultSet)
+      return;
+
+    free(handle);
+  }
+
+  /**
+   * Removes all result sets that have been garbage collected
+   */
+  void prune() {
+
+    if (!weak)
+      return;
+
+    for (int handle = 0; handle < limit; ++handle) {
+      Object entry = entries[handle];
+      if (entry != null && get(entry) == null) {
+        free(handle);
+      }
+    }
+  }
+
+  /**
+   * Checks if any live result sets are registered
+   *
+   * @return <code>true</code> if no live result sets are registered
+   */
+  boolean isEmpty() {
+    if (size != 0) {
+      prune();
+    }
+    return size == 0;
+  }
+
+  void forEach(Consumer<PGResultSet> action) {
+
+    for (int handle = 0; handle < limit; ++handle) {
+      Object entry = entries[handle];
+      if (entry != null) {
+        PGResultSet resultSet = get(entry);
+        if (resultSet != null) {
+          action.accept(resultSet);
+        }
+      }
+    }
+  }
+
+  void clear() {
+    Arrays.fill(entries, 0, limit, null);
+    freeHead = NO_HANDLE;
+    limit = 0;
+    size = 0;
+  }
+
+  private void free(int handle) {
+    entries[handle] = null;
+    nextFree[handle] = freeHead;
+    freeHead = handle;
+    size--;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static PGResultSet get(Object entry) {
+    if (entry instanceof WeakReference) {
+      return ((WeakReference<PGResultSet>) entry).get();
+    }
+    return (PGResultSet) entry;
+  }
+
+}
@@ -87,6 +87,10 @@ public class SQLText {
     return (StatementNode) root.get(0);
   }
 
+  public StatementNode getStatement(int idx) {
+    return (StatementNode) root.get(idx);
+  }
+
   public StatementNode getLastStatement() {
     if (root == null || root.getNodeCount() == 0)
       return null;
@@ -29,7 +29,9 @@
 package com.impossibl.postgres.jdbc;
 
 import com.impossibl.postgres.jdbc.SQLTextTree.GrammarPiece;
+import com.impossibl.postgres.jdbc.SQLTextTree.Node;
 import com.impossibl.postgres.jdbc.SQLTextTree.StatementNode;
+import com.impossibl.postgres.jdbc.SQLTextTree.UnquotedIdentifierPiece;
 
 import static com.impossibl.postgres.system.Identifier.quoteIfNeeded;
 
@@ -52,6 +54,14 @@ import static java.sql.Connection.TRANSACTION_SERIALIZABLE;
  */
 class SQLTextUtils {
 
+  /**
+   * Session modification flags reported by {@link #getSessionModifications(SQLText)}
+   */
+  static final int SESSION_SETTINGS = 0x1;
+  static final int SESSION_LISTENS = 0x2;
+  static final int SESSION_CURSORS = 0x4;
+  static final int SESSION_TEMP_OBJECTS = 0x8;
+
   /**
    * Tests the given value for equality to "true"
    *
@@ -269,6 +279,181 @@ class SQLTextUtils {
     return prependClause(sqlText, preCursor);
   }
 
+  /**
+   * Determines the session state that may be modified by executing the
+   * given SQL text. Only the leading keywords of each statement are
+   * inspected; the result is therefore conservative and may report
+   * modifications that are never actually made (e.g. {@code SET LOCAL}).
+   *
+   * @param sqlText SQL text to inspect
+   * @return Combination of {@code SESSION_} flags
+   */
+  public static int getSessionModifications(SQLText sqlText) {
+
+    int modifications = 0;
+
+    for (int statementIdx = 0; statementIdx < sqlText.getStatementCount(); ++statementIdx) {
+
+      StatementNode statement = sqlText.getStatement(statementIdx);
+
+      String first = null;
+      String second = null;
+      String third = null;
+
+      Iterator<Node> nodeIter = statement.iterator();
+      while (nodeIter.hasNext() && third == null) {
+        Node node = nodeIter.next();
+        if (!(node instanceof UnquotedIdentifierPiece)) {
+          if (first == null && node instanceof GrammarPiece) {
+            // Statement doesn't start with a keyword
+            break;
+          }
+          continue;
+        }
+
+        String word = ((UnquotedIdentifierPiece) node).getText();
+        if (first == null) {
+          first = word;
+        }
+        else if (second == null) {
+          second = word;
+        }
+        else {
+          third = word;
+        }
+      }
+
+      if (first == null) {
+        continue;
+      }
+
+      if (first.equalsIgnoreCase("SET") || first.equalsIgnoreCase("RESET")) {
+        modifications |= SESSION_SETTINGS;
+      }
+      else if (first.equalsIgnoreCase("LISTEN")) {
+        modifications |= SESSION_LISTENS;
+      }
+      else if (first.equalsIgnoreCase("DECLARE")) {
+        modifications |= SESSION_CURSORS;
+      }
+      else if (first.equalsIgnoreCase("CREATE") && second != null) {
+        if (isTemporaryKeyword(second) ||
+            ((second.equalsIgnoreCase("GLOBAL") || second.equalsIgnoreCase("LOCAL")) && third != null && isTemporaryKeyword(third))) {
+          modifications |= SESSION_TEMP_OBJECTS;
+        }
+      }
+
+    }
+
+    return modifications;
+  }
+
+  /**
+   * Checks if the SQL text is a single statement that can be
+   * transparently executed as a named prepared statement (i.e. a
+   * query or DML command, excluding utility commands, including
+   * {@code SELECT INTO}, which may not be prepared or must not be
+   * cached).
+   *
+   * @param sqlText SQL text to inspect
+   * @return <code>true</code> if the SQL text can be prepared
+   */
+  public static boolean isPreparable(SQLText sqlText) {
+
+    if (sqlText.getStatementCount() != 1) {
+      return false;
+    }
+
+    Iterator<Node> nodeIter = sqlText.getStatement(0).iterator();
+    while (nodeIter.hasNext()) {
+      Node node = nodeIter.next();
+      if (node instanceof UnquotedIdentifierPiece) {
+        String first = ((UnquotedIdentifierPiece) node).getText();
+        if ((first.equalsIgnoreCase("SELECT") || first.equalsIgnoreCase("WITH")) && isCreateTableAs(sqlText)) {
+          return false;
+        }
+        return first.equalsIgnoreCase("SELECT") ||
+            first.equalsIgnoreCase("INSERT") ||
+            first.equalsIgnoreCase("UPDATE") ||
+            first.equalsIgnoreCase("DELETE") ||
+            first.equalsIgnoreCase("WITH") ||
+            first.equalsIgnoreCase("VALUES") ||
+            first.equalsIgnoreCase("TABLE");
+      }
+      if (node instanceof GrammarPiece) {
+        // Statement doesn't start with a keyword
+        return false;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Checks if the SQL text contains a statement creating a table from a
+   * query (i.e. {@code CREATE TABLE AS}, {@code CREATE MATERIALIZED VIEW}
+   * or {@code SELECT INTO}). The server reports these commands with a
+   * {@code SELECT} command tag, so they cannot be recognized from their
+   * results.
+   *
+   * Only the top-level keywords of each statement are inspected; the
+   * result is therefore conservative.
+   *
+   * @param sqlText SQL text to inspect
+   * @return <code>true</code> if the SQL text creates a table from a query
+   */
+  public static boolean isCreateTableAs(SQLText sqlText) {
+
+    for (int statementIdx = 0; statementIdx < sqlText.getStatementCount(); ++statementIdx) {
+
+      String first = null;
+      boolean table = false;
+
+      Iterator<Node> nodeIter = sqlText.getStatement(statementIdx).iterator();
+      while (nodeIter.hasNext()) {
+        Node node = nodeIter.next();
+        if (!(node instanceof UnquotedIdentifierPiece)) {
+          if (first == null && node instanceof GrammarPiece) {
+            // Statement doesn't start with a keyword
+            break;
+          }
+          continue;
+        }
+
+        String word = ((UnquotedIdentifierPiece) node).getText();
+        if (first == null) {
+          first = word;
+          if (!first.equalsIgnoreCase("CREATE") && !first.equalsIgnoreCase("SELECT") && !first.equalsIgnoreCase("WITH")) {
+            break;
+          }
+        }
+        else if (first.equalsIgnoreCase("CREATE")) {
+          if (word.equalsIgnoreCase("TABLE") || word.equalsIgnoreCase("MATERIALIZED")) {
+            table = true;
+          }
+          else if (table && word.equalsIgnoreCase("AS")) {
+            return true;
+          }
+        }
+        else if (word.equalsIgnoreCase("INTO")) {
+          return true;
+        }
+        else if (word.equalsIgnoreCase("INSERT") || word.equalsIgnoreCase("UPDATE") ||
+            word.equalsIgnoreCase("DELETE") || word.equalsIgnoreCase("MERGE")) {
+          // Data modifying query (e.g. WITH ... INSERT INTO)
+          break;
+        }
+      }
+
+    }
+
+    return false;
+  }
+
+  private static boolean isTemporaryKeyword(String word) {
+    return word.equalsIgnoreCase("TEMP") || word.equalsIgnoreCase("TEMPORARY");
+  }
+
   /**
    * Appends a clause, provided as text, to the given SQL text.
    *
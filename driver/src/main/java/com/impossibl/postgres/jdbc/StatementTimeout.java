@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.protocol.ServerConnection;
+
+import static com.impossibl.postgres.utils.Await.awaitUninterruptibly;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+/**
+ * Statement timeout that, when expired, cancels the executing
+ * request by sending the server a CancelRequest.
+ *
+ * The cancel request is issued asynchronously from the timer's thread;
+ * {@link #complete()} must be called when execution completes to
+ * ensure an expired timeout's cancel request has been delivered before
+ * any further requests are issued.
+ */
+class StatementTimeout implements TimerTask {
+
+  enum State {
+    Pending,
+    Expired,
+    Completed
+  }
+
+  private final ServerConnection serverConnection;
+  private final AtomicReference<State> state = new AtomicReference<>(State.Pending);
+  private final CountDownLatch delivered = new CountDownLatch(1);
+  private volatile Timeout timeout;
+
+  StatementTimeout(ServerConnection serverConnection) {
+    this.serverConnection = serverConnection;
+  }
+
+  void setTimeout(Timeout timeout) {
+    this.timeout = timeout;
+  }
+
+  @Override
+  public void run(Timeout timeout) {
+
+    if (!state.compareAndSet(State.Pending, State.Expired))
+      return;
+
+    try {
+      serverConnection.sendCancelRequest().addListener(sent -> delivered.countDown());
+    }
+    catch (Throwable e) {
+      delivered.countDown();
+    }
+
+  }
+
+  void complete() {
+
+    Timeout timeout = this.timeout;
+    if (timeout != null) {
+      timeout.cancel();
+    }
+
+    if (state.getAndSet(State.Completed) == State.Expired) {
+
+      awaitUninterruptibly(delivered::await);
+
+    }
+
+  }
+
+}
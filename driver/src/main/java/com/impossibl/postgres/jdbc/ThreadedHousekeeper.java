@@ -31,10 +31,12 @@ package com.impossibl.postgres.jdbc;
 import java.lang.ref.PhantomReference;
 import java.lang.ref.ReferenceQueue;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,6 +45,11 @@ import java.util.logging.Logger;
 /**
  * Housekeeper that spins up a daemon thread to execute clean ups.
  *
+ * Tracked references are kept in intrusive linked lists striped by
+ * the registering thread, so registrations from different threads
+ * rarely contend, and the key returned from {@link #add(Object, CleanupRunnable)}
+ * is the reference itself, allowing it to be removed in constant time.
+ *
  * @author kdubb
  *
  */
@@ -101,12 +108,77 @@ public class ThreadedHousekeeper implements Housekeeper {
     }
   }
 
+  private static final int DRAIN_BATCH_SIZE = 256;
+
+  /**
+   * Doubly linked list of tracked references
+   */
+  private static final class Stripe {
+
+    HousekeeperReference<?> head;
+    int size;
+
+    synchronized void link(HousekeeperReference<?> ref) {
+      ref.next = head;
+      if (head != null) {
+        head.prev = ref;
+      }
+      head = ref;
+      ref.linked = true;
+      size++;
+    }
+
+    synchronized boolean unlink(HousekeeperReference<?> ref) {
+      if (!ref.linked) {
+        return false;
+      }
+
+      if (ref.prev != null) {
+        ref.prev.next = ref.next;
+      }
+      else {
+        head = ref.next;
+      }
+      if (ref.next != null) {
+        ref.next.prev = ref.prev;
+      }
+      ref.prev = ref.next = null;
+      ref.linked = false;
+      size--;
+
+      return true;
+    }
+
+    synchronized boolean contains(int referentId) {
+      for (HousekeeperReference<?> ref = head; ref != null; ref = ref.next) {
+        if (ref.id == referentId)
+          return true;
+      }
+      return false;
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    synchronized void clear() {
+      while (head != null) {
+        unlink(head);
+      }
+    }
+
+  }
+
   private class HousekeeperReference<T> extends PhantomReference<T> {
 
     int id;
     CleanupRunnable cleanup;
+    final Stripe stripe;
+    HousekeeperReference<?> prev;
+    HousekeeperReference<?> next;
+    boolean linked;
 
-    HousekeeperReference(CleanupRunnable cleanup, T referent, ReferenceQueue<? super T> q) {
+    HousekeeperReference(CleanupRunnable cleanup, T referent, ReferenceQueue<? super T> q, Stripe stripe) {
       super(referent, q);
 
       if (cleanup == referent) {
@@ -115,6 +187,7 @@ public class ThreadedHousekeeper implements Housekeeper {
 
       this.id = System.identityHashCode(referent);
       this.cleanup = cleanup;
+      this.stripe = stripe;
     }
 
     void cleanup() {
@@ -171,9 +244,10 @@ public class ThreadedHousekeeper implements Housekeeper {
 
   }
 
-  private boolean logLeaks = true;
+  private volatile boolean logLeaks = true;
   private ReferenceQueue<Object> cleanupQueue = new ReferenceQueue<>();
-  private Set<HousekeeperReference<?>> cleanupReferences = new HashSet<>();
+  private Stripe[] stripes;
+  private ConcurrentMap<String, LongAdder> leakedCounts = new ConcurrentHashMap<>();
   private AtomicBoolean cleanupThreadEnabled = new AtomicBoolean(true);
   private Thread cleanupThread = new Thread() {
 
@@ -190,18 +264,12 @@ public class ThreadedHousekeeper implements Housekeeper {
           continue;
         }
 
-        ref.clear();
-
-        try {
-          ref.cleanup();
-        }
-        catch (Throwable e) {
-          // Ignore...
-        }
-
-        synchronized (ThreadedHousekeeper.this) {
-          cleanupReferences.remove(ref);
+        // Drain whatever else is queued before blocking again
+        int drained = 0;
+        do {
+          cleanup(ref);
         }
+        while (++drained < DRAIN_BATCH_SIZE && (ref = (HousekeeperReference<?>) cleanupQueue.poll()) != null);
       }
 
     }
@@ -209,6 +277,12 @@ public class ThreadedHousekeeper implements Housekeeper {
   };
 
   private ThreadedHousekeeper() {
+    int stripeCount = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+    stripes = new Stripe[stripeCount];
+    for (int c = 0; c < stripeCount; ++c) {
+      stripes[c] = new Stripe();
+    }
+
     cleanupThread.setName("PG-JDBC Housekeeper");
     cleanupThread.setDaemon(true);
     cleanupThread.start();
@@ -220,44 +294,69 @@ public class ThreadedHousekeeper implements Housekeeper {
   }
 
   @Override
-  public synchronized void emptyQueue() {
+  public Map<String, Long> getLeakedReferenceCounts() {
+    Map<String, Long> counts = new TreeMap<>();
+    leakedCounts.forEach((kind, count) -> counts.put(kind, count.sum()));
+    return counts;
+  }
+
+  @Override
+  public int getTrackedReferenceCount() {
+    int count = 0;
+    for (Stripe stripe : stripes) {
+      count += stripe.size();
+    }
+    return count;
+  }
+
+  @Override
+  public void emptyQueue() {
 
     HousekeeperReference<?> ref;
 
     while ((ref = (HousekeeperReference<?>) cleanupQueue.poll()) != null) {
+      cleanup(ref);
+    }
 
-      try {
-        ref.cleanup();
-      }
-      catch (Throwable e) {
-        // Ignore...
-      }
+  }
 
-      cleanupReferences.remove(ref);
+  private void cleanup(HousekeeperReference<?> ref) {
+
+    // Explicitly removed after being queued
+    if (!ref.stripe.unlink(ref)) {
+      return;
     }
 
+    ref.clear();
+
+    leakedCounts.computeIfAbsent(ref.cleanup.getKind(), kind -> new LongAdder()).increment();
+
+    try {
+      ref.cleanup();
+    }
+    catch (Throwable e) {
+      // Ignore...
+    }
   }
 
   @Override
-  public synchronized <T> Object add(T referent, CleanupRunnable cleanup) {
-    HousekeeperReference<T> ref = new HousekeeperReference<>(cleanup, referent, cleanupQueue);
-    cleanupReferences.add(ref);
-    return cleanup;
+  public <T> Object add(T referent, CleanupRunnable cleanup) {
+    Stripe stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+    HousekeeperReference<T> ref = new HousekeeperReference<>(cleanup, referent, cleanupQueue, stripe);
+    stripe.link(ref);
+    return ref;
   }
 
   @Override
-  public synchronized void remove(Object cleanupKey) {
-
-    Iterator<HousekeeperReference<?>> refIter = cleanupReferences.iterator();
-    while (refIter.hasNext()) {
-      HousekeeperReference<?> ref = refIter.next();
-      if (ref.cleanup == cleanupKey) {
-        ref.clear();
-        refIter.remove();
-        return;
-      }
+  public void remove(Object cleanupKey) {
+
+    if (!(cleanupKey instanceof HousekeeperReference)) {
+      return;
     }
 
+    HousekeeperReference<?> ref = (HousekeeperReference<?>) cleanupKey;
+    ref.clear();
+    ref.stripe.unlink(ref);
   }
 
   private synchronized void close() {
@@ -276,15 +375,15 @@ public class ThreadedHousekeeper implements Housekeeper {
   /**
    * Test only
    */
-  public synchronized boolean testCheckCleaned(int referentId) {
+  public boolean testCheckCleaned(int referentId) {
 
     System.gc();
 
     // Ensure queue is emptied before checking
     emptyQueue();
 
-    for (HousekeeperReference<?> ref : cleanupReferences) {
-      if (ref.id == referentId)
+    for (Stripe stripe : stripes) {
+      if (stripe.contains(referentId))
         return false;
     }
 
@@ -294,8 +393,10 @@ public class ThreadedHousekeeper implements Housekeeper {
   /**
    * Test only
    */
-  public synchronized void testClear() {
-    cleanupReferences.clear();
+  public void testClear() {
+    for (Stripe stripe : stripes) {
+      stripe.clear();
+    }
   }
 
 }
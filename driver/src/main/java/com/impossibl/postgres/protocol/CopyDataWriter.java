@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.protocol;
+
+import java.io.IOException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * Sends data to the server while it is in copy-in mode.
+ *
+ * Data is sent as <code>CopyData</code> messages directly from the
+ * provided buffers. Writers are used from application threads; writes
+ * block while the connection's outbound buffer is full, so data is
+ * never produced faster than it can be sent.
+ */
+public interface CopyDataWriter {
+
+  /**
+   * @return Allocator to use for data buffers
+   */
+  ByteBufAllocator getAllocator();
+
+  /**
+   * Sends a buffer's readable bytes as a single <code>CopyData</code>
+   * message; ownership of the buffer is transferred to the writer.
+   *
+   * @param data Data to send
+   * @throws IOException If an error occurs sending the data
+   */
+  void writeData(ByteBuf data) throws IOException;
+
+  /**
+   * Completes the copy successfully
+   *
+   * @throws IOException If an error occurs sending the message
+   */
+  void writeDone() throws IOException;
+
+  /**
+   * Aborts the copy; the server reports the message as an error
+   *
+   * @param message Reason for the failure
+   * @throws IOException If an error occurs sending the message
+   */
+  void writeFail(String message) throws IOException;
+
+}
@@ -63,7 +63,8 @@ public class FieldBuffersRowData extends AbstractReferenceCounted implements Upd
   @Override
   public Object getField(int fieldIdx, ResultField field, Context context, Class<?> targetClass, Object targetContext) throws IOException {
 
-    Type type = context.getRegistry().resolve(field.getTypeRef());
+    ResultField.DecodePlan plan = field.getDecodePlan(context);
+    Type type = plan.getType();
 
     ByteBuf fieldBuffer = fieldBuffers[fieldIdx];
     fieldBuffer.resetReaderIndex();
@@ -73,13 +74,13 @@ public class FieldBuffersRowData extends AbstractReferenceCounted implements Upd
     switch (field.getFormat()) {
       case Text: {
         String fieldStr = fieldBuffer.toString(context.getCharset());
-        Type.Codec.Decoder<CharSequence> decoder = type.getTextCodec().getDecoder();
+        Type.Codec.Decoder<CharSequence> decoder = plan.getTextDecoder();
         result = decoder.decode(context, type, field.getTypeLength(), field.getTypeModifier(), fieldStr, targetClass, targetContext);
       }
       break;
 
       case Binary: {
-        Type.Codec.Decoder<ByteBuf> decoder = type.getBinaryCodec().getDecoder();
+        Type.Codec.Decoder<ByteBuf> decoder = plan.getBinaryDecoder();
         result = decoder.decode(context, type, field.getTypeLength(), field.getTypeModifier(), fieldBuffer, targetClass, targetContext);
       }
       break;
@@ -91,6 +92,17 @@ public class FieldBuffersRowData extends AbstractReferenceCounted implements Upd
     return result;
   }
 
+  @Override
+  public ByteBuf getFieldBuffer(int fieldIdx) {
+
+    ByteBuf fieldBuffer = fieldBuffers[fieldIdx];
+    if (fieldBuffer == null) {
+      return null;
+    }
+
+    return fieldBuffer.slice(0, fieldBuffer.writerIndex());
+  }
+
   @Override
   public void updateField(int columnIndex, ResultField field, Context context, Object source, Object sourceContext) throws IOException {
 
@@ -32,11 +32,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 
 import io.netty.buffer.ByteBuf;
 
 public interface RequestExecutor {
 
+  /**
+   * Lock guarding the submission of requests. While held, no other
+   * thread can submit requests to the executor.
+   *
+   * @return Request submission lock
+   */
+  Lock getSubmissionLock();
+
   /**
    * Base type handler for all requests.
    */
@@ -265,6 +274,36 @@ public interface RequestExecutor {
                FieldFormatRef[] resultFieldFormats, int maxRows,
                ExecuteHandler handler) throws IOException;
 
+  /**
+   * Uses the "extended" query protocol to execute a sequence of previously
+   * prepared queries, in order, under a single synchronization; saving a
+   * round trip per query.
+   *
+   * Each query is executed using the unnamed portal and its results are
+   * delivered, in order, via the
+   * {@link ExecuteHandler#handleComplete(String, Long, Long, RowDataSet, List)}
+   * callback. If a query fails the server skips all following queries and
+   * a single {@link ExecuteHandler#handleError(Throwable, List)} callback is
+   * produced. In all cases the request ends with a final
+   * {@link ExecuteHandler#handleReady(TransactionStatus)} callback.
+   *
+   * @param statementNames Names of the statements to execute; {@code null} elements execute the unnamed statement.
+   * @param parameterFormats Formats (text or binary) of each statement's parameters.
+   * @param parameterBuffers Buffers of each statement's encoded parameter values.
+   * @param resultFieldFormats Desired formats of each statement's result fields.
+   * @param handler Execute handler to process results. Will produce a
+   *                {@link ExecuteHandler#handleComplete(String, Long, Long, RowDataSet, List)}
+   *                callback for each query executed, a
+   *                {@link ExecuteHandler#handleError(Throwable, List)}
+   *                callback for the query that failed (if any), followed by a final
+   *                {@link ExecuteHandler#handleReady(TransactionStatus)}.
+   * @throws IOException If an error occurs submitting the request.
+   */
+  void executeAll(String[] statementNames,
+                  FieldFormatRef[][] parameterFormats, ByteBuf[][] parameterBuffers,
+                  FieldFormatRef[][] resultFieldFormats,
+                  ExecuteHandler handler) throws IOException;
+
   /**
    * Request handler interface for the
    * {@link #resume(String, int, ResumeHandler)}
@@ -421,4 +460,104 @@ public interface RequestExecutor {
 
   void copyTo(String sql, OutputStream stream, CopyToHandler handler) throws IOException;
 
+
+  interface CopyInHandler extends SynchronizedHandler {
+
+    /**
+     * Called, on the I/O thread, once the server is ready to receive data.
+     *
+     * @param format Format of the copy
+     * @param fieldFormats Format of each column
+     * @param writer Writer used to send data, from any thread other than the I/O thread
+     */
+    void handleStart(CopyFormat format, FieldFormat[] fieldFormats, CopyDataWriter writer) throws IOException;
+
+    void handleComplete(Long rowsAffected) throws IOException;
+
+  }
+
+  /**
+   * Executes a <code>COPY ... FROM STDIN</code> command, allowing the
+   * handler to send data as it is produced; rather than reading it
+   * from a stream on the I/O thread.
+   *
+   * @param sql SQL text of the copy command
+   * @param handler Handler for the copy
+   * @throws IOException If an error occurs submitting the request.
+   */
+  void copyIn(String sql, CopyInHandler handler) throws IOException;
+
+
+  interface CopyOutHandler extends SynchronizedHandler {
+
+    void handleStart(CopyFormat format, FieldFormat[] fieldFormats) throws IOException;
+
+    /**
+     * Receives the data of a single <code>CopyData</code> message. The
+     * buffer is only valid during the call; handlers must retain it to
+     * keep it.
+     *
+     * @param data Data received
+     */
+    void handleData(ByteBuf data) throws IOException;
+
+    void handleComplete(Long rowsAffected) throws IOException;
+
+  }
+
+  /**
+   * Executes a <code>COPY ... TO STDOUT</code> command, delivering the
+   * received data buffers to the handler without copying.
+   *
+   * @param sql SQL text of the copy command
+   * @param handler Handler for the copy
+   * @throws IOException If an error occurs submitting the request.
+   */
+  void copyOut(String sql, CopyOutHandler handler) throws IOException;
+
+
+  interface CopyBothHandler extends SynchronizedHandler {
+
+    /**
+     * Called, on the I/O thread, once the server has entered copy-both
+     * mode.
+     *
+     * @param format Format of the copy
+     * @param fieldFormats Format of each column
+     * @param writer Writer used to send data; writes from the I/O thread
+     *               are queued without waiting for the channel to drain
+     */
+    void handleStart(CopyFormat format, FieldFormat[] fieldFormats, CopyDataWriter writer) throws IOException;
+
+    /**
+     * Receives the data of a single <code>CopyData</code> message. The
+     * buffer is only valid during the call; handlers must retain it to
+     * keep it.
+     *
+     * @param data Data received
+     */
+    void handleData(ByteBuf data) throws IOException;
+
+    /**
+     * Called when the server ends its side of the copy; the handler
+     * should end its side (via {@link CopyDataWriter#writeDone()}) if
+     * it has not already done so.
+     */
+    void handleDone() throws IOException;
+
+    void handleComplete() throws IOException;
+
+  }
+
+  /**
+   * Executes a command that enters copy-both mode (e.g.
+   * <code>START_REPLICATION</code>), delivering received data buffers
+   * to the handler without copying while it sends its own data.
+   *
+   * @param sql SQL text of the command
+   * @param handler Handler for the copy
+   * @throws IOException If an error occurs submitting the request.
+   */
+  void copyBoth(String sql, CopyBothHandler handler) throws IOException;
+
 }
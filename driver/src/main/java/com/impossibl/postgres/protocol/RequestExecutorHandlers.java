@@ -36,18 +36,28 @@
 package com.impossibl.postgres.protocol;
 
 import com.impossibl.postgres.system.Context;
+import com.impossibl.postgres.system.NoticeException;
 import com.impossibl.postgres.types.Type;
 import com.impossibl.postgres.utils.Await;
 import com.impossibl.postgres.utils.BlockingReadTimeoutException;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 
+import io.netty.buffer.ByteBuf;
+
+import static io.netty.util.ReferenceCountUtil.release;
 import static io.netty.util.ReferenceCountUtil.retain;
 
 public class RequestExecutorHandlers {
@@ -285,4 +295,517 @@ public class RequestExecutorHandlers {
 
   }
 
+  /**
+   * Handler for requests producing multiple results (e.g. multi-statement
+   * queries) that hands out each result as soon as it has completed, rather
+   * than collecting every result before completing.
+   *
+   * While a completed result is waiting to be taken, reading from the server
+   * is suspended; bounding the buffered results to (approximately) the
+   * result being consumed and the one following it.
+   */
+  public static class StreamedResults implements RequestExecutor.QueryHandler, RequestExecutor.ExecuteHandler {
+
+    private static final Object READY = new Object();
+
+    private ServerConnection serverConnection;
+    private ResultField[][] describedResultFields;
+    private int describedResultIdx;
+    private Deque<Object> results = new ArrayDeque<>();
+    private List<Notice> notices = new ArrayList<>();
+    private boolean discarding;
+    private final Lock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    public StreamedResults(ServerConnection serverConnection) {
+      this(serverConnection, null);
+    }
+
+    /**
+     * @param serverConnection Connection the request is submitted to
+     * @param describedResultFields Result fields of each executed statement, or {@code null}
+     *                              if the results are self-describing (e.g. simple queries).
+     */
+    public StreamedResults(ServerConnection serverConnection, ResultField[][] describedResultFields) {
+      this.serverConnection = serverConnection;
+      this.describedResultFields = describedResultFields;
+    }
+
+    public List<Notice> getNotices() {
+      lock.lock();
+      try {
+        return notices;
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Waits for, and takes, the next result.
+     *
+     * @param timeout Maximum time to wait for the result
+     * @param unit Unit of {@code timeout}
+     * @return Next result or {@code null} if all results have been taken.
+     * @throws IOException If the result's statement failed or an error occurred
+     * communicating with the server.
+     */
+    public ResultBatch next(long timeout, TimeUnit unit) throws IOException {
+      lock.lock();
+      try {
+
+        if (!awaitResult(timeout, unit)) {
+          throw new BlockingReadTimeoutException();
+        }
+
+        Object result = results.peek();
+        if (result == READY) {
+          return null;
+        }
+
+        results.poll();
+
+        if (results.isEmpty()) {
+          serverConnection.resumeReading();
+        }
+
+        if (result instanceof Throwable) {
+
+          // Remaining statements are skipped, wait for the request to synchronize
+
+          if (!awaitResult(timeout, unit)) {
+            throw new BlockingReadTimeoutException();
+          }
+
+          Throwable error = (Throwable) result;
+          if (error instanceof IOException) {
+            throw (IOException) error;
+          }
+          if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+          }
+          throw new RuntimeException(error);
+        }
+
+        return (ResultBatch) result;
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Discards all results that have not been taken and waits for the
+     * request to complete. Errors produced by the discarded results are
+     * ignored.
+     *
+     * @param timeout Maximum time to wait for the request to complete
+     * @param unit Unit of {@code timeout}
+     * @throws IOException If the request does not complete in time
+     */
+    public void discard(long timeout, TimeUnit unit) throws IOException {
+      lock.lock();
+      try {
+
+        discarding = true;
+
+        results.removeIf(result -> {
+          if (result instanceof ResultBatch) {
+            ((ResultBatch) result).release();
+          }
+          return result != READY;
+        });
+
+        serverConnection.resumeReading();
+
+        if (!awaitResult(timeout, unit)) {
+          throw new BlockingReadTimeoutException();
+        }
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * @return {@code true} if all results have been received.
+     */
+    public boolean isCompleted() {
+      lock.lock();
+      try {
+        return results.peekLast() == READY;
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    private boolean awaitResult(long timeout, TimeUnit unit) {
+      return Await.awaitUninterruptibly(timeout, unit, (remaining, remainingUnit) -> {
+        long nanos = remainingUnit.toNanos(remaining);
+        while (results.isEmpty()) {
+          if (nanos <= 0) {
+            return false;
+          }
+          nanos = available.awaitNanos(nanos);
+        }
+        return true;
+      });
+    }
+
+    private void add(Object result, List<Notice> notices) {
+      lock.lock();
+      try {
+
+        // Copied as the request continues to add notices on the I/O thread
+        this.notices = new ArrayList<>(notices);
+
+        if (discarding && result != READY) {
+          release(result);
+          return;
+        }
+
+        results.add(result);
+
+        if (result == READY) {
+          // Request is complete; nothing left to hold back
+          serverConnection.resumeReading();
+        }
+        else if (result instanceof ResultBatch) {
+          serverConnection.suspendReading();
+        }
+
+        available.signalAll();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public void handleComplete(String command, Long rowsAffected, Long insertedOid, TypeRef[] parameterTypes, ResultField[] resultFields, RowDataSet rows, List<Notice> notices) {
+      add(new ResultBatch(command, rowsAffected, insertedOid, resultFields, retain(rows)), notices);
+    }
+
+    @Override
+    public void handleComplete(String command, Long rowsAffected, Long insertedOid, RowDataSet rows, List<Notice> notices) {
+      ResultField[] resultFields = describedResultFields[describedResultIdx++];
+      add(new ResultBatch(command, rowsAffected, insertedOid, resultFields, retain(rows)), notices);
+    }
+
+    @Override
+    public void handleSuspend(RowDataSet rows, List<Notice> notices) {
+      handleError(new IllegalStateException("Unexpected portal suspension"), notices);
+    }
+
+    @Override
+    public void handleError(Throwable cause, List<Notice> notices) {
+      add(cause, notices);
+
+      // Only server reported errors are followed by synchronization
+      if (!(cause instanceof NoticeException)) {
+        add(READY, notices);
+      }
+    }
+
+    @Override
+    public void handleReady(TransactionStatus transactionStatus) {
+      add(READY, notices);
+    }
+
+  }
+
+  /**
+   * Copy-out handler queueing received data for consumption by
+   * another thread.
+   *
+   * Reading from the connection is suspended while too much data
+   * is queued, and resumed once it has been consumed.
+   */
+  public static class StreamedCopyData implements RequestExecutor.CopyOutHandler {
+
+    private static final Object READY = new Object();
+    private static final int SUSPEND_THRESHOLD = 64;
+    private static final int RESUME_THRESHOLD = SUSPEND_THRESHOLD / 2;
+
+    private ServerConnection serverConnection;
+    private CopyFormat format;
+    private FieldFormat[] fieldFormats;
+    private Long rowsAffected;
+    private Deque<Object> data = new ArrayDeque<>();
+    private List<Notice> notices = new ArrayList<>();
+    private boolean discarding;
+    private final Lock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    public StreamedCopyData(ServerConnection serverConnection) {
+      this.serverConnection = serverConnection;
+    }
+
+    public CopyFormat getFormat() {
+      return format;
+    }
+
+    public FieldFormat[] getFieldFormats() {
+      return fieldFormats;
+    }
+
+    public Long getRowsAffected() {
+      return rowsAffected;
+    }
+
+    public List<Notice> getNotices() {
+      lock.lock();
+      try {
+        return notices;
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Waits for, and takes, the next data buffer; the caller is
+     * responsible for releasing it.
+     *
+     * @param timeout Maximum time to wait for data
+     * @param unit Unit of {@code timeout}
+     * @return Next data buffer or {@code null} if the copy is complete.
+     * @throws IOException If the copy failed or an error occurred
+     * communicating with the server.
+     */
+    public ByteBuf next(long timeout, TimeUnit unit) throws IOException {
+      lock.lock();
+      try {
+
+        if (!awaitData(timeout, unit)) {
+          throw new BlockingReadTimeoutException();
+        }
+
+        Object next = data.peek();
+        if (next == READY) {
+          return null;
+        }
+
+        data.poll();
+
+        if (data.size() <= RESUME_THRESHOLD) {
+          serverConnection.resumeReading();
+        }
+
+        if (next instanceof Throwable) {
+
+          // Wait for the request to synchronize
+          if (!awaitReady(timeout, unit)) {
+            throw new BlockingReadTimeoutException();
+          }
+
+          Throwable error = (Throwable) next;
+          if (error instanceof IOException) {
+            throw (IOException) error;
+          }
+          if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+          }
+          throw new RuntimeException(error);
+        }
+
+        return (ByteBuf) next;
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Checks if the copy has completed, i.e. all of its data has been
+     * received.
+     *
+     * @return {@code true} if the copy has completed
+     */
+    public boolean isComplete() {
+      lock.lock();
+      try {
+        return data.peekLast() == READY;
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Discards all data that has not been taken and waits for the
+     * copy to complete. Errors are ignored.
+     *
+     * @param timeout Maximum time to wait for the copy to complete
+     * @param unit Unit of {@code timeout}
+     * @throws IOException If the copy does not complete in time
+     */
+    public void discard(long timeout, TimeUnit unit) throws IOException {
+      lock.lock();
+      try {
+
+        discarding = true;
+
+        data.removeIf(next -> {
+          release(next);
+          return next != READY;
+        });
+
+        serverConnection.resumeReading();
+
+        if (!awaitReady(timeout, unit)) {
+          throw new BlockingReadTimeoutException();
+        }
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    private boolean awaitData(long timeout, TimeUnit unit) {
+      return Await.awaitUninterruptibly(timeout, unit, (remaining, remainingUnit) -> {
+        long nanos = remainingUnit.toNanos(remaining);
+        while (data.isEmpty()) {
+          if (nanos <= 0) {
+            return false;
+          }
+          nanos = available.awaitNanos(nanos);
+        }
+        return true;
+      });
+    }
+
+    private boolean awaitReady(long timeout, TimeUnit unit) {
+      return Await.awaitUninterruptibly(timeout, unit, (remaining, remainingUnit) -> {
+        long nanos = remainingUnit.toNanos(remaining);
+        while (data.peekLast() != READY) {
+          if (nanos <= 0) {
+            return false;
+          }
+          nanos = available.awaitNanos(nanos);
+        }
+        return true;
+      });
+    }
+
+    private void add(Object next, List<Notice> notices) {
+      lock.lock();
+      try {
+
+        if (notices != null) {
+          // Copied as the request continues to add notices on the I/O thread
+          this.notices = new ArrayList<>(notices);
+        }
+
+        if (discarding && next != READY) {
+          release(next);
+          return;
+        }
+
+        data.add(next);
+
+        if (next == READY) {
+          // Request is complete; nothing left to hold back
+          serverConnection.resumeReading();
+        }
+        else if (data.size() >= SUSPEND_THRESHOLD) {
+          serverConnection.suspendReading();
+        }
+
+        available.signalAll();
+      }
+      finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public void handleStart(CopyFormat format, FieldFormat[] fieldFormats) {
+      this.format = format;
+      this.fieldFormats = fieldFormats;
+    }
+
+    @Override
+    public void handleData(ByteBuf data) {
+      add(data.retain(), null);
+    }
+
+    @Override
+    public void handleComplete(Long rowsAffected) {
+      this.rowsAffected = rowsAffected;
+    }
+
+    @Override
+    public void handleError(Throwable cause, List<Notice> notices) {
+      add(cause, notices);
+
+      // Only server reported errors are followed by synchronization
+      if (!(cause instanceof NoticeException)) {
+        add(READY, notices);
+      }
+    }
+
+    @Override
+    public void handleReady(TransactionStatus transactionStatus) {
+      add(READY, null);
+    }
+
+  }
+
+  /**
+   * Query result that completes a future instead of requiring a thread to await
+   * its completion; allowing multiple requests to be in flight simultaneously.
+   *
+   * The future is completed on an I/O thread.
+   */
+  public static class FutureQueryResult implements RequestExecutor.ExtendedQueryHandler {
+
+    private CompletableFuture<ResultBatch> future = new CompletableFuture<>();
+    private ResultBatch resultBatch;
+    private List<Notice> notices = new ArrayList<>();
+
+    public CompletableFuture<ResultBatch> getFuture() {
+      return future;
+    }
+
+    public List<Notice> getNotices() {
+      return notices;
+    }
+
+    @Override
+    public void handleComplete(String command, Long rowsAffected, Long insertedOid, TypeRef[] parameterTypes, ResultField[] resultFields, RowDataSet rows, List<Notice> notices) {
+      this.resultBatch = new ResultBatch(command, rowsAffected, insertedOid, resultFields, retain(rows));
+      this.notices = notices;
+    }
+
+    @Override
+    public void handleSuspend(TypeRef[] parameterTypes, ResultField[] resultFields, RowDataSet rows, List<Notice> notices) {
+      this.resultBatch = new ResultBatch(null, null, null, resultFields, retain(rows));
+      this.notices = notices;
+
+      future.complete(resultBatch);
+    }
+
+    @Override
+    public void handleReady(TransactionStatus transactionStatus) {
+      if (resultBatch == null) {
+        // Empty queries complete without a result
+        resultBatch = new ResultBatch(null, null, null, null, null);
+      }
+      future.complete(resultBatch);
+    }
+
+    @Override
+    public void handleError(Throwable error, List<Notice> notices) {
+      this.notices = notices;
+
+      release(resultBatch);
+      resultBatch = null;
+
+      future.completeExceptionally(error);
+    }
+
+  }
+
 }
@@ -45,7 +45,11 @@ public class ResultBatches {
   }
 
   public static void transformFieldTypes(ResultBatch resultBatch, Transformer transformer) throws IOException {
-    for (ResultField field : resultBatch.getFields()) {
+    transformFieldTypes(resultBatch.getFields(), transformer);
+  }
+
+  public static void transformFieldTypes(ResultField[] fields, Transformer transformer) throws IOException {
+    for (ResultField field : fields) {
       field.setTypeRef(transformer.apply(field.getTypeRef()));
     }
   }
@@ -28,10 +28,66 @@
  */
 package com.impossibl.postgres.protocol;
 
+import com.impossibl.postgres.system.Context;
 import com.impossibl.postgres.types.Type;
+import com.impossibl.postgres.utils.StringCache;
+
+import java.io.IOException;
+
+import io.netty.buffer.ByteBuf;
 
 public class ResultField implements FieldFormatRef {
 
+  /**
+   * Decoding plan of a field; compiled once and reused for every row,
+   * and every execution, that shares the field.
+   */
+  public static class DecodePlan {
+
+    private Type type;
+    private Type.Codec.Decoder<CharSequence> textDecoder;
+    private Type.Codec.Decoder<ByteBuf> binaryDecoder;
+    private int fixedLength;
+
+    DecodePlan(Type type, FieldFormat format) {
+      this.type = type;
+      this.fixedLength = -1;
+      if (type == null) {
+        return;
+      }
+      switch (format) {
+        case Text:
+          this.textDecoder = type.getTextCodec().getDecoder();
+          break;
+        case Binary:
+          this.binaryDecoder = type.getBinaryCodec().getDecoder();
+          Short length = type.getLength();
+          this.fixedLength = length != null && length > 0 ? length : -1;
+          break;
+      }
+    }
+
+    public Type getType() {
+      return type;
+    }
+
+    public Type.Codec.Decoder<CharSequence> getTextDecoder() {
+      return textDecoder;
+    }
+
+    public Type.Codec.Decoder<ByteBuf> getBinaryDecoder() {
+      return binaryDecoder;
+    }
+
+    /**
+     * @return Length of the field's binary data when its type is fixed width, otherwise {@code -1}
+     */
+    public int getFixedLength() {
+      return fixedLength;
+    }
+
+  }
+
   private String name;
   private int relationId;
   private short relationAttributeNumber;
@@ -39,6 +95,8 @@ public class ResultField implements FieldFormatRef {
   private short typeLength;
   private int typeModifier;
   private FieldFormat format;
+  private StringCache stringCache;
+  private DecodePlan decodePlan;
 
   public ResultField(String name, int relationId, short relationAttributeNumber, Type type, short typeLength, int typeModifier, FieldFormat format) {
     this.name = name;
@@ -77,7 +135,10 @@ public class ResultField implements FieldFormatRef {
   }
 
   public void setTypeRef(TypeRef typeRef) {
-    this.typeRef = typeRef;
+    if (typeRef != this.typeRef) {
+      this.typeRef = typeRef;
+      this.decodePlan = null;
+    }
   }
 
   public short getTypeLength() {
@@ -89,13 +150,47 @@ public class ResultField implements FieldFormatRef {
   }
 
   public void setFormat(FieldFormat v) {
-    format = v;
+    if (v != format) {
+      format = v;
+      decodePlan = null;
+    }
   }
 
   public FieldFormat getFormat() {
     return format;
   }
 
+  /**
+   * Retrieves the string deduplication cache of the field.
+   *
+   * @return Cache used to deduplicate the field's values, {@link StringCache#DISABLED}
+   *         if its values are not deduplicated, or {@code null} if it has not yet
+   *         been determined.
+   */
+  public StringCache getStringCache() {
+    return stringCache;
+  }
+
+  public void setStringCache(StringCache stringCache) {
+    this.stringCache = stringCache;
+  }
+
+  /**
+   * Retrieves the decoding plan of the field, compiling it on first use.
+   *
+   * @param context Context used to resolve the field's type
+   * @return Decoding plan of the field
+   * @throws IOException If the field's type cannot be resolved
+   */
+  public DecodePlan getDecodePlan(Context context) throws IOException {
+    DecodePlan decodePlan = this.decodePlan;
+    if (decodePlan == null) {
+      decodePlan = new DecodePlan(context.getRegistry().resolve(typeRef), format);
+      this.decodePlan = decodePlan;
+    }
+    return decodePlan;
+  }
+
   @Override
   public String toString() {
     StringBuilder sb = new StringBuilder();
@@ -32,11 +32,22 @@ import com.impossibl.postgres.system.Context;
 
 import java.io.IOException;
 
+import io.netty.buffer.ByteBuf;
+
 public interface RowData {
 
   int getFieldCount();
   Object getField(int fieldIdx, ResultField field, Context context, Class<?> targetClass, Object targetContext) throws IOException;
 
+  /**
+   * Retrieves a view of the raw data of a field. The view is not
+   * retained and is only valid while the row data is.
+   *
+   * @param fieldIdx Index of field
+   * @return View of field's data or {@code null} if the field is {@code NULL}
+   */
+  ByteBuf getFieldBuffer(int fieldIdx);
+
   UpdatableRowData duplicateForUpdate();
 
 }
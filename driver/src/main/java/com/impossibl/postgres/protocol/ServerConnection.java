@@ -35,6 +35,7 @@
  */
 package com.impossibl.postgres.protocol;
 
+import com.impossibl.postgres.system.Metrics;
 import com.impossibl.postgres.system.ServerInfo;
 import com.impossibl.postgres.system.Version;
 
@@ -42,10 +43,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelFuture;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.Future;
 
 public interface ServerConnection {
 
@@ -97,4 +103,57 @@ public interface ServerConnection {
 
   ScheduledExecutorService getIOExecutor();
 
+  /**
+   * @return Metrics collected for the connection or {@code null} if metrics are disabled.
+   */
+  Metrics getMetrics();
+
+  /**
+   * Schedules a task to run after the given delay using a timer wheel
+   * shared between connections. Scheduling &amp; cancelling a timeout
+   * are constant time operations.
+   *
+   * Tasks are run on the timer's thread and must not block.
+   *
+   * @param task Task to run when the timeout expires
+   * @param delay Delay before the timeout expires
+   * @param unit Unit of {@code delay}
+   * @return Handle allowing the timeout to be cancelled
+   * @throws ClosedChannelException If the connection is closed
+   */
+  Timeout scheduleTimeout(TimerTask task, long delay, TimeUnit unit) throws ClosedChannelException;
+
+  /**
+   * Asynchronously sends a CancelRequest for the connection's backend.
+   *
+   * If a cancel request is already pending for the backend, its future
+   * is returned instead of issuing another request. Failed attempts
+   * are retried.
+   *
+   * @return Future completed when the request has been delivered or failed
+   */
+  Future<Void> sendCancelRequest();
+
+  /**
+   * Stops reading messages from the server, provided the current request
+   * is the only one outstanding; allowing a request handler to apply
+   * backpressure when its consumer has fallen behind.
+   *
+   * Reading is restarted by {@link #resumeReading()} or automatically
+   * when another request is submitted.
+   *
+   * Must be called on the connection's I/O thread (i.e. from a request
+   * handler callback).
+   *
+   * @return {@code true} if reading was suspended, {@code false} otherwise.
+   */
+  boolean suspendReading();
+
+  /**
+   * Restarts reading messages from the server after a call to
+   * {@link #suspendReading()}. Has no effect if reading is not
+   * suspended.
+   */
+  void resumeReading();
+
 }
@@ -29,12 +29,15 @@
 package com.impossibl.postgres.protocol.ssl;
 
 import com.impossibl.postgres.system.Configuration;
+import com.impossibl.postgres.utils.CacheMap;
 
 import static com.impossibl.postgres.system.SystemSettings.SSL_CA_CRT_FILE;
 import static com.impossibl.postgres.system.SystemSettings.SSL_CRT_FILE;
 import static com.impossibl.postgres.system.SystemSettings.SSL_HOME_DIR;
 import static com.impossibl.postgres.system.SystemSettings.SSL_KEY_FILE;
+import static com.impossibl.postgres.system.SystemSettings.SSL_KEY_PASSWORD;
 import static com.impossibl.postgres.system.SystemSettings.SSL_KEY_PASSWORD_CALLBACK;
+import static com.impossibl.postgres.system.SystemSettings.SSL_OPENSSL;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -45,43 +48,330 @@ import java.security.GeneralSecurityException;
 import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.synchronizedMap;
 
 import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.KeyManagerFactorySpi;
+import javax.net.ssl.ManagerFactoryParameters;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.security.auth.callback.CallbackHandler;
 
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+
 
 
+/**
+ * Creates client SSL engines.
+ *
+ * SSL contexts are cached per effective SSL configuration (including
+ * the modification times of the referenced files) and engines are
+ * created for a specific peer, allowing TLS sessions to be resumed
+ * by later connections to the same server.
+ *
+ * The cache is bounded to the most recently used configurations and
+ * key passwords are only retained as a salted digest.
+ */
 public class SSLEngineFactory {
 
+  private static final Logger logger = Logger.getLogger(SSLEngineFactory.class.getName());
 
   private static final String TRUST_MANAGER_FACTORY_TYPE = "PKIX";
   private static final String SSL_PROTOCOL = "TLS";
   private static final String KEY_STORE_TYPE = "JKS";
   private static final String CERTIFICATE_FACTORY_TYPE = "X.509";
 
+  private static final String SECRET_DIGEST_TYPE = "SHA-256";
+  private static final byte[] SECRET_DIGEST_SALT = newSalt();
+
+  static final int MAX_CONTEXTS = 16;
+
+  private static final Map<ContextKey, ContextSource> CONTEXTS = synchronizedMap(new CacheMap<>(MAX_CONTEXTS, 1.1f, true));
+
+  private static byte[] newSalt() {
+    // nextBytes never blocks on entropy, unlike generateSeed
+    byte[] salt = new byte[16];
+    new SecureRandom().nextBytes(salt);
+    return salt;
+  }
+
+  /**
+   * Shared SSL context creating engines for connections
+   */
+  interface ContextSource {
+
+    SSLEngine newEngine(ByteBufAllocator alloc, String peerHost, int peerPort);
+
+    SSLSessionContext getSessionContext();
+
+    boolean isOpenSsl();
+
+  }
+
+  private static final class JdkContextSource implements ContextSource {
+
+    private final SSLContext sslContext;
+
+    JdkContextSource(SSLContext sslContext) {
+      this.sslContext = sslContext;
+    }
+
+    @Override
+    public SSLEngine newEngine(ByteBufAllocator alloc, String peerHost, int peerPort) {
+
+      // Engines created for a peer participate in session resumption
+      SSLEngine sslEngine = peerHost != null ? sslContext.createSSLEngine(peerHost, peerPort) : sslContext.createSSLEngine();
+
+      sslEngine.setUseClientMode(true);
+
+      return sslEngine;
+    }
+
+    @Override
+    public SSLSessionContext getSessionContext() {
+      return sslContext.getClientSessionContext();
+    }
+
+    @Override
+    public boolean isOpenSsl() {
+      return false;
+    }
+
+  }
+
+  private static final class OpenSslContextSource implements ContextSource {
+
+    private final SslContext sslContext;
+
+    OpenSslContextSource(SslContext sslContext) {
+      this.sslContext = sslContext;
+    }
+
+    @Override
+    public SSLEngine newEngine(ByteBufAllocator alloc, String peerHost, int peerPort) {
+      return peerHost != null ? sslContext.newEngine(alloc, peerHost, peerPort) : sslContext.newEngine(alloc);
+    }
+
+    @Override
+    public SSLSessionContext getSessionContext() {
+      return sslContext.sessionContext();
+    }
+
+    @Override
+    public boolean isOpenSsl() {
+      return true;
+    }
+
+  }
+
+  /**
+   * Identifies an effective SSL configuration
+   */
+  private static final class ContextKey {
+
+    boolean verify;
+    boolean openSsl;
+    String certFile;
+    long certFileModified;
+    String keyFile;
+    long keyFileModified;
+    boolean fileIsDefault;
+    String rootCertFile;
+    long rootCertFileModified;
+    Class<?> passwordCallbackClass;
+    byte[] secretDigest;
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      ContextKey that = (ContextKey) o;
+      return verify == that.verify &&
+          openSsl == that.openSsl &&
+          certFileModified == that.certFileModified &&
+          keyFileModified == that.keyFileModified &&
+          fileIsDefault == that.fileIsDefault &&
+          rootCertFileModified == that.rootCertFileModified &&
+          Objects.equals(certFile, that.certFile) &&
+          Objects.equals(keyFile, that.keyFile) &&
+          Objects.equals(rootCertFile, that.rootCertFile) &&
+          Objects.equals(passwordCallbackClass, that.passwordCallbackClass) &&
+          Arrays.equals(secretDigest, that.secretDigest);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * Objects.hash(verify, openSsl, certFile, certFileModified, keyFile, keyFileModified, fileIsDefault,
+          rootCertFile, rootCertFileModified, passwordCallbackClass) + Arrays.hashCode(secretDigest);
+    }
+
+    /**
+     * Checks if this key differs from another only by file modification times
+     */
+    boolean isSupersededBy(ContextKey other) {
+      return verify == other.verify &&
+          openSsl == other.openSsl &&
+          fileIsDefault == other.fileIsDefault &&
+          Objects.equals(certFile, other.certFile) &&
+          Objects.equals(keyFile, other.keyFile) &&
+          Objects.equals(rootCertFile, other.rootCertFile) &&
+          Objects.equals(passwordCallbackClass, other.passwordCallbackClass) &&
+          Arrays.equals(secretDigest, other.secretDigest);
+    }
+
+  }
+
+  /**
+   * Key manager factory providing a pre-built key manager
+   */
+  private static final class ProvidedKeyManagerFactory extends KeyManagerFactory {
+
+    ProvidedKeyManagerFactory(KeyManager keyManager) {
+      super(new KeyManagerFactorySpi() {
+
+        @Override
+        protected void engineInit(KeyStore keyStore, char[] password) {
+        }
+
+        @Override
+        protected void engineInit(ManagerFactoryParameters params) {
+        }
+
+        @Override
+        protected KeyManager[] engineGetKeyManagers() {
+          return new KeyManager[] {keyManager};
+        }
+
+      }, null, "provided");
+    }
+
+  }
 
   public static SSLEngine create(SSLMode sslMode, Configuration config) throws IOException {
+    return create(sslMode, config, ByteBufAllocator.DEFAULT, null, -1);
+  }
+
+  /**
+   * Creates a client SSL engine for the given peer.
+   *
+   * @param sslMode SSL mode of the connection
+   * @param config Configuration providing SSL settings
+   * @param alloc Allocator of the channel the engine will be used with
+   * @param peerHost Host name of the server or null if unknown
+   * @param peerPort Port of the server or -1 if unknown
+   * @return Client mode SSL engine
+   * @throws IOException If the SSL context cannot be initialized
+   */
+  public static SSLEngine create(SSLMode sslMode, Configuration config, ByteBufAllocator alloc, String peerHost, int peerPort) throws IOException {
+    return getContextSource(sslMode, config).newEngine(alloc, peerHost, peerPort);
+  }
+
+  /**
+   * Looks up (or creates) the shared SSL context for the effective configuration.
+   *
+   * @param sslMode SSL mode of the connection
+   * @param config Configuration providing SSL settings
+   * @return Shared context source
+   * @throws IOException If the SSL context cannot be initialized
+   */
+  static ContextSource getContextSource(SSLMode sslMode, Configuration config) throws IOException {
+
+    ContextKey key = new ContextKey();
+    key.verify = sslMode == SSLMode.VerifyCa || sslMode == SSLMode.VerifyFull;
+    key.openSsl = config.getSetting(SSL_OPENSSL) && OpenSsl.isAvailable() && OpenSsl.supportsKeyManagerFactory();
 
     /*
      * Load client's certificate and key file paths
      */
 
-    boolean sslFileIsDefault = false;
+    key.certFile = config.getSetting(SSL_CRT_FILE);
+    key.fileIsDefault = SSL_CRT_FILE.getDefault().equals(key.certFile);
+
+    key.keyFile = config.getSetting(SSL_KEY_FILE);
+    key.fileIsDefault = key.fileIsDefault || SSL_KEY_FILE.getDefault().equals(key.keyFile);
+
+    if (key.verify) {
+      key.rootCertFile = config.getSetting(SSL_CA_CRT_FILE);
+      if (SSL_CA_CRT_FILE.getDefault().equals(key.rootCertFile)) {
+        key.rootCertFile = config.getSetting(SSL_HOME_DIR) + File.separator + key.rootCertFile;
+      }
+      key.rootCertFileModified = lastModified(key.rootCertFile);
+    }
+
+    key.certFileModified = lastModified(key.certFile);
+    key.keyFileModified = lastModified(key.keyFile);
+    key.passwordCallbackClass = config.getSetting(SSL_KEY_PASSWORD_CALLBACK);
+    key.secretDigest = secretDigest(key.keyFile, config.getSetting(SSL_KEY_PASSWORD));
+
+    ContextSource contextSource = CONTEXTS.get(key);
+    if (contextSource == null) {
+      contextSource = createContext(key, config);
+      synchronized (CONTEXTS) {
+        // Drop contexts built from previous versions of the files
+        CONTEXTS.keySet().removeIf(existing -> existing.isSupersededBy(key));
+        ContextSource existing = CONTEXTS.putIfAbsent(key, contextSource);
+        if (existing != null) {
+          contextSource = existing;
+        }
+      }
+    }
+
+    return contextSource;
+  }
 
-    String sslCertFile = config.getSetting(SSL_CRT_FILE);
-    sslFileIsDefault = sslFileIsDefault || SSL_CRT_FILE.getDefault().equals(sslCertFile);
+  static int getCachedContextCount() {
+    return CONTEXTS.size();
+  }
 
-    String sslKeyFile = config.getSetting(SSL_KEY_FILE);
-    sslFileIsDefault = sslFileIsDefault || SSL_KEY_FILE.getDefault().equals(sslKeyFile);
+  /**
+   * Digests the key password so it is not retained in the context cache
+   */
+  private static byte[] secretDigest(String keyFile, String password) {
+    if (password == null) {
+      return null;
+    }
+    try {
+      MessageDigest digest = MessageDigest.getInstance(SECRET_DIGEST_TYPE);
+      digest.update(SECRET_DIGEST_SALT);
+      digest.update(String.valueOf(keyFile).getBytes(UTF_8));
+      digest.update((byte) 0);
+      digest.update(password.getBytes(UTF_8));
+      return digest.digest();
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("digest not available", e);
+    }
+  }
+
+  private static long lastModified(String fileName) {
+    return fileName != null ? new File(fileName).lastModified() : 0;
+  }
+
+  private static ContextSource createContext(ContextKey key, Configuration config) throws IOException {
 
     /*
      * Initialize Key Manager
@@ -89,7 +379,7 @@ public class SSLEngineFactory {
 
     @SuppressWarnings("unchecked")
     Class<? extends CallbackHandler> sslPasswordCallbackClass =
-        (Class<? extends CallbackHandler>) config.getSetting(SSL_KEY_PASSWORD_CALLBACK);
+        (Class<? extends CallbackHandler>) key.passwordCallbackClass;
 
     CallbackHandler sslPasswordCallback;
     try {
@@ -103,17 +393,16 @@ public class SSLEngineFactory {
       ((ConfiguredCallbackHandler) sslPasswordCallback).init(config);
     }
 
-    KeyManager keyManager = new OnDemandKeyManager(sslCertFile, sslKeyFile, sslPasswordCallback, sslFileIsDefault);
+    KeyManager keyManager = new OnDemandKeyManager(key.certFile, key.keyFile, sslPasswordCallback, key.fileIsDefault);
 
     /*
      * Initialize Trust Managers
      */
 
-    TrustManager[] trustManagers;
+    TrustManagerFactory trustManagerFactory;
 
-    if (sslMode == SSLMode.VerifyCa || sslMode == SSLMode.VerifyFull) {
+    if (key.verify) {
 
-      TrustManagerFactory trustManagerFactory;
       try {
         trustManagerFactory = TrustManagerFactory.getInstance(TRUST_MANAGER_FACTORY_TYPE);
       }
@@ -133,12 +422,7 @@ public class SSLEngineFactory {
        * Load root certificates into a new key store (for Trust Manager)
        */
 
-      String sslRootCertFile = config.getSetting(SSL_CA_CRT_FILE);
-      if (SSL_CA_CRT_FILE.getDefault().equals(sslRootCertFile)) {
-        sslRootCertFile = config.getSetting(SSL_HOME_DIR) + File.separator + sslRootCertFile;
-      }
-
-      try (FileInputStream sslRootCertInputStream = new FileInputStream(sslRootCertFile)) {
+      try (FileInputStream sslRootCertInputStream = new FileInputStream(key.rootCertFile)) {
 
         try {
 
@@ -161,23 +445,43 @@ public class SSLEngineFactory {
 
       }
       catch (FileNotFoundException e) {
-        throw new IOException("cannot not open SSL root certificate file " + sslRootCertFile, e);
+        throw new IOException("cannot not open SSL root certificate file " + key.rootCertFile, e);
       }
       catch (IOException e1) {
         // Ignore...
       }
 
-      trustManagers = trustManagerFactory.getTrustManagers();
     }
     else {
 
-      trustManagers = new TrustManager[] {new NonValidatingTrustManager()};
+      trustManagerFactory = null;
     }
 
     /*
      * Initialize SSL context
      */
 
+    if (key.openSsl) {
+
+      try {
+        SslContext sslContext =
+            SslContextBuilder.forClient()
+                .sslProvider(SslProvider.OPENSSL)
+                .keyManager(new ProvidedKeyManagerFactory(keyManager))
+                .trustManager(trustManagerFactory != null ? trustManagerFactory : InsecureTrustManagerFactory.INSTANCE)
+                .build();
+
+        return new OpenSslContextSource(sslContext);
+      }
+      catch (IllegalArgumentException | SSLException e) {
+        // OpenSSL cannot use the provided key or trust managers, use the JDK provider instead
+        logger.log(Level.WARNING, "OpenSSL context initialization failed, falling back to JDK SSL", e);
+      }
+    }
+
+    TrustManager[] trustManagers =
+        trustManagerFactory != null ? trustManagerFactory.getTrustManagers() : new TrustManager[] {new NonValidatingTrustManager()};
+
     SSLContext sslContext;
     try {
       sslContext = SSLContext.getInstance(SSL_PROTOCOL);
@@ -193,11 +497,7 @@ public class SSLEngineFactory {
       throw new IOException("ssl context initialization error", e);
     }
 
-    SSLEngine sslEngine = sslContext.createSSLEngine();
-
-    sslEngine.setUseClientMode(true);
-
-    return sslEngine;
+    return new JdkContextSource(sslContext);
   }
 
 }
@@ -33,7 +33,10 @@ import com.impossibl.postgres.protocol.ResultField;
 import com.impossibl.postgres.protocol.RowData;
 import com.impossibl.postgres.protocol.UpdatableRowData;
 import com.impossibl.postgres.system.Context;
+import com.impossibl.postgres.system.Metrics;
+import com.impossibl.postgres.system.procs.Strings;
 import com.impossibl.postgres.types.Type;
+import com.impossibl.postgres.utils.StringCache;
 
 import static com.impossibl.postgres.utils.ByteBufs.lengthEncode;
 
@@ -123,25 +126,81 @@ public class BufferRowData extends DefaultByteBufHolder implements RowData, Refe
     return fieldOffsets.length;
   }
 
+  /**
+   * Locates a field within {@link #content()}, allowing it to be
+   * decoded in place. The field's data is preceded by its length as
+   * a 32-bit integer (<code>-1</code> for <code>NULL</code>).
+   *
+   * @param fieldIdx Index of field
+   * @return Index of the field's length within {@link #content()}
+   */
+  public int getFieldOffset(int fieldIdx) {
+    decodeFieldOffsetsIfNeeded();
+
+    return fieldOffsets[fieldIdx];
+  }
+
+  @Override
+  public ByteBuf getFieldBuffer(int fieldIdx) {
+    decodeFieldOffsetsIfNeeded();
+
+    ByteBuf buffer = content();
+    int offset = fieldOffsets[fieldIdx];
+    int length = buffer.getInt(offset);
+    if (length == -1) {
+      return null;
+    }
+
+    return buffer.slice(offset + 4, length);
+  }
+
   @Override
   public Object getField(int fieldIdx, ResultField field, Context context, Class<?> targetClass, Object targetContext) throws IOException {
     decodeFieldOffsetsIfNeeded();
 
     ByteBuf buffer = content();
-    Type type = context.getRegistry().resolve(field.getTypeRef());
     int offset = fieldOffsets[fieldIdx];
     int length = buffer.getInt(offset);
     if (length == -1) {
       return null;
     }
 
+    ResultField.DecodePlan plan = field.getDecodePlan(context);
+
+    Metrics metrics = context.getMetrics();
+    if (metrics == null) {
+      return decodeField(buffer, offset, length, plan, field, context, targetClass, targetContext);
+    }
+
+    long start = System.nanoTime();
+    try {
+      return decodeField(buffer, offset, length, plan, field, context, targetClass, targetContext);
+    }
+    finally {
+      metrics.fieldDecoded(plan.getType().getId(), System.nanoTime() - start);
+    }
+  }
+
+  private static StringCache getStringCache(ResultField field, Type type, Context context) {
+    StringCache stringCache = field.getStringCache();
+    if (stringCache == null) {
+      stringCache = Strings.createCache(context, type);
+      field.setStringCache(stringCache);
+    }
+    return stringCache;
+  }
+
+  private static Object decodeField(ByteBuf buffer, int offset, int length, ResultField.DecodePlan plan, ResultField field, Context context, Class<?> targetClass, Object targetContext) throws IOException {
+
+    Type type = plan.getType();
+
     switch (field.getFormat()) {
       case Text: {
-        Type.Codec.Decoder<CharSequence> decoder = type.getTextCodec().getDecoder();
+        Type.Codec.Decoder<CharSequence> decoder = plan.getTextDecoder();
 
         ByteBuf fieldBuffer = buffer.retainedSlice(offset + 4, length);
         try {
-          String fieldString = fieldBuffer.toString(UTF_8);
+          String fieldString = getStringCache(field, type, context).get(fieldBuffer, UTF_8);
           return decoder.decode(context, type, field.getTypeLength(), field.getTypeModifier(), fieldString, targetClass, targetContext);
         }
         finally {
@@ -150,21 +209,36 @@ public class BufferRowData extends DefaultByteBufHolder implements RowData, Refe
       }
 
       case Binary: {
-        Type.Codec.Decoder<ByteBuf> decoder = type.getBinaryCodec().getDecoder();
+        Type.Codec.Decoder<ByteBuf> decoder = plan.getBinaryDecoder();
 
-        ByteBuf fieldBuffer = buffer.retainedSlice(offset + 4, length);
+        // Fixed width values are read in place; decoders retain any data they keep
+        boolean fixedWidth = length == plan.getFixedLength();
+
+        ByteBuf fieldBuffer = fixedWidth ? buffer.slice(offset + 4, length) : buffer.retainedSlice(offset + 4, length);
         try {
+          if (targetClass == null || targetClass == String.class) {
+            StringCache stringCache = getStringCache(field, type, context);
+            if (stringCache.isEnabled()) {
+              return stringCache.get(fieldBuffer, context.getCharset());
+            }
+          }
           return decoder.decode(context, type, field.getTypeLength(), field.getTypeModifier(), fieldBuffer, targetClass, targetContext);
         }
         finally {
-          fieldBuffer.release();
+          if (!fixedWidth) {
+            fieldBuffer.release();
+          }
         }
       }
 
       default:
         throw new IllegalStateException();
     }
+  }
 
+  @Override
+  public BufferRowData replace(ByteBuf content) {
+    return new BufferRowData(content, fieldOffsets);
   }
 
   @Override
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.protocol.v30;
+
+import com.impossibl.postgres.protocol.CopyDataWriter;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+
+/**
+ * Copy data writer sending directly to a channel.
+ *
+ * Writes are flushed immediately; when the channel's outbound buffer
+ * exceeds its high water mark the writing thread waits for the write
+ * to complete. Writes from the channel's I/O thread, which cannot
+ * wait, are queued regardless.
+ */
+class ChannelCopyDataWriter implements CopyDataWriter {
+
+  private Channel channel;
+  private ProtocolChannel protocolChannel;
+
+  ChannelCopyDataWriter(Channel channel, Charset charset) {
+    this.channel = channel;
+    this.protocolChannel = new ProtocolChannel(channel, charset);
+  }
+
+  @Override
+  public ByteBufAllocator getAllocator() {
+    return channel.alloc();
+  }
+
+  @Override
+  public void writeData(ByteBuf data) throws IOException {
+
+    ChannelFuture future = protocolChannel.transferCopyData(data);
+    protocolChannel.flush();
+
+    if (!channel.isWritable() && !channel.eventLoop().inEventLoop()) {
+      await(future);
+    }
+  }
+
+  @Override
+  public void writeDone() throws IOException {
+
+    protocolChannel
+        .writeCopyDone()
+        .flush();
+  }
+
+  @Override
+  public void writeFail(String message) throws IOException {
+
+    protocolChannel
+        .writeCopyFail(message)
+        .flush();
+  }
+
+  private static void await(ChannelFuture future) throws IOException {
+
+    future.awaitUninterruptibly();
+
+    if (!future.isSuccess()) {
+      throw new IOException("Error writing copy data", future.cause());
+    }
+  }
+
+}
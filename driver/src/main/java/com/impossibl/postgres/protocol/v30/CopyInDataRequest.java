@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.protocol.v30;
+
+import com.impossibl.postgres.protocol.CopyDataWriter;
+import com.impossibl.postgres.protocol.CopyFormat;
+import com.impossibl.postgres.protocol.FieldFormat;
+import com.impossibl.postgres.protocol.Notice;
+import com.impossibl.postgres.protocol.RequestExecutor.CopyInHandler;
+import com.impossibl.postgres.protocol.ResultField;
+import com.impossibl.postgres.protocol.TransactionStatus;
+import com.impossibl.postgres.protocol.v30.ProtocolHandler.CommandComplete;
+import com.impossibl.postgres.protocol.v30.ProtocolHandler.CommandError;
+import com.impossibl.postgres.protocol.v30.ProtocolHandler.CopyInDataResponse;
+import com.impossibl.postgres.protocol.v30.ProtocolHandler.EmptyQuery;
+import com.impossibl.postgres.protocol.v30.ProtocolHandler.ReadyForQuery;
+import com.impossibl.postgres.protocol.v30.ProtocolHandler.ReportNotice;
+import com.impossibl.postgres.protocol.v30.ProtocolHandler.RowDescription;
+import com.impossibl.postgres.system.NoticeException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copy-in request where data is sent by the handler, via a
+ * {@link CopyDataWriter}, as it is produced.
+ */
+public class CopyInDataRequest implements ServerRequest {
+
+  private String sql;
+  private CopyInHandler handler;
+  private List<Notice> notices;
+
+  CopyInDataRequest(String sql, CopyInHandler handler) {
+    this.sql = sql;
+    this.handler = handler;
+    this.notices = new ArrayList<>();
+  }
+
+  private class Handler implements CopyInDataResponse, RowDescription, EmptyQuery, CommandComplete, CommandError, ReportNotice, ReadyForQuery {
+
+    boolean started = false;
+
+    @Override
+    public void copyIn(CopyFormat format, FieldFormat[] fieldFormats, CopyDataWriter writer) throws IOException {
+      started = true;
+      handler.handleStart(format, fieldFormats, writer);
+    }
+
+    @Override
+    public Action rowDescription(ResultField[] fields) {
+      return Action.Resume;
+    }
+
+    @Override
+    public Action emptyQuery() {
+      return Action.Resume;
+    }
+
+    @Override
+    public Action notice(Notice notice) {
+      notices.add(notice);
+      return Action.Resume;
+    }
+
+    @Override
+    public Action commandComplete(String command, Long rowsAffected, Long insertedOid) throws IOException {
+      if (!started) {
+        handler.handleError(new IOException("Command Not Initiated: COPY IN"), notices);
+      }
+      else {
+        handler.handleComplete(rowsAffected);
+      }
+      return Action.Resume;
+    }
+
+    @Override
+    public Action error(Notice notice) throws IOException {
+      handler.handleError(new NoticeException(notice), notices);
+      return Action.Resume;
+    }
+
+    @Override
+    public Action readyForQuery(TransactionStatus txnStatus) throws IOException {
+      handler.handleReady(txnStatus);
+      return Action.Complete;
+    }
+
+    @Override
+    public void exception(Throwable cause) throws IOException {
+      handler.handleError(cause, notices);
+    }
+
+  }
+
+  @Override
+  public ProtocolHandler createHandler() {
+    return new Handler();
+  }
+
+  @Override
+  public void execute(ProtocolChannel channel) throws IOException {
+
+    channel
+        .writeQuery(sql)
+        .flush();
+
+  }
+
+}
@@ -35,6 +35,7 @@ import com.impossibl.postgres.protocol.ResultField;
 import com.impossibl.postgres.protocol.TransactionStatus;
 import com.impossibl.postgres.protocol.TypeOid;
 import com.impossibl.postgres.protocol.TypeRef;
+import com.impossibl.postgres.system.Metrics;
 
 import static com.impossibl.postgres.protocol.TransactionStatus.Active;
 import static com.impossibl.postgres.protocol.TransactionStatus.Failed;
@@ -53,6 +54,7 @@ import java.util.concurrent.ConcurrentLinkedDeque;
 import static java.util.Arrays.asList;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
@@ -66,12 +68,20 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
   private ProtocolHandler defaultHandler;
   private Charset charset;
   private Writer traceWriter;
+  private Metrics metrics;
+  private long flushStart;
   private boolean requiresFlush = false;
+  private volatile boolean readingSuspended;
 
-  MessageDispatchHandler(Charset charset, Writer traceWriter) {
+  MessageDispatchHandler(Charset charset, Writer traceWriter, Metrics metrics) {
     this.protocolHandlers = new ConcurrentLinkedDeque<>();
     this.charset = charset;
     this.traceWriter = traceWriter;
+    this.metrics = metrics;
+  }
+
+  Metrics getMetrics() {
+    return metrics;
   }
 
   void setDefaultHandler(ProtocolHandler defaultHandler) {
@@ -82,6 +92,39 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
     return transactionStatus;
   }
 
+  /**
+   * Suspends reading from the channel if no requests are queued
+   * behind the current one. Must be called on the channel's event loop.
+   *
+   * @param channel Channel to suspend reading from
+   * @return {@code true} if reading was suspended
+   */
+  boolean suspendReading(Channel channel) {
+
+    // Copy sub-protocol handlers are queued in front of their request's handler
+    ProtocolHandler current = protocolHandlers.peek();
+    for (ProtocolHandler protocolHandler : protocolHandlers) {
+      if (protocolHandler != current) {
+        return false;
+      }
+    }
+
+    readingSuspended = true;
+    channel.config().setAutoRead(false);
+
+    return true;
+  }
+
+  void resumeReading(Channel channel) {
+
+    if (!readingSuspended) {
+      return;
+    }
+
+    readingSuspended = false;
+    channel.config().setAutoRead(true);
+  }
+
   @Override
   public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws IOException {
 
@@ -96,6 +139,13 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
 
         protocolHandlers.offer(requestProtocolHandler);
 
+        if (metrics != null) {
+          metrics.requestQueued();
+        }
+
+        // Requests queued behind a suspended one must still complete
+        resumeReading(ctx.channel());
+
       }
 
       // Execute the request
@@ -112,6 +162,10 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
 
       trace('<', (char) buf.getByte(0));
 
+      if (metrics != null) {
+        metrics.messageSent((char) buf.getByte(0), buf.readableBytes());
+      }
+
       ctx.write(msg,  promise);
 
       requiresFlush = true;
@@ -126,6 +180,10 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
     if (requiresFlush) {
       super.flush(ctx);
       requiresFlush = false;
+
+      if (metrics != null && flushStart == 0) {
+        flushStart = System.nanoTime();
+      }
     }
   }
 
@@ -142,6 +200,10 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
 
       trace('>', (char) id);
 
+      if (metrics != null) {
+        measureReceived(id, length);
+      }
+
       // Dispatch to current request handler
 
       ProtocolHandler protocolHandler = protocolHandlers.peek();
@@ -154,6 +216,20 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
     }
   }
 
+  private void measureReceived(byte id, int length) {
+
+    metrics.messageReceived((char) id, length + 5);
+
+    if (flushStart != 0) {
+      metrics.roundTrip(System.nanoTime() - flushStart);
+      flushStart = 0;
+    }
+
+    if (id == ROW_DATA_MSG_ID) {
+      metrics.rowDecoded();
+    }
+  }
+
   @Override
   public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
     trace("\n");
@@ -177,6 +253,10 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
 
     if (handler == null) return;
 
+    if (metrics != null && handler != defaultHandler) {
+      metrics.requestCompleted();
+    }
+
     try {
       handler.exception(ctx.channel(), cause);
     }
@@ -236,11 +316,17 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
       case Complete:
         trace("*");
         protocolHandlers.pop();
+        if (metrics != null) {
+          metrics.requestCompleted();
+        }
         break;
 
       case CompletePassing:
         trace("*^");
         protocolHandlers.pop();
+        if (metrics != null) {
+          metrics.requestCompleted();
+        }
         dispatch(ctx, id, data.resetReaderIndex(), protocolHandlers.peek());
         break;
 
@@ -368,6 +454,9 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
         return receiveReadyForQuery(data, (ProtocolHandler.ReadyForQuery) handler);
 
       case COPY_IN_RESPONSE_MSG_ID:
+        if (handler instanceof ProtocolHandler.CopyInDataResponse) {
+          return receiveCopyInDataResponse(ctx, data, (ProtocolHandler.CopyInDataResponse) handler);
+        }
         if (!(handler instanceof ProtocolHandler.CopyInResponse)) return null;
         return receiveCopyInResponse(ctx, data, (ProtocolHandler.CopyInResponse) handler);
 
@@ -377,7 +466,7 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
 
       case COPY_BOTH_RESPONSE_MSG_ID:
         if (!(handler instanceof ProtocolHandler.CopyBothResponse)) return null;
-        return receiveCopyBothResponse(data, (ProtocolHandler.CopyBothResponse) handler);
+        return receiveCopyBothResponse(ctx, data, (ProtocolHandler.CopyBothResponse) handler);
 
       case COPY_DATA_MSG_ID:
         if (!(handler instanceof ProtocolHandler.CopyData)) return null;
@@ -615,6 +704,20 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
     return ProtocolHandler.Action.Resume;
   }
 
+  private ProtocolHandler.Action receiveCopyInDataResponse(ChannelHandlerContext ctx, ByteBuf buffer, ProtocolHandler.CopyInDataResponse handler) throws IOException {
+
+    CopyFormat copyFormat = buffer.readByte() == 0 ? CopyFormat.Text : CopyFormat.Binary;
+
+    FieldFormat[] fieldFormats = new FieldFormat[buffer.readUnsignedShort()];
+    for (int fieldFormatIdx = 0; fieldFormatIdx < fieldFormats.length; ++fieldFormatIdx) {
+      fieldFormats[fieldFormatIdx] = buffer.readUnsignedShort() == 0 ? FieldFormat.Text : FieldFormat.Binary;
+    }
+
+    handler.copyIn(copyFormat, fieldFormats, new ChannelCopyDataWriter(ctx.channel(), charset));
+
+    return ProtocolHandler.Action.Resume;
+  }
+
   private ProtocolHandler.Action receiveCopyOutResponse(ByteBuf buffer, ProtocolHandler.CopyOutResponse handler) throws IOException {
 
     CopyFormat copyFormat = buffer.readByte() == 0 ? CopyFormat.Text : CopyFormat.Binary;
@@ -634,7 +737,7 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
     return ProtocolHandler.Action.Resume;
   }
 
-  private ProtocolHandler.Action receiveCopyBothResponse(ByteBuf buffer, ProtocolHandler.CopyBothResponse handler) throws IOException {
+  private ProtocolHandler.Action receiveCopyBothResponse(ChannelHandlerContext ctx, ByteBuf buffer, ProtocolHandler.CopyBothResponse handler) throws IOException {
 
     CopyFormat copyFormat = buffer.readByte() == 0 ? CopyFormat.Text : CopyFormat.Binary;
 
@@ -643,12 +746,12 @@ public class MessageDispatchHandler extends ChannelDuplexHandler {
       fieldFormats[fieldFormatIdx] = buffer.readUnsignedShort() == 0 ? FieldFormat.Text : FieldFormat.Binary;
     }
 
-    ProtocolHandler subProtocolHandler = handler.copyBoth(copyFormat, fieldFormats);
+    ProtocolHandler subProtocolHandler = handler.copyBoth(copyFormat, fieldFormats, new ChannelCopyDataWriter(ctx.channel(), charset));
     if (subProtocolHandler == null) {
       throw new IOException("Copy-Both Not Handled");
     }
 
-    protocolHandlers.offer(subProtocolHandler);
+    protocolHandlers.offerFirst(subProtocolHandler);
 
     return ProtocolHandler.Action.Resume;
   }
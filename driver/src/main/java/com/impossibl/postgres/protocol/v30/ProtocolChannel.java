@@ -311,6 +311,25 @@ public class ProtocolChannel {
     return this;
   }
 
+  /**
+   * Writes a CopyData message without copying the data; ownership
+   * of the data buffer is transferred to the channel.
+   *
+   * @param data Data of the message
+   * @return Future completed when the message has been written
+   */
+  ChannelFuture transferCopyData(ByteBuf data) {
+
+    ByteBuf header = alloc.buffer(5);
+
+    header.writeByte(COPY_DATA_MSG_ID);
+    header.writeInt(4 + data.readableBytes());
+
+    channel.write(header, channel.voidPromise());
+
+    return channel.write(data);
+  }
+
   ProtocolChannel writeCopyDone() throws IOException {
 
     writeMessage(COPY_DONE_MSG_ID);
@@ -322,7 +341,9 @@ public class ProtocolChannel {
 
     ByteBuf msg = beginMessage(COPY_FAIL_MSG_ID);
 
-    msg.writeCharSequence(message, charset);
+    writeCString(msg, nullToEmpty(message), charset);
+
+    endMessage(msg);
 
     return this;
   }
@@ -35,6 +35,7 @@
  */
 package com.impossibl.postgres.protocol.v30;
 
+import com.impossibl.postgres.protocol.CopyDataWriter;
 import com.impossibl.postgres.protocol.CopyFormat;
 import com.impossibl.postgres.protocol.FieldFormat;
 import com.impossibl.postgres.protocol.Notice;
@@ -193,6 +194,12 @@ public interface ProtocolHandler {
 
   }
 
+  interface CopyInDataResponse extends ProtocolHandler {
+
+    void copyIn(CopyFormat format, FieldFormat[] fieldFormats, CopyDataWriter writer) throws IOException;
+
+  }
+
   interface CopyOutResponse extends ProtocolHandler {
 
     ProtocolHandler copyOut(CopyFormat format, FieldFormat[] fieldFormats) throws IOException;
@@ -201,7 +208,7 @@ public interface ProtocolHandler {
 
   interface CopyBothResponse extends ProtocolHandler {
 
-    ProtocolHandler copyBoth(CopyFormat format, FieldFormat[] fieldFormats) throws IOException;
+    ProtocolHandler copyBoth(CopyFormat format, FieldFormat[] fieldFormats, CopyDataWriter writer) throws IOException;
 
   }
 
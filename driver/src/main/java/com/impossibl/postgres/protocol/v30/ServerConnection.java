@@ -41,11 +41,13 @@ import com.impossibl.postgres.protocol.ServerObjectType;
 import com.impossibl.postgres.protocol.TransactionStatus;
 import com.impossibl.postgres.protocol.TypeRef;
 import com.impossibl.postgres.system.Configuration;
+import com.impossibl.postgres.system.Metrics;
 import com.impossibl.postgres.system.ServerInfo;
 import com.impossibl.postgres.system.Version;
 
 import static com.impossibl.postgres.system.SystemSettings.SQL_TRACE;
 import static com.impossibl.postgres.system.SystemSettings.SQL_TRACE_FILE;
+import static com.impossibl.postgres.utils.Await.syncUninterruptibly;
 
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -60,26 +62,49 @@ import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPromise;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
 
 
 class ServerConnection implements com.impossibl.postgres.protocol.ServerConnection, RequestExecutor {
 
+  private static final Logger logger = Logger.getLogger(ServerConnection.class.getName());
+
+  private static final int CANCEL_REQUEST_ATTEMPTS = 3;
+  private static final long CANCEL_REQUEST_RETRY_DELAY = 50;
+
   private Channel channel;
+  private SocketAddress remoteAddress;
   private ServerInfo serverInfo;
   private Version protocolVersion;
   private KeyData keyData;
   private ServerConnectionShared.Ref sharedRef;
   private SQLTrace sqlTrace;
+  private final Lock submissionLock = new ReentrantLock();
+  private final AtomicReference<Promise<Void>> pendingCancelRequest = new AtomicReference<>();
 
   ServerConnection(Configuration config, Channel channel, ServerInfo serverInfo, Version protocolVersion, KeyData keyData, ServerConnectionShared.Ref sharedRef) {
     this.channel = channel;
+    this.remoteAddress = channel.remoteAddress();
     this.serverInfo = serverInfo;
     this.protocolVersion = protocolVersion;
     this.keyData = keyData;
@@ -195,6 +220,130 @@ class ServerConnection implements com.impossibl.postgres.protocol.ServerConnecti
     return this;
   }
 
+  @Override
+  public Metrics getMetrics() {
+    return getMessageDispatchHandler().getMetrics();
+  }
+
+  @Override
+  public Timeout scheduleTimeout(TimerTask task, long delay, TimeUnit unit) throws ClosedChannelException {
+
+    ServerConnectionShared.Ref sharedRef = this.sharedRef;
+    if (sharedRef == null) {
+      throw new ClosedChannelException();
+    }
+
+    return sharedRef.get().getTimer().newTimeout(task, delay, unit);
+  }
+
+  @Override
+  public boolean suspendReading() {
+    return getMessageDispatchHandler().suspendReading(channel);
+  }
+
+  @Override
+  public void resumeReading() {
+    getMessageDispatchHandler().resumeReading(channel);
+  }
+
+  @Override
+  public Future<Void> sendCancelRequest() {
+
+    while (true) {
+
+      // Only a single request per backend is sent at a time, any
+      // requests made while one is pending share its result
+
+      Promise<Void> pending = pendingCancelRequest.get();
+      if (pending != null) {
+        return pending;
+      }
+
+      Promise<Void> promise = channel.eventLoop().newPromise();
+      if (pendingCancelRequest.compareAndSet(null, promise)) {
+
+        promise.addListener(sent -> pendingCancelRequest.compareAndSet(promise, null));
+
+        if (keyData == null || (keyData.getProcessId() == 0 && keyData.getSecretKey() == 0)) {
+          logger.warning("Cannot send CancelRequest because of missing BackendKeyData.");
+          promise.setFailure(new IOException("Missing BackendKeyData"));
+        }
+        else {
+          sendCancelRequest(promise, 1);
+        }
+
+        return promise;
+      }
+
+    }
+
+  }
+
+  private void sendCancelRequest(Promise<Void> promise, int attempt) {
+
+    // Per protocol, the request is sent over a new connection. It is
+    // established & written asynchronously on this connection's event
+    // loop so neither the caller nor the event loop ever blocks
+
+    ChannelFuture connect;
+    try {
+      connect = new Bootstrap()
+          .group(channel.eventLoop())
+          .channel(channel.getClass())
+          .handler(new ChannelInboundHandlerAdapter())
+          .connect(remoteAddress);
+    }
+    catch (Exception e) {
+      promise.tryFailure(e);
+      return;
+    }
+
+    connect.addListener((ChannelFutureListener) connected -> {
+
+      if (!connected.isSuccess()) {
+        retryCancelRequest(promise, attempt, connected.cause());
+        return;
+      }
+
+      Channel cancelChannel = connected.channel();
+
+      ByteBuf msg = cancelChannel.alloc().buffer(16);
+      msg.writeInt(16);
+      msg.writeInt(80877102);
+      msg.writeInt(keyData.getProcessId());
+      msg.writeInt(keyData.getSecretKey());
+
+      cancelChannel.writeAndFlush(msg).addListener((ChannelFutureListener) written -> {
+
+        cancelChannel.close();
+
+        if (!written.isSuccess()) {
+          retryCancelRequest(promise, attempt, written.cause());
+          return;
+        }
+
+        promise.trySuccess(null);
+      });
+
+    });
+
+  }
+
+  private void retryCancelRequest(Promise<Void> promise, int attempt, Throwable cause) {
+
+    if (attempt >= CANCEL_REQUEST_ATTEMPTS || channel.eventLoop().isShuttingDown()) {
+      promise.tryFailure(cause);
+      return;
+    }
+
+    channel.eventLoop().schedule(() -> sendCancelRequest(promise, attempt + 1), CANCEL_REQUEST_RETRY_DELAY * attempt, MILLISECONDS);
+  }
+
+  @Override
+  public Lock getSubmissionLock() {
+    return submissionLock;
+  }
+
   @Override
   public void query(String sql, QueryHandler handler) throws IOException {
     if (sqlTrace != null) {
@@ -227,6 +376,16 @@ class ServerConnection implements com.impossibl.postgres.protocol.ServerConnecti
     submit(new ExecuteStatementRequest(statementName, portalName, parameterFormats, parameterBuffers, resultFieldFormats, maxRows, handler));
   }
 
+  @Override
+  public void executeAll(String[] statementNames, FieldFormatRef[][] parameterFormats, ByteBuf[][] parameterBuffers, FieldFormatRef[][] resultFieldFormats, ExecuteHandler handler) throws IOException {
+    if (sqlTrace != null) {
+      for (String statementName : statementNames) {
+        sqlTrace.execute(statementName);
+      }
+    }
+    submit(new ExecuteStatementsRequest(statementNames, parameterFormats, parameterBuffers, resultFieldFormats, handler));
+  }
+
   @Override
   public void resume(String portalName, int maxRows, ResumeHandler handler) throws IOException {
     submit(new ResumePortalRequest(portalName, maxRows, handler));
@@ -269,15 +428,45 @@ class ServerConnection implements com.impossibl.postgres.protocol.ServerConnecti
     submit(new CopyOutRequest(sql, stream, handler));
   }
 
+  @Override
+  public void copyIn(String sql, CopyInHandler handler) throws IOException {
+    if (sqlTrace != null) {
+      sqlTrace.query("COPY-IN: " + sql);
+    }
+    submit(new CopyInDataRequest(sql, handler));
+  }
+
+  @Override
+  public void copyOut(String sql, CopyOutHandler handler) throws IOException {
+    if (sqlTrace != null) {
+      sqlTrace.query("COPY-OUT: " + sql);
+    }
+    submit(new CopyOutDataRequest(sql, handler));
+  }
+
+  @Override
+  public void copyBoth(String sql, CopyBothHandler handler) throws IOException {
+    if (sqlTrace != null) {
+      sqlTrace.query("COPY-BOTH: " + sql);
+    }
+    submit(new CopyBothRequest(sql, handler));
+  }
+
   @Override
   public void close(ServerObjectType objectType, String objectName) throws IOException {
     submit(new CloseRequest(objectType, objectName, null));
   }
 
   @SuppressWarnings("RedundantThrows")
-  private synchronized void submit(ServerRequest request) throws IOException {
+  private void submit(ServerRequest request) throws IOException {
 
-    channel.writeAndFlush(request).syncUninterruptibly();
+    submissionLock.lock();
+    try {
+      syncUninterruptibly(channel.writeAndFlush(request));
+    }
+    finally {
+      submissionLock.unlock();
+    }
   }
 
 }
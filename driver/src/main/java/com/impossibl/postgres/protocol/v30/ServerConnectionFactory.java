@@ -50,6 +50,7 @@ import com.impossibl.postgres.protocol.v30.ProtocolHandler.Notification;
 import com.impossibl.postgres.protocol.v30.ProtocolHandler.ParameterStatus;
 import com.impossibl.postgres.protocol.v30.ProtocolHandler.ReportNotice;
 import com.impossibl.postgres.system.Configuration;
+import com.impossibl.postgres.system.Metrics;
 import com.impossibl.postgres.system.NoticeException;
 import com.impossibl.postgres.system.ParameterNames;
 import com.impossibl.postgres.system.ServerInfo;
@@ -62,6 +63,7 @@ import static com.impossibl.postgres.system.SystemSettings.APPLICATION_NAME;
 import static com.impossibl.postgres.system.SystemSettings.CREDENTIALS_PASSWORD;
 import static com.impossibl.postgres.system.SystemSettings.CREDENTIALS_USERNAME;
 import static com.impossibl.postgres.system.SystemSettings.DATABASE_NAME;
+import static com.impossibl.postgres.system.SystemSettings.METRICS_ENABLED;
 import static com.impossibl.postgres.system.SystemSettings.PROTOCOL_BUFFER_POOLING;
 import static com.impossibl.postgres.system.SystemSettings.PROTOCOL_ENCODING;
 import static com.impossibl.postgres.system.SystemSettings.PROTOCOL_IO_MODE;
@@ -72,8 +74,10 @@ import static com.impossibl.postgres.system.SystemSettings.PROTOCOL_SOCKET_SEND_
 import static com.impossibl.postgres.system.SystemSettings.PROTOCOL_TRACE;
 import static com.impossibl.postgres.system.SystemSettings.PROTOCOL_TRACE_FILE;
 import static com.impossibl.postgres.system.SystemSettings.PROTOCOL_VERSION;
+import static com.impossibl.postgres.system.SystemSettings.REPLICATION;
 import static com.impossibl.postgres.system.SystemSettings.SSL_MODE;
 import static com.impossibl.postgres.utils.Await.awaitUninterruptibly;
+import static com.impossibl.postgres.utils.Await.syncUninterruptibly;
 import static com.impossibl.postgres.utils.Nulls.firstNonNull;
 
 import java.io.BufferedWriter;
@@ -165,14 +169,14 @@ public class ServerConnectionFactory implements com.impossibl.postgres.protocol.
       CreatedChannel createdChannel = createChannel(address, config);
 
       ServerConnectionShared.Ref sharedRef = createdChannel.sharedRef;
-      Channel channel = createdChannel.channelFuture.syncUninterruptibly().channel();
+      Channel channel = syncUninterruptibly(createdChannel.channelFuture).channel();
 
       if (sslMode != SSLMode.Disable && sslMode != SSLMode.Allow) {
 
         // Execute SSL query command
 
         SSLQueryRequest sslQueryRequest = new SSLQueryRequest();
-        channel.writeAndFlush(sslQueryRequest).syncUninterruptibly();
+        syncUninterruptibly(channel.writeAndFlush(sslQueryRequest));
 
         boolean sslQueryCompleted = awaitUninterruptibly(DEFAULT_SSL_TIMEOUT, SECONDS, sslQueryRequest::await);
 
@@ -180,7 +184,14 @@ public class ServerConnectionFactory implements com.impossibl.postgres.protocol.
 
           // Attach the actual handler
 
-          SSLEngine sslEngine = SSLEngineFactory.create(sslMode, config);
+          String peerHost = null;
+          int peerPort = -1;
+          if (address instanceof InetSocketAddress) {
+            peerHost = ((InetSocketAddress) address).getHostString();
+            peerPort = ((InetSocketAddress) address).getPort();
+          }
+
+          SSLEngine sslEngine = SSLEngineFactory.create(sslMode, config, channel.alloc(), peerHost, peerPort);
 
           final SslHandler sslHandler = new SslHandler(sslEngine);
 
@@ -188,7 +199,7 @@ public class ServerConnectionFactory implements com.impossibl.postgres.protocol.
 
           try {
 
-            sslHandler.handshakeFuture().syncUninterruptibly();
+            syncUninterruptibly(sslHandler.handshakeFuture());
 
           }
           catch (Exception e) {
@@ -335,6 +346,7 @@ public class ServerConnectionFactory implements com.impossibl.postgres.protocol.
     ServerConnectionShared.Ref sharedRef = ServerConnectionShared.acquire(groupType, maxThreads);
 
     Writer protocolTraceWriter = createProtocolTracer(config);
+    Metrics metrics = config.getSetting(METRICS_ENABLED) ? new Metrics() : null;
 
     Bootstrap bootstrap = new Bootstrap()
             .group(sharedRef.get().getEventLoopGroup())
@@ -344,7 +356,7 @@ public class ServerConnectionFactory implements com.impossibl.postgres.protocol.
               protected void initChannel(SocketChannel ch) {
                 ch.pipeline().addLast(
                     new LengthFieldBasedFrameDecoder(maxMessageSize, 1, 4, -4, 0),
-                    new MessageDispatchHandler(clientEncoding, protocolTraceWriter)
+                    new MessageDispatchHandler(clientEncoding, protocolTraceWriter, metrics)
                 );
               }
             })
@@ -381,6 +393,7 @@ public class ServerConnectionFactory implements com.impossibl.postgres.protocol.
     ServerConnectionShared.Ref sharedRef = ServerConnectionShared.acquire(groupType, maxThreads);
 
     Writer protocolTraceWriter = createProtocolTracer(config);
+    Metrics metrics = config.getSetting(METRICS_ENABLED) ? new Metrics() : null;
 
     Bootstrap bootstrap = new Bootstrap()
         .group(sharedRef.get().getEventLoopGroup())
@@ -390,7 +403,7 @@ public class ServerConnectionFactory implements com.impossibl.postgres.protocol.
           protected void initChannel(DomainSocketChannel ch) {
             ch.pipeline().addLast(
                 new LengthFieldBasedFrameDecoder(maxMessageSize, 1, 4, -4, 0),
-                new MessageDispatchHandler(clientEncoding, protocolTraceWriter)
+                new MessageDispatchHandler(clientEncoding, protocolTraceWriter, metrics)
             );
           }
         });
@@ -441,6 +454,10 @@ public class ServerConnectionFactory implements com.impossibl.postgres.protocol.
     params.put(ParameterNames.CLIENT_ENCODING, config.getSetting(PROTOCOL_ENCODING));
     params.put(ParameterNames.DATABASE, config.getSetting(DATABASE_NAME));
     params.put(ParameterNames.USER, config.getSetting(CREDENTIALS_USERNAME));
+    String replication = config.getSetting(REPLICATION);
+    if (replication != null && !replication.isEmpty()) {
+      params.put(ParameterNames.REPLICATION, replication);
+    }
 
     Version protocolVersion = config.getSetting(PROTOCOL_VERSION);
 
@@ -510,7 +527,7 @@ public class ServerConnectionFactory implements com.impossibl.postgres.protocol.
       }
 
     });
-    channel.writeAndFlush(startupRequest).syncUninterruptibly();
+    syncUninterruptibly(channel.writeAndFlush(startupRequest));
 
     if (!awaitUninterruptibly(DEFAULT_STARTUP_TIMEOUT, SECONDS, startupCompleted::await)) {
       throw new IOException("Timeout starting connection");
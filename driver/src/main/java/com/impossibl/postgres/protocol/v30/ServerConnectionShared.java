@@ -40,6 +40,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import io.netty.channel.EventLoopGroup;
+import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import io.netty.util.concurrent.ImmediateEventExecutor;
@@ -67,9 +68,13 @@ public class ServerConnectionShared {
     return instances.computeIfAbsent(eventLoopGroupType, key -> new ServerConnectionShared(eventLoopGroupType, maxThreads)).addReference();
   }
 
+  private static final long TIMER_TICK_DURATION = 10;
+  private static final int TIMER_TICKS_PER_WHEEL = 512;
+
   private Class<? extends EventLoopGroup> eventLoopGroupType;
   private int maxThreads;
   private EventLoopGroup eventLoopGroup;
+  private HashedWheelTimer timer;
   private int count = 0;
 
   private ServerConnectionShared(Class<? extends EventLoopGroup> eventLoopGroupType, int maxThreads) {
@@ -93,6 +98,19 @@ public class ServerConnectionShared {
     return eventLoopGroup;
   }
 
+  /**
+   * Timer wheel used for statement timeouts. Each timeout costs a
+   * constant time insert &amp; cancel, regardless of how many
+   * are pending.
+   */
+  synchronized HashedWheelTimer getTimer() {
+    if (timer != null) return timer;
+
+    timer = new HashedWheelTimer(new NamedThreadFactory("PG-JDBC Timer"), TIMER_TICK_DURATION, TimeUnit.MILLISECONDS, TIMER_TICKS_PER_WHEEL);
+
+    return timer;
+  }
+
   private synchronized Ref addReference() {
     count++;
     return new Ref();
@@ -110,6 +128,13 @@ public class ServerConnectionShared {
 
   private Future<?> shutdown() {
 
+    synchronized (this) {
+      if (timer != null) {
+        timer.stop();
+        timer = null;
+      }
+    }
+
     if (eventLoopGroup == null) {
       return ImmediateEventExecutor.INSTANCE.newSucceededFuture(null);
     }
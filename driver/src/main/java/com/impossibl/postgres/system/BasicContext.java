@@ -28,6 +28,7 @@
  */
 package com.impossibl.postgres.system;
 
+import com.impossibl.postgres.api.jdbc.PGMetricsListener;
 import com.impossibl.postgres.datetime.DateTimeFormat;
 import com.impossibl.postgres.datetime.ISODateFormat;
 import com.impossibl.postgres.datetime.ISOIntervalFormat;
@@ -67,6 +68,9 @@ import static com.impossibl.postgres.system.Empty.EMPTY_FORMATS;
 import static com.impossibl.postgres.system.Empty.EMPTY_TYPES;
 import static com.impossibl.postgres.system.SystemSettings.APPLICATION_NAME;
 import static com.impossibl.postgres.system.SystemSettings.DATABASE_NAME;
+import static com.impossibl.postgres.system.SystemSettings.METRICS_JMX;
+import static com.impossibl.postgres.system.SystemSettings.METRICS_LISTENER;
+import static com.impossibl.postgres.system.SystemSettings.REPLICATION;
 import static com.impossibl.postgres.system.SystemSettings.SESSION_USER;
 import static com.impossibl.postgres.system.SystemSettings.STANDARD_CONFORMING_STRINGS;
 import static com.impossibl.postgres.utils.guava.Strings.nullToEmpty;
@@ -86,6 +90,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -178,6 +183,7 @@ public class BasicContext extends AbstractContext {
   protected Map<String, Class<?>> typeMap;
   protected Charset charset;
   protected Settings settings;
+  private volatile SettingsSnapshot settingsSnapshot;
   private TimeZone timeZone;
   private ZoneId timeZoneId;
   private DateTimeFormat clientDateFormat;
@@ -195,10 +201,14 @@ public class BasicContext extends AbstractContext {
   private ServerConnection serverConnection;
   private ServerConnectionListener serverConnectionListener;
   private Map<String, QueryDescription> utilQueries;
+  private boolean replication;
+  private final AtomicBoolean registryMetricsRetained = new AtomicBoolean();
 
   public BasicContext(SocketAddress address, Settings settings) throws IOException {
     this.typeMap = new HashMap<>();
     this.settings = settings;
+    this.settingsSnapshot = new SettingsSnapshot(settings);
+    this.replication = !nullToEmpty(getSetting(REPLICATION)).isEmpty();
     this.charset = UTF_8;
     this.timeZone = TimeZone.getTimeZone("UTC");
     this.clientDateFormat = new ISODateFormat();
@@ -214,8 +224,44 @@ public class BasicContext extends AbstractContext {
     this.utilQueries = new HashMap<>();
   }
 
+  private void initMetrics() throws IOException {
+
+    Metrics metrics = serverConnection.getMetrics();
+    if (metrics == null) {
+      return;
+    }
+
+    Class<?> listenerClass = getSetting(METRICS_LISTENER);
+    if (listenerClass != null) {
+      try {
+        metrics.addListener((PGMetricsListener) listenerClass.getDeclaredConstructor().newInstance());
+      }
+      catch (ReflectiveOperationException | ClassCastException e) {
+        throw new IOException("Unable to create metrics listener: " + listenerClass.getName(), e);
+      }
+    }
+
+    boolean jmx = getSetting(METRICS_JMX);
+
+    metrics.setParent(registry.getShared().retainMetrics(jmx));
+    registryMetricsRetained.set(true);
+
+    if (jmx) {
+      metrics.registerMBean("Connection");
+    }
+  }
+
   protected ChannelFuture shutdown() {
 
+    Metrics metrics = serverConnection.getMetrics();
+    if (metrics != null) {
+      metrics.close();
+    }
+
+    if (registryMetricsRetained.compareAndSet(true, false)) {
+      registry.getShared().release();
+    }
+
     return serverConnection.shutdown();
   }
 
@@ -254,6 +300,9 @@ public class BasicContext extends AbstractContext {
 
   @Override
   public <T> T getSetting(Setting<T> setting) {
+    SettingsSnapshot settingsSnapshot = this.settingsSnapshot;
+    if (settingsSnapshot.isResolved(setting))
+      return settingsSnapshot.get(setting);
     T value = settings.getStored(setting);
     if (value != null)
       return value;
@@ -290,6 +339,11 @@ public class BasicContext extends AbstractContext {
     return serverConnection.getKeyData();
   }
 
+  @Override
+  public Metrics getMetrics() {
+    return serverConnection.getMetrics();
+  }
+
   @Override
   public DateTimeFormat getServerDateFormat() {
     return serverDateFormat;
@@ -359,6 +413,8 @@ public class BasicContext extends AbstractContext {
 
     registry = new Registry(sharedRegistryFactory.get(serverConnectionInfo), new RegistryTypeLoader());
 
+    initMetrics();
+
     clientIntegerFormatter = NumberFormat.getIntegerInstance(Locale.getDefault());
     clientIntegerFormatter.setGroupingUsed(false);
     clientIntegerFormatter.setParseIntegerOnly(true);
@@ -377,11 +433,24 @@ public class BasicContext extends AbstractContext {
 
     loadTypes();
 
-    prepareRefreshTypeQueries();
+    if (!replication) {
+      prepareRefreshTypeQueries();
+    }
 
     loadServerLocales();
   }
 
+  /**
+   * Checks if the connection was started in replication mode (see
+   * {@link SystemSettings#REPLICATION}); replication connections only
+   * support the simple query protocol.
+   *
+   * @return <code>true</code> if the connection is in replication mode
+   */
+  public boolean isReplication() {
+    return replication;
+  }
+
   private void loadServerLocales() throws IOException {
 
     try (ResultBatch resultBatch =
@@ -488,7 +557,13 @@ public class BasicContext extends AbstractContext {
   private Type loadType(int typeId) throws IOException {
 
     //Load types
-    List<PGTypeTable.Row> pgTypes = PGTypeTable.INSTANCE.query(this, "@refresh-type", INTERNAL_QUERY_TIMEOUT, typeId);
+    List<PGTypeTable.Row> pgTypes;
+    if (replication) {
+      pgTypes = PGTypeTable.INSTANCE.query(this, refreshTypeSQL(" WHERE t.oid = " + typeId), INTERNAL_QUERY_TIMEOUT);
+    }
+    else {
+      pgTypes = PGTypeTable.INSTANCE.query(this, "@refresh-type", INTERNAL_QUERY_TIMEOUT, typeId);
+    }
     if (pgTypes.isEmpty()) {
       return null;
     }
@@ -501,7 +576,14 @@ public class BasicContext extends AbstractContext {
   private Type loadType(String typeName) throws IOException {
 
     //Load types
-    List<PGTypeTable.Row> pgTypes = PGTypeTable.INSTANCE.query(this, "@refresh-named-type", INTERNAL_QUERY_TIMEOUT, typeName);
+    List<PGTypeTable.Row> pgTypes;
+    if (replication) {
+      String typeNameLiteral = "'" + typeName.replace("'", "''") + "'";
+      pgTypes = PGTypeTable.INSTANCE.query(this, refreshTypeSQL(" WHERE t.oid = " + typeNameLiteral + "::text::regtype"), INTERNAL_QUERY_TIMEOUT);
+    }
+    else {
+      pgTypes = PGTypeTable.INSTANCE.query(this, "@refresh-named-type", INTERNAL_QUERY_TIMEOUT, typeName);
+    }
     if (pgTypes.isEmpty()) {
       return null;
     }
@@ -514,7 +596,13 @@ public class BasicContext extends AbstractContext {
   private CompositeType loadRelationType(int relationId) throws IOException {
 
     //Load types
-    List<PGTypeTable.Row> pgTypes = PGTypeTable.INSTANCE.query(this, "@refresh-reltype", INTERNAL_QUERY_TIMEOUT, relationId);
+    List<PGTypeTable.Row> pgTypes;
+    if (replication) {
+      pgTypes = PGTypeTable.INSTANCE.query(this, refreshTypeSQL(" WHERE t.typrelid = " + relationId), INTERNAL_QUERY_TIMEOUT);
+    }
+    else {
+      pgTypes = PGTypeTable.INSTANCE.query(this, "@refresh-reltype", INTERNAL_QUERY_TIMEOUT, relationId);
+    }
     if (pgTypes.isEmpty()) {
       return null;
     }
@@ -527,6 +615,14 @@ public class BasicContext extends AbstractContext {
     return (CompositeType) loadRaw(pgType);
   }
 
+  /*
+   * Type query with literal values, for connections without prepared
+   * refresh queries (i.e. replication connections)
+   */
+  private String refreshTypeSQL(String condition) {
+    return PGTypeTable.INSTANCE.getSQL(serverConnection.getServerInfo().getVersion()) + condition;
+  }
+
   /*
    * Materialize a type from the given "pg_type" and "pg_attribute" data
    */
@@ -676,6 +772,11 @@ public class BasicContext extends AbstractContext {
    */
   public ResultBatch queryBatchPrepared(String queryTxt, Object[] paramValues, long timeout) throws IOException {
 
+    if (replication && paramValues.length == 0 && queryTxt.charAt(0) != '@') {
+      // Replication connections only support the simple query protocol
+      return queryBatch(queryTxt, timeout);
+    }
+
     QueryDescription pq = prepareQuery(queryTxt);
 
     FieldFormat[] paramFormats = EMPTY_FORMATS;
@@ -750,6 +851,14 @@ public class BasicContext extends AbstractContext {
     return handler.getBatch();
   }
 
+  /**
+   * Must be called after {@link #settings} is modified to
+   * replace the snapshot used for setting lookups.
+   */
+  protected void settingsChanged() {
+    settingsSnapshot = new SettingsSnapshot(settings);
+  }
+
   private void updateSystemParameter(String name, String value) {
 
     logger.config("system parameter: " + name + "=" + value);
@@ -832,16 +941,19 @@ public class BasicContext extends AbstractContext {
       case ParameterNames.STANDARD_CONFORMING_STRINGS:
 
         settings.set(STANDARD_CONFORMING_STRINGS, value.equals("on"));
+        settingsChanged();
         break;
 
       case ParameterNames.SESSION_AUTHORIZATION:
 
         settings.set(SESSION_USER, value);
+        settingsChanged();
         break;
 
       case ParameterNames.APPLICATION_NAME:
 
         settings.set(APPLICATION_NAME, value);
+        settingsChanged();
         break;
 
       default:
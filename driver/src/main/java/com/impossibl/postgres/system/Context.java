@@ -80,6 +80,11 @@ public interface Context extends Configuration {
 
   Map<String, Class<?>> getCustomTypeMap();
 
+  /**
+   * @return Metrics collected for the context's connection or {@code null} if metrics are disabled.
+   */
+  Metrics getMetrics();
+
   Context unwrap();
 
 }
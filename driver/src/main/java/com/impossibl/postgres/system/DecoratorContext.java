@@ -82,6 +82,11 @@ class DecoratorContext extends AbstractContext {
     return base.getKeyData();
   }
 
+  @Override
+  public Metrics getMetrics() {
+    return base.getMetrics();
+  }
+
   @Override
   public DateTimeFormat getServerDateFormat() {
     return base.getServerDateFormat();
@@ -0,0 +1,670 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.system;
+
+import com.impossibl.postgres.api.jdbc.PGMetricsListener;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects instrumentation counters for a connection, or a shared registry.
+ *
+ * Metrics are only allocated when enabled; instrumented code checks for
+ * a {@code null} instance so disabled metrics cost a single branch.
+ *
+ * Events are recorded only by the instance they are reported to and are
+ * forwarded to its registered listeners. An instance with a parent (i.e.
+ * a connection's metrics) is aggregated by the parent when the parent's
+ * values are read; when the instance is closed its counters are folded
+ * into the parent's own counters.
+ */
+public class Metrics implements PGMetricsListener, MetricsMXBean {
+
+  private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+
+  private static final String JMX_DOMAIN = "com.impossibl.postgres";
+  private static final AtomicLong JMX_IDS = new AtomicLong();
+
+  /**
+   * Log2 bucketed histogram of nanosecond timings.
+   */
+  private static class Histogram {
+
+    private LongAdder[] buckets = newAdders(64);
+    private LongAdder count = new LongAdder();
+    private LongAdder total = new LongAdder();
+    private LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    void record(long value) {
+      buckets[63 - Long.numberOfLeadingZeros(Math.max(value, 1))].increment();
+      count.increment();
+      total.add(value);
+      max.accumulate(value);
+    }
+
+    void merge(Histogram other) {
+      for (int c = 0; c < buckets.length; ++c) {
+        buckets[c].add(other.buckets[c].sum());
+      }
+      count.add(other.count.sum());
+      total.add(other.total.sum());
+      max.accumulate(other.max.get());
+    }
+
+    void reset() {
+      for (LongAdder bucket : buckets) {
+        bucket.reset();
+      }
+      count.reset();
+      total.reset();
+      max.reset();
+    }
+
+  }
+
+  private static class TypeCounter {
+    LongAdder count = new LongAdder();
+    LongAdder nanos = new LongAdder();
+  }
+
+  /**
+   * Decode counters keyed by type oid, ordered for binary search. The
+   * set of decoded types is small and rarely grows, so it is copied
+   * when a type is added.
+   */
+  private static class TypeCounters {
+
+    static final TypeCounters EMPTY = new TypeCounters(new int[0], new TypeCounter[0]);
+
+    final int[] oids;
+    final TypeCounter[] counters;
+
+    TypeCounters(int[] oids, TypeCounter[] counters) {
+      this.oids = oids;
+      this.counters = counters;
+    }
+
+    TypeCounters with(int oid, int index, TypeCounter counter) {
+      int[] newOids = new int[oids.length + 1];
+      TypeCounter[] newCounters = new TypeCounter[newOids.length];
+      System.arraycopy(oids, 0, newOids, 0, index);
+      System.arraycopy(counters, 0, newCounters, 0, index);
+      newOids[index] = oid;
+      newCounters[index] = counter;
+      System.arraycopy(oids, index, newOids, index + 1, oids.length - index);
+      System.arraycopy(counters, index, newCounters, index + 1, oids.length - index);
+      return new TypeCounters(newOids, newCounters);
+    }
+
+  }
+
+  private volatile Metrics parent;
+  private Set<Metrics> children = ConcurrentHashMap.newKeySet();
+  private List<PGMetricsListener> listeners = new CopyOnWriteArrayList<>();
+  private ObjectName objectName;
+
+  private LongAdder[] messagesSentByType = newAdders(128);
+  private LongAdder[] messagesReceivedByType = newAdders(128);
+  private LongAdder bytesSent = new LongAdder();
+  private LongAdder bytesReceived = new LongAdder();
+  private Histogram roundTripTimes = new Histogram();
+  private AtomicInteger requestsInFlight = new AtomicInteger();
+  private LongAccumulator requestsInFlightMax = new LongAccumulator(Long::max, 0);
+  private LongAdder rowsDecoded = new LongAdder();
+  private volatile TypeCounters decodesByType = TypeCounters.EMPTY;
+  private Histogram awaitTimes = new Histogram();
+  private LongAdder preparedStatementCacheHits = new LongAdder();
+  private LongAdder preparedStatementCacheMisses = new LongAdder();
+  private LongAdder preparedStatementCacheEvictions = new LongAdder();
+  private LongAdder parsedSqlCacheHits = new LongAdder();
+  private LongAdder parsedSqlCacheMisses = new LongAdder();
+  private LongAdder typesLoaded = new LongAdder();
+
+  public Metrics getParent() {
+    return parent;
+  }
+
+  /**
+   * Sets the instance that aggregates this instance's values.
+   *
+   * @param parent Aggregating instance
+   */
+  public void setParent(Metrics parent) {
+    Metrics current = this.parent;
+    if (current != null) {
+      current.children.remove(this);
+    }
+    this.parent = parent;
+    if (parent != null) {
+      parent.children.add(this);
+    }
+  }
+
+  public void addListener(PGMetricsListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(PGMetricsListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Registers this instance with the platform MBean server.
+   *
+   * @param type JMX {@code type} key of the registered name
+   */
+  public synchronized void registerMBean(String type) {
+    if (objectName != null) {
+      return;
+    }
+    try {
+      ObjectName name = new ObjectName(JMX_DOMAIN + ":type=" + type + ",id=" + JMX_IDS.incrementAndGet());
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+      objectName = name;
+    }
+    catch (JMException e) {
+      logger.log(Level.WARNING, "Unable to register metrics MBean", e);
+    }
+  }
+
+  public synchronized void unregisterMBean() {
+    if (objectName == null) {
+      return;
+    }
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+    }
+    catch (JMException e) {
+      logger.log(Level.WARNING, "Unable to unregister metrics MBean", e);
+    }
+    objectName = null;
+  }
+
+  /**
+   * Releases the instance; unregistering its MBean and folding its
+   * counters into its parent.
+   */
+  public void close() {
+    unregisterMBean();
+
+    requestsInFlight.set(0);
+
+    Metrics parent = this.parent;
+    if (parent != null && parent.children.remove(this)) {
+      parent.fold(this);
+    }
+  }
+
+  private void fold(Metrics child) {
+    for (int c = 0; c < 128; ++c) {
+      messagesSentByType[c].add(child.messagesSentByType[c].sum());
+      messagesReceivedByType[c].add(child.messagesReceivedByType[c].sum());
+    }
+    bytesSent.add(child.bytesSent.sum());
+    bytesReceived.add(child.bytesReceived.sum());
+    roundTripTimes.merge(child.roundTripTimes);
+    requestsInFlightMax.accumulate(child.requestsInFlightMax.get());
+    rowsDecoded.add(child.rowsDecoded.sum());
+    TypeCounters childDecodes = child.decodesByType;
+    for (int c = 0; c < childDecodes.oids.length; ++c) {
+      TypeCounter counter = typeCounter(childDecodes.oids[c]);
+      counter.count.add(childDecodes.counters[c].count.sum());
+      counter.nanos.add(childDecodes.counters[c].nanos.sum());
+    }
+    awaitTimes.merge(child.awaitTimes);
+    preparedStatementCacheHits.add(child.preparedStatementCacheHits.sum());
+    preparedStatementCacheMisses.add(child.preparedStatementCacheMisses.sum());
+    preparedStatementCacheEvictions.add(child.preparedStatementCacheEvictions.sum());
+    parsedSqlCacheHits.add(child.parsedSqlCacheHits.sum());
+    parsedSqlCacheMisses.add(child.parsedSqlCacheMisses.sum());
+    typesLoaded.add(child.typesLoaded.sum());
+  }
+
+  private TypeCounter typeCounter(int typeOid) {
+    TypeCounters current = decodesByType;
+    int index = Arrays.binarySearch(current.oids, typeOid);
+    if (index >= 0) {
+      return current.counters[index];
+    }
+    return addTypeCounter(typeOid);
+  }
+
+  private synchronized TypeCounter addTypeCounter(int typeOid) {
+    TypeCounters current = decodesByType;
+    int index = Arrays.binarySearch(current.oids, typeOid);
+    if (index >= 0) {
+      return current.counters[index];
+    }
+    TypeCounter counter = new TypeCounter();
+    decodesByType = current.with(typeOid, -(index + 1), counter);
+    return counter;
+  }
+
+  /*
+   * Events
+   */
+
+  @Override
+  public void messageSent(char type, int length) {
+    messagesSentByType[type & 0x7f].increment();
+    bytesSent.add(length);
+    for (PGMetricsListener listener : listeners) {
+      listener.messageSent(type, length);
+    }
+  }
+
+  @Override
+  public void messageReceived(char type, int length) {
+    messagesReceivedByType[type & 0x7f].increment();
+    bytesReceived.add(length);
+    for (PGMetricsListener listener : listeners) {
+      listener.messageReceived(type, length);
+    }
+  }
+
+  @Override
+  public void roundTrip(long nanos) {
+    roundTripTimes.record(nanos);
+    for (PGMetricsListener listener : listeners) {
+      listener.roundTrip(nanos);
+    }
+  }
+
+  /**
+   * Notes a request was queued for a response and reports the
+   * resulting depth.
+   */
+  public void requestQueued() {
+    int depth = requestsInFlight.incrementAndGet();
+    requestsInFlightMax.accumulate(depth);
+    requestQueued(depth);
+  }
+
+  @Override
+  public void requestQueued(int depth) {
+    for (PGMetricsListener listener : listeners) {
+      listener.requestQueued(depth);
+    }
+  }
+
+  /**
+   * Notes a request has received all of its responses.
+   */
+  public void requestCompleted() {
+    requestsInFlight.decrementAndGet();
+  }
+
+  @Override
+  public void rowDecoded() {
+    rowsDecoded.increment();
+    for (PGMetricsListener listener : listeners) {
+      listener.rowDecoded();
+    }
+  }
+
+  @Override
+  public void fieldDecoded(int typeOid, long nanos) {
+    TypeCounter counter = typeCounter(typeOid);
+    counter.count.increment();
+    counter.nanos.add(nanos);
+    for (PGMetricsListener listener : listeners) {
+      listener.fieldDecoded(typeOid, nanos);
+    }
+  }
+
+  @Override
+  public void awaited(long nanos) {
+    awaitTimes.record(nanos);
+    for (PGMetricsListener listener : listeners) {
+      listener.awaited(nanos);
+    }
+  }
+
+  @Override
+  public void preparedStatementCacheHit() {
+    preparedStatementCacheHits.increment();
+    for (PGMetricsListener listener : listeners) {
+      listener.preparedStatementCacheHit();
+    }
+  }
+
+  @Override
+  public void preparedStatementCacheMiss() {
+    preparedStatementCacheMisses.increment();
+    for (PGMetricsListener listener : listeners) {
+      listener.preparedStatementCacheMiss();
+    }
+  }
+
+  @Override
+  public void preparedStatementCacheEviction() {
+    preparedStatementCacheEvictions.increment();
+    for (PGMetricsListener listener : listeners) {
+      listener.preparedStatementCacheEviction();
+    }
+  }
+
+  @Override
+  public void parsedSqlCacheHit() {
+    parsedSqlCacheHits.increment();
+    for (PGMetricsListener listener : listeners) {
+      listener.parsedSqlCacheHit();
+    }
+  }
+
+  @Override
+  public void parsedSqlCacheMiss() {
+    parsedSqlCacheMisses.increment();
+    for (PGMetricsListener listener : listeners) {
+      listener.parsedSqlCacheMiss();
+    }
+  }
+
+  @Override
+  public void typeLoaded(int typeOid) {
+    typesLoaded.increment();
+    for (PGMetricsListener listener : listeners) {
+      listener.typeLoaded(typeOid);
+    }
+  }
+
+  /*
+   * Values
+   *
+   * Values include those of all current children.
+   */
+
+  private static LongAdder[] newAdders(int count) {
+    LongAdder[] adders = new LongAdder[count];
+    for (int c = 0; c < count; ++c) {
+      adders[c] = new LongAdder();
+    }
+    return adders;
+  }
+
+  private long sum(ToLongFunction<Metrics> value) {
+    long total = value.applyAsLong(this);
+    for (Metrics child : children) {
+      total += value.applyAsLong(child);
+    }
+    return total;
+  }
+
+  private long max(ToLongFunction<Metrics> value) {
+    long max = value.applyAsLong(this);
+    for (Metrics child : children) {
+      max = Math.max(max, value.applyAsLong(child));
+    }
+    return max;
+  }
+
+  private long[] sumAll(Function<Metrics, LongAdder[]> values) {
+    long[] totals = new long[values.apply(this).length];
+    addTo(totals, values.apply(this));
+    for (Metrics child : children) {
+      addTo(totals, values.apply(child));
+    }
+    return totals;
+  }
+
+  private static void addTo(long[] totals, LongAdder[] values) {
+    for (int c = 0; c < totals.length; ++c) {
+      totals[c] += values[c].sum();
+    }
+  }
+
+  private static long total(long[] values) {
+    long total = 0;
+    for (long value : values) {
+      total += value;
+    }
+    return total;
+  }
+
+  private static Map<String, Long> byType(long[] values) {
+    Map<String, Long> map = new TreeMap<>();
+    for (int c = 0; c < values.length; ++c) {
+      if (values[c] != 0) {
+        map.put(String.valueOf((char) c), values[c]);
+      }
+    }
+    return map;
+  }
+
+  private Map<Integer, Long> byType(ToLongFunction<TypeCounter> value) {
+    Map<Integer, Long> map = new TreeMap<>();
+    addTo(map, decodesByType, value);
+    for (Metrics child : children) {
+      addTo(map, child.decodesByType, value);
+    }
+    return map;
+  }
+
+  private static void addTo(Map<Integer, Long> map, TypeCounters counters, ToLongFunction<TypeCounter> value) {
+    for (int c = 0; c < counters.oids.length; ++c) {
+      map.merge(counters.oids[c], value.applyAsLong(counters.counters[c]), Long::sum);
+    }
+  }
+
+  private static long total(TypeCounters counters, ToLongFunction<TypeCounter> value) {
+    long total = 0;
+    for (TypeCounter counter : counters.counters) {
+      total += value.applyAsLong(counter);
+    }
+    return total;
+  }
+
+  @Override
+  public long getMessagesSent() {
+    return total(sumAll(metrics -> metrics.messagesSentByType));
+  }
+
+  @Override
+  public long getMessagesReceived() {
+    return total(sumAll(metrics -> metrics.messagesReceivedByType));
+  }
+
+  @Override
+  public long getBytesSent() {
+    return sum(metrics -> metrics.bytesSent.sum());
+  }
+
+  @Override
+  public long getBytesReceived() {
+    return sum(metrics -> metrics.bytesReceived.sum());
+  }
+
+  @Override
+  public Map<String, Long> getMessagesSentByType() {
+    return byType(sumAll(metrics -> metrics.messagesSentByType));
+  }
+
+  @Override
+  public Map<String, Long> getMessagesReceivedByType() {
+    return byType(sumAll(metrics -> metrics.messagesReceivedByType));
+  }
+
+  @Override
+  public long getRoundTrips() {
+    return sum(metrics -> metrics.roundTripTimes.count.sum());
+  }
+
+  @Override
+  public long getRoundTripTimeTotal() {
+    return sum(metrics -> metrics.roundTripTimes.total.sum());
+  }
+
+  @Override
+  public long getRoundTripTimeMax() {
+    return max(metrics -> metrics.roundTripTimes.max.get());
+  }
+
+  @Override
+  public long[] getRoundTripTimeHistogram() {
+    return sumAll(metrics -> metrics.roundTripTimes.buckets);
+  }
+
+  @Override
+  public int getRequestsInFlight() {
+    return (int) sum(metrics -> metrics.requestsInFlight.get());
+  }
+
+  @Override
+  public int getRequestsInFlightMax() {
+    return (int) max(metrics -> metrics.requestsInFlightMax.get());
+  }
+
+  @Override
+  public long getRowsDecoded() {
+    return sum(metrics -> metrics.rowsDecoded.sum());
+  }
+
+  @Override
+  public long getFieldsDecoded() {
+    return sum(metrics -> total(metrics.decodesByType, counter -> counter.count.sum()));
+  }
+
+  @Override
+  public long getDecodeTimeTotal() {
+    return sum(metrics -> total(metrics.decodesByType, counter -> counter.nanos.sum()));
+  }
+
+  @Override
+  public Map<Integer, Long> getDecodeCountByType() {
+    return byType(counter -> counter.count.sum());
+  }
+
+  @Override
+  public Map<Integer, Long> getDecodeTimeByType() {
+    return byType(counter -> counter.nanos.sum());
+  }
+
+  @Override
+  public long getAwaits() {
+    return sum(metrics -> metrics.awaitTimes.count.sum());
+  }
+
+  @Override
+  public long getAwaitTimeTotal() {
+    return sum(metrics -> metrics.awaitTimes.total.sum());
+  }
+
+  @Override
+  public long getAwaitTimeMax() {
+    return max(metrics -> metrics.awaitTimes.max.get());
+  }
+
+  @Override
+  public long[] getAwaitTimeHistogram() {
+    return sumAll(metrics -> metrics.awaitTimes.buckets);
+  }
+
+  @Override
+  public long getPreparedStatementCacheHits() {
+    return sum(metrics -> metrics.preparedStatementCacheHits.sum());
+  }
+
+  @Override
+  public long getPreparedStatementCacheMisses() {
+    return sum(metrics -> metrics.preparedStatementCacheMisses.sum());
+  }
+
+  @Override
+  public long getPreparedStatementCacheEvictions() {
+    return sum(metrics -> metrics.preparedStatementCacheEvictions.sum());
+  }
+
+  @Override
+  public long getParsedSqlCacheHits() {
+    return sum(metrics -> metrics.parsedSqlCacheHits.sum());
+  }
+
+  @Override
+  public long getParsedSqlCacheMisses() {
+    return sum(metrics -> metrics.parsedSqlCacheMisses.sum());
+  }
+
+  @Override
+  public long getTypesLoaded() {
+    return sum(metrics -> metrics.typesLoaded.sum());
+  }
+
+  /**
+   * Resets all counters and histograms, including those of current
+   * children. The current number of requests in flight is maintained.
+   */
+  @Override
+  public void reset() {
+    for (int c = 0; c < 128; ++c) {
+      messagesSentByType[c].reset();
+      messagesReceivedByType[c].reset();
+    }
+    bytesSent.reset();
+    bytesReceived.reset();
+    roundTripTimes.reset();
+    requestsInFlightMax.reset();
+    rowsDecoded.reset();
+    synchronized (this) {
+      decodesByType = TypeCounters.EMPTY;
+    }
+    awaitTimes.reset();
+    preparedStatementCacheHits.reset();
+    preparedStatementCacheMisses.reset();
+    preparedStatementCacheEvictions.reset();
+    parsedSqlCacheHits.reset();
+    parsedSqlCacheMisses.reset();
+    typesLoaded.reset();
+    for (Metrics child : children) {
+      child.reset();
+    }
+  }
+
+}
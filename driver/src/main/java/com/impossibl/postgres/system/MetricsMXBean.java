@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.system;
+
+import java.util.Map;
+
+/**
+ * JMX view of a {@link Metrics} instance.
+ *
+ * Times are reported in nanoseconds. Histograms are reported as arrays of
+ * 64 buckets, where bucket {@code n} counts values in the range
+ * {@code [2^n, 2^(n+1))}.
+ */
+public interface MetricsMXBean {
+
+  long getMessagesSent();
+  long getMessagesReceived();
+  long getBytesSent();
+  long getBytesReceived();
+  Map<String, Long> getMessagesSentByType();
+  Map<String, Long> getMessagesReceivedByType();
+
+  long getRoundTrips();
+  long getRoundTripTimeTotal();
+  long getRoundTripTimeMax();
+  long[] getRoundTripTimeHistogram();
+
+  int getRequestsInFlight();
+  int getRequestsInFlightMax();
+
+  long getRowsDecoded();
+  long getFieldsDecoded();
+  long getDecodeTimeTotal();
+  Map<Integer, Long> getDecodeCountByType();
+  Map<Integer, Long> getDecodeTimeByType();
+
+  long getAwaits();
+  long getAwaitTimeTotal();
+  long getAwaitTimeMax();
+  long[] getAwaitTimeHistogram();
+
+  long getPreparedStatementCacheHits();
+  long getPreparedStatementCacheMisses();
+  long getPreparedStatementCacheEvictions();
+  long getParsedSqlCacheHits();
+  long getParsedSqlCacheMisses();
+
+  long getTypesLoaded();
+
+  void reset();
+
+}
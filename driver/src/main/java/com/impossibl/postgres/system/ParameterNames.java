@@ -35,6 +35,7 @@ public class ParameterNames {
   public static final String PASSWORD = "password";
   public static final String APPLICATION_NAME = "application_name";
   public static final String CLIENT_ENCODING = "client_encoding";
+  public static final String REPLICATION = "replication";
   public static final String SESSION_AUTHORIZATION = "session_authorization";
   public static final String STANDARD_CONFORMING_STRINGS = "standard_conforming_strings";
   public static final String TIME_ZONE = "TimeZone";
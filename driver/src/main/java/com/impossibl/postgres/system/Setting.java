@@ -33,13 +33,16 @@ import static com.impossibl.postgres.utils.guava.Preconditions.checkArgument;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.Target;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Properties;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
@@ -469,6 +472,31 @@ public class Setting<T> {
    */
   private static final String SYSTEM_PROPERTY_PREFIX = "pgjdbc.";
 
+  private static final AtomicInteger NEXT_ORDINAL = new AtomicInteger();
+  private static final List<Setting<?>> INITIALIZED = new ArrayList<>();
+
+  /**
+   * Retrieves all settings that have been initialized.
+   *
+   * @return Array of all initialized settings.
+   */
+  static Setting<?>[] getAllInitialized() {
+    synchronized (Setting.class) {
+      return INITIALIZED.toArray(new Setting<?>[0]);
+    }
+  }
+
+  /**
+   * Retrieves an upper bound for the ordinals of all settings
+   * created so far.
+   *
+   * @return Number of ordinals assigned.
+   */
+  static int getOrdinalCount() {
+    return NEXT_ORDINAL.get();
+  }
+
+  private final int ordinal = NEXT_ORDINAL.getAndIncrement();
   private Group group;
   private String[] names;
   private Class<? extends T> type;
@@ -496,6 +524,7 @@ public class Setting<T> {
   public Setting(Group group, String description, Class<T> type, T defaultValue, Converter<T> fromString, Function<T, String> toString, String[] names) {
     this.staticDefaultValue = defaultValue;
     init(group, description, type, fromString, toString, names);
+    register();
   }
 
   /**
@@ -512,6 +541,7 @@ public class Setting<T> {
   public Setting(Group group, String description, Class<T> type, Supplier<String> dynamicDefaultSupplier, Converter<T> fromString, Function<T, String> toString, String[] names) {
     this.dynamicDefaultSupplier = dynamicDefaultSupplier;
     init(group, description, type, fromString, toString, names);
+    register();
   }
 
   private void init(Group group, String description, Class<T> type, Converter<T> fromString, Function<T, String> toString, String[] names) {
@@ -536,6 +566,12 @@ public class Setting<T> {
     }
   }
 
+  private void register() {
+    synchronized (Setting.class) {
+      INITIALIZED.add(this);
+    }
+  }
+
   /**
    * Initializes a forward declared setting instance. This is intended for use only by the annotation processor.
    *
@@ -552,6 +588,7 @@ public class Setting<T> {
     if (group == null) throw new IllegalArgumentException("Unknown group: " + groupId);
     init(group, description, type, fromString, toString, names);
     staticDefaultValue = defaultValue != null ? fromString(defaultValue) : null;
+    register();
   }
 
   /**
@@ -570,6 +607,7 @@ public class Setting<T> {
     if (group == null) throw new IllegalArgumentException("Unknown group: " + groupId);
     init(group, description, type, fromString, toString, names);
     dynamicDefaultSupplier = defaultValue;
+    register();
   }
 
 
@@ -592,6 +630,18 @@ public class Setting<T> {
     }
   }
 
+  /**
+   * Retrieve the setting's ordinal.
+   *
+   * Ordinals are dense, unique &amp; assigned in declaration order. They
+   * allow a setting's value to be addressed by index (see {@link SettingsSnapshot}).
+   *
+   * @return Ordinal of this setting.
+   */
+  public int getOrdinal() {
+    return ordinal;
+  }
+
   /**
    * Retrieve the setting's group
    *
@@ -37,7 +37,6 @@ public class SettingsContext extends DecoratorContext {
 
   public SettingsContext(Context context, Map<String, Class<?>> typeMap) {
     super(context);
-    this.settings = new Settings();
     this.typeMap = typeMap;
   }
 
@@ -49,12 +48,20 @@ public class SettingsContext extends DecoratorContext {
 
   @Override
   public <T> T getSetting(Setting<T> setting) {
-    T value = settings.getStored(setting);
-    if (value != null) return value;
+    if (settings != null) {
+      T value = settings.getStored(setting);
+      if (value != null) return value;
+    }
     return super.getSetting(setting);
   }
 
   public <T> void setSetting(Setting<T> setting, T value) {
+    // Settings are allocated only when first overridden, keeping
+    // contexts that merely decorate cheap to create
+    if (settings == null) {
+      if (value == null) return;
+      settings = new Settings();
+    }
     settings.set(setting, value);
   }
 
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.system;
+
+/**
+ * Immutable, index addressed snapshot of a {@link Settings} bag's values.
+ *
+ * Each value is parsed once, when the snapshot is created, and stored in
+ * the slot of its setting's {@link Setting#getOrdinal() ordinal}; making
+ * lookups a simple array load.
+ *
+ * Settings without a stored value are resolved via {@link Setting#getSystem()},
+ * capturing system properties &amp; static defaults at creation. Settings with
+ * dynamic defaults, those declared after the snapshot was created and those
+ * whose stored value cannot be parsed are left unresolved and must be
+ * looked up directly.
+ *
+ * Snapshots are never updated; when settings change a new snapshot is
+ * created and swapped in its place.
+ */
+public final class SettingsSnapshot {
+
+  private static final Object UNRESOLVED = new Object();
+
+  private final Object[] values;
+
+  /**
+   * Creates a snapshot of the current values of all settings
+   *
+   * @param settings Settings bag to snapshot
+   */
+  public SettingsSnapshot(Settings settings) {
+
+    values = new Object[Setting.getOrdinalCount()];
+
+    for (int c = 0; c < values.length; ++c) {
+      values[c] = UNRESOLVED;
+    }
+
+    for (Setting<?> setting : Setting.getAllInitialized()) {
+
+      int ordinal = setting.getOrdinal();
+      if (ordinal >= values.length) {
+        continue;
+      }
+
+      try {
+        if (settings.hasStoredValue(setting)) {
+          values[ordinal] = settings.getStored(setting);
+        }
+        else if (!setting.isDefaultDynamic()) {
+          values[ordinal] = setting.getSystem();
+        }
+      }
+      catch (IllegalArgumentException e) {
+        // Leave unresolved, direct lookups will report the error
+      }
+    }
+
+  }
+
+  /**
+   * Check if the value for a setting was resolved when creating
+   * the snapshot.
+   *
+   * @param setting Setting to check
+   * @return {@code true} if {@link #get(Setting)} returns the setting's value,
+   *         {@code false} if it must be looked up directly.
+   */
+  public boolean isResolved(Setting<?> setting) {
+    int ordinal = setting.getOrdinal();
+    return ordinal < values.length && values[ordinal] != UNRESOLVED;
+  }
+
+  /**
+   * Retrieve the resolved value of a setting.
+   *
+   * @param setting Setting to retrieve
+   * @param <T> Type of the setting (inferred by {@code setting})
+   * @return Resolved value of the setting or {@code null} if the setting
+   *         is unresolved.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(Setting<T> setting) {
+    int ordinal = setting.getOrdinal();
+    if (ordinal >= values.length) {
+      return null;
+    }
+    Object value = values[ordinal];
+    return value != UNRESOLVED ? (T) value : null;
+  }
+
+}
@@ -70,6 +70,16 @@ public class SystemSettings {
   )
   public static final Setting<String> APPLICATION_NAME = Setting.declare();
 
+  @Setting.Info(
+      name = ParameterNames.REPLICATION,
+      group = "system",
+      desc =
+          "Starts the connection in replication mode.\n\n" +
+          "Use <code>database</code> to connect in logical replication mode; only the simple query protocol " +
+          "is available in replication mode and manual transactions are not supported."
+  )
+  public static final Setting<String> REPLICATION = Setting.declare();
+
   @Setting.Info(
       name = ParameterNames.USER,
       group = "system",
@@ -105,6 +115,19 @@ public class SystemSettings {
   )
   public static final Setting<Integer> FIELD_LENGTH_MAX = Setting.declare();
 
+  @Setting.Info(
+      name = "field.string.dedup",
+      group = "system",
+      desc =
+          "Deduplicate decoded values of string result fields.\n\n" +
+          "When enabled, each string result field caches the values it decodes, returning the same instance \n" +
+          "for repeated values. This greatly reduces memory usage for low cardinality fields (e.g. status or \n" +
+          "country codes). The cache for a field disables itself if its hit rate is low. Enumeration fields are \n" +
+          "always deduplicated.",
+      def = "false"
+  )
+  public static final Setting<Boolean> FIELD_STRING_DEDUP = Setting.declare();
+
   @Setting.Info(
       name = "param.format",
       group = "system",
@@ -188,6 +211,15 @@ public class SystemSettings {
   )
   public static final Setting<String> SSL_HOME_DIR = Setting.declare();
 
+  @Setting.Info(
+      desc = "Use OpenSSL, provided by netty-tcnative, for SSL connections when it is available.\n" +
+          "If OpenSSL cannot use the configured keys, the JDK's SSL implementation is used instead.",
+      def = "false",
+      name = "ssl.openssl",
+      group = "system"
+  )
+  public static final Setting<Boolean> SSL_OPENSSL = Setting.declare();
+
   @Setting.Info(
       desc = "Enables or disables SQL trace output",
       def = "false",
@@ -205,6 +237,37 @@ public class SystemSettings {
   )
   public static final Setting<String> SQL_TRACE_FILE = Setting.declare();
 
+  @Setting.Info(
+      desc =
+          "Enables or disables collection of connection metrics.\n\n" +
+          "When enabled, each connection (and the shared type registry it uses) collects counters and \n" +
+          "histograms for protocol traffic, decoding, blocking waits and caches.",
+      def = "false",
+      name = "metrics.enabled",
+      group = "system"
+  )
+  public static final Setting<Boolean> METRICS_ENABLED = Setting.declare();
+
+  @Setting.Info(
+      desc =
+          "Enables or disables publishing of connection metrics via JMX.\n\n" +
+          "NOTE: `metrics.enabled` must be `true` to publish metrics",
+      def = "false",
+      name = "metrics.jmx",
+      group = "system"
+  )
+  public static final Setting<Boolean> METRICS_JMX = Setting.declare();
+
+  @Setting.Info(
+      desc =
+          "Class name of a `PGMetricsListener` implementation to receive metrics events. An instance \n" +
+          "is created for each connection.\n\n" +
+          "NOTE: `metrics.enabled` must be `true` to receive events",
+      name = "metrics.listener",
+      group = "system"
+  )
+  public static final Setting<Class> METRICS_LISTENER = Setting.declare();
+
 
 
 
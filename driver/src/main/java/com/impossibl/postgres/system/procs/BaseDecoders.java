@@ -38,6 +38,7 @@ import static com.impossibl.postgres.utils.guava.Preconditions.checkArgument;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.function.Function;
 
@@ -147,7 +148,7 @@ abstract class AutoConvertingBinaryDecoder<N> extends BaseBinaryDecoder implemen
   }
 
   private boolean isBinary(Class<?> type) {
-    return type == InputStream.class || type == byte[].class;
+    return type == InputStream.class || type == byte[].class || type == ByteBuffer.class;
   }
 
   @Override
@@ -171,6 +172,10 @@ abstract class AutoConvertingBinaryDecoder<N> extends BaseBinaryDecoder implemen
         buffer.readBytes(bytes);
         binaryResult = bytes;
       }
+      else if (targetClass == ByteBuffer.class) {
+        binaryResult = buffer.nioBuffer(buffer.readerIndex(), length).asReadOnlyBuffer();
+        buffer.skipBytes(length);
+      }
 
       return binaryResult;
     }
@@ -248,7 +253,7 @@ abstract class AutoConvertingTextDecoder<N> extends BaseTextDecoder implements A
   }
 
   private boolean isBinary(Class<?> type) {
-    return type == InputStream.class || type == byte[].class;
+    return type == InputStream.class || type == byte[].class || type == ByteBuffer.class;
   }
 
   @Override
@@ -271,6 +276,9 @@ abstract class AutoConvertingTextDecoder<N> extends BaseTextDecoder implements A
       else if (targetClass == byte[].class) {
         binaryResult = bytes;
       }
+      else if (targetClass == ByteBuffer.class) {
+        binaryResult = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+      }
 
       return binaryResult;
     }
@@ -39,6 +39,7 @@ import static com.impossibl.postgres.system.SystemSettings.FIELD_LENGTH_MAX;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.sql.Blob;
 import java.sql.SQLException;
 
@@ -87,6 +88,12 @@ public class Bytes extends SimpleProcProvider {
       return new ByteBufInputStream(decoded, true);
     }
 
+    if (targetClass == ByteBuffer.class) {
+      ByteBuffer view = decoded.nioBuffer().asReadOnlyBuffer();
+      decoded.release();
+      return view;
+    }
+
     if (targetClass == byte[].class) {
       byte[] bytes = new byte[decoded.readableBytes()];
       decoded.readBytes(bytes);
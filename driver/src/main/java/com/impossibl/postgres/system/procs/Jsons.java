@@ -36,10 +36,15 @@ import static com.impossibl.postgres.system.procs.Strings.TEXT_DECODER;
 import static com.impossibl.postgres.system.procs.Strings.TEXT_ENCODER;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 
 import static java.lang.Math.min;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 
 
 public class Jsons extends SimpleProcProvider {
@@ -55,6 +60,11 @@ public class Jsons extends SimpleProcProvider {
       return String.class;
     }
 
+    @Override
+    public boolean isReaderSupported() {
+      return true;
+    }
+
     @Override
     protected Object decodeValue(Context context, Type type, Short typeLength, Integer typeModifier, ByteBuf buffer, Class<?> targetClass, Object targetContext) throws IOException {
 
@@ -70,16 +80,32 @@ public class Jsons extends SimpleProcProvider {
 
       length -= 1;
 
-      byte[] bytes;
+      int readLength;
 
       Integer maxLength = context.getSetting(FIELD_LENGTH_MAX);
       if (maxLength != null) {
-        bytes = new byte[min(maxLength, length)];
+        readLength = min(maxLength, length);
       }
       else {
-        bytes = new byte[length];
+        readLength = length;
       }
 
+      // Views & streams read the document's text directly from the field's data
+
+      if (targetClass == ByteBuffer.class) {
+        ByteBuffer view = buffer.nioBuffer(buffer.readerIndex(), readLength).asReadOnlyBuffer();
+        buffer.skipBytes(length);
+        return view;
+      }
+
+      if (targetClass == InputStream.class || targetClass == Reader.class) {
+        InputStream in = new ByteBufInputStream(buffer.readRetainedSlice(readLength), true);
+        buffer.skipBytes(length - readLength);
+        return targetClass == Reader.class ? new InputStreamReader(in, context.getCharset()) : in;
+      }
+
+      byte[] bytes = new byte[readLength];
+
       buffer.readBytes(bytes);
       buffer.skipBytes(length - bytes.length);
 
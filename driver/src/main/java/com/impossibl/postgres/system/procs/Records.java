@@ -28,6 +28,8 @@
  */
 package com.impossibl.postgres.system.procs;
 
+import com.impossibl.postgres.api.jdbc.PGRecordReader;
+import com.impossibl.postgres.api.jdbc.PGSQLDataDecoder;
 import com.impossibl.postgres.jdbc.PGBuffersStruct;
 import com.impossibl.postgres.jdbc.PGSQLInput;
 import com.impossibl.postgres.jdbc.PGSQLOutput;
@@ -39,6 +41,7 @@ import com.impossibl.postgres.types.Registry;
 import com.impossibl.postgres.types.Type;
 
 import static com.impossibl.postgres.system.CustomTypes.lookupCustomType;
+import static com.impossibl.postgres.system.SystemSettings.FIELD_LENGTH_MAX;
 import static com.impossibl.postgres.utils.ByteBufs.lengthEncodeBinary;
 
 import java.io.IOException;
@@ -96,13 +99,7 @@ public class Records extends SimpleProcProvider {
     Object result;
 
     if (SQLData.class.isAssignableFrom(targetClass)) {
-      SQLData data;
-      try {
-        data = (SQLData) targetClass.getConstructor().newInstance();
-      }
-      catch (Exception e) {
-        throw new IOException("Unable to instantiate custom type; an accessible no-arg constructor is required", e);
-      }
+      SQLData data = SQLDataClasses.newInstance(targetClass);
 
       try {
         PGSQLInput<Buffer> input = inputFactory.create(context, attributeTypes, attributeBuffers);
@@ -139,6 +136,27 @@ public class Records extends SimpleProcProvider {
       int length = buffer.readableBytes();
       long readStart = buffer.readerIndex();
 
+      // Decode directly when a decoder is registered for the target class
+
+      Class<?> dataClass = targetClass;
+      if (Struct.class.isAssignableFrom(dataClass)) {
+        dataClass = lookupCustomType(type, context.getCustomTypeMap(), dataClass);
+      }
+
+      PGSQLDataDecoder<?> dataDecoder = SQLData.class.isAssignableFrom(dataClass) ? SQLDataClasses.findDecoder(dataClass) : null;
+      if (dataDecoder != null) {
+        BinaryRecordReader reader = new BinaryRecordReader(context, buffer);
+        try {
+          return dataDecoder.decode(reader, type.getQualifiedName().toString());
+        }
+        catch (SQLException e) {
+          throw new IOException(e);
+        }
+        finally {
+          buffer.readerIndex((int) readStart + length);
+        }
+      }
+
       int itemCount = buffer.readInt();
 
       Type[] attributeTypes = new Type[itemCount];
@@ -166,6 +184,141 @@ public class Records extends SimpleProcProvider {
 
   }
 
+  /**
+   * Reads attributes directly from a binary record's data
+   */
+  static class BinaryRecordReader implements PGRecordReader {
+
+    private static final int BOOL_OID = 16;
+    private static final int INT8_OID = 20;
+    private static final int INT2_OID = 21;
+    private static final int INT4_OID = 23;
+    private static final int TEXT_OID = 25;
+    private static final int FLOAT4_OID = 700;
+    private static final int FLOAT8_OID = 701;
+    private static final int VARCHAR_OID = 1043;
+
+    private Context context;
+    private ByteBuf buffer;
+    private int attributeCount;
+    private int attributeIdx;
+    private int attributeTypeId;
+    private int attributeLength;
+    private boolean decodeStrings;
+    private boolean nullFlag;
+
+    BinaryRecordReader(Context context, ByteBuf buffer) {
+      this.context = context;
+      this.buffer = buffer;
+      this.attributeCount = buffer.readInt();
+      this.decodeStrings = context.getSetting(FIELD_LENGTH_MAX) == null;
+    }
+
+    /**
+     * Advances to the next attribute, reading its type & length.
+     *
+     * @return <code>true</code> if the attribute is not <code>NULL</code>
+     */
+    private boolean next() throws SQLException {
+      if (attributeIdx >= attributeCount) {
+        throw new SQLException("No more attributes");
+      }
+      attributeIdx++;
+      attributeTypeId = buffer.readInt();
+      attributeLength = buffer.readInt();
+      nullFlag = attributeLength == -1;
+      return !nullFlag;
+    }
+
+    private Object decode(Class<?> targetClass) throws SQLException {
+      ByteBuf attributeBuffer = buffer.readSlice(attributeLength);
+      try {
+        Type attributeType = context.getRegistry().loadType(attributeTypeId);
+        return attributeType.getBinaryCodec().getDecoder()
+            .decode(context, attributeType, attributeType.getLength(), null, attributeBuffer, targetClass, null);
+      }
+      catch (IOException e) {
+        throw new SQLException(e);
+      }
+    }
+
+    private <T> T decodeNonNull(Class<T> targetClass, T nullValue) throws SQLException {
+      T value = targetClass.cast(decode(targetClass));
+      nullFlag = value == null;
+      return value != null ? value : nullValue;
+    }
+
+    @Override
+    public int getAttributeCount() {
+      return attributeCount;
+    }
+
+    @Override
+    public boolean wasNull() {
+      return nullFlag;
+    }
+
+    @Override
+    public boolean readBoolean() throws SQLException {
+      if (!next()) return false;
+      if (attributeTypeId == BOOL_OID) return buffer.readBoolean();
+      return decodeNonNull(Boolean.class, false);
+    }
+
+    @Override
+    public short readShort() throws SQLException {
+      if (!next()) return 0;
+      if (attributeTypeId == INT2_OID) return buffer.readShort();
+      return decodeNonNull(Short.class, (short) 0);
+    }
+
+    @Override
+    public int readInt() throws SQLException {
+      if (!next()) return 0;
+      if (attributeTypeId == INT4_OID) return buffer.readInt();
+      return decodeNonNull(Integer.class, 0);
+    }
+
+    @Override
+    public long readLong() throws SQLException {
+      if (!next()) return 0;
+      if (attributeTypeId == INT8_OID) return buffer.readLong();
+      return decodeNonNull(Long.class, 0L);
+    }
+
+    @Override
+    public float readFloat() throws SQLException {
+      if (!next()) return 0;
+      if (attributeTypeId == FLOAT4_OID) return buffer.readFloat();
+      return decodeNonNull(Float.class, 0f);
+    }
+
+    @Override
+    public double readDouble() throws SQLException {
+      if (!next()) return 0;
+      if (attributeTypeId == FLOAT8_OID) return buffer.readDouble();
+      return decodeNonNull(Double.class, 0d);
+    }
+
+    @Override
+    public String readString() throws SQLException {
+      if (!next()) return null;
+      if (decodeStrings && (attributeTypeId == TEXT_OID || attributeTypeId == VARCHAR_OID)) {
+        String value = buffer.toString(buffer.readerIndex(), attributeLength, context.getCharset());
+        buffer.skipBytes(attributeLength);
+        return value;
+      }
+      return decodeNonNull(String.class, null);
+    }
+
+    @Override
+    public <T> T readObject(Class<T> type) throws SQLException {
+      if (!next()) return null;
+      return decodeNonNull(type, null);
+    }
+
+  }
+
   static class BinEncoder extends BaseBinaryEncoder {
 
     @Override
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.system.procs;
+
+import com.impossibl.postgres.api.jdbc.PGSQLDataDecoder;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.sql.SQLData;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Per-class instantiation & decoding support for {@link SQLData} classes.
+ *
+ * Decoders are discovered, via {@link ServiceLoader}, once per class loader; constructors are
+ * resolved once per class and invoked through method handles.
+ */
+class SQLDataClasses {
+
+  private static final Map<ClassLoader, Map<Class<?>, PGSQLDataDecoder<?>>> LOADED_DECODERS = new WeakHashMap<>();
+
+  private static final ClassValue<PGSQLDataDecoder<?>> DECODERS = new ClassValue<PGSQLDataDecoder<?>>() {
+    @Override
+    protected PGSQLDataDecoder<?> computeValue(Class<?> type) {
+      return loadDecoders(type.getClassLoader()).get(type);
+    }
+  };
+
+  private static final ClassValue<MethodHandle> CONSTRUCTORS = new ClassValue<MethodHandle>() {
+    @Override
+    protected MethodHandle computeValue(Class<?> type) {
+      try {
+        return MethodHandles.publicLookup().findConstructor(type, methodType(void.class)).asType(methodType(SQLData.class));
+      }
+      catch (NoSuchMethodException | IllegalAccessException e) {
+        return null;
+      }
+    }
+  };
+
+  private static Map<Class<?>, PGSQLDataDecoder<?>> loadDecoders(ClassLoader classLoader) {
+    if (classLoader == null) {
+      classLoader = ClassLoader.getSystemClassLoader();
+    }
+
+    synchronized (LOADED_DECODERS) {
+
+      Map<Class<?>, PGSQLDataDecoder<?>> decoders = LOADED_DECODERS.get(classLoader);
+      if (decoders == null) {
+        decoders = new HashMap<>();
+        for (PGSQLDataDecoder<?> decoder : ServiceLoader.load(PGSQLDataDecoder.class, classLoader)) {
+          decoders.putIfAbsent(decoder.getJavaType(), decoder);
+        }
+        LOADED_DECODERS.put(classLoader, decoders);
+      }
+
+      return decoders;
+    }
+  }
+
+  /**
+   * Finds the registered decoder for a class
+   *
+   * @param type {@link SQLData} class to find a decoder for
+   * @return Decoder for the class or <code>null</code> if none is registered
+   */
+  static PGSQLDataDecoder<?> findDecoder(Class<?> type) {
+    return DECODERS.get(type);
+  }
+
+  /**
+   * Instantiates a class using its public no-arg constructor
+   *
+   * @param type {@link SQLData} class to instantiate
+   * @return New instance of the class
+   * @throws IOException If the class has no accessible no-arg constructor or instantiation fails
+   */
+  static SQLData newInstance(Class<?> type) throws IOException {
+
+    MethodHandle constructor = CONSTRUCTORS.get(type);
+    if (constructor == null) {
+      throw new IOException("Unable to instantiate custom type; an accessible no-arg constructor is required");
+    }
+
+    try {
+      return (SQLData) constructor.invokeExact();
+    }
+    catch (Throwable t) {
+      throw new IOException("Unable to instantiate custom type", t);
+    }
+  }
+
+}
@@ -30,13 +30,19 @@ package com.impossibl.postgres.system.procs;
 
 import com.impossibl.postgres.system.Context;
 import com.impossibl.postgres.system.JavaTypeMapping;
+import com.impossibl.postgres.types.EnumerationType;
 import com.impossibl.postgres.types.Modifiers;
 import com.impossibl.postgres.types.Type;
+import com.impossibl.postgres.utils.StringCache;
 
 import static com.impossibl.postgres.system.SystemSettings.FIELD_LENGTH_MAX;
+import static com.impossibl.postgres.system.SystemSettings.FIELD_STRING_DEDUP;
 import static com.impossibl.postgres.types.Modifiers.LENGTH;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.URL;
@@ -47,6 +53,7 @@ import java.util.Map;
 import static java.lang.Integer.min;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 
 public class Strings extends SimpleProcProvider {
 
@@ -60,6 +67,34 @@ public class Strings extends SimpleProcProvider {
         "text", "varchar", "bpchar", "char", "enum_", "json_", "cstring_", "citext", "unknown",  "regproc", "regtype", "regclass", "regoper");
   }
 
+  /**
+   * Creates a string deduplication cache for result fields of the given type.
+   *
+   * Only types decoded by this provider are deduplicated; enumerations always, other
+   * types when enabled via {@link com.impossibl.postgres.system.SystemSettings#FIELD_STRING_DEDUP}.
+   * Fields are never deduplicated when a maximum field length is in effect.
+   *
+   * @param context Context of decoding
+   * @param type Type of result field
+   * @return New cache for the field or {@link StringCache#DISABLED} if the field should not be deduplicated.
+   */
+  public static StringCache createCache(Context context, Type type) {
+
+    if (type.getBinaryCodec().getDecoder() != BINARY_DECODER && type.getTextCodec().getDecoder() != TEXT_DECODER) {
+      return StringCache.DISABLED;
+    }
+
+    if (context.getSetting(FIELD_LENGTH_MAX) != null) {
+      return StringCache.DISABLED;
+    }
+
+    if (!(type instanceof EnumerationType) && !context.getSetting(FIELD_STRING_DEDUP)) {
+      return StringCache.DISABLED;
+    }
+
+    return new StringCache();
+  }
+
   private static Bools.TxtDecoder boolDecoder = new Bools.TxtDecoder();
   private static Bools.TxtEncoder boolEncoder = new Bools.TxtEncoder();
   private static Int2s.TxtDecoder shortDecoder = new Int2s.TxtDecoder();
@@ -126,6 +161,10 @@ public class Strings extends SimpleProcProvider {
         return decoded;
       }
 
+      if (targetClass == Reader.class) {
+        return new StringReader(decoded);
+      }
+
       Type type = JavaTypeMapping.getType(targetClass, context.getRegistry());
       if (type != null && type.getTextCodec() != null) {
         return type.getTextCodec().getDecoder().decode(context, type, null, null, decoded, targetClass, targetContext);
@@ -190,6 +229,22 @@ public class Strings extends SimpleProcProvider {
       return String.class;
     }
 
+    @Override
+    public boolean isReaderSupported() {
+      return true;
+    }
+
+    @Override
+    protected Object decodeValue(Context context, Type type, Short typeLength, Integer typeModifier, ByteBuf buffer, Class<?> targetClass, Object targetContext) throws IOException {
+
+      // Readers decode directly from the field's data (max length is in characters and requires a full decode)
+      if (targetClass == Reader.class && context.getSetting(FIELD_LENGTH_MAX) == null) {
+        return new InputStreamReader(new ByteBufInputStream(buffer.readRetainedSlice(buffer.readableBytes()), true), context.getCharset());
+      }
+
+      return super.decodeValue(context, type, typeLength, typeModifier, buffer, targetClass, targetContext);
+    }
+
     @Override
     protected String decodeNativeValue(Context context, Type type, Short typeLength, Integer typeModifier, ByteBuf buffer, Class<?> targetClass, Object targetContext) throws IOException {
 
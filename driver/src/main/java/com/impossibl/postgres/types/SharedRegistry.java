@@ -28,6 +28,7 @@
  */
 package com.impossibl.postgres.types;
 
+import com.impossibl.postgres.system.Metrics;
 import com.impossibl.postgres.system.ServerConnectionInfo;
 import com.impossibl.postgres.system.ServerInfo;
 import com.impossibl.postgres.system.Version;
@@ -48,9 +49,12 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 import io.netty.buffer.ByteBuf;
@@ -106,6 +110,9 @@ public class SharedRegistry {
 
   private AtomicBoolean seeded = new AtomicBoolean(false);
   private ReadWriteLock lock = new ReentrantReadWriteLock();
+  private AtomicReference<Metrics> metrics = new AtomicReference<>();
+  private int metricsReferences;
+  private Map<Class<?>, Object> caches = new ConcurrentHashMap<>();
 
 
   public SharedRegistry(ServerInfo serverInfo, ClassLoader classLoader) {
@@ -183,6 +190,7 @@ public class SharedRegistry {
           type = loader.load(typeId);
 
           updateType(type);
+          typeLoaded(type);
 
         }
         finally {
@@ -224,6 +232,7 @@ public class SharedRegistry {
           type = loader.load(name);
 
           updateType(type);
+          typeLoaded(type);
 
         }
         finally {
@@ -265,6 +274,7 @@ public class SharedRegistry {
           type = loader.loadRelation(relationId);
 
           updateType(type);
+          typeLoaded(type);
 
         }
         finally {
@@ -284,6 +294,72 @@ public class SharedRegistry {
 
 
 
+  /**
+   * Retrieves the metrics aggregated for all connections using this
+   * registry; creating them if necessary.
+   *
+   * @return Registry metrics
+   */
+  public Metrics getMetrics() {
+    Metrics current = metrics.get();
+    if (current == null) {
+      metrics.compareAndSet(null, new Metrics());
+      current = metrics.get();
+    }
+    return current;
+  }
+
+  /**
+   * Retains the registry's metrics on behalf of a connection; optionally
+   * publishing them as an MBean until the last connection releases them.
+   *
+   * @param registerMBean Whether the metrics should be registered with the
+   *                      platform MBean server
+   * @return Registry metrics
+   * @see #release()
+   */
+  public synchronized Metrics retainMetrics(boolean registerMBean) {
+    Metrics current = getMetrics();
+    metricsReferences++;
+    if (registerMBean) {
+      current.registerMBean("SharedRegistry");
+    }
+    return current;
+  }
+
+  /**
+   * Releases a connection's reference to the registry's metrics. When no
+   * connections reference them, the metrics' MBean is unregistered.
+   */
+  public synchronized void release() {
+    if (metricsReferences == 0 || --metricsReferences != 0) {
+      return;
+    }
+    Metrics current = metrics.get();
+    if (current != null) {
+      current.unregisterMBean();
+    }
+  }
+
+  /**
+   * Retrieves a cache shared by all connections using this registry;
+   * creating it if necessary.
+   *
+   * @param cacheType Type of cache to retrieve
+   * @param factory Factory used to create the cache if none exists
+   * @return Registry cache
+   */
+  public <T> T getCache(Class<T> cacheType, Supplier<T> factory) {
+    return cacheType.cast(caches.computeIfAbsent(cacheType, key -> factory.get()));
+  }
+
+  private void typeLoaded(Type type) {
+    Metrics current = metrics.get();
+    if (current != null && type != null) {
+      current.typeLoaded(type.getId());
+    }
+  }
+
   public interface Seeder {
 
     void seed(SharedRegistry registry) throws IOException;
@@ -124,6 +124,13 @@ public abstract class Type implements TypeRef {
 
       Object decode(Context context, Type type, Short typeLength, Integer typeModifier, InBuffer buffer, Class<?> targetClass, Object targetContext) throws IOException;
 
+      /**
+       * @return Whether values can be decoded as a {@link java.io.Reader}
+       */
+      default boolean isReaderSupported() {
+        return false;
+      }
+
     }
 
     /**
@@ -35,10 +35,14 @@
  */
 package com.impossibl.postgres.utils;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+import io.netty.channel.ChannelFuture;
+import io.netty.util.concurrent.Future;
+
 public class Await {
 
   public interface InterruptibleTimeoutFunction {
@@ -55,42 +59,99 @@ public class Await {
       timeout = Long.MAX_VALUE;
     }
 
-    while (timeout > 0) {
+    boolean interrupted = false;
+    try {
 
-      long start = System.currentTimeMillis();
+      while (timeout > 0) {
 
-      try {
+        long start = System.currentTimeMillis();
 
-        return waiter.await(timeout, timeoutUnits);
+        try {
 
-      }
-      catch (InterruptedException e) {
-        // Ignore
-      }
+          return waiter.await(timeout, timeoutUnits);
 
-      timeout -= timeoutUnits.convert(System.currentTimeMillis() - start, MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+          interrupted = true;
+        }
 
-    }
+        timeout -= timeoutUnits.convert(System.currentTimeMillis() - start, MILLISECONDS);
+
+      }
 
-    return false;
+      return false;
+    }
+    finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
   }
 
   public static void awaitUninterruptibly(InterruptibleFunction waiter) {
 
-    while (true) {
+    boolean interrupted = false;
+    try {
+
+      while (true) {
+
+        try {
 
-      try {
+          waiter.await();
 
-        waiter.await();
+          return;
+        }
+        catch (InterruptedException e) {
+          interrupted = true;
+        }
 
-        return;
       }
-      catch (InterruptedException e) {
-        // Ignore
+
+    }
+    finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
       }
+    }
 
+  }
+
+  /**
+   * Waits for completion of a netty future, rethrowing its failure cause.
+   *
+   * Unlike {@link Future#syncUninterruptibly()}, which waits on the future's
+   * monitor, the wait parks the calling thread; making it safe to use
+   * from virtual threads without pinning their carrier.
+   *
+   * @param future Future to wait for
+   * @return The completed future
+   */
+  public static <F extends Future<?>> F syncUninterruptibly(F future) {
+
+    if (!future.isDone()) {
+
+      // Blocking on the event loop is a dead-lock; let netty detect & report it
+      if (future instanceof ChannelFuture && ((ChannelFuture) future).channel().eventLoop().inEventLoop()) {
+        future.syncUninterruptibly();
+        return future;
+      }
+
+      CountDownLatch completed = new CountDownLatch(1);
+      future.addListener(done -> completed.countDown());
+      awaitUninterruptibly(completed::await);
+    }
+
+    Throwable cause = future.cause();
+    if (cause != null) {
+      Await.<RuntimeException>rethrow(cause);
     }
 
+    return future;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <E extends Throwable> void rethrow(Throwable cause) throws E {
+    throw (E) cause;
   }
 
 }
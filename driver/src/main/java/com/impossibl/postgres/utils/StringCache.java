@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.utils;
+
+import java.nio.charset.Charset;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * Small, bounded, string deduplication cache.
+ *
+ * Strings are keyed by their raw encoded bytes; lookups hash &amp; compare
+ * directly against the source buffer so a hit requires no copying or
+ * allocation. Colliding entries are placed in one of a few neighboring
+ * slots; when all are occupied the entry replaces the occupant of its
+ * home slot.
+ *
+ * The cache monitors its own hit rate and disables itself, releasing
+ * its entries, when the rate is too low for deduplication to pay off
+ * (i.e. the values are not low cardinality).
+ *
+ * Instances are safe for use by multiple threads; entries are immutable
+ * and the statistics are only advisory.
+ */
+public class StringCache {
+
+  private static final int DEFAULT_CAPACITY = 256;
+  private static final int MAX_ENTRY_LENGTH = 64;
+  private static final int MAX_PROBES = 4;
+  private static final int SAMPLE_SIZE = 1024;
+  private static final int MIN_HIT_PERCENTAGE = 50;
+
+  /**
+   * Cache that never deduplicates.
+   */
+  public static final StringCache DISABLED = new StringCache(1, false);
+
+  private static final class Entry {
+
+    final int hash;
+    final byte[] bytes;
+    final String value;
+
+    Entry(int hash, byte[] bytes, String value) {
+      this.hash = hash;
+      this.bytes = bytes;
+      this.value = value;
+    }
+
+  }
+
+  private volatile Entry[] entries;
+  private int lookups;
+  private int hits;
+
+  public StringCache() {
+    this(DEFAULT_CAPACITY, true);
+  }
+
+  private StringCache(int capacity, boolean enabled) {
+    this.entries = enabled ? new Entry[capacity] : null;
+  }
+
+  /**
+   * Check if the cache is currently deduplicating.
+   *
+   * @return {@code true} if deduplicating, {@code false} if disabled.
+   */
+  public boolean isEnabled() {
+    return entries != null;
+  }
+
+  /**
+   * Decodes the readable bytes of the buffer as a string, returning
+   * a previously decoded instance for the same bytes when possible.
+   *
+   * The buffer's reader index is not modified.
+   *
+   * @param buffer Buffer containing encoded string
+   * @param charset Charset of encoded string
+   * @return Decoded string value
+   */
+  public String get(ByteBuf buffer, Charset charset) {
+
+    Entry[] entries = this.entries;
+    int length = buffer.readableBytes();
+    if (entries == null || length > MAX_ENTRY_LENGTH) {
+      return buffer.toString(charset);
+    }
+
+    int hash = ByteBufUtil.hashCode(buffer);
+    int mask = entries.length - 1;
+    int home = hash & mask;
+    int free = -1;
+
+    for (int probe = 0; probe < MAX_PROBES; ++probe) {
+      int slot = (home + probe) & mask;
+      Entry entry = entries[slot];
+      if (entry == null) {
+        free = slot;
+        break;
+      }
+      if (entry.hash == hash && matches(entry.bytes, buffer, length)) {
+        record(true);
+        return entry.value;
+      }
+    }
+
+    byte[] bytes = new byte[length];
+    buffer.getBytes(buffer.readerIndex(), bytes);
+
+    String value = new String(bytes, charset);
+
+    entries[free != -1 ? free : home] = new Entry(hash, bytes, value);
+    record(false);
+
+    return value;
+  }
+
+  private static boolean matches(byte[] bytes, ByteBuf buffer, int length) {
+
+    if (bytes.length != length) {
+      return false;
+    }
+
+    int start = buffer.readerIndex();
+    for (int c = 0; c < length; ++c) {
+      if (bytes[c] != buffer.getByte(start + c)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private void record(boolean hit) {
+
+    if (hit) {
+      ++hits;
+    }
+
+    if (++lookups < SAMPLE_SIZE) {
+      return;
+    }
+
+    if (hits * 100 < lookups * MIN_HIT_PERCENTAGE) {
+      entries = null;
+    }
+
+    lookups = 0;
+    hits = 0;
+  }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.api.jdbc.PGConnection;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class AsyncExecutionTest {
+
+  private PGConnection conn;
+
+  @Before
+  public void before() throws Exception {
+    conn = TestUtil.openDB().unwrap(PGConnection.class);
+    TestUtil.createTable(conn, "async_test", "id int");
+  }
+
+  @After
+  public void after() throws Exception {
+    TestUtil.dropTable(conn, "async_test");
+    TestUtil.closeDB(conn);
+  }
+
+  @Test
+  public void testPipelinedQueries() throws Exception {
+
+    List<CompletableFuture<ResultSet>> futures = new ArrayList<>();
+    for (int c = 0; c < 8; ++c) {
+      futures.add(conn.executeQueryAsync("SELECT " + c));
+    }
+
+    for (int c = 0; c < futures.size(); ++c) {
+      try (ResultSet rs = futures.get(c).get()) {
+        assertTrue(rs.next());
+        assertEquals(c, rs.getInt(1));
+        assertFalse(rs.next());
+      }
+    }
+  }
+
+  @Test
+  public void testUpdate() throws Exception {
+
+    CompletableFuture<Long> insert = conn.executeUpdateAsync("INSERT INTO async_test VALUES (1), (2), (3)");
+    CompletableFuture<Long> update = conn.executeUpdateAsync("UPDATE async_test SET id = id + 1");
+
+    assertEquals(3L, (long) insert.get());
+    assertEquals(3L, (long) update.get());
+  }
+
+  @Test
+  public void testErrorIsIsolated() throws Exception {
+
+    CompletableFuture<ResultSet> bad = conn.executeQueryAsync("SELECT * FROM async_test_missing");
+    CompletableFuture<ResultSet> good = conn.executeQueryAsync("SELECT 1");
+
+    try {
+      bad.get();
+      fail("Query should have failed");
+    }
+    catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(SQLException.class));
+    }
+
+    try (ResultSet rs = good.get()) {
+      assertTrue(rs.next());
+      assertEquals(1, rs.getInt(1));
+    }
+  }
+
+  @Test
+  public void testResultSetClosesStatement() throws Exception {
+
+    ResultSet rs = conn.executeQueryAsync("SELECT 1").get();
+    Statement statement = rs.getStatement();
+
+    rs.close();
+
+    assertTrue(statement.isClosed());
+  }
+
+  @Test
+  public void testEmptyAndUtilityStatements() throws Exception {
+
+    assertEquals(0L, (long) conn.executeUpdateAsync("").get());
+    assertEquals(0L, (long) conn.executeUpdateAsync("SET application_name = 'async_test'").get());
+
+    try {
+      conn.executeQueryAsync("").get();
+      fail("Empty query should not produce a result set");
+    }
+    catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(SQLException.class));
+    }
+
+    try (ResultSet rs = conn.executeQueryAsync("SELECT 1").get()) {
+      assertTrue(rs.next());
+    }
+  }
+
+  @Test
+  public void testMultipleStatementsRejected() throws Exception {
+
+    try {
+      conn.executeUpdateAsync("SELECT 1; SELECT 2").get();
+      fail("Multiple statements should be rejected");
+    }
+    catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(SQLException.class));
+    }
+  }
+
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.api.jdbc.PGColumnVector;
+import com.impossibl.postgres.api.jdbc.PGResultSet;
+import com.impossibl.postgres.stub.StubResult;
+import com.impossibl.postgres.stub.StubServer;
+
+import static com.impossibl.postgres.stub.StubResult.column;
+import static com.impossibl.postgres.stub.StubTypes.BOOL;
+import static com.impossibl.postgres.stub.StubTypes.BYTEA;
+import static com.impossibl.postgres.stub.StubTypes.FLOAT8;
+import static com.impossibl.postgres.stub.StubTypes.INT2;
+import static com.impossibl.postgres.stub.StubTypes.INT4;
+import static com.impossibl.postgres.stub.StubTypes.INT8;
+import static com.impossibl.postgres.stub.StubTypes.TEXT;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests columnar export of result sets (see
+ * {@link PGResultSet#readColumns(PGColumnVector...)}) against the
+ * in-process stub server.
+ */
+@RunWith(JUnit4.class)
+public class ColumnarExportTest {
+
+  private static final int ROWS = 10;
+
+  private StubServer server;
+
+  @Before
+  public void before() throws Exception {
+    server = new StubServer()
+        .script("FROM things",
+            StubResult.rows(column("id", INT4), column("big", INT8), column("small", INT2), column("val", FLOAT8),
+                column("flag", BOOL), column("name", TEXT), column("data", BYTEA))
+                .generate(ROWS, row -> {
+                  if (row % 3 == 2) {
+                    return new Object[] {(int) row, null, null, null, null, null, null};
+                  }
+                  return new Object[] {(int) row, row * -1000000000L, (short) row, row / 2.0, row % 2 == 0, "name-" + row, new byte[] {(byte) row, (byte) 0xff}};
+                }))
+        .start();
+  }
+
+  @After
+  public void after() {
+    server.close();
+  }
+
+  private Connection connect() throws SQLException {
+    return DriverManager.getConnection(server.getURL());
+  }
+
+  private static void readAll(ResultSet rs) throws SQLException {
+
+    PGColumnVector.Int ids = new PGColumnVector.Int(4);
+    PGColumnVector.BigInt bigs = new PGColumnVector.BigInt(4);
+    PGColumnVector.Int smalls = new PGColumnVector.Int(4);
+    PGColumnVector.Float8 vals = new PGColumnVector.Float8(4);
+    PGColumnVector.Bit flags = new PGColumnVector.Bit(4);
+    PGColumnVector.VarBinary names = new PGColumnVector.VarBinary(4, 1);
+    PGColumnVector.VarBinary datas = new PGColumnVector.VarBinary(4);
+
+    PGResultSet pgrs = rs.unwrap(PGResultSet.class);
+
+    int total = 0;
+    int count;
+    while ((count = pgrs.readColumns(ids, bigs, smalls, vals, flags, names, datas)) != 0) {
+
+      assertTrue(count <= 4);
+      assertEquals(count, ids.getValueCount());
+      assertEquals(count, datas.getValueCount());
+
+      for (int idx = 0; idx < count; ++idx) {
+        int row = total + idx;
+
+        assertFalse(ids.isNull(idx));
+        assertEquals(row, ids.get(idx));
+
+        if (row % 3 == 2) {
+          assertTrue(bigs.isNull(idx));
+          assertTrue(smalls.isNull(idx));
+          assertTrue(vals.isNull(idx));
+          assertTrue(flags.isNull(idx));
+          assertTrue(names.isNull(idx));
+          assertEquals(0, names.getLength(idx));
+          assertTrue(datas.isNull(idx));
+          continue;
+        }
+
+        assertEquals(row * -1000000000L, bigs.get(idx));
+        assertEquals(row, smalls.get(idx));
+        assertEquals(row / 2.0, vals.get(idx), 0.0);
+        assertEquals(row % 2 == 0, flags.get(idx));
+        assertArrayEquals(("name-" + row).getBytes(UTF_8), names.get(idx));
+        assertArrayEquals(new byte[] {(byte) row, (byte) 0xff}, datas.get(idx));
+      }
+
+      int nulls = 0;
+      for (int idx = 0; idx < count; ++idx) {
+        nulls += (total + idx) % 3 == 2 ? 1 : 0;
+      }
+      assertEquals(nulls, names.getNullCount());
+      assertEquals(0, ids.getNullCount());
+
+      total += count;
+    }
+
+    assertEquals(ROWS, total);
+    assertTrue(rs.isAfterLast());
+  }
+
+  @Test
+  public void testTextFormat() throws Exception {
+
+    try (Connection connection = connect()) {
+      try (Statement statement = connection.createStatement()) {
+        try (ResultSet rs = statement.executeQuery("SELECT * FROM things")) {
+          readAll(rs);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testBinaryFormat() throws Exception {
+
+    try (Connection connection = connect()) {
+      try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM things")) {
+        try (ResultSet rs = statement.executeQuery()) {
+          readAll(rs);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMixedWithCursor() throws Exception {
+
+    try (Connection connection = connect()) {
+      try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM things")) {
+        try (ResultSet rs = statement.executeQuery()) {
+
+          assertTrue(rs.next());
+          assertEquals(0, rs.getInt(1));
+
+          PGColumnVector.Int ids = new PGColumnVector.Int(3);
+          assertEquals(3, rs.unwrap(PGResultSet.class).readColumns(ids, null, null, null, null, null, null));
+          assertEquals(1, ids.get(0));
+          assertEquals(3, ids.get(2));
+          assertEquals(3, rs.getInt(1));
+
+          assertTrue(rs.next());
+          assertEquals(4, rs.getInt(1));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testIncompatibleVector() throws Exception {
+
+    try (Connection connection = connect()) {
+      try (Statement statement = connection.createStatement()) {
+        try (ResultSet rs = statement.executeQuery("SELECT * FROM things")) {
+          PGResultSet pgrs = rs.unwrap(PGResultSet.class);
+
+          try {
+            pgrs.readColumns(new PGColumnVector.Int(1));
+            fail("Vector count should not match");
+          }
+          catch (SQLException e) {
+            // Expected
+          }
+
+          try {
+            pgrs.readColumns(null, new PGColumnVector.Int(1), null, null, null, null, null);
+            fail("int8 column should not be readable into Int vector");
+          }
+          catch (SQLException e) {
+            // Expected
+          }
+        }
+      }
+    }
+  }
+
+}
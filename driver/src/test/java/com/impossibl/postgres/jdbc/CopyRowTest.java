@@ -0,0 +1,336 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.api.jdbc.PGConnection;
+import com.impossibl.postgres.api.jdbc.PGCopyRowReader;
+import com.impossibl.postgres.api.jdbc.PGCopyRowWriter;
+import com.impossibl.postgres.stub.StubResult;
+import com.impossibl.postgres.stub.StubServer;
+
+import static com.impossibl.postgres.stub.StubResult.column;
+import static com.impossibl.postgres.stub.StubTypes.INT4;
+import static com.impossibl.postgres.stub.StubTypes.INT8;
+import static com.impossibl.postgres.stub.StubTypes.TEXT;
+
+import java.sql.DriverManager;
+import java.sql.JDBCType;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests typed binary <code>COPY</code> (see
+ * {@link PGConnection#copyRowWriter} &amp; {@link PGConnection#copyRowReader})
+ * against the in-process stub server.
+ */
+@RunWith(JUnit4.class)
+public class CopyRowTest {
+
+  private static final int ROWS = 1000;
+  private static final int MANY_ROWS = 1000000;
+
+  private StubServer server;
+  private List<String[]> received;
+
+  @Before
+  public void before() throws Exception {
+    received = new CopyOnWriteArrayList<>();
+    server = new StubServer()
+        .script("COPY things FROM",
+            StubResult.binaryCopyIn(received::add, column("id", INT4), column("big", INT8), column("name", TEXT)))
+        .script("COPY things TO",
+            StubResult.binaryCopyOut(column("id", INT4), column("big", INT8), column("name", TEXT))
+                .generate(ROWS, row -> new Object[] {(int) row, row % 3 == 2 ? null : row * 1000L, "name-" + row}))
+        .script("COPY many TO",
+            StubResult.binaryCopyOut(column("id", INT4))
+                .generate(MANY_ROWS, row -> new Object[] {(int) row}))
+        .script("COPY text FROM", StubResult.copyIn())
+        .script("COPY text TO", StubResult.copyOut().generate(1, row -> new Object[] {"a"}))
+        .start();
+  }
+
+  @After
+  public void after() {
+    server.close();
+  }
+
+  private PGConnection connect() throws SQLException {
+    return DriverManager.getConnection(server.getURL()).unwrap(PGConnection.class);
+  }
+
+  @Test
+  public void testWriteRows() throws SQLException {
+
+    try (PGConnection conn = connect()) {
+
+      long count;
+      try (PGCopyRowWriter writer = conn.copyRowWriter("COPY things FROM STDIN (FORMAT binary)", JDBCType.INTEGER, JDBCType.BIGINT, JDBCType.VARCHAR)) {
+        assertEquals(3, writer.getColumnCount());
+        for (int row = 0; row < ROWS; ++row) {
+          writer.writeRow(row, row % 3 == 2 ? null : row * 1000L, "name-" + row);
+        }
+        count = writer.endCopy();
+      }
+
+      assertEquals(ROWS, count);
+      assertEquals(ROWS, received.size());
+      assertArrayEquals(new String[] {"0", "0", "name-0"}, received.get(0));
+      assertArrayEquals(new String[] {"2", null, "name-2"}, received.get(2));
+      assertArrayEquals(new String[] {"999", "999000", "name-999"}, received.get(ROWS - 1));
+
+      // Connection remains usable after the copy
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("SELECT 1");
+      }
+    }
+  }
+
+  @Test
+  public void testWriteInvalidRow() throws SQLException {
+
+    try (PGConnection conn = connect()) {
+
+      try (PGCopyRowWriter writer = conn.copyRowWriter("COPY things FROM STDIN (FORMAT binary)", JDBCType.INTEGER, JDBCType.BIGINT, JDBCType.VARCHAR)) {
+        writer.writeRow(1, 2L, "a");
+        try {
+          writer.writeRow(1, 2L);
+          fail("Expected invalid row to fail");
+        }
+        catch (SQLException e) {
+          // expected
+        }
+        writer.writeRow(3, 4L, "b");
+        assertEquals(2, writer.endCopy());
+      }
+
+      assertEquals(2, received.size());
+    }
+  }
+
+  @Test
+  public void testCancelWrite() throws SQLException {
+
+    try (PGConnection conn = connect()) {
+
+      try (PGCopyRowWriter writer = conn.copyRowWriter("COPY things FROM STDIN (FORMAT binary)", JDBCType.INTEGER, JDBCType.BIGINT, JDBCType.VARCHAR)) {
+        writer.writeRow(1, 2L, "a");
+        writer.cancelCopy();
+      }
+
+      assertTrue(received.isEmpty());
+
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("SELECT 1");
+      }
+    }
+  }
+
+  @Test
+  public void testStatementsRejectedDuringWrite() throws SQLException {
+
+    try (PGConnection conn = connect()) {
+
+      try (PGCopyRowWriter writer = conn.copyRowWriter("COPY things FROM STDIN (FORMAT binary)", JDBCType.INTEGER, JDBCType.BIGINT, JDBCType.VARCHAR)) {
+        writer.writeRow(1, 2L, "a");
+
+        try (Statement stmt = conn.createStatement()) {
+          stmt.execute("SELECT 1");
+          fail("Expected statement to be rejected during COPY");
+        }
+        catch (SQLException e) {
+          assertEquals("55000", e.getSQLState());
+        }
+
+        assertEquals(1, writer.endCopy());
+      }
+
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("SELECT 1");
+      }
+    }
+  }
+
+  @Test
+  public void testStatementCloseDeferredDuringWrite() throws SQLException {
+
+    // Without caching the statement is prepared under a name that closing disposes of
+    String url = server.getURL() + "?preparedStatementCacheSize=0";
+    try (PGConnection conn = DriverManager.getConnection(url).unwrap(PGConnection.class)) {
+
+      PreparedStatement ps = conn.prepareStatement("SELECT 1");
+      ps.execute();
+
+      try (PGCopyRowWriter writer = conn.copyRowWriter("COPY things FROM STDIN (FORMAT binary)", JDBCType.INTEGER, JDBCType.BIGINT, JDBCType.VARCHAR)) {
+        writer.writeRow(1, 2L, "a");
+
+        // The server statement is closed once the copy completes
+        ps.close();
+
+        assertEquals(1, writer.endCopy());
+      }
+
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("SELECT 1");
+      }
+    }
+  }
+
+  @Test
+  public void testReadRows() throws SQLException {
+
+    try (PGConnection conn = connect()) {
+
+      try (PGCopyRowReader reader = conn.copyRowReader("COPY things TO STDOUT (FORMAT binary)", JDBCType.INTEGER, JDBCType.BIGINT, JDBCType.VARCHAR)) {
+        assertEquals(3, reader.getColumnCount());
+
+        int row = 0;
+        while (reader.next()) {
+          assertEquals(row, reader.getObject(1));
+          if (row % 3 == 2) {
+            assertNull(reader.getObject(2));
+          }
+          else {
+            assertEquals(row * 1000L, (long) reader.getObject(2, Long.class));
+          }
+          assertEquals("name-" + row, reader.getObject(3, String.class));
+          row++;
+        }
+
+        assertEquals(ROWS, row);
+        assertEquals(Long.valueOf(ROWS), reader.getRowCount());
+        assertFalse(reader.next());
+      }
+
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("SELECT 1");
+      }
+    }
+  }
+
+  @Test
+  public void testCloseUnreadRows() throws SQLException {
+
+    try (PGConnection conn = connect()) {
+
+      try (PGCopyRowReader reader = conn.copyRowReader("COPY things TO STDOUT (FORMAT binary)", JDBCType.INTEGER, JDBCType.BIGINT, JDBCType.VARCHAR)) {
+        assertTrue(reader.next());
+        assertEquals(0, reader.getObject(1));
+      }
+
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("SELECT 1");
+      }
+    }
+  }
+
+  @Test
+  public void testCloseCancelsCopy() throws SQLException {
+
+    try (PGConnection conn = connect()) {
+
+      try (PGCopyRowReader reader = conn.copyRowReader("COPY many TO STDOUT (FORMAT binary)", JDBCType.INTEGER)) {
+        assertTrue(reader.next());
+        assertEquals(0, reader.getObject(1));
+      }
+
+      // Closed early; the copy is cancelled rather than read to its end
+      assertEquals(1, server.getCancelRequests());
+
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("SELECT 1");
+      }
+    }
+  }
+
+  @Test
+  public void testCloseDrainsCopyInTransaction() throws SQLException {
+
+    try (PGConnection conn = connect()) {
+      conn.setAutoCommit(false);
+
+      try (PGCopyRowReader reader = conn.copyRowReader("COPY many TO STDOUT (FORMAT binary)", JDBCType.INTEGER)) {
+        assertTrue(reader.next());
+        assertEquals(0, reader.getObject(1));
+      }
+
+      // Cancelling would abort the transaction; the copy is read to its end
+      assertEquals(0, server.getCancelRequests());
+
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("SELECT 1");
+      }
+
+      conn.commit();
+    }
+  }
+
+  @Test
+  public void testTextFormatRejected() throws SQLException {
+
+    try (PGConnection conn = connect()) {
+
+      try {
+        conn.copyRowWriter("COPY text FROM STDIN", JDBCType.VARCHAR);
+        fail("Expected text format copy to fail");
+      }
+      catch (SQLException e) {
+        // expected
+      }
+
+      try {
+        conn.copyRowReader("COPY text TO STDOUT", JDBCType.VARCHAR);
+        fail("Expected text format copy to fail");
+      }
+      catch (SQLException e) {
+        // expected
+      }
+
+      try (Statement stmt = conn.createStatement()) {
+        stmt.execute("SELECT 1");
+      }
+    }
+  }
+
+}
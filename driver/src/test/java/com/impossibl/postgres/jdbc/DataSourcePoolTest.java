@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for PGDataSource's built-in connection pool
+ */
+@RunWith(JUnit4.class)
+public class DataSourcePoolTest {
+
+  private PGDataSource ds;
+
+  @Before
+  public void before() {
+    ds = new PGDataSource();
+    ds.setServerName(TestUtil.getServer());
+    ds.setPortNumber(Integer.valueOf(TestUtil.getPort()));
+    ds.setDatabaseName(TestUtil.getDatabase());
+    ds.setUser(TestUtil.getUser());
+    ds.setPassword(TestUtil.getPassword());
+    ds.setNetworkTimeout(10000);
+    ds.setPoolEnabled(true);
+    ds.setPoolMaxSize(2);
+    ds.setPoolAcquireTimeout(500);
+  }
+
+  @After
+  public void after() {
+    ds.close();
+  }
+
+  private static int getBackendPid(Connection con) throws SQLException {
+    try (Statement stmt = con.createStatement()) {
+      try (ResultSet rs = stmt.executeQuery("SELECT pg_backend_pid()")) {
+        rs.next();
+        return rs.getInt(1);
+      }
+    }
+  }
+
+  private static String getSetting(Connection con, String name) throws SQLException {
+    try (Statement stmt = con.createStatement()) {
+      try (ResultSet rs = stmt.executeQuery("SHOW " + name)) {
+        rs.next();
+        return rs.getString(1);
+      }
+    }
+  }
+
+  @Test
+  public void testConnectionIsReused() throws SQLException {
+
+    int pid;
+    try (Connection con = ds.getConnection()) {
+      pid = getBackendPid(con);
+    }
+
+    try (Connection con = ds.getConnection()) {
+      assertEquals(pid, getBackendPid(con));
+    }
+
+    assertEquals(1, ds.getPoolMetrics().getCreatedCount());
+    assertEquals(2, ds.getPoolMetrics().getAcquireCount());
+  }
+
+  @Test
+  public void testClosedConnectionReportsClosed() throws SQLException {
+
+    Connection con = ds.getConnection();
+    con.close();
+
+    assertTrue(con.isClosed());
+
+    try {
+      con.createStatement();
+      fail("Statement created on closed connection");
+    }
+    catch (SQLException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testStaleHandleIsInvalidated() throws SQLException {
+
+    Connection stale = ds.getConnection();
+    Statement staleStmt = stale.createStatement();
+    assertTrue(staleStmt.getConnection() == stale);
+    int pid = getBackendPid(stale);
+    stale.close();
+
+    try (Connection con = ds.getConnection()) {
+
+      assertEquals(pid, getBackendPid(con));
+      assertTrue(stale.isClosed());
+      assertTrue(!stale.isValid(1));
+
+      try {
+        stale.createStatement();
+        fail("Statement created on stale connection handle");
+      }
+      catch (SQLException e) {
+        // Expected
+      }
+
+      try {
+        staleStmt.executeQuery("SELECT 1");
+        fail("Statement executed via stale connection handle");
+      }
+      catch (SQLException e) {
+        // Expected
+      }
+
+      // Closing a stale handle must not return the current borrower's connection
+      stale.close();
+      assertTrue(!con.isClosed());
+      assertEquals(pid, getBackendPid(con));
+    }
+  }
+
+  @Test
+  public void testChildrenReportHandle() throws SQLException {
+
+    try (Connection con = ds.getConnection()) {
+
+      assertTrue(con.getMetaData().getConnection() == con);
+
+      try (Statement stmt = con.createStatement()) {
+        assertTrue(stmt.getConnection() == con);
+        assertTrue(stmt.unwrap(PGStatement.class).getConnection() == con);
+        try (ResultSet rs = stmt.executeQuery("SELECT 1")) {
+          assertTrue(rs.getStatement().getConnection() == con);
+        }
+      }
+
+      try (PreparedStatement stmt = con.prepareStatement("SELECT 1")) {
+        try (ResultSet rs = stmt.executeQuery()) {
+          assertTrue(rs.getStatement().getConnection() == con);
+        }
+      }
+
+      try (ResultSet rs = con.getMetaData().getTables(null, null, "pg_class", null)) {
+        assertTrue(rs.getStatement().getConnection() == con);
+      }
+    }
+  }
+
+  @Test
+  public void testSessionIsReset() throws SQLException {
+
+    String defaultTimeZone;
+    try (Connection con = ds.getConnection()) {
+      defaultTimeZone = getSetting(con, "TimeZone");
+      try (Statement stmt = con.createStatement()) {
+        stmt.execute("SET TimeZone = 'Pacific/Chatham'");
+        stmt.execute("CREATE TEMP TABLE pool_reset_test (id int)");
+      }
+    }
+
+    try (Connection con = ds.getConnection()) {
+      assertEquals(defaultTimeZone, getSetting(con, "TimeZone"));
+      try (Statement stmt = con.createStatement()) {
+        try (ResultSet rs = stmt.executeQuery("SELECT to_regclass('pool_reset_test')")) {
+          rs.next();
+          assertNull(rs.getObject(1));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTransactionIsRolledBack() throws SQLException {
+
+    try (Connection con = ds.getConnection()) {
+      con.setAutoCommit(false);
+      try (Statement stmt = con.createStatement()) {
+        stmt.execute("CREATE TABLE pool_rollback_test (id int)");
+      }
+    }
+
+    try (Connection con = ds.getConnection()) {
+      assertTrue(con.getAutoCommit());
+      try (Statement stmt = con.createStatement()) {
+        try (ResultSet rs = stmt.executeQuery("SELECT to_regclass('pool_rollback_test')")) {
+          rs.next();
+          assertNull(rs.getObject(1));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testAcquireTimeout() throws SQLException {
+
+    try (Connection con1 = ds.getConnection(); Connection con2 = ds.getConnection()) {
+
+      assertNotEquals(getBackendPid(con1), getBackendPid(con2));
+
+      try {
+        ds.getConnection().close();
+        fail("Connection acquired from exhausted pool");
+      }
+      catch (SQLTimeoutException e) {
+        // Expected
+      }
+    }
+
+    assertEquals(1, ds.getPoolMetrics().getAcquireTimeoutCount());
+  }
+
+}
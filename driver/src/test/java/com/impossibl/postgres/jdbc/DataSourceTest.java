@@ -34,6 +34,7 @@ import com.impossibl.postgres.system.Settings;
 
 import static com.impossibl.postgres.jdbc.DataSourceSettings.DS;
 import static com.impossibl.postgres.jdbc.DataSourceSettings.LOCAL_SERVER_NAME;
+import static com.impossibl.postgres.jdbc.DataSourceSettings.POOL;
 import static com.impossibl.postgres.jdbc.DataSourceSettings.SERVER_ADDRESSES;
 import static com.impossibl.postgres.jdbc.DataSourceSettings.SERVER_NAME;
 import static com.impossibl.postgres.jdbc.JDBCSettings.JDBC;
@@ -195,7 +196,7 @@ public class DataSourceTest {
     PGDataSource ds = new PGDataSource();
     BeanInfo beanInfo = Introspector.getBeanInfo(PGDataSource.class);
 
-    for (Setting<?> setting : new Settings(JDBC, DS, SYS, PROTO).knownSet()) {
+    for (Setting<?> setting : new Settings(JDBC, DS, POOL, SYS, PROTO).knownSet()) {
 
       PropertyDescriptor settingPD = findPropertyDescriptor(beanInfo, toLowerCamelCase(setting.getName()));
 
@@ -44,6 +44,7 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.Properties;
 
 import static java.sql.Types.INTEGER;
 import static java.sql.Types.TIMESTAMP_WITH_TIMEZONE;
@@ -56,6 +57,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -1331,6 +1333,117 @@ public class DatabaseMetaDataTest {
     rs.close();
   }
 
+  @Test
+  public void testCatalogCache() throws SQLException {
+
+    Properties props = new Properties();
+    props.setProperty(JDBCSettings.CATALOG_CACHE_ENABLED.getName(), "true");
+
+    try (Connection cacheCon = TestUtil.openDB(props)) {
+
+      DatabaseMetaData dbmd = cacheCon.getMetaData();
+
+      for (int c = 0; c < 2; ++c) {
+
+        try (ResultSet rs = dbmd.getTables(null, "public", "metadata%", null)) {
+          assertTrue(rs.next());
+          assertEquals("metadatatest", rs.getString("TABLE_NAME"));
+          assertEquals("this is a table comment", rs.getString("REMARKS"));
+          assertFalse(rs.next());
+        }
+
+        try (ResultSet rs = dbmd.getColumns(null, "public", "metadatatest", "%")) {
+          for (String columnName : new String[] {"id", "name", "updated", "colour", "quest"}) {
+            assertTrue(rs.next());
+            assertEquals(columnName, rs.getString("COLUMN_NAME"));
+          }
+          assertFalse(rs.next());
+        }
+
+        try (ResultSet rs = dbmd.getColumns(null, "public", "metadatatest", "col%")) {
+          assertTrue(rs.next());
+          assertEquals("colour", rs.getString("COLUMN_NAME"));
+          assertFalse(rs.next());
+        }
+
+      }
+
+      try (Statement stmt = cacheCon.createStatement()) {
+        stmt.execute("ALTER TABLE metadatatest ADD COLUMN extra int4");
+      }
+
+      try (ResultSet rs = dbmd.getColumns(null, "public", "metadatatest", "extra")) {
+        assertTrue(rs.next());
+        assertEquals(INTEGER, rs.getInt("DATA_TYPE"));
+        assertFalse(rs.next());
+      }
+
+    }
+
+  }
+
+  @Test
+  public void testNullTableMatchesNothing() throws SQLException {
+
+    for (String catalogCacheEnabled : new String[] {"false", "true"}) {
+
+      Properties props = new Properties();
+      props.setProperty(JDBCSettings.CATALOG_CACHE_ENABLED.getName(), catalogCacheEnabled);
+
+      try (Connection cacheCon = TestUtil.openDB(props)) {
+
+        DatabaseMetaData dbmd = cacheCon.getMetaData();
+
+        try (ResultSet rs = dbmd.getPrimaryKeys(null, "public", null)) {
+          assertFalse(rs.next());
+        }
+
+        try (ResultSet rs = dbmd.getIndexInfo(null, "public", null, false, false)) {
+          assertFalse(rs.next());
+        }
+
+      }
+    }
+
+  }
+
+  @Test
+  public void testCatalogCacheCreateTableAs() throws SQLException {
+
+    Properties props = new Properties();
+    props.setProperty(JDBCSettings.CATALOG_CACHE_ENABLED.getName(), "true");
+    props.setProperty(JDBCSettings.CATALOG_CACHE_VALIDATION_INTERVAL.getName(), "3600000");
+
+    try (Connection cacheCon = TestUtil.openDB(props)) {
+
+      DatabaseMetaData dbmd = cacheCon.getMetaData();
+
+      try (ResultSet rs = dbmd.getTables(null, "public", "ctastest%", null)) {
+        assertFalse(rs.next());
+      }
+
+      // Both report a SELECT command tag
+      try (Statement stmt = cacheCon.createStatement()) {
+        stmt.execute("SELECT 1 AS id INTO ctastest1");
+        stmt.execute("CREATE TABLE ctastest2 AS SELECT 1 AS id");
+      }
+
+      try (ResultSet rs = dbmd.getTables(null, "public", "ctastest%", null)) {
+        assertTrue(rs.next());
+        assertEquals("ctastest1", rs.getString("TABLE_NAME"));
+        assertTrue(rs.next());
+        assertEquals("ctastest2", rs.getString("TABLE_NAME"));
+        assertFalse(rs.next());
+      }
+
+    }
+    finally {
+      TestUtil.dropTable(con, "ctastest1");
+      TestUtil.dropTable(con, "ctastest2");
+    }
+
+  }
+
   void checkResultSetColumnLabels(ResultSet rs, String... labels) throws SQLException {
 
     ResultSetMetaData rsmd = rs.getMetaData();
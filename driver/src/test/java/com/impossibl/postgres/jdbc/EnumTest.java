@@ -41,6 +41,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(JUnit4.class)
@@ -95,6 +96,23 @@ public class EnumTest {
     }
   }
 
+  @Test
+  public void testValuesDeduplicated() throws SQLException {
+
+    try (Statement stmt = conn.createStatement()) {
+      assertEquals(4, stmt.executeUpdate("INSERT INTO testtable VALUES ('A'), ('B'), ('A'), ('B')"));
+
+      try (ResultSet rs = stmt.executeQuery("SELECT * FROM testtable")) {
+        assertTrue(rs.next());
+        String first = rs.getString(1);
+        assertTrue(rs.next());
+        assertTrue(rs.next());
+        assertSame(first, rs.getString(1));
+      }
+
+    }
+  }
+
   void checkValue(String val) throws SQLException {
 
     try (Statement stmt = conn.createStatement()) {
@@ -153,6 +153,30 @@ public class LeakTest {
     assertFalse(housekeeper.testCheckCleaned(connId));
   }
 
+  @Test
+  public void testLeakCounts() throws SQLException {
+
+    ThreadedHousekeeper housekeeper = getHousekeeper();
+    assertNotNull(housekeeper);
+
+    long leaked = housekeeper.getLeakedReferenceCounts().getOrDefault("statement", 0L);
+
+    Statement stmt = conn.createStatement();
+    int tracked = housekeeper.getTrackedReferenceCount();
+    assertTrue(tracked > 0);
+
+    stmt.close();
+    assertTrue(housekeeper.getTrackedReferenceCount() < tracked);
+
+    stmt = conn.createStatement();
+    int stmtId = System.identityHashCode(stmt);
+    stmt = null;
+
+    sleep();
+    assertTrue(housekeeper.testCheckCleaned(stmtId));
+    assertTrue(housekeeper.getLeakedReferenceCounts().get("statement") > leaked);
+  }
+
   @Test
   public void testStatementNoLeak() throws SQLException {
 
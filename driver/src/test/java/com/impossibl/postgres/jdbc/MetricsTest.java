@@ -0,0 +1,252 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.api.jdbc.PGConnection;
+import com.impossibl.postgres.api.jdbc.PGMetricsListener;
+import com.impossibl.postgres.system.Metrics;
+
+import java.lang.management.ManagementFactory;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class MetricsTest {
+
+  private PGConnection conn;
+
+  @Before
+  public void before() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("metrics.enabled", "true");
+    conn = TestUtil.openDB(props).unwrap(PGConnection.class);
+  }
+
+  @After
+  public void after() throws Exception {
+    TestUtil.closeDB(conn);
+  }
+
+  private Metrics getMetrics() throws SQLException {
+    return conn.unwrap(PGDirectConnection.class).getMetrics();
+  }
+
+  @Test
+  public void testDisabledByDefault() throws Exception {
+
+    PGConnection other = TestUtil.openDB().unwrap(PGConnection.class);
+    try {
+      assertNull(other.unwrap(PGDirectConnection.class).getMetrics());
+
+      try {
+        other.addMetricsListener(new PGMetricsListener() { });
+        fail("Expected SQLException");
+      }
+      catch (SQLException e) {
+        // Expected
+      }
+    }
+    finally {
+      other.close();
+    }
+  }
+
+  @Test
+  public void testTraffic() throws Exception {
+
+    Metrics metrics = getMetrics();
+    assertNotNull(metrics);
+    metrics.reset();
+
+    try (Statement stmt = conn.createStatement()) {
+      try (ResultSet rs = stmt.executeQuery("SELECT * FROM generate_series(1, 10)")) {
+        int count = 0;
+        while (rs.next()) {
+          assertEquals(++count, rs.getInt(1));
+        }
+      }
+    }
+
+    assertTrue(metrics.getMessagesSent() > 0);
+    assertTrue(metrics.getBytesSent() > 0);
+    assertTrue(metrics.getMessagesReceived() > 0);
+    assertTrue(metrics.getBytesReceived() > 0);
+    assertTrue(metrics.getRoundTrips() > 0);
+    assertTrue(metrics.getAwaits() > 0);
+    assertEquals(10, metrics.getRowsDecoded());
+    assertTrue(metrics.getFieldsDecoded() >= 10);
+    assertEquals(0, metrics.getRequestsInFlight());
+
+    assertTrue(metrics.getParent().getMessagesReceived() >= metrics.getMessagesReceived());
+  }
+
+  @Test
+  public void testRegistryAggregation() throws Exception {
+
+    Metrics metrics = getMetrics();
+    Metrics registry = metrics.getParent();
+    assertNotNull(registry);
+
+    try (Statement stmt = conn.createStatement()) {
+      try (ResultSet rs = stmt.executeQuery("SELECT 1::int4")) {
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+      }
+    }
+
+    long received = registry.getMessagesReceived();
+    assertTrue(received >= metrics.getMessagesReceived());
+    assertTrue(registry.getDecodeCountByType().get(23) >= metrics.getDecodeCountByType().get(23));
+
+    Properties props = new Properties();
+    props.setProperty("metrics.enabled", "true");
+    PGConnection other = TestUtil.openDB(props).unwrap(PGConnection.class);
+    long otherReceived;
+    try {
+      try (Statement stmt = other.createStatement()) {
+        stmt.execute("SELECT 1");
+      }
+      Metrics otherMetrics = other.unwrap(PGDirectConnection.class).getMetrics();
+      assertTrue(otherMetrics.getParent() == registry);
+      otherReceived = otherMetrics.getMessagesReceived();
+    }
+    finally {
+      other.close();
+    }
+
+    // Closed connections are folded into the registry's metrics
+    assertTrue(registry.getMessagesReceived() >= received + otherReceived);
+  }
+
+  @Test
+  public void testMBeansUnregistered() throws Exception {
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName connections = new ObjectName("com.impossibl.postgres:type=Connection,*");
+    ObjectName registries = new ObjectName("com.impossibl.postgres:type=SharedRegistry,*");
+
+    int connectionCount = server.queryNames(connections, null).size();
+    int registryCount = server.queryNames(registries, null).size();
+
+    Properties props = new Properties();
+    props.setProperty("metrics.enabled", "true");
+    props.setProperty("metrics.jmx", "true");
+    PGConnection other = TestUtil.openDB(props).unwrap(PGConnection.class);
+    try {
+      assertEquals(connectionCount + 1, server.queryNames(connections, null).size());
+      assertTrue(server.queryNames(registries, null).size() <= registryCount + 1);
+    }
+    finally {
+      other.close();
+    }
+
+    assertEquals(connectionCount, server.queryNames(connections, null).size());
+    assertEquals(registryCount, server.queryNames(registries, null).size());
+  }
+
+  @Test
+  public void testPreparedStatementCache() throws Exception {
+
+    Metrics metrics = getMetrics();
+    metrics.reset();
+
+    for (int c = 0; c < 10; ++c) {
+      try (PreparedStatement ps = conn.prepareStatement("SELECT ?::int")) {
+        ps.setInt(1, c);
+        try (ResultSet rs = ps.executeQuery()) {
+          assertTrue(rs.next());
+        }
+      }
+    }
+
+    assertTrue(metrics.getPreparedStatementCacheHits() > 0);
+    assertTrue(metrics.getPreparedStatementCacheMisses() > 0);
+    assertTrue(metrics.getParsedSqlCacheHits() > 0);
+  }
+
+  @Test
+  public void testListener() throws Exception {
+
+    AtomicLong messagesReceived = new AtomicLong();
+    AtomicLong roundTrips = new AtomicLong();
+
+    PGMetricsListener listener = new PGMetricsListener() {
+
+      @Override
+      public void messageReceived(char type, int length) {
+        messagesReceived.incrementAndGet();
+      }
+
+      @Override
+      public void roundTrip(long nanos) {
+        roundTrips.incrementAndGet();
+      }
+
+    };
+
+    conn.addMetricsListener(listener);
+
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("SELECT 1");
+    }
+
+    assertTrue(messagesReceived.get() > 0);
+    assertTrue(roundTrips.get() > 0);
+
+    conn.removeMetricsListener(listener);
+
+    long received = messagesReceived.get();
+
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("SELECT 1");
+    }
+
+    assertEquals(received, messagesReceived.get());
+  }
+
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.stub.StubResult;
+import com.impossibl.postgres.stub.StubServer;
+
+import static com.impossibl.postgres.stub.StubResult.column;
+import static com.impossibl.postgres.stub.StubTypes.INT8;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests streaming of multiple results (see the
+ * <code>multi-result.streaming</code> setting) against the
+ * in-process stub server.
+ */
+@RunWith(JUnit4.class)
+public class MultiResultStreamingTest {
+
+  private static final Pattern COUNT = Pattern.compile("series\\s+(\\d+)");
+
+  private StubServer server;
+
+  @Before
+  public void before() throws Exception {
+    server = new StubServer()
+        .script("FROM series", (sql, params) -> {
+          long count;
+          Matcher matcher = COUNT.matcher(sql);
+          if (matcher.find()) {
+            count = Long.parseLong(matcher.group(1));
+          }
+          else {
+            count = Long.parseLong(params.get(0));
+          }
+          return StubResult.rows(column("id", INT8)).generate(count, row -> new Object[] {row});
+        })
+        .script("INSERT INTO t", StubResult.command("INSERT 0 1"))
+        .script("FROM missing", StubResult.error("42P01", "relation \"missing\" does not exist"))
+        .start();
+  }
+
+  @After
+  public void after() {
+    server.close();
+  }
+
+  private Connection connect() throws SQLException {
+    return DriverManager.getConnection(server.getURL() + "?multiResultStreaming=true");
+  }
+
+  private static int countRows(ResultSet rs) throws SQLException {
+    int rows = 0;
+    while (rs.next()) {
+      assertEquals(rows++, rs.getLong(1));
+    }
+    return rows;
+  }
+
+  @Test
+  public void testSimpleStatement() throws Exception {
+
+    try (Connection connection = connect()) {
+      try (Statement statement = connection.createStatement()) {
+
+        assertTrue(statement.execute("SELECT id FROM series 3; INSERT INTO t VALUES (1); SELECT id FROM series 5000"));
+        assertEquals(3, countRows(statement.getResultSet()));
+
+        assertFalse(statement.getMoreResults());
+        assertEquals(1, statement.getUpdateCount());
+
+        assertTrue(statement.getMoreResults());
+        assertEquals(5000, countRows(statement.getResultSet()));
+
+        assertFalse(statement.getMoreResults());
+        assertEquals(-1, statement.getUpdateCount());
+      }
+    }
+  }
+
+  @Test
+  public void testPreparedPipeline() throws Exception {
+
+    try (Connection connection = connect()) {
+      String sql = "SELECT id FROM series WHERE n = ?; INSERT INTO t VALUES (?); SELECT id FROM series WHERE n = ?";
+      try (PreparedStatement statement = connection.prepareStatement(sql)) {
+
+        for (int execution = 0; execution < 3; ++execution) {
+
+          statement.setInt(1, 10 + execution);
+          statement.setInt(2, execution);
+          statement.setInt(3, 20 + execution);
+
+          assertTrue(statement.execute());
+          assertEquals(10 + execution, countRows(statement.getResultSet()));
+
+          assertFalse(statement.getMoreResults());
+          assertEquals(1, statement.getUpdateCount());
+
+          assertTrue(statement.getMoreResults());
+          assertEquals(20 + execution, countRows(statement.getResultSet()));
+
+          assertFalse(statement.getMoreResults());
+          assertEquals(-1, statement.getUpdateCount());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testErrorAfterFirstResult() throws Exception {
+
+    try (Connection connection = connect()) {
+      try (Statement statement = connection.createStatement()) {
+
+        assertTrue(statement.execute("SELECT id FROM series 2; SELECT * FROM missing; SELECT id FROM series 3"));
+        assertEquals(2, countRows(statement.getResultSet()));
+
+        try {
+          statement.getMoreResults();
+          fail("Expected error");
+        }
+        catch (SQLException e) {
+          assertEquals("42P01", e.getSQLState());
+        }
+
+        // Remaining results were skipped & the connection is still usable
+        assertFalse(statement.getMoreResults());
+
+        try (ResultSet rs = statement.executeQuery("SELECT id FROM series 4")) {
+          assertEquals(4, countRows(rs));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testUnreadResultsDiscarded() throws Exception {
+
+    try (Connection connection = connect()) {
+      try (Statement statement = connection.createStatement()) {
+
+        for (int execution = 0; execution < 10; ++execution) {
+          assertTrue(statement.execute("SELECT id FROM series 1; SELECT id FROM series 20000; SELECT id FROM series 20000"));
+          assertEquals(1, countRows(statement.getResultSet()));
+        }
+
+        try (Statement other = connection.createStatement()) {
+          try (ResultSet rs = other.executeQuery("SELECT id FROM series 7")) {
+            assertEquals(7, countRows(rs));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testInterleavedStatements() throws Exception {
+
+    try (Connection connection = connect()) {
+      try (Statement statement = connection.createStatement()) {
+
+        assertTrue(statement.execute("SELECT id FROM series 1; SELECT id FROM series 20000"));
+
+        // Requests issued while results are pending must not stall
+        try (Statement other = connection.createStatement()) {
+          try (ResultSet rs = other.executeQuery("SELECT id FROM series 5")) {
+            assertEquals(5, countRows(rs));
+          }
+        }
+
+        assertEquals(1, countRows(statement.getResultSet()));
+        assertTrue(statement.getMoreResults());
+        assertEquals(20000, countRows(statement.getResultSet()));
+        assertFalse(statement.getMoreResults());
+      }
+    }
+  }
+
+}
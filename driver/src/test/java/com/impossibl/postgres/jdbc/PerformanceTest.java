@@ -35,12 +35,22 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 public class PerformanceTest {
 
   static Connection conn;
@@ -99,4 +109,80 @@ public class PerformanceTest {
 
   }
 
+  /**
+   * Creates an executor that starts a virtual thread per task when
+   * running on a JDK that supports them; otherwise falls back to a
+   * large pool of platform threads.
+   */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+    catch (ReflectiveOperationException e) {
+      System.out.println("Virtual threads unavailable; using platform threads");
+      return Executors.newFixedThreadPool(1000);
+    }
+  }
+
+  /**
+   * Stress test of the blocking request path; 10k (virtual) threads sharing
+   * 100 connections. Run with {@code -Djdk.tracePinnedThreads=full} to report
+   * any driver code pinning a carrier thread.
+   */
+  @Test
+  public void testVirtualThreadStress() throws Exception {
+
+    int connectionCount = 100;
+    int threadCount = 10000;
+
+    BlockingQueue<Connection> connections = new ArrayBlockingQueue<>(connectionCount);
+    for (int c = 0; c < connectionCount; ++c) {
+      connections.add(TestUtil.openDB());
+    }
+
+    try {
+
+      long start = System.nanoTime();
+
+      ExecutorService executor = newVirtualThreadExecutor();
+      try {
+
+        List<Future<Integer>> results = new ArrayList<>(threadCount);
+        for (int t = 0; t < threadCount; ++t) {
+          int value = t;
+          results.add(executor.submit(() -> {
+            Connection connection = connections.take();
+            try (PreparedStatement ps = connection.prepareStatement("SELECT ?::int4, pg_sleep(0.001)")) {
+              ps.setInt(1, value);
+              try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next());
+                assertTrue(connection.isValid(5));
+                return rs.getInt(1);
+              }
+            }
+            finally {
+              connections.add(connection);
+            }
+          }));
+        }
+
+        for (int t = 0; t < threadCount; ++t) {
+          assertEquals(t, (int) results.get(t).get());
+        }
+
+      }
+      finally {
+        executor.shutdown();
+      }
+
+      System.out.println("Virtual Thread Stress: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+    finally {
+      for (Connection connection : connections) {
+        TestUtil.closeDB(connection);
+      }
+    }
+
+  }
+
 }
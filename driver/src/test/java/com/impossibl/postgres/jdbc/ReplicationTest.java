@@ -0,0 +1,374 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.api.jdbc.PGConnection;
+import com.impossibl.postgres.api.jdbc.PGReplicationStream;
+import com.impossibl.postgres.stub.StubResult;
+import com.impossibl.postgres.stub.StubServer;
+
+import static com.impossibl.postgres.stub.StubResult.column;
+import static com.impossibl.postgres.stub.StubTypes.TEXT;
+
+import java.nio.ByteBuffer;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests logical replication streaming (see
+ * {@link PGConnection#startLogicalReplication}) against the in-process
+ * stub server.
+ */
+@RunWith(JUnit4.class)
+public class ReplicationTest {
+
+  private static final int ROWS = 10000;
+  private static final long START_LSN = 0x16B3740000L;
+
+  private StubServer server;
+  private List<String> commands;
+  private List<long[]> statuses;
+
+  @Before
+  public void before() throws Exception {
+    commands = new CopyOnWriteArrayList<>();
+    statuses = new CopyOnWriteArrayList<>();
+    server = new StubServer()
+        .script("START_REPLICATION SLOT \"test_slot\"", (sql, params) -> {
+          commands.add(sql);
+          return StubResult.replication(statuses::add)
+              .generate(ROWS, row -> new Object[] {START_LSN + row * 100, "change-" + row});
+        })
+        .script("START_REPLICATION SLOT \"ending_slot\"",
+            StubResult.replication(statuses::add)
+                .generate(10, row -> new Object[] {START_LSN + row * 100, "change-" + row})
+                .endOfStream())
+        .script("SELECT pg_current_wal_lsn()",
+            StubResult.rows(column("pg_current_wal_lsn", TEXT)).row("16/B3740000"))
+        .script("START_REPLICATION SLOT \"missing_slot\"",
+            StubResult.error("42704", "replication slot \"missing_slot\" does not exist"))
+        .start();
+  }
+
+  @After
+  public void after() {
+    server.close();
+  }
+
+  private PGConnection connect() throws SQLException {
+    return DriverManager.getConnection(server.getURL() + "?replication=database&replicationStatusInterval=50").unwrap(PGConnection.class);
+  }
+
+  private static class CollectingSubscriber implements PGReplicationStream.Subscriber {
+
+    BlockingQueue<PGReplicationStream.Message> messages = new LinkedBlockingQueue<>();
+    AtomicReference<PGReplicationStream.Subscription> subscription = new AtomicReference<>();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    CountDownLatch completed = new CountDownLatch(1);
+    long initialRequest;
+
+    CollectingSubscriber(long initialRequest) {
+      this.initialRequest = initialRequest;
+    }
+
+    @Override
+    public void onSubscribe(PGReplicationStream.Subscription subscription) {
+      this.subscription.set(subscription);
+      subscription.request(initialRequest);
+    }
+
+    @Override
+    public void onNext(PGReplicationStream.Message message) {
+      messages.add(message);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error.set(throwable);
+      completed.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      completed.countDown();
+    }
+
+  }
+
+  private static String dataOf(PGReplicationStream.Message message) {
+    ByteBuffer data = message.getData();
+    byte[] bytes = new byte[data.remaining()];
+    data.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  private static void assertUsable(PGConnection conn) throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute("SELECT 1");
+    }
+  }
+
+  @Test
+  public void testRepeatedQuery() throws Exception {
+
+    try (PGConnection conn = connect()) {
+
+      // Results are described after the first execution; later executions
+      // must still use the simple query protocol
+      for (int c = 0; c < 3; ++c) {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT pg_current_wal_lsn()")) {
+          assertTrue(rs.next());
+          assertEquals("16/B3740000", rs.getString(1));
+        }
+      }
+
+    }
+  }
+
+  @Test
+  public void testStream() throws Exception {
+
+    try (PGConnection conn = connect()) {
+
+      PGReplicationStream stream = conn.startLogicalReplication("test_slot", START_LSN, Collections.singletonMap("include-xids", "0"));
+
+      assertEquals("START_REPLICATION SLOT \"test_slot\" LOGICAL 16/B3740000 (\"include-xids\" '0')", commands.get(0));
+
+      CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+      stream.subscribe(subscriber);
+
+      for (int row = 0; row < ROWS; ++row) {
+        PGReplicationStream.Message message = subscriber.messages.poll(10, SECONDS);
+        assertNotNull("Missing message " + row, message);
+        assertEquals(START_LSN + row * 100, message.getWalStart());
+        assertEquals("change-" + row, dataOf(message));
+        message.release();
+      }
+
+      long lastLsn = START_LSN + (ROWS - 1) * 100;
+      assertEquals(lastLsn, stream.getLastReceivedLsn());
+
+      stream.setFlushedLsn(lastLsn);
+
+      // Acknowledgement is reported by the status timer
+      long deadline = System.currentTimeMillis() + SECONDS.toMillis(10);
+      while (statuses.stream().noneMatch(status -> status[1] == lastLsn)) {
+        assertTrue("No status update reported flushed position", System.currentTimeMillis() < deadline);
+        Thread.sleep(10);
+      }
+
+      stream.close();
+
+      assertTrue(stream.isClosed());
+      assertNull(subscriber.error.get());
+
+      assertUsable(conn);
+    }
+  }
+
+  @Test
+  public void testDemand() throws Exception {
+
+    try (PGConnection conn = connect()) {
+
+      PGReplicationStream stream = conn.startLogicalReplication("test_slot", 0, null);
+
+      CollectingSubscriber subscriber = new CollectingSubscriber(1);
+      stream.subscribe(subscriber);
+
+      PGReplicationStream.Message first = subscriber.messages.poll(10, SECONDS);
+      assertNotNull(first);
+      first.release();
+
+      // No further messages without demand
+      assertNull(subscriber.messages.poll(200, MILLISECONDS));
+
+      long requested = 1;
+      long received = 1;
+      while (received < ROWS) {
+        subscriber.subscription.get().request(100);
+        requested += 100;
+        for (long idx = received; idx < Math.min(requested, ROWS); ++idx) {
+          PGReplicationStream.Message message = subscriber.messages.poll(10, SECONDS);
+          assertNotNull(message);
+          assertEquals("change-" + idx, dataOf(message));
+          message.release();
+          received++;
+        }
+        assertTrue(subscriber.messages.isEmpty());
+      }
+
+      stream.close();
+
+      assertUsable(conn);
+    }
+  }
+
+  @Test
+  public void testServerEndsStream() throws Exception {
+
+    try (PGConnection conn = connect()) {
+
+      PGReplicationStream stream = conn.startLogicalReplication("ending_slot", 0, null);
+
+      CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE);
+      stream.subscribe(subscriber);
+
+      assertTrue(subscriber.completed.await(10, SECONDS));
+      assertNull(subscriber.error.get());
+      assertEquals(10, subscriber.messages.size());
+      subscriber.messages.forEach(PGReplicationStream.Message::release);
+
+      stream.close();
+      assertTrue(stream.isClosed());
+
+      assertUsable(conn);
+    }
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+
+    try (PGConnection conn = connect()) {
+
+      PGReplicationStream stream = conn.startLogicalReplication("test_slot", 0, null);
+
+      CollectingSubscriber subscriber = new CollectingSubscriber(10);
+      stream.subscribe(subscriber);
+
+      for (int idx = 0; idx < 10; ++idx) {
+        PGReplicationStream.Message message = subscriber.messages.poll(10, SECONDS);
+        assertNotNull(message);
+        message.release();
+      }
+
+      subscriber.subscription.get().cancel();
+
+      stream.close();
+      assertTrue(stream.isClosed());
+      assertTrue(subscriber.messages.isEmpty());
+
+      assertUsable(conn);
+    }
+  }
+
+  @Test
+  public void testStartError() throws Exception {
+
+    try (PGConnection conn = connect()) {
+
+      try {
+        conn.startLogicalReplication("missing_slot", 0, null);
+        fail("Expected missing slot to fail");
+      }
+      catch (SQLException e) {
+        assertEquals("42704", e.getSQLState());
+      }
+
+      assertUsable(conn);
+    }
+  }
+
+  @Test
+  public void testRequiresReplicationMode() throws Exception {
+
+    try (PGConnection conn = DriverManager.getConnection(server.getURL()).unwrap(PGConnection.class)) {
+
+      try {
+        conn.startLogicalReplication("test_slot", 0, null);
+        fail("Expected non-replication connection to fail");
+      }
+      catch (SQLException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void testManualCommitUnsupported() throws Exception {
+
+    try (PGConnection conn = connect()) {
+
+      try {
+        conn.setAutoCommit(false);
+        fail("Expected manual commit mode to fail");
+      }
+      catch (SQLFeatureNotSupportedException e) {
+        // expected
+      }
+
+      assertUsable(conn);
+    }
+  }
+
+  @Test
+  public void testLsnFormat() {
+
+    assertEquals(0x16B374D848L, PGReplicationStream.parseLsn("16/B374D848"));
+    assertEquals("16/B374D848", PGReplicationStream.formatLsn(0x16B374D848L));
+    assertEquals("0/0", PGReplicationStream.formatLsn(0));
+    assertEquals(-1L, PGReplicationStream.parseLsn("FFFFFFFF/FFFFFFFF"));
+
+    try {
+      PGReplicationStream.parseLsn("16B374D848");
+      fail("Expected invalid LSN to fail");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+}
@@ -32,6 +32,9 @@ import com.impossibl.postgres.jdbc.shared.GetObject310InfinityTests;
 import com.impossibl.postgres.jdbc.shared.GetObject310Test;
 import com.impossibl.postgres.jdbc.shared.SetObject310Test;
 import com.impossibl.postgres.jdbc.xa.XADataSourceTest;
+import com.impossibl.postgres.protocol.ssl.SSLEngineFactoryTest;
+import com.impossibl.postgres.system.SettingsSnapshotTest;
+import com.impossibl.postgres.utils.StringCacheTest;
 
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -40,16 +43,22 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({
     ArrayTest.class,
+    AsyncExecutionTest.class,
+    RowStreamTest.class,
+    MetricsTest.class,
     BatchExecuteTest.class,
     BlobTest.class,
     BoundParametersAndFieldsLimitTest.class,
     CallableStatementTest.class,
     CiTextTest.class,
+    ColumnarExportTest.class,
     ConnectionTest.class,
+    CopyRowTest.class,
     CursorFetchTest.class,
     DatabaseMetaDataPropertiesTest.class,
     DatabaseMetaDataTest.class,
     DataSourceTest.class,
+    DataSourcePoolTest.class,
     DateTest.class,
     DriverTest.class,
     EnumTest.class,
@@ -58,6 +67,7 @@ import org.junit.runners.Suite.SuiteClasses;
 //    GiantBlobTest.class,
     LeakTest.class,
     LockTest.class,
+    MultiResultStreamingTest.class,
     MultiSchemasStructsTest.class,
     NetworkTest.class,
     NotificationTest.class,
@@ -65,6 +75,7 @@ import org.junit.runners.Suite.SuiteClasses;
     ParameterMetaDataTest.class,
     PreparedStatementTest.class,
     PsuedoRecordTest.class,
+    ReplicationTest.class,
     ResultSetMetaDataTest.class,
     ResultSetTest.class,
     SavepointTest.class,
@@ -75,6 +86,7 @@ import org.junit.runners.Suite.SuiteClasses;
 //    SSLTest.class,
     StatementTest.class,
     StructTest.class,
+    StubServerTest.class,
     TimestampTest.class,
     TimeTest.class,
     TimezoneTest.class,
@@ -88,6 +100,9 @@ import org.junit.runners.Suite.SuiteClasses;
     WrapperTest.class,
     XmlTest.class,
     XADataSourceTest.class,
+    SSLEngineFactoryTest.class,
+    SettingsSnapshotTest.class,
+    StringCacheTest.class,
     })
 public class RequiredTests {
 }
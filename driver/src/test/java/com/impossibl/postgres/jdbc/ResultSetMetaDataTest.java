@@ -55,6 +55,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(JUnit4.class)
@@ -318,4 +319,54 @@ public class ResultSetMetaDataTest {
     rs.close();
     stmt.close();
   }
+
+  @Test
+  public void testRelationMetadataRevalidation() throws Exception {
+    Statement stmt = conn.createStatement();
+
+    ResultSet rs = stmt.executeQuery("SELECT r.b, s.c FROM rsmd1 r, serialtest s");
+    ResultSetMetaData rsmd = rs.getMetaData();
+    assertEquals("rsmd1", rsmd.getTableName(1));
+    assertEquals("serialtest", rsmd.getTableName(2));
+    assertEquals(ResultSetMetaData.columnNullable, rsmd.isNullable(1));
+    assertEquals(ResultSetMetaData.columnNullable, rsmd.isNullable(2));
+    rs.close();
+
+    stmt.execute("ALTER TABLE rsmd1 ALTER COLUMN b SET NOT NULL");
+
+    rs = stmt.executeQuery("SELECT r.b, s.c FROM rsmd1 r, serialtest s");
+    rsmd = rs.getMetaData();
+    assertEquals(ResultSetMetaData.columnNoNulls, rsmd.isNullable(1));
+    assertEquals(ResultSetMetaData.columnNullable, rsmd.isNullable(2));
+    assertFalse(rsmd.isAutoIncrement(2));
+    rs.close();
+
+    stmt.execute("ALTER TABLE serialtest ALTER COLUMN c SET DEFAULT nextval('serialtest_a_seq')");
+
+    rs = stmt.executeQuery("SELECT r.b, s.c FROM rsmd1 r, serialtest s");
+    rsmd = rs.getMetaData();
+    assertTrue(rsmd.isAutoIncrement(2));
+    rs.close();
+
+    stmt.execute("CREATE DOMAIN rsmddomain AS int");
+    try {
+      TestUtil.createTable(conn, "rsmd2", "a rsmddomain");
+
+      rs = stmt.executeQuery("SELECT a FROM rsmd2");
+      assertEquals(ResultSetMetaData.columnNullable, rs.getMetaData().isNullable(1));
+      rs.close();
+
+      stmt.execute("ALTER DOMAIN rsmddomain SET NOT NULL");
+
+      rs = stmt.executeQuery("SELECT a FROM rsmd2");
+      assertEquals(ResultSetMetaData.columnNoNulls, rs.getMetaData().isNullable(1));
+      rs.close();
+    }
+    finally {
+      TestUtil.dropTable(conn, "rsmd2");
+      TestUtil.dropType(conn, "rsmddomain");
+    }
+
+    stmt.close();
+  }
 }
@@ -35,6 +35,7 @@
  */
 package com.impossibl.postgres.jdbc;
 
+import com.impossibl.postgres.api.jdbc.PGResultSet;
 import com.impossibl.postgres.utils.guava.CharStreams;
 
 import static com.impossibl.postgres.jdbc.util.Asserts.assertThrows;
@@ -43,6 +44,7 @@ import static com.impossibl.postgres.utils.guava.ByteStreams.toByteArray;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -64,6 +66,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -629,6 +632,19 @@ public class ResultSetTest {
     st.close();
   }
 
+  @Test
+  public void testgetCharacterStreamNonTextual() throws SQLException, IOException {
+    try (PreparedStatement ps = con.prepareStatement("SELECT 12345::int4, NULL::text")) {
+      try (ResultSet rs = ps.executeQuery()) {
+        assertTrue(rs.next());
+        try (Reader r = rs.getCharacterStream(1)) {
+          assertEquals("12345", CharStreams.toString(r));
+        }
+        assertNull(rs.getCharacterStream(2));
+      }
+    }
+  }
+
   @Test
   public void testRowId() throws SQLException {
 
@@ -1010,4 +1026,85 @@ public class ResultSetTest {
     }
   }
 
+  @Test
+  public void testZeroCopyAccess() throws SQLException, IOException {
+    String json = "{\"a\": [1, 2, 3]}";
+    try (PreparedStatement ps = con.prepareStatement("SELECT ?::jsonb, a, convert_from(a, 'UTF8'), NULL::bytea FROM testbytes")) {
+      ps.setString(1, json);
+      try (ResultSet rs = ps.executeQuery()) {
+        assertTrue(rs.next());
+
+        ByteBuffer jsonBuffer = rs.getObject(1, ByteBuffer.class);
+        assertTrue(jsonBuffer.isReadOnly());
+        assertEquals(json, UTF_8.decode(jsonBuffer).toString());
+        assertEquals(json, new String(toByteArray(rs.getBinaryStream(1)), UTF_8));
+        assertEquals(json, CharStreams.toString(rs.getCharacterStream(1)));
+
+        ByteBuffer bytesBuffer = rs.getObject(2, ByteBuffer.class);
+        assertTrue(bytesBuffer.isReadOnly());
+        assertEquals("12345", UTF_8.decode(bytesBuffer).toString());
+
+        assertEquals("12345", UTF_8.decode(rs.getObject(3, ByteBuffer.class)).toString());
+        assertEquals("12345", CharStreams.toString(rs.getCharacterStream(3)));
+
+        assertNull(rs.getObject(4, ByteBuffer.class));
+
+        PGResultSet pgrs = rs.unwrap(PGResultSet.class);
+        assertEquals("12345", UTF_8.decode(pgrs.getRawBytes(2)).toString());
+        assertFalse(pgrs.wasNull());
+        assertNull(pgrs.getRawBytes(4));
+        assertTrue(pgrs.wasNull());
+      }
+    }
+  }
+
+  @Test
+  public void testFieldStreamsClosedWithRow() throws SQLException, IOException {
+    try (PreparedStatement ps = con.prepareStatement("SELECT x::text, x::text::jsonb FROM generate_series(1, 2) x")) {
+      try (ResultSet rs = ps.executeQuery()) {
+        assertTrue(rs.next());
+
+        // Unclosed streams are closed when the row changes, releasing the row's data
+        Reader reader = rs.getCharacterStream(1);
+        InputStream in = rs.getBinaryStream(2);
+
+        assertTrue(rs.next());
+
+        assertThrows(IOException.class, reader::read);
+        assertThrows(Exception.class, in::read);
+
+        assertEquals("2", CharStreams.toString(rs.getCharacterStream(1)));
+        in = rs.getBinaryStream(2);
+      }
+
+      assertThrows(Exception.class, in::read);
+    }
+  }
+
+  @Test
+  public void testCharacterStreamOfNonText() throws SQLException, IOException {
+    try (Statement stmt = con.createStatement()) {
+      try (ResultSet rs = stmt.executeQuery("SELECT a FROM testint")) {
+        assertTrue(rs.next());
+        assertEquals("12345", CharStreams.toString(rs.getCharacterStream(1)));
+      }
+    }
+  }
+
+  @Test
+  public void testFindColumnAcrossExecutions() throws SQLException {
+    try (PreparedStatement ps = con.prepareStatement("SELECT id, id * 2 AS \"Double\", 'x' AS id FROM testrs WHERE id = ?")) {
+      for (int id : new int[] {1, 2}) {
+        ps.setInt(1, id);
+        try (ResultSet rs = ps.executeQuery()) {
+          assertTrue(rs.next());
+          assertEquals(1, rs.findColumn("ID"));
+          assertEquals(2, rs.findColumn("double"));
+          assertEquals(id * 2, rs.getInt("DOUBLE"));
+          assertThrows(SQLException.class, () -> rs.findColumn("missing"));
+        }
+      }
+    }
+  }
+
 }
@@ -0,0 +1,263 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.api.jdbc.PGConnection;
+import com.impossibl.postgres.api.jdbc.PGRow;
+import com.impossibl.postgres.api.jdbc.PGRowPublisher;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class RowStreamTest {
+
+  private PGConnection conn;
+
+  @Before
+  public void before() throws Exception {
+    conn = TestUtil.openDB().unwrap(PGConnection.class);
+  }
+
+  @After
+  public void after() throws Exception {
+    TestUtil.closeDB(conn);
+  }
+
+  /**
+   * Collects the first column of each row, requesting {@code batch}
+   * rows at a time.
+   */
+  static class CollectingSubscriber implements PGRowPublisher.Subscriber {
+
+    long batch;
+    long limit;
+    PGRowPublisher.Subscription subscription;
+    List<Integer> values = new CopyOnWriteArrayList<>();
+    CompletableFuture<List<Integer>> done = new CompletableFuture<>();
+    long outstanding;
+
+    CollectingSubscriber(long batch, long limit) {
+      this.batch = batch;
+      this.limit = limit;
+    }
+
+    @Override
+    public void onSubscribe(PGRowPublisher.Subscription subscription) {
+      this.subscription = subscription;
+      outstanding = batch;
+      subscription.request(batch);
+    }
+
+    @Override
+    public void onNext(PGRow row) {
+      try {
+        values.add(row.getObject(1, Integer.class));
+      }
+      catch (SQLException e) {
+        done.completeExceptionally(e);
+        subscription.cancel();
+        return;
+      }
+
+      if (values.size() == limit) {
+        subscription.cancel();
+        done.complete(values);
+        return;
+      }
+
+      if (--outstanding == 0 && batch != Long.MAX_VALUE) {
+        outstanding = batch;
+        subscription.request(batch);
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      done.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      done.complete(values);
+    }
+
+  }
+
+  private static void assertSequence(List<Integer> values, int count) {
+    assertEquals(count, values.size());
+    for (int c = 0; c < count; ++c) {
+      assertEquals(c + 1, (int) values.get(c));
+    }
+  }
+
+  private void assertConnectionUsable() throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      try (ResultSet rs = stmt.executeQuery("SELECT 1")) {
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+      }
+    }
+  }
+
+  @Test
+  public void testUnboundedDemand() throws Exception {
+
+    CollectingSubscriber subscriber = new CollectingSubscriber(Long.MAX_VALUE, -1);
+    conn.streamQuery("SELECT * FROM generate_series(1, 2500)").subscribe(subscriber);
+
+    assertSequence(subscriber.done.get(10, SECONDS), 2500);
+    assertConnectionUsable();
+  }
+
+  @Test
+  public void testIncrementalDemand() throws Exception {
+
+    CollectingSubscriber subscriber = new CollectingSubscriber(7, -1);
+    conn.streamQuery("SELECT * FROM generate_series(1, 100)").subscribe(subscriber);
+
+    assertSequence(subscriber.done.get(10, SECONDS), 100);
+    assertConnectionUsable();
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+
+    CollectingSubscriber subscriber = new CollectingSubscriber(10, 25);
+    conn.streamQuery("SELECT * FROM generate_series(1, 1000000)").subscribe(subscriber);
+
+    assertSequence(subscriber.done.get(10, SECONDS), 25);
+
+    // Allow the cancellation to close the portal
+    Thread.sleep(100);
+
+    assertEquals(25, subscriber.values.size());
+    assertConnectionUsable();
+  }
+
+  @Test
+  public void testEmptyResult() throws Exception {
+
+    CollectingSubscriber subscriber = new CollectingSubscriber(1, -1);
+    conn.streamQuery("SELECT 1 WHERE false").subscribe(subscriber);
+
+    assertTrue(subscriber.done.get(10, SECONDS).isEmpty());
+  }
+
+  @Test
+  public void testError() throws Exception {
+
+    CollectingSubscriber subscriber = new CollectingSubscriber(1, -1);
+    conn.streamQuery("SELECT * FROM row_stream_missing").subscribe(subscriber);
+
+    try {
+      subscriber.done.get(10, SECONDS);
+      fail("Stream should have failed");
+    }
+    catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(SQLException.class));
+    }
+
+    assertConnectionUsable();
+  }
+
+  @Test
+  public void testNonPositiveRequest() throws Exception {
+
+    CollectingSubscriber subscriber = new CollectingSubscriber(0, -1);
+    conn.streamQuery("SELECT * FROM generate_series(1, 10)").subscribe(subscriber);
+
+    try {
+      subscriber.done.get(10, SECONDS);
+      fail("Stream should have failed");
+    }
+    catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(IllegalArgumentException.class));
+    }
+
+    assertConnectionUsable();
+  }
+
+  @Test
+  public void testSingleSubscriber() throws Exception {
+
+    PGRowPublisher publisher = conn.streamQuery("SELECT * FROM generate_series(1, 10)");
+
+    CollectingSubscriber first = new CollectingSubscriber(Long.MAX_VALUE, -1);
+    publisher.subscribe(first);
+
+    CollectingSubscriber second = new CollectingSubscriber(Long.MAX_VALUE, -1);
+    publisher.subscribe(second);
+
+    try {
+      second.done.get(10, SECONDS);
+      fail("Second subscription should have failed");
+    }
+    catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+    }
+
+    assertSequence(first.done.get(10, SECONDS), 10);
+  }
+
+  @Test
+  public void testMultipleStatementsRejected() throws Exception {
+
+    CollectingSubscriber subscriber = new CollectingSubscriber(1, -1);
+    conn.streamQuery("SELECT 1; SELECT 2").subscribe(subscriber);
+
+    try {
+      subscriber.done.get(10, SECONDS);
+      fail("Stream should have failed");
+    }
+    catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(SQLException.class));
+    }
+  }
+
+}
@@ -36,6 +36,8 @@
 package com.impossibl.postgres.jdbc;
 
 import com.impossibl.postgres.api.jdbc.PGConnection;
+import com.impossibl.postgres.protocol.FieldFormat;
+import com.impossibl.postgres.protocol.ResultField;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -575,6 +577,28 @@ public class StatementTest {
     stmt.close();
   }
 
+  /**
+   * Timeouts that never expire must not cancel, or otherwise
+   * affect, the queries they are guarding.
+   *
+   * @throws SQLException
+   */
+  @Test
+  public void testSetQueryTimeoutUnexpired() throws SQLException {
+
+    try (Statement stmt = con.createStatement()) {
+      stmt.setQueryTimeout(5);
+
+      for (int c = 0; c < 1000; ++c) {
+        try (ResultSet rs = stmt.executeQuery("SELECT " + c)) {
+          assertTrue(rs.next());
+          assertEquals(c, rs.getInt(1));
+        }
+      }
+    }
+
+  }
+
   @Test
   public void testResultSetTwice() throws SQLException {
     Statement stmt = con.createStatement();
@@ -588,6 +612,140 @@ public class StatementTest {
     stmt.close();
   }
 
+  @Test
+  public void testSimpleStatementPromotion() throws SQLException {
+    String sql = "SELECT 42 AS answer, 'promoted'::text AS label";
+
+    try (Statement stmt = con.createStatement()) {
+      for (int c = 0; c < 10; ++c) {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+          assertTrue(rs.next());
+          assertEquals(42, rs.getInt("answer"));
+          assertEquals("promoted", rs.getString("label"));
+          assertFalse(rs.next());
+        }
+      }
+    }
+
+    try (Statement stmt = con.createStatement()) {
+      try (ResultSet rs = stmt.executeQuery("SELECT count(*) FROM pg_prepared_statements WHERE statement = '" + sql.replace("'", "''") + "'")) {
+        assertTrue(rs.next());
+        assertEquals(1, rs.getInt(1));
+      }
+    }
+  }
+
+  @Test
+  public void testPromotedStatementResultTypeChange() throws SQLException {
+    String sql = "SELECT * FROM promoted_ddl";
+
+    try (Statement stmt = con.createStatement()) {
+      stmt.execute("CREATE TEMP TABLE promoted_ddl (a int)");
+      stmt.execute("INSERT INTO promoted_ddl VALUES (1)");
+
+      for (int c = 0; c < 10; ++c) {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+          assertEquals(1, rs.getMetaData().getColumnCount());
+        }
+      }
+
+      stmt.execute("ALTER TABLE promoted_ddl ADD COLUMN b text DEFAULT 'x'");
+
+      // The promoted statement is evicted and the SQL re-promoted with its new result type
+      for (int c = 0; c < 10; ++c) {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+          assertEquals(2, rs.getMetaData().getColumnCount());
+          assertTrue(rs.next());
+          assertEquals(1, rs.getInt(1));
+          assertEquals("x", rs.getString(2));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testResultFormatNegotiation() throws SQLException {
+    String sql = "SELECT 12.345::numeric AS n, '2018-01-02 03:04:05.678'::timestamp AS ts, 'abc'::text AS t, 7::int4 AS i";
+
+    try (Statement stmt = con.createStatement()) {
+      // First execution describes results, later executions request binary
+      for (int c = 0; c < 3; ++c) {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+          FieldFormat expectedFormat = c == 0 ? FieldFormat.Text : FieldFormat.Binary;
+          for (ResultField field : rs.unwrap(PGResultSet.class).getResultFields()) {
+            assertEquals(field.getName(), expectedFormat, field.getFormat());
+          }
+          assertTrue(rs.next());
+          assertEquals("12.345", rs.getBigDecimal("n").toPlainString());
+          assertEquals("2018-01-02 03:04:05.678", rs.getTimestamp("ts").toString());
+          assertEquals("abc", rs.getString("t"));
+          assertEquals(7, rs.getInt("i"));
+        }
+      }
+
+      // Types without binary support remain on the text path
+      for (int c = 0; c < 3; ++c) {
+        try (ResultSet rs = stmt.executeQuery("SELECT '{=r/postgres}'::aclitem[] AS acl")) {
+          assertTrue(rs.next());
+          assertNotNull(rs.getString("acl"));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testResultFormatNegotiationAfterDDL() throws SQLException {
+
+    try (Statement stmt = con.createStatement()) {
+      stmt.execute("CREATE TEMP TABLE negotiated (id int)");
+      stmt.execute("INSERT INTO negotiated VALUES (1)");
+
+      for (int c = 0; c < 2; ++c) {
+        try (ResultSet rs = stmt.executeQuery("SELECT * FROM negotiated")) {
+          assertTrue(rs.next());
+          assertEquals(1, rs.getInt(1));
+        }
+      }
+
+      // Cached description is now stale & includes a type without binary output
+      stmt.execute("ALTER TABLE negotiated ADD COLUMN acl aclitem DEFAULT '=r/postgres'");
+
+      for (int c = 0; c < 2; ++c) {
+        try (ResultSet rs = stmt.executeQuery("SELECT * FROM negotiated")) {
+          assertTrue(rs.next());
+          assertEquals(1, rs.getInt(1));
+          assertNotNull(rs.getString(2));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testManyResultSets() throws SQLException {
+    Statement stmt = con.createStatement();
+
+    ResultSet[] resultSets = new ResultSet[64];
+    for (int c = 0; c < resultSets.length; ++c) {
+      resultSets[c] = stmt.executeQuery("SELECT " + c);
+      if (c > 0) {
+        assertTrue(resultSets[c - 1].isClosed());
+      }
+      assertTrue(resultSets[c].next());
+      assertEquals(c, resultSets[c].getInt(1));
+    }
+
+    ResultSet first = stmt.getResultSet();
+    ResultSet second = stmt.getResultSet();
+    stmt.closeOnCompletion();
+
+    first.close();
+    assertFalse(stmt.isClosed());
+    resultSets[resultSets.length - 1].close();
+    assertFalse(stmt.isClosed());
+    second.close();
+    assertTrue(stmt.isClosed());
+  }
+
   @Test
   public void testFourPartCommand() throws SQLException {
     Statement stmt = con.createStatement();
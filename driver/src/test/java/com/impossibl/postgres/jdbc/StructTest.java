@@ -28,6 +28,8 @@
  */
 package com.impossibl.postgres.jdbc;
 
+import com.impossibl.postgres.api.jdbc.PGRecordReader;
+import com.impossibl.postgres.api.jdbc.PGSQLDataDecoder;
 import com.impossibl.postgres.api.jdbc.PGType;
 
 import java.sql.Connection;
@@ -50,6 +52,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -107,6 +110,33 @@ public class StructTest {
 
   }
 
+  public static class DecodedTestStruct extends TestStruct {
+
+    boolean decoded;
+
+    public static class Decoder implements PGSQLDataDecoder<DecodedTestStruct> {
+
+      @Override
+      public Class<DecodedTestStruct> getJavaType() {
+        return DecodedTestStruct.class;
+      }
+
+      @Override
+      public DecodedTestStruct decode(PGRecordReader in, String typeName) throws SQLException {
+        DecodedTestStruct value = new DecodedTestStruct();
+        value.str = in.readString();
+        value.str2 = in.readString();
+        value.id = in.readObject(UUID.class);
+        value.num = in.readDouble();
+        if (in.wasNull()) value.num = null;
+        value.decoded = true;
+        return value;
+      }
+
+    }
+
+  }
+
   static Connection conn;
 
 
@@ -196,6 +226,44 @@ public class StructTest {
     st.close();
   }
 
+  @Test
+  public void testRegisteredDecoder() throws SQLException {
+
+    TestStruct ts = new TestStruct();
+    ts.id = UUID.randomUUID();
+    ts.num = new Random().nextDouble();
+    ts.str = "A string";
+
+    try (PreparedStatement pst = conn.prepareStatement("INSERT INTO struct_test VALUES (?)")) {
+      pst.setObject(1, ts);
+      pst.executeUpdate();
+      pst.setObject(1, new TestStruct());
+      pst.executeUpdate();
+    }
+
+    try (PreparedStatement pst = conn.prepareStatement("SELECT val FROM struct_test ORDER BY (val).str NULLS LAST")) {
+      try (ResultSet rs = pst.executeQuery()) {
+
+        assertTrue(rs.next());
+        DecodedTestStruct ts2 = rs.getObject(1, DecodedTestStruct.class);
+        assertTrue(ts2.decoded);
+        assertEquals(ts.str, ts2.str);
+        assertNull(ts2.str2);
+        assertEquals(ts.id, ts2.id);
+        assertEquals(ts.num, ts2.num, 0.00000001);
+
+        assertTrue(rs.next());
+        DecodedTestStruct ts3 = rs.getObject(1, DecodedTestStruct.class);
+        assertTrue(ts3.decoded);
+        assertNull(ts3.str);
+        assertNull(ts3.id);
+        assertNull(ts3.num);
+
+        assertFalse(rs.next());
+      }
+    }
+  }
+
   @Test
   public void testResultSetTypeMap() throws SQLException {
 
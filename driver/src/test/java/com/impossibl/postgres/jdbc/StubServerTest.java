@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.jdbc;
+
+import com.impossibl.postgres.api.jdbc.PGConnection;
+import com.impossibl.postgres.api.jdbc.PGNotificationListener;
+import com.impossibl.postgres.stub.StubResult;
+import com.impossibl.postgres.stub.StubServer;
+
+import static com.impossibl.postgres.stub.StubResult.column;
+import static com.impossibl.postgres.stub.StubTypes.FLOAT8;
+import static com.impossibl.postgres.stub.StubTypes.INT4;
+import static com.impossibl.postgres.stub.StubTypes.INT8;
+import static com.impossibl.postgres.stub.StubTypes.TEXT;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the driver against the in-process stub server; requires no
+ * live database.
+ */
+@RunWith(JUnit4.class)
+public class StubServerTest {
+
+  private StubServer server;
+
+  @Before
+  public void before() throws Exception {
+    server = new StubServer()
+        .script("FROM numbers", (sql, params) -> {
+          long count = params.isEmpty() || params.get(0) == null ? 0 : Long.parseLong(params.get(0));
+          return StubResult.rows(column("id", INT8), column("name", TEXT), column("value", FLOAT8))
+              .generate(count, row -> new Object[] {row, "n" + row, row / 2.0});
+        })
+        .script("FROM slow", StubResult.rows(column("id", INT4)).row(1).delay(30, SECONDS))
+        .script("INSERT INTO t", StubResult.command("INSERT 0 1"))
+        .script("FROM missing", StubResult.error("42P01", "relation \"missing\" does not exist"))
+        .script("COPY t TO", StubResult.copyOut().row(1, "a").row(2, null))
+        .start();
+  }
+
+  @After
+  public void after() {
+    server.close();
+  }
+
+  private Connection connect() throws SQLException {
+    return DriverManager.getConnection(server.getURL());
+  }
+
+  @Test
+  public void testPreparedQuery() throws Exception {
+
+    try (Connection connection = connect()) {
+      try (PreparedStatement ps = connection.prepareStatement("SELECT id, name, value FROM numbers LIMIT ?")) {
+        ps.setInt(1, 1000);
+
+        int rows = 0;
+        try (ResultSet rs = ps.executeQuery()) {
+          while (rs.next()) {
+            assertEquals(rows, rs.getLong(1));
+            assertEquals("n" + rows, rs.getString(2));
+            assertEquals(rows / 2.0, rs.getDouble(3), 0.0);
+            rows++;
+          }
+        }
+
+        assertEquals(1000, rows);
+      }
+    }
+  }
+
+  @Test
+  public void testFetchSize() throws Exception {
+
+    try (Connection connection = connect()) {
+      connection.setAutoCommit(false);
+
+      try (PreparedStatement ps = connection.prepareStatement("SELECT id, name, value FROM numbers LIMIT ?")) {
+        ps.setFetchSize(100);
+        ps.setInt(1, 10050);
+
+        int rows = 0;
+        try (ResultSet rs = ps.executeQuery()) {
+          while (rs.next()) {
+            assertEquals(rows++, rs.getLong(1));
+          }
+        }
+
+        assertEquals(10050, rows);
+      }
+
+      connection.commit();
+    }
+  }
+
+  @Test
+  public void testUpdateAndError() throws Exception {
+
+    try (Connection connection = connect()) {
+      try (Statement stmt = connection.createStatement()) {
+        assertEquals(1, stmt.executeUpdate("INSERT INTO t VALUES (1)"));
+
+        try {
+          stmt.executeQuery("SELECT * FROM missing");
+          fail("Expected error");
+        }
+        catch (SQLException e) {
+          assertEquals("42P01", e.getSQLState());
+        }
+
+        assertTrue(connection.isValid(5));
+      }
+    }
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+
+    try (Connection connection = connect()) {
+      try (Statement stmt = connection.createStatement()) {
+        stmt.setQueryTimeout(1);
+
+        long start = System.nanoTime();
+        try {
+          stmt.executeQuery("SELECT id FROM slow");
+          fail("Expected cancel");
+        }
+        catch (SQLException e) {
+          assertEquals("57014", e.getSQLState());
+        }
+
+        assertTrue(System.nanoTime() - start < SECONDS.toNanos(10));
+        assertEquals(1, server.getCancelRequests());
+        assertTrue(connection.isValid(5));
+      }
+    }
+  }
+
+  @Test
+  public void testNotify() throws Exception {
+
+    BlockingQueue<String> payloads = new LinkedBlockingQueue<>();
+
+    try (Connection connection = connect()) {
+      connection.unwrap(PGConnection.class).addNotificationListener(new PGNotificationListener() {
+        @Override
+        public void notification(int processId, String channelName, String payload) {
+          payloads.add(channelName + ":" + payload);
+        }
+      });
+
+      try (Statement stmt = connection.createStatement()) {
+        stmt.execute("LISTEN events");
+        stmt.execute("NOTIFY events, 'local'");
+      }
+
+      assertEquals("events:local", payloads.poll(5, SECONDS));
+
+      server.notify("events", "remote");
+
+      assertEquals("events:remote", payloads.poll(5, SECONDS));
+    }
+  }
+
+  @Test
+  public void testCopy() throws Exception {
+
+    try (Connection connection = connect()) {
+      PGConnection pgConnection = connection.unwrap(PGConnection.class);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      pgConnection.copyTo("COPY t TO STDOUT", out);
+      assertEquals("1\ta\n2\t\\N\n", new String(out.toByteArray(), UTF_8));
+
+      pgConnection.copyFrom("COPY t FROM STDIN", new ByteArrayInputStream("1\ta\n2\tb\n3\tc\n".getBytes(UTF_8)));
+    }
+  }
+
+  @Test
+  public void testLatency() throws Exception {
+
+    server.setLatency(50, MILLISECONDS);
+
+    try (Connection connection = connect()) {
+      try (Statement stmt = connection.createStatement()) {
+        long start = System.nanoTime();
+        stmt.execute("SELECT 1");
+        assertTrue(System.nanoTime() - start >= MILLISECONDS.toNanos(50));
+      }
+    }
+
+    assertFalse(server.getMessagesReceived() == 0);
+  }
+
+}
@@ -487,6 +487,58 @@ public class UpdatableResultTest {
     st.close();
   }
 
+  @Test
+  public void testPipelinedWriteBack() throws Exception {
+    Statement st = con.createStatement();
+    st.executeUpdate("INSERT INTO second SELECT g, 'value' || g FROM generate_series(2, 100) g");
+    st.close();
+
+    st = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+    ResultSet rs = st.executeQuery("select id1, name1 from second order by id1");
+    while (rs.next()) {
+      rs.updateString(2, "updated" + rs.getInt(1));
+      rs.updateRow();
+    }
+    rs.close();
+    st.close();
+
+    st = con.createStatement();
+    rs = st.executeQuery("select count(*) from second where name1 = 'updated' || id1");
+    assertTrue(rs.next());
+    assertEquals(100, rs.getInt(1));
+    rs.close();
+    st.close();
+  }
+
+  @Test
+  public void testWriteBackErrorReportsRow() throws Exception {
+    Statement st = con.createStatement();
+    st.executeUpdate("INSERT INTO second values (2,'two')");
+    st.close();
+
+    st = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_UPDATABLE);
+    ResultSet rs = st.executeQuery("select id1, name1 from second order by id1");
+    assertTrue(rs.next());
+    assertTrue(rs.next());
+    rs.updateInt(1, 1);
+    rs.updateRow();
+    try {
+      rs.next();
+      fail("Expected write-back error");
+    }
+    catch (SQLException e) {
+      assertEquals("23505", e.getSQLState());
+      assertTrue(e.getMessage().startsWith("Error updating row 2"));
+      // The fetch failed in the aborted transaction, after the write
+      assertEquals(1, e.getSuppressed().length);
+      assertEquals("25P02", ((SQLException) e.getSuppressed()[0]).getSQLState());
+    }
+    rs.close();
+    st.close();
+
+    con.rollback();
+  }
+
   @Test
   public void testUpdateReadOnlyResultSet() throws Exception {
     Statement st = con.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
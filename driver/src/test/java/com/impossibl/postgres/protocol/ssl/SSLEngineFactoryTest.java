@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.protocol.ssl;
+
+import com.impossibl.postgres.protocol.ssl.SSLEngineFactory.ContextSource;
+import com.impossibl.postgres.system.Configuration;
+import com.impossibl.postgres.system.Setting;
+import com.impossibl.postgres.system.Settings;
+
+import static com.impossibl.postgres.system.SystemSettings.SSL_CA_CRT_FILE;
+import static com.impossibl.postgres.system.SystemSettings.SSL_CRT_FILE;
+import static com.impossibl.postgres.system.SystemSettings.SSL_KEY_FILE;
+import static com.impossibl.postgres.system.SystemSettings.SSL_KEY_PASSWORD;
+import static com.impossibl.postgres.system.SystemSettings.SSL_OPENSSL;
+
+import java.io.IOException;
+
+import javax.net.ssl.SSLEngine;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.OpenSsl;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class SSLEngineFactoryTest {
+
+  private static final String CERT_DIR = "src/test/resources/certdir";
+
+  private static Configuration config(String password, boolean openSsl) {
+    Settings settings = new Settings();
+    settings.set(SSL_CA_CRT_FILE, CERT_DIR + "/goodroot.crt");
+    settings.set(SSL_CRT_FILE, CERT_DIR + "/goodclient.crt");
+    settings.set(SSL_KEY_FILE, CERT_DIR + "/goodclient.pk8");
+    settings.set(SSL_KEY_PASSWORD, password);
+    settings.set(SSL_OPENSSL, openSsl);
+    return new Configuration() {
+      @Override
+      public <T> T getSetting(Setting<T> setting) {
+        return settings.get(setting);
+      }
+    };
+  }
+
+  @Test
+  public void testContextReuse() throws IOException {
+
+    ContextSource source = SSLEngineFactory.getContextSource(SSLMode.Require, config("sslpwd", false));
+    assertSame(source, SSLEngineFactory.getContextSource(SSLMode.Require, config("sslpwd", false)));
+    assertNotSame(source, SSLEngineFactory.getContextSource(SSLMode.Require, config("other", false)));
+    assertNotSame(source, SSLEngineFactory.getContextSource(SSLMode.VerifyCa, config("sslpwd", false)));
+
+    SSLEngine first = SSLEngineFactory.create(SSLMode.Require, config("sslpwd", false));
+    SSLEngine second = SSLEngineFactory.create(SSLMode.Require, config("sslpwd", false));
+    assertNotSame(first, second);
+    assertTrue(first.getUseClientMode());
+    assertTrue(second.getUseClientMode());
+  }
+
+  @Test
+  public void testContextCacheBounded() throws IOException {
+
+    for (int c = 0; c < SSLEngineFactory.MAX_CONTEXTS * 2; ++c) {
+      SSLEngineFactory.getContextSource(SSLMode.Require, config("pwd" + c, false));
+    }
+
+    assertTrue(SSLEngineFactory.getCachedContextCount() <= SSLEngineFactory.MAX_CONTEXTS);
+  }
+
+  @Test
+  public void testOpenSslIsOptIn() throws IOException {
+
+    assertEquals(false, SSL_OPENSSL.getDefault());
+
+    ContextSource source = SSLEngineFactory.getContextSource(SSLMode.Require, config("sslpwd", false));
+    assertEquals(false, source.isOpenSsl());
+  }
+
+  @Test
+  public void testJdkFallback() throws IOException {
+
+    // Requesting OpenSSL must always produce a usable engine, using the JDK
+    // provider when OpenSSL is unavailable or cannot use the provided keys
+    ContextSource source = SSLEngineFactory.getContextSource(SSLMode.Require, config("sslpwd", true));
+    if (!OpenSsl.isAvailable() || !OpenSsl.supportsKeyManagerFactory()) {
+      assertEquals(false, source.isOpenSsl());
+    }
+
+    SSLEngine engine = source.newEngine(ByteBufAllocator.DEFAULT, "localhost", 5432);
+    assertNotNull(engine);
+    assertTrue(engine.getUseClientMode());
+  }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.system;
+
+import static com.impossibl.postgres.system.SystemSettings.CREDENTIALS_USERNAME;
+import static com.impossibl.postgres.system.SystemSettings.DATABASE_NAME;
+import static com.impossibl.postgres.system.SystemSettings.FIELD_LENGTH_MAX;
+import static com.impossibl.postgres.system.SystemSettings.PROTOCOL_MESSAGE_SIZE_MAX;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class SettingsSnapshotTest {
+
+  @Test
+  public void testStoredValues() {
+
+    Settings settings = new Settings();
+    settings.set(FIELD_LENGTH_MAX, 100);
+    settings.set("database", "test");
+
+    SettingsSnapshot snapshot = new SettingsSnapshot(settings);
+
+    assertTrue(snapshot.isResolved(FIELD_LENGTH_MAX));
+    assertEquals(Integer.valueOf(100), snapshot.get(FIELD_LENGTH_MAX));
+    assertEquals("test", snapshot.get(DATABASE_NAME));
+  }
+
+  @Test
+  public void testDefaultValues() {
+
+    SettingsSnapshot snapshot = new SettingsSnapshot(new Settings());
+
+    assertTrue(snapshot.isResolved(FIELD_LENGTH_MAX));
+    assertNull(snapshot.get(FIELD_LENGTH_MAX));
+    assertEquals(PROTOCOL_MESSAGE_SIZE_MAX.getDefault(), snapshot.get(PROTOCOL_MESSAGE_SIZE_MAX));
+  }
+
+  @Test
+  public void testDynamicDefaultsUnresolved() {
+
+    SettingsSnapshot snapshot = new SettingsSnapshot(new Settings());
+
+    assertFalse(snapshot.isResolved(CREDENTIALS_USERNAME));
+    assertNull(snapshot.get(CREDENTIALS_USERNAME));
+  }
+
+  @Test
+  public void testImmutable() {
+
+    Settings settings = new Settings();
+    settings.set(FIELD_LENGTH_MAX, 100);
+
+    SettingsSnapshot snapshot = new SettingsSnapshot(settings);
+
+    settings.set(FIELD_LENGTH_MAX, 200);
+
+    assertEquals(Integer.valueOf(100), snapshot.get(FIELD_LENGTH_MAX));
+    assertEquals(Integer.valueOf(200), new SettingsSnapshot(settings).get(FIELD_LENGTH_MAX));
+  }
+
+  @Test
+  public void testInvalidValuesUnresolved() {
+
+    Settings settings = new Settings();
+    settings.set("field.length.max", "abc");
+
+    SettingsSnapshot snapshot = new SettingsSnapshot(settings);
+
+    assertFalse(snapshot.isResolved(FIELD_LENGTH_MAX));
+  }
+
+  @Test
+  public void testOrdinalsUnique() {
+
+    assertTrue(FIELD_LENGTH_MAX.getOrdinal() != DATABASE_NAME.getOrdinal());
+    assertTrue(FIELD_LENGTH_MAX.getOrdinal() < Setting.getOrdinalCount());
+  }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.utils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(JUnit4.class)
+public class StringCacheTest {
+
+  private static String get(StringCache cache, String value) {
+    ByteBuf buffer = Unpooled.copiedBuffer(value, UTF_8);
+    try {
+      return cache.get(buffer, UTF_8);
+    }
+    finally {
+      buffer.release();
+    }
+  }
+
+  @Test
+  public void testDeduplicates() {
+
+    StringCache cache = new StringCache();
+
+    String first = get(cache, "active");
+    assertEquals("active", first);
+    assertSame(first, get(cache, "active"));
+    assertEquals("inactive", get(cache, "inactive"));
+    assertSame(first, get(cache, "active"));
+  }
+
+  @Test
+  public void testDisabled() {
+
+    String first = get(StringCache.DISABLED, "active");
+    assertEquals("active", first);
+    assertNotSame(first, get(StringCache.DISABLED, "active"));
+  }
+
+  @Test
+  public void testDisablesOnLowHitRate() {
+
+    StringCache cache = new StringCache();
+
+    for (int c = 0; c < 10000; ++c) {
+      assertEquals(Integer.toString(c), get(cache, Integer.toString(c)));
+    }
+
+    assertFalse(cache.isEnabled());
+  }
+
+  @Test
+  public void testRemainsEnabledOnHighHitRate() {
+
+    StringCache cache = new StringCache();
+
+    for (int c = 0; c < 10000; ++c) {
+      assertEquals(Integer.toString(c % 10), get(cache, Integer.toString(c % 10)));
+    }
+
+    assertTrue(cache.isEnabled());
+  }
+
+}
@@ -0,0 +1,1257 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.stub;
+
+import com.impossibl.postgres.stub.StubResult.Column;
+import com.impossibl.postgres.stub.StubResult.Kind;
+
+import static com.impossibl.postgres.stub.StubResult.column;
+import static com.impossibl.postgres.stub.StubTypes.TEXT;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * Protocol state machine of a single stub server connection.
+ *
+ * Frontend messages are queued as they are received and processed in
+ * order. Processing pauses while an execution is delayed, while it waits
+ * for the channel to become writable (when streaming large results) and,
+ * during <code>COPY ... FROM STDIN</code>, processes only copy messages.
+ * Outbound messages are batched into large buffers that are written as
+ * they fill and flushed whenever processing pauses.
+ */
+class StubBackend extends ByteToMessageDecoder {
+
+  private static final int SSL_REQUEST_CODE = 80877103;
+  private static final int GSS_ENC_REQUEST_CODE = 80877104;
+  private static final int CANCEL_REQUEST_CODE = 80877102;
+  private static final int BATCH_SIZE = 64 * 1024;
+  private static final byte[] BINARY_COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+  private static final Pattern PARAMETER_PATTERN = Pattern.compile("\\$(\\d+)");
+  private static final Pattern NOTIFY_PATTERN =
+      Pattern.compile("NOTIFY\\s+(\"[^\"]+\"|[^\\s,;]+)\\s*(?:,\\s*'((?:[^']|'')*)')?", Pattern.CASE_INSENSITIVE);
+  private static final Pattern LISTEN_PATTERN =
+      Pattern.compile("LISTEN\\s+(\"[^\"]+\"|[^\\s;]+)", Pattern.CASE_INSENSITIVE);
+
+  private interface Step {
+
+    /**
+     * Continues the step
+     *
+     * @return <code>true</code> if the step completed, <code>false</code> if it is
+     *         waiting to be resumed
+     */
+    boolean resume();
+
+    default boolean cancel() {
+      return false;
+    }
+
+  }
+
+  private static class Statement {
+
+    String sql;
+    int[] parameterTypes;
+
+    Statement(String sql, int[] parameterTypes) {
+      this.sql = sql;
+      this.parameterTypes = parameterTypes;
+    }
+
+  }
+
+  private static class Portal {
+
+    String sql;
+    StubResult result;
+    boolean[] binary;
+    boolean executed;
+    long cursor;
+
+    Portal(String sql, StubResult result, boolean[] binary) {
+      this.sql = sql;
+      this.result = result;
+      this.binary = binary;
+    }
+
+  }
+
+  private final StubServer server;
+  private final ArrayDeque<ByteBuf> frames = new ArrayDeque<>();
+  private final ArrayDeque<Step> steps = new ArrayDeque<>();
+  private final Map<String, Statement> statements = new HashMap<>();
+  private final Map<String, Portal> portals = new HashMap<>();
+  private final Set<String> channels = new HashSet<>();
+  private ChannelHandlerContext ctx;
+  private int processId;
+  private int secretKey;
+  private boolean started;
+  private boolean closed;
+  private boolean draining;
+  private boolean skipToSync;
+  private boolean replication;
+  private char transactionStatus = 'I';
+  private Step current;
+  private ExecuteStep copying;
+  private ByteBuf out;
+  private int outLengthIdx;
+  private int outCount;
+
+  StubBackend(StubServer server) {
+    this.server = server;
+  }
+
+  int getSecretKey() {
+    return secretKey;
+  }
+
+  @Override
+  public void handlerAdded(ChannelHandlerContext ctx) {
+    this.ctx = ctx;
+  }
+
+  @Override
+  protected void handlerRemoved0(ChannelHandlerContext ctx) {
+    closed = true;
+    if (processId != 0) {
+      server.unregister(processId);
+    }
+    if (current instanceof ExecuteStep) {
+      current.cancel();
+    }
+    frames.forEach(ByteBuf::release);
+    frames.clear();
+    if (out != null) {
+      out.release();
+      out = null;
+    }
+  }
+
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    if (ctx.channel().isWritable()) {
+      drain();
+    }
+    super.channelWritabilityChanged(ctx);
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+    ctx.close();
+  }
+
+  @Override
+  protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> decoded) {
+
+    while (!closed) {
+
+      if (!started) {
+
+        if (in.readableBytes() < 4 || in.readableBytes() < in.getInt(in.readerIndex())) break;
+
+        ByteBuf frame = in.readSlice(in.getInt(in.readerIndex()));
+        frame.skipBytes(4);
+
+        startup(frame);
+      }
+      else {
+
+        if (in.readableBytes() < 5 || in.readableBytes() < in.getInt(in.readerIndex() + 1) + 1) break;
+
+        frames.add(in.readRetainedSlice(in.getInt(in.readerIndex() + 1) + 1));
+      }
+
+    }
+
+    if (closed) {
+      in.skipBytes(in.readableBytes());
+      return;
+    }
+
+    drain();
+  }
+
+  /**
+   * Delivers a notification if this connection is listening on the channel
+   */
+  void notify(String channel, String payload, int senderProcessId) {
+    ctx.executor().execute(() -> {
+      if (!closed && channels.contains(channel)) {
+        beginMessage('A');
+        out.writeInt(senderProcessId);
+        writeCString(channel);
+        writeCString(payload != null ? payload : "");
+        endMessage();
+        flush();
+      }
+    });
+  }
+
+  /**
+   * Cancels the execution in progress, if any
+   */
+  void cancel() {
+    ctx.executor().execute(() -> {
+      if (current != null && current.cancel()) {
+        drain();
+      }
+    });
+  }
+
+  private void startup(ByteBuf frame) {
+
+    int code = frame.readInt();
+    switch (code) {
+      case SSL_REQUEST_CODE:
+      case GSS_ENC_REQUEST_CODE:
+        ctx.writeAndFlush(ctx.alloc().buffer(1).writeByte('N'));
+        break;
+
+      case CANCEL_REQUEST_CODE:
+        server.cancel(frame.readInt(), frame.readInt());
+        closed = true;
+        ctx.close();
+        break;
+
+      default:
+        Map<String, String> startupParameters = new HashMap<>();
+        while (frame.isReadable()) {
+          String name = readCString(frame);
+          if (name.isEmpty()) break;
+          startupParameters.put(name, readCString(frame));
+        }
+
+        String replicationMode = startupParameters.get("replication");
+        replication = replicationMode != null && !replicationMode.equals("false");
+
+        started = true;
+        processId = server.register(this);
+        secretKey = server.generateSecretKey();
+
+        beginMessage('R');
+        out.writeInt(0);
+        endMessage();
+
+        for (Map.Entry<String, String> parameter : server.getParameters().entrySet()) {
+          parameterStatus(parameter.getKey(), parameter.getValue());
+        }
+        parameterStatus("application_name", startupParameters.getOrDefault("application_name", ""));
+        parameterStatus("session_authorization", startupParameters.getOrDefault("user", ""));
+
+        beginMessage('K');
+        out.writeInt(processId);
+        out.writeInt(secretKey);
+        endMessage();
+
+        readyForQuery();
+        flush();
+    }
+  }
+
+  private void drain() {
+
+    if (draining || closed) return;
+    draining = true;
+
+    try {
+
+      while (!closed) {
+
+        if (current != null) {
+          if (current.resume()) {
+            current = null;
+            continue;
+          }
+          if (current != copying) break;
+        }
+        else if (!steps.isEmpty()) {
+          current = steps.poll();
+          continue;
+        }
+
+        ByteBuf frame = frames.poll();
+        if (frame == null) break;
+
+        try {
+          process(frame);
+        }
+        finally {
+          frame.release();
+        }
+      }
+
+    }
+    finally {
+      draining = false;
+    }
+
+    flush();
+  }
+
+  private void process(ByteBuf frame) {
+
+    server.received();
+
+    byte id = frame.readByte();
+    frame.skipBytes(4);
+
+    if (copying != null) {
+      copying.receive(id, frame);
+      return;
+    }
+
+    if (skipToSync && id != 'S' && id != 'X') return;
+
+    if (replication && (id == 'P' || id == 'B' || id == 'D' || id == 'E')) {
+      fail("08P01", "extended query protocol not supported in a replication connection");
+      return;
+    }
+
+    switch (id) {
+      case 'Q':
+        query(readCString(frame));
+        break;
+
+      case 'P':
+        parse(frame);
+        break;
+
+      case 'B':
+        bind(frame);
+        break;
+
+      case 'D':
+        describe(frame);
+        break;
+
+      case 'E':
+        execute(frame);
+        break;
+
+      case 'C':
+        close(frame);
+        break;
+
+      case 'S':
+        skipToSync = false;
+        readyForQuery();
+        break;
+
+      case 'H':
+        flush();
+        break;
+
+      case 'X':
+        closed = true;
+        flush();
+        ctx.close();
+        break;
+
+      case 'd':
+      case 'c':
+      case 'f':
+        // Copy messages outside of copy mode are ignored
+        break;
+
+      default:
+        errorResponse("08P01", "unsupported frontend message type " + (char) id);
+        readyForQuery();
+    }
+  }
+
+  private void query(String sql) {
+
+    List<String> sqls = split(sql);
+    if (sqls.isEmpty()) {
+      beginMessage('I');
+      endMessage();
+    }
+
+    for (String statementSql : sqls) {
+      steps.add(new ExecuteStep(statementSql));
+    }
+
+    steps.add(() -> {
+      readyForQuery();
+      return true;
+    });
+  }
+
+  private void parse(ByteBuf frame) {
+
+    String name = readCString(frame);
+    String sql = readCString(frame);
+
+    int[] suggestedTypes = new int[frame.readShort()];
+    for (int idx = 0; idx < suggestedTypes.length; ++idx) {
+      suggestedTypes[idx] = frame.readInt();
+    }
+
+    int parameterCount = suggestedTypes.length;
+    Matcher matcher = PARAMETER_PATTERN.matcher(sql);
+    while (matcher.find()) {
+      parameterCount = Math.max(parameterCount, Integer.parseInt(matcher.group(1)));
+    }
+
+    int[] parameterTypes = new int[parameterCount];
+    for (int idx = 0; idx < parameterCount; ++idx) {
+      parameterTypes[idx] = idx < suggestedTypes.length && suggestedTypes[idx] != 0 ? suggestedTypes[idx] : TEXT;
+    }
+
+    statements.put(name, new Statement(sql, parameterTypes));
+
+    beginMessage('1');
+    endMessage();
+  }
+
+  private void bind(ByteBuf frame) {
+
+    String portalName = readCString(frame);
+    String statementName = readCString(frame);
+
+    Statement statement = statements.get(statementName);
+    if (statement == null) {
+      fail("26000", "prepared statement \"" + statementName + "\" does not exist");
+      return;
+    }
+
+    short[] parameterFormats = readFormats(frame);
+
+    List<String> parameters = new ArrayList<>();
+    short parameterCount = frame.readShort();
+    for (int idx = 0; idx < parameterCount; ++idx) {
+      int length = frame.readInt();
+      if (length < 0) {
+        parameters.add(null);
+        continue;
+      }
+      int typeOid = idx < statement.parameterTypes.length ? statement.parameterTypes[idx] : TEXT;
+      parameters.add(StubTypes.decode(typeOid, isBinary(parameterFormats, idx), frame.readSlice(length)));
+    }
+
+    short[] resultFormats = readFormats(frame);
+
+    StubResult result = lookup(statement.sql, parameters);
+
+    boolean[] binary = new boolean[result.getColumns().length];
+    for (int idx = 0; idx < binary.length; ++idx) {
+      binary[idx] = isBinary(resultFormats, idx);
+    }
+
+    portals.put(portalName, new Portal(statement.sql, result, binary));
+
+    beginMessage('2');
+    endMessage();
+  }
+
+  private void describe(ByteBuf frame) {
+
+    byte target = frame.readByte();
+    String name = readCString(frame);
+
+    if (target == 'S') {
+
+      Statement statement = statements.get(name);
+      if (statement == null) {
+        fail("26000", "prepared statement \"" + name + "\" does not exist");
+        return;
+      }
+
+      beginMessage('t');
+      out.writeShort(statement.parameterTypes.length);
+      for (int parameterType : statement.parameterTypes) {
+        out.writeInt(parameterType);
+      }
+      endMessage();
+
+      rowDescription(lookup(statement.sql, Collections.emptyList()), null);
+    }
+    else {
+
+      Portal portal = portals.get(name);
+      if (portal == null) {
+        fail("34000", "portal \"" + name + "\" does not exist");
+        return;
+      }
+
+      rowDescription(portal.result, portal.binary);
+    }
+  }
+
+  private void execute(ByteBuf frame) {
+
+    String portalName = readCString(frame);
+    int maxRows = frame.readInt();
+
+    Portal portal = portals.get(portalName);
+    if (portal == null) {
+      fail("34000", "portal \"" + portalName + "\" does not exist");
+      return;
+    }
+
+    steps.add(new ExecuteStep(portal, maxRows));
+  }
+
+  private void close(ByteBuf frame) {
+
+    byte target = frame.readByte();
+    String name = readCString(frame);
+
+    if (target == 'S') {
+      statements.remove(name);
+    }
+    else {
+      portals.remove(name);
+    }
+
+    beginMessage('3');
+    endMessage();
+  }
+
+  /**
+   * Looks up the result of a statement from the server's scripts, falling
+   * back to the built-in catalog and generic command results.
+   */
+  private StubResult lookup(String sql, List<String> parameters) {
+
+    StubResult result = server.respond(sql, parameters);
+    if (result != null) {
+      return result;
+    }
+
+    if (sql.contains("pg_catalog.pg_type")) {
+      result = StubResult.rows(StubTypes.CATALOG_COLUMNS);
+      for (Object[] row : StubTypes.catalog(sql, parameters)) {
+        result.row(row);
+      }
+      return result;
+    }
+
+    if (sql.contains("pg_settings")) {
+      return StubResult.rows(column("name", TEXT), column("setting", TEXT)).row("lc_monetary", "C");
+    }
+
+    String[] words = sql.trim().split("\\s+", 3);
+    String command = words[0].toUpperCase(Locale.ROOT);
+    switch (command) {
+      case "SELECT":
+      case "WITH":
+      case "VALUES":
+      case "SHOW":
+      case "TABLE":
+        return StubResult.rows(column("?column?", TEXT));
+
+      case "INSERT":
+        return StubResult.command("INSERT 0 0");
+
+      case "UPDATE":
+      case "DELETE":
+      case "FETCH":
+      case "MOVE":
+        return StubResult.command(command + " 0");
+
+      case "COPY":
+        return sql.toUpperCase(Locale.ROOT).contains("STDIN") ? StubResult.copyIn() : StubResult.copyOut();
+
+      case "START":
+        return StubResult.command("START TRANSACTION");
+
+      case "CREATE":
+      case "DROP":
+      case "ALTER":
+        return StubResult.command(words.length > 1 ? command + " " + words[1].toUpperCase(Locale.ROOT) : command);
+
+      default:
+        return StubResult.command(command);
+    }
+  }
+
+  /**
+   * Applies the session effects of executing a statement (transaction
+   * status, listening channels and notifications).
+   *
+   * @return Result to send for the statement
+   */
+  private StubResult apply(String sql, StubResult result) {
+
+    String command = sql.trim().split("\\s+", 2)[0].toUpperCase(Locale.ROOT);
+
+    if (transactionStatus == 'E') {
+      switch (command) {
+        case "COMMIT":
+        case "END":
+        case "ROLLBACK":
+        case "ABORT":
+          transactionStatus = 'I';
+          return StubResult.command("ROLLBACK");
+
+        default:
+          return StubResult.error("25P02", "current transaction is aborted, commands ignored until end of transaction block");
+      }
+    }
+
+    if (result.getKind() == Kind.Error) {
+      return result;
+    }
+
+    switch (command) {
+      case "BEGIN":
+      case "START":
+        transactionStatus = 'T';
+        break;
+
+      case "COMMIT":
+      case "END":
+      case "ROLLBACK":
+      case "ABORT":
+        transactionStatus = 'I';
+        break;
+
+      case "LISTEN":
+        Matcher listen = LISTEN_PATTERN.matcher(sql);
+        if (listen.find()) {
+          channels.add(identifier(listen.group(1)));
+        }
+        break;
+
+      case "UNLISTEN":
+        Matcher unlisten = LISTEN_PATTERN.matcher(sql.replaceFirst("(?i)UNLISTEN", "LISTEN"));
+        if (unlisten.find() && !unlisten.group(1).equals("*")) {
+          channels.remove(identifier(unlisten.group(1)));
+        }
+        else {
+          channels.clear();
+        }
+        break;
+
+      case "NOTIFY":
+        Matcher notify = NOTIFY_PATTERN.matcher(sql);
+        if (notify.find()) {
+          String payload = notify.group(2) != null ? notify.group(2).replace("''", "'") : "";
+          server.notify(identifier(notify.group(1)), payload, processId);
+        }
+        break;
+
+      default:
+    }
+
+    return result;
+  }
+
+  /**
+   * Execution of a single statement or portal.
+   */
+  private class ExecuteStep implements Step {
+
+    private final String sql;
+    private final long maxRows;
+    private final boolean simple;
+    private Portal portal;
+    private StubResult result;
+    private ScheduledFuture<?> timer;
+    private boolean canceled;
+    private boolean begun;
+    private long end;
+    private long copyRows;
+    private boolean copyDone;
+    private boolean serverCopyDone;
+    private String copyFailure;
+    private String copyViolation;
+    private ByteBuf copyBuffer;
+
+    ExecuteStep(String sql) {
+      this.sql = sql;
+      this.maxRows = 0;
+      this.simple = true;
+    }
+
+    ExecuteStep(Portal portal, long maxRows) {
+      this.sql = portal.sql;
+      this.portal = portal;
+      this.maxRows = maxRows;
+      this.simple = false;
+    }
+
+    @Override
+    public boolean resume() {
+
+      if (canceled) {
+        abort("57014", "canceling statement due to user request", simple);
+        return true;
+      }
+
+      if (timer != null) return false;
+
+      if (result == null) {
+
+        if (portal == null) {
+          portal = new Portal(sql, lookup(sql, Collections.emptyList()), null);
+        }
+
+        result = portal.result;
+
+        if (!portal.executed && result.getDelayNanos() > 0) {
+          timer = ctx.executor().schedule(this::wake, result.getDelayNanos(), NANOSECONDS);
+          return false;
+        }
+      }
+
+      if (!begun) {
+        begun = true;
+
+        if (!portal.executed) {
+          portal.executed = true;
+          portal.result = result = apply(sql, result);
+        }
+
+        switch (result.getKind()) {
+          case Command:
+            commandComplete(result.getTag(0));
+            return true;
+
+          case Error:
+            abort(result.getSqlState(), result.getMessage(), simple);
+            return true;
+
+          case CopyIn:
+            copyResponse('G', result);
+            flush();
+            if (result.isBinary()) {
+              copyBuffer = ctx.alloc().buffer();
+            }
+            copying = this;
+            return false;
+
+          case CopyBoth:
+            beginMessage('W');
+            out.writeByte(0);
+            out.writeShort(0);
+            endMessage();
+            copying = this;
+            break;
+
+          case CopyOut:
+            copyResponse('H', result);
+            if (result.isBinary()) {
+              beginMessage('d');
+              out.writeBytes(BINARY_COPY_SIGNATURE);
+              out.writeInt(0);
+              out.writeInt(0);
+              endMessage();
+            }
+            break;
+
+          case Rows:
+            if (simple) {
+              rowDescription(result, null);
+            }
+            break;
+
+          default:
+        }
+
+        end = result.getRowCount();
+        if (maxRows > 0) {
+          end = Math.min(end, portal.cursor + maxRows);
+        }
+      }
+
+      if (result.getKind() == Kind.CopyIn) {
+        if (!copyDone) return false;
+        copying = null;
+        if (copyViolation != null) {
+          if (copyBuffer != null) {
+            copyBuffer.release();
+            copyBuffer = null;
+          }
+          abort("08P01", copyViolation, simple);
+        }
+        else if (copyFailure != null) {
+          if (copyBuffer != null) {
+            copyBuffer.release();
+            copyBuffer = null;
+          }
+          abort("57014", "COPY from stdin failed: " + copyFailure, simple);
+        }
+        else if (copyBuffer != null && !receiveBinaryCopy()) {
+          abort("22P04", "invalid COPY file", simple);
+        }
+        else {
+          commandComplete(result.getTag(copyRows));
+        }
+        return true;
+      }
+
+      while (portal.cursor < end) {
+
+        if (copyDone) {
+          // Client ended replication
+          break;
+        }
+
+        if (!ctx.channel().isWritable()) {
+          flush();
+          if (!ctx.channel().isWritable()) return false;
+        }
+
+        Object[] row = result.getRow(portal.cursor++);
+        if (result.getKind() == Kind.CopyBoth) {
+          xlogData(row);
+        }
+        else if (result.getKind() == Kind.CopyOut) {
+          if (result.isBinary()) {
+            binaryCopyData(result.getColumns(), row);
+          }
+          else {
+            copyData(row);
+          }
+        }
+        else {
+          dataRow(result.getColumns(), portal.binary, row);
+        }
+      }
+
+      if (result.getKind() == Kind.CopyBoth) {
+        if (result.isEndOfStream() && !serverCopyDone) {
+          serverCopyDone = true;
+          beginMessage('c');
+          endMessage();
+        }
+        if (!copyDone) {
+          flush();
+          return false;
+        }
+        copying = null;
+        if (!serverCopyDone) {
+          beginMessage('c');
+          endMessage();
+        }
+        commandComplete(result.getTag(0));
+        return true;
+      }
+
+      if (result.getKind() == Kind.CopyOut) {
+        if (result.isBinary()) {
+          beginMessage('d');
+          out.writeShort(-1);
+          endMessage();
+        }
+        beginMessage('c');
+        endMessage();
+      }
+
+      if (portal.cursor < result.getRowCount()) {
+        beginMessage('s');
+        endMessage();
+      }
+      else {
+        commandComplete(result.getTag(portal.cursor));
+      }
+
+      return true;
+    }
+
+    @Override
+    public boolean cancel() {
+      if (copying == this) {
+        return false;
+      }
+      canceled = true;
+      if (timer != null) {
+        timer.cancel(false);
+        timer = null;
+      }
+      return true;
+    }
+
+    void receive(byte id, ByteBuf frame) {
+      switch (id) {
+        case 'd':
+          if (result.getKind() == Kind.CopyBoth) {
+            receiveStandbyStatus(frame);
+            break;
+          }
+          if (copyBuffer != null) {
+            copyBuffer.writeBytes(frame);
+            break;
+          }
+          for (int idx = frame.readerIndex(); idx < frame.writerIndex(); ++idx) {
+            if (frame.getByte(idx) == '\n') {
+              copyRows++;
+            }
+          }
+          break;
+
+        case 'c':
+          copyDone = true;
+          break;
+
+        case 'f':
+          copyFailure = readCString(frame);
+          copyDone = true;
+          break;
+
+        case 'H':
+        case 'S':
+          // Flush & Sync are ignored during copy
+          break;
+
+        default:
+          // As with the server, any other message fails a COPY IN
+          if (result.getKind() == Kind.CopyIn && !copyDone) {
+            copyViolation = String.format("unexpected message type 0x%02X during COPY from stdin", id);
+            copyDone = true;
+          }
+      }
+    }
+
+    private void wake() {
+      timer = null;
+      drain();
+    }
+
+    private void receiveStandbyStatus(ByteBuf frame) {
+      if (frame.readByte() != 'r') return;
+      long[] positions = {frame.readLong(), frame.readLong(), frame.readLong()};
+      if (result.getStatusReceiver() != null) {
+        result.getStatusReceiver().accept(positions);
+      }
+    }
+
+    /**
+     * Parses the received binary copy data, passing each row to the
+     * result's receiver.
+     */
+    private boolean receiveBinaryCopy() {
+
+      ByteBuf data = copyBuffer;
+      copyBuffer = null;
+      try {
+        Column[] columns = result.getColumns();
+
+        if (data.readableBytes() < BINARY_COPY_SIGNATURE.length + 8) return false;
+        byte[] signature = new byte[BINARY_COPY_SIGNATURE.length];
+        data.readBytes(signature);
+        if (!Arrays.equals(signature, BINARY_COPY_SIGNATURE)) return false;
+        data.skipBytes(4);
+        data.skipBytes(data.readInt());
+
+        while (data.isReadable()) {
+          short fieldCount = data.readShort();
+          if (fieldCount == -1) {
+            return !data.isReadable();
+          }
+          if (fieldCount != columns.length) return false;
+
+          String[] values = new String[fieldCount];
+          for (int idx = 0; idx < fieldCount; ++idx) {
+            int length = data.readInt();
+            if (length != -1) {
+              values[idx] = StubTypes.decode(columns[idx].getTypeOid(), true, data.readSlice(length));
+            }
+          }
+
+          copyRows++;
+          if (result.getReceiver() != null) {
+            result.getReceiver().accept(values);
+          }
+        }
+
+        return false;
+      }
+      catch (IndexOutOfBoundsException e) {
+        return false;
+      }
+      finally {
+        data.release();
+      }
+    }
+
+  }
+
+  private void abort(String sqlState, String message, boolean simple) {
+
+    errorResponse(sqlState, message);
+
+    if (transactionStatus == 'T') {
+      transactionStatus = 'E';
+    }
+
+    if (simple) {
+      // Skip remaining statements of the query
+      Step ready = steps.peekLast();
+      steps.clear();
+      steps.add(ready);
+    }
+    else {
+      skipToSync = true;
+    }
+  }
+
+  private void fail(String sqlState, String message) {
+    abort(sqlState, message, false);
+  }
+
+  private void rowDescription(StubResult result, boolean[] binary) {
+
+    if (result.getKind() != Kind.Rows) {
+      beginMessage('n');
+      endMessage();
+      return;
+    }
+
+    Column[] columns = result.getColumns();
+
+    beginMessage('T');
+    out.writeShort(columns.length);
+    for (int idx = 0; idx < columns.length; ++idx) {
+      writeCString(columns[idx].getName());
+      out.writeInt(0);
+      out.writeShort(0);
+      out.writeInt(columns[idx].getTypeOid());
+      out.writeShort(StubTypes.length(columns[idx].getTypeOid()));
+      out.writeInt(-1);
+      out.writeShort(binary != null && binary[idx] ? 1 : 0);
+    }
+    endMessage();
+  }
+
+  private void dataRow(Column[] columns, boolean[] binary, Object[] row) {
+
+    beginMessage('D');
+    out.writeShort(columns.length);
+    for (int idx = 0; idx < columns.length; ++idx) {
+      StubTypes.encode(columns[idx].getTypeOid(), binary != null && binary[idx], row[idx], out);
+    }
+    endMessage();
+  }
+
+  private void copyResponse(char id, StubResult result) {
+
+    Column[] columns = result.getColumns();
+
+    beginMessage(id);
+    out.writeByte(result.isBinary() ? 1 : 0);
+    out.writeShort(columns.length);
+    for (int idx = 0; idx < columns.length; ++idx) {
+      out.writeShort(result.isBinary() ? 1 : 0);
+    }
+    endMessage();
+  }
+
+  private void binaryCopyData(Column[] columns, Object[] row) {
+
+    beginMessage('d');
+    out.writeShort(columns.length);
+    for (int idx = 0; idx < columns.length; ++idx) {
+      StubTypes.encode(columns[idx].getTypeOid(), true, row[idx], out);
+    }
+    endMessage();
+  }
+
+  private void xlogData(Object[] row) {
+
+    long lsn = ((Number) row[0]).longValue();
+
+    beginMessage('d');
+    out.writeByte('w');
+    out.writeLong(lsn);
+    out.writeLong(lsn);
+    out.writeLong((System.currentTimeMillis() - 946684800000L) * 1000);
+    out.writeCharSequence(row[1].toString(), UTF_8);
+    endMessage();
+  }
+
+  private void copyData(Object[] row) {
+
+    StringBuilder line = new StringBuilder();
+    for (int idx = 0; idx < row.length; ++idx) {
+      if (idx != 0) {
+        line.append('\t');
+      }
+      line.append(row[idx] != null ? row[idx] : "\\N");
+    }
+    line.append('\n');
+
+    beginMessage('d');
+    out.writeCharSequence(line, UTF_8);
+    endMessage();
+  }
+
+  private void commandComplete(String tag) {
+    beginMessage('C');
+    writeCString(tag);
+    endMessage();
+  }
+
+  private void errorResponse(String sqlState, String message) {
+    beginMessage('E');
+    out.writeByte('S');
+    writeCString("ERROR");
+    out.writeByte('V');
+    writeCString("ERROR");
+    out.writeByte('C');
+    writeCString(sqlState);
+    out.writeByte('M');
+    writeCString(message);
+    out.writeByte(0);
+    endMessage();
+  }
+
+  private void parameterStatus(String name, String value) {
+    beginMessage('S');
+    writeCString(name);
+    writeCString(value);
+    endMessage();
+  }
+
+  private void readyForQuery() {
+    beginMessage('Z');
+    out.writeByte(transactionStatus);
+    endMessage();
+  }
+
+  private void beginMessage(char id) {
+    if (out == null) {
+      out = ctx.alloc().ioBuffer(BATCH_SIZE);
+    }
+    out.writeByte(id);
+    outLengthIdx = out.writerIndex();
+    out.writeInt(-1);
+  }
+
+  private void endMessage() {
+    out.setInt(outLengthIdx, out.writerIndex() - outLengthIdx);
+    outCount++;
+    if (out.readableBytes() >= BATCH_SIZE) {
+      writeOut();
+    }
+  }
+
+  private void writeOut() {
+    if (out != null && out.isReadable()) {
+      server.sent(outCount);
+      ctx.write(out, ctx.voidPromise());
+      out = null;
+      outCount = 0;
+    }
+  }
+
+  private void flush() {
+    if (closed && !ctx.channel().isActive()) return;
+    writeOut();
+    ctx.flush();
+  }
+
+  private void writeCString(String value) {
+    out.writeCharSequence(value, UTF_8);
+    out.writeByte(0);
+  }
+
+  private static String readCString(ByteBuf buffer) {
+    int length = buffer.bytesBefore((byte) 0);
+    String value = buffer.toString(buffer.readerIndex(), length, UTF_8);
+    buffer.skipBytes(length + 1);
+    return value;
+  }
+
+  private static short[] readFormats(ByteBuf frame) {
+    short[] formats = new short[frame.readShort()];
+    for (int idx = 0; idx < formats.length; ++idx) {
+      formats[idx] = frame.readShort();
+    }
+    return formats;
+  }
+
+  private static boolean isBinary(short[] formats, int idx) {
+    if (formats.length == 0) return false;
+    return (formats.length == 1 ? formats[0] : formats[idx]) == 1;
+  }
+
+  private static String identifier(String name) {
+    if (name.startsWith("\"")) {
+      return name.substring(1, name.length() - 1);
+    }
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Splits a simple query into its statements
+   */
+  private static List<String> split(String sql) {
+
+    List<String> statements = new ArrayList<>();
+
+    char quote = 0;
+    int start = 0;
+    for (int idx = 0; idx < sql.length(); ++idx) {
+      char ch = sql.charAt(idx);
+      if (quote != 0) {
+        if (ch == quote) quote = 0;
+      }
+      else if (ch == '\'' || ch == '"') {
+        quote = ch;
+      }
+      else if (ch == ';') {
+        addStatement(statements, sql.substring(start, idx));
+        start = idx + 1;
+      }
+    }
+    addStatement(statements, sql.substring(start));
+
+    return statements;
+  }
+
+  private static void addStatement(List<String> statements, String sql) {
+    if (!sql.trim().isEmpty()) {
+      statements.add(sql.trim());
+    }
+  }
+
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.stub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Scripted response of the stub server to a single SQL statement.
+ *
+ * A result is either a row set (with a fixed and/or generated set of
+ * rows), a command completion, an error, or a <code>COPY</code> in
+ * either direction. Results are immutable once handed to the server
+ * and may be shared between connections.
+ *
+ * <pre>
+ *   StubResult.rows(column("id", INT4), column("name", TEXT))
+ *     .generate(1_000_000, row -&gt; new Object[] {(int) row, "name-" + row});
+ * </pre>
+ */
+public final class StubResult {
+
+  /**
+   * Description of a single result column
+   */
+  public static final class Column {
+
+    private final String name;
+    private final int typeOid;
+
+    Column(String name, int typeOid) {
+      this.name = name;
+      this.typeOid = typeOid;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getTypeOid() {
+      return typeOid;
+    }
+
+  }
+
+  enum Kind {
+    Rows,
+    Command,
+    Error,
+    CopyIn,
+    CopyOut,
+    CopyBoth,
+  }
+
+  private static final Column[] NO_COLUMNS = {};
+
+  private final Kind kind;
+  private final Column[] columns;
+  private final List<Object[]> rows = new ArrayList<>();
+  private long generatedRowCount;
+  private LongFunction<Object[]> generator;
+  private String tag;
+  private String sqlState;
+  private String message;
+  private long delayNanos;
+  private boolean binary;
+  private Consumer<String[]> receiver;
+  private Consumer<long[]> statusReceiver;
+  private boolean endOfStream;
+
+  private StubResult(Kind kind, Column[] columns) {
+    this.kind = kind;
+    this.columns = columns;
+  }
+
+  public static Column column(String name, int typeOid) {
+    return new Column(name, typeOid);
+  }
+
+  /**
+   * Creates a row set result
+   *
+   * @param columns Columns of the row set
+   * @return Result without rows
+   */
+  public static StubResult rows(Column... columns) {
+    return new StubResult(Kind.Rows, columns);
+  }
+
+  /**
+   * Creates a command result
+   *
+   * @param tag Command tag reported in <code>CommandComplete</code> (e.g. <code>INSERT 0 1</code>)
+   * @return Result
+   */
+  public static StubResult command(String tag) {
+    return new StubResult(Kind.Command, NO_COLUMNS).tag(tag);
+  }
+
+  /**
+   * Creates an error result
+   *
+   * @param sqlState SQL state of the error
+   * @param message Error message
+   * @return Result
+   */
+  public static StubResult error(String sqlState, String message) {
+    StubResult result = new StubResult(Kind.Error, NO_COLUMNS);
+    result.sqlState = sqlState;
+    result.message = message;
+    return result;
+  }
+
+  /**
+   * Creates a <code>COPY ... FROM STDIN</code> result; all data sent by
+   * the client is accepted and counted by line.
+   *
+   * @return Result
+   */
+  public static StubResult copyIn() {
+    return new StubResult(Kind.CopyIn, NO_COLUMNS);
+  }
+
+  /**
+   * Creates a <code>COPY ... TO STDOUT</code> result; each row is sent
+   * in text <code>COPY</code> format.
+   *
+   * @return Result without rows
+   */
+  public static StubResult copyOut() {
+    return new StubResult(Kind.CopyOut, NO_COLUMNS);
+  }
+
+  /**
+   * Creates a binary <code>COPY ... FROM STDIN</code> result; each
+   * received row is decoded, using the given column types, and passed
+   * to the receiver with its values in text form (<code>null</code>
+   * for SQL <code>NULL</code>).
+   *
+   * @param receiver Receiver of the copied rows; called on the server's I/O thread
+   * @param columns Columns of the copied rows
+   * @return Result
+   */
+  public static StubResult binaryCopyIn(Consumer<String[]> receiver, Column... columns) {
+    StubResult result = new StubResult(Kind.CopyIn, columns);
+    result.binary = true;
+    result.receiver = receiver;
+    return result;
+  }
+
+  /**
+   * Creates a binary <code>COPY ... TO STDOUT</code> result; each row
+   * is sent as a binary <code>COPY</code> tuple.
+   *
+   * @param columns Columns of the copied rows
+   * @return Result without rows
+   */
+  public static StubResult binaryCopyOut(Column... columns) {
+    StubResult result = new StubResult(Kind.CopyOut, columns);
+    result.binary = true;
+    return result;
+  }
+
+  /**
+   * Creates a logical replication (<code>START_REPLICATION</code>) result;
+   * each row, of a WAL position (<code>Long</code>) and data, is sent as an
+   * <code>XLogData</code> message. The stream remains open until the client
+   * ends it, unless {@link #endOfStream()} is used.
+   *
+   * @param statusReceiver Receiver of the write, flush &amp; apply positions of
+   *                       each standby status update; called on the server's I/O thread
+   * @return Result without rows
+   */
+  public static StubResult replication(Consumer<long[]> statusReceiver) {
+    StubResult result = new StubResult(Kind.CopyBoth, new Column[] {column("lsn", StubTypes.INT8), column("data", StubTypes.TEXT)});
+    result.statusReceiver = statusReceiver;
+    return result;
+  }
+
+  /**
+   * Ends a replication stream from the server once all rows have been sent.
+   *
+   * @return This result
+   */
+  public StubResult endOfStream() {
+    this.endOfStream = true;
+    return this;
+  }
+
+  /**
+   * Adds a fixed row; fixed rows are sent before any generated rows.
+   *
+   * @param values Values of the row, one per column
+   * @return This result
+   */
+  public StubResult row(Object... values) {
+    rows.add(values);
+    return this;
+  }
+
+  /**
+   * Sets the rows generated for each execution.
+   *
+   * @param count Number of rows to generate
+   * @param generator Generator of the values for a given (zero based) row
+   * @return This result
+   */
+  public StubResult generate(long count, LongFunction<Object[]> generator) {
+    this.generatedRowCount = count;
+    this.generator = generator;
+    return this;
+  }
+
+  /**
+   * Sets the command tag reported upon completion; row set results
+   * default to <code>SELECT n</code>.
+   *
+   * @param tag Command tag
+   * @return This result
+   */
+  public StubResult tag(String tag) {
+    this.tag = tag;
+    return this;
+  }
+
+  /**
+   * Sets the simulated execution time; the result is sent only after
+   * the delay elapses, unless the statement is cancelled first.
+   *
+   * @param delay Execution time
+   * @param unit Unit of delay
+   * @return This result
+   */
+  public StubResult delay(long delay, TimeUnit unit) {
+    this.delayNanos = unit.toNanos(delay);
+    return this;
+  }
+
+  Kind getKind() {
+    return kind;
+  }
+
+  Column[] getColumns() {
+    return columns;
+  }
+
+  long getRowCount() {
+    return rows.size() + generatedRowCount;
+  }
+
+  Object[] getRow(long row) {
+    if (row < rows.size()) {
+      return rows.get((int) row);
+    }
+    return generator.apply(row - rows.size());
+  }
+
+  String getTag(long rowCount) {
+    if (tag != null) {
+      return tag;
+    }
+    return (kind == Kind.Rows ? "SELECT " : "COPY ") + rowCount;
+  }
+
+  String getSqlState() {
+    return sqlState;
+  }
+
+  String getMessage() {
+    return message;
+  }
+
+  long getDelayNanos() {
+    return delayNanos;
+  }
+
+  boolean isBinary() {
+    return binary;
+  }
+
+  Consumer<String[]> getReceiver() {
+    return receiver;
+  }
+
+  Consumer<long[]> getStatusReceiver() {
+    return statusReceiver;
+  }
+
+  boolean isEndOfStream() {
+    return endOfStream;
+  }
+
+}
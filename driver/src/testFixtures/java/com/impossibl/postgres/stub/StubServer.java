@@ -0,0 +1,325 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.stub;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.traffic.ChannelTrafficShapingHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * In-process stub of a PostgreSQL server, speaking enough of protocol
+ * v3.0 to support the driver without a live database.
+ *
+ * The stub accepts any startup without authentication, reports a fixed set
+ * of parameters and a small type catalog (see {@link StubTypes}) and answers
+ * simple and extended queries from scripted {@link StubResult}s. It supports
+ * <code>COPY</code> in both directions, <code>LISTEN</code>/<code>NOTIFY</code>
+ * (including server initiated notifications) and cancel requests.
+ *
+ * Statements that match no script are answered with a generic result based
+ * on the statement's command (e.g. an empty single column row set for
+ * <code>SELECT</code>, or <code>INSERT 0 0</code>).
+ *
+ * For deterministic performance testing the server can add latency to each
+ * of its responses and throttle its outbound bandwidth. Latency and bandwidth
+ * settings are applied to connections accepted after they are set.
+ *
+ * <pre>
+ *   try (StubServer server = new StubServer().script("FROM big", StubResult.rows(...).generate(...)).start()) {
+ *     Connection connection = DriverManager.getConnection(server.getURL());
+ *     ...
+ *   }
+ * </pre>
+ */
+public class StubServer implements AutoCloseable {
+
+  /**
+   * Produces the result of statements matching a script.
+   *
+   * Responders are called when statements are described (with no
+   * parameters) as well as when they are executed, and must return
+   * results with the same columns in both cases.
+   */
+  public interface Responder {
+
+    StubResult respond(String sql, List<String> parameters);
+
+  }
+
+  private static class Script {
+
+    Pattern pattern;
+    Responder responder;
+
+    Script(Pattern pattern, Responder responder) {
+      this.pattern = pattern;
+      this.responder = responder;
+    }
+
+  }
+
+  private final Map<String, String> parameters = new LinkedHashMap<>();
+  private final List<Script> scripts = new CopyOnWriteArrayList<>();
+  private final Map<Integer, StubBackend> backends = new ConcurrentHashMap<>();
+  private final AtomicInteger nextProcessId = new AtomicInteger(1);
+  private final LongAdder messagesReceived = new LongAdder();
+  private final LongAdder messagesSent = new LongAdder();
+  private final LongAdder cancelRequests = new LongAdder();
+  private volatile long latencyNanos;
+  private volatile long bandwidth;
+  private EventLoopGroup group;
+  private Channel serverChannel;
+
+  public StubServer() {
+    parameters.put("server_version", "12.0");
+    parameters.put("server_encoding", "UTF8");
+    parameters.put("client_encoding", "UTF8");
+    parameters.put("DateStyle", "ISO, MDY");
+    parameters.put("IntervalStyle", "postgres");
+    parameters.put("TimeZone", "UTC");
+    parameters.put("integer_datetimes", "on");
+    parameters.put("standard_conforming_strings", "on");
+  }
+
+  /**
+   * Sets a parameter reported to connecting clients via <code>ParameterStatus</code>
+   *
+   * @param name Name of the parameter
+   * @param value Value of the parameter
+   * @return This server
+   */
+  public StubServer setParameter(String name, String value) {
+    parameters.put(name, value);
+    return this;
+  }
+
+  /**
+   * Sets the latency added to each flush of responses sent by the server;
+   * effectively adding to the round trip time of every request.
+   *
+   * @param latency Latency to add
+   * @param unit Unit of latency
+   * @return This server
+   */
+  public StubServer setLatency(long latency, TimeUnit unit) {
+    this.latencyNanos = unit.toNanos(latency);
+    return this;
+  }
+
+  /**
+   * Sets the maximum outbound bandwidth of each connection
+   *
+   * @param bytesPerSecond Bandwidth limit, or zero for unlimited
+   * @return This server
+   */
+  public StubServer setBandwidth(long bytesPerSecond) {
+    this.bandwidth = bytesPerSecond;
+    return this;
+  }
+
+  /**
+   * Adds a script answering statements with a fixed result. Scripts are
+   * matched in reverse order of addition, allowing later scripts to
+   * override earlier ones.
+   *
+   * @param regex Regular expression found in the SQL text of matching statements
+   * @param result Result of matching statements
+   * @return This server
+   */
+  public StubServer script(String regex, StubResult result) {
+    return script(regex, (sql, params) -> result);
+  }
+
+  /**
+   * Adds a script answering statements with a computed result
+   *
+   * @param regex Regular expression found in the SQL text of matching statements
+   * @param responder Responder producing the results of matching statements
+   * @return This server
+   * @see #script(String, StubResult)
+   */
+  public StubServer script(String regex, Responder responder) {
+    scripts.add(0, new Script(Pattern.compile(regex, Pattern.CASE_INSENSITIVE), responder));
+    return this;
+  }
+
+  /**
+   * Starts the server listening on an ephemeral port of the loopback interface
+   *
+   * @return This server
+   * @throws InterruptedException If interrupted while binding
+   */
+  public StubServer start() throws InterruptedException {
+
+    group = new NioEventLoopGroup(0, new DefaultThreadFactory("pgjdbc-stub-server", true));
+
+    serverChannel = new ServerBootstrap()
+        .group(group)
+        .channel(NioServerSocketChannel.class)
+        .childOption(ChannelOption.TCP_NODELAY, true)
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(SocketChannel ch) {
+            ChannelPipeline pipeline = ch.pipeline();
+            if (bandwidth > 0) {
+              pipeline.addLast(new ChannelTrafficShapingHandler(bandwidth, 0, 100));
+            }
+            if (latencyNanos > 0) {
+              pipeline.addLast(new LatencyHandler(latencyNanos));
+            }
+            pipeline.addLast(new StubBackend(StubServer.this));
+          }
+        })
+        .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+        .sync()
+        .channel();
+
+    return this;
+  }
+
+  public int getPort() {
+    return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+  }
+
+  /**
+   * JDBC URL connecting to this server
+   *
+   * @return URL of server
+   */
+  public String getURL() {
+    return "jdbc:pgsql://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + getPort() + "/stub";
+  }
+
+  /**
+   * Sends a notification to all connections listening on the channel
+   *
+   * @param channel Name of notification channel
+   * @param payload Payload of notification
+   */
+  public void notify(String channel, String payload) {
+    notify(channel, payload, 0);
+  }
+
+  public long getMessagesReceived() {
+    return messagesReceived.sum();
+  }
+
+  public long getMessagesSent() {
+    return messagesSent.sum();
+  }
+
+  public long getCancelRequests() {
+    return cancelRequests.sum();
+  }
+
+  public int getConnectionCount() {
+    return backends.size();
+  }
+
+  @Override
+  public void close() {
+    if (serverChannel != null) {
+      serverChannel.close().syncUninterruptibly();
+    }
+    if (group != null) {
+      group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+  }
+
+  Map<String, String> getParameters() {
+    return parameters;
+  }
+
+  StubResult respond(String sql, List<String> parameters) {
+    for (Script script : scripts) {
+      if (script.pattern.matcher(sql).find()) {
+        return script.responder.respond(sql, parameters);
+      }
+    }
+    return null;
+  }
+
+  void notify(String channel, String payload, int processId) {
+    for (StubBackend backend : backends.values()) {
+      backend.notify(channel, payload, processId);
+    }
+  }
+
+  void cancel(int processId, int secretKey) {
+    cancelRequests.increment();
+    StubBackend backend = backends.get(processId);
+    if (backend != null && backend.getSecretKey() == secretKey) {
+      backend.cancel();
+    }
+  }
+
+  int register(StubBackend backend) {
+    int processId = nextProcessId.getAndIncrement();
+    backends.put(processId, backend);
+    return processId;
+  }
+
+  void unregister(int processId) {
+    backends.remove(processId);
+  }
+
+  int generateSecretKey() {
+    return ThreadLocalRandom.current().nextInt();
+  }
+
+  void received() {
+    messagesReceived.increment();
+  }
+
+  void sent(long count) {
+    messagesSent.add(count);
+  }
+
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright (c) 2013, impossibl.com
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *  * Neither the name of impossibl.com nor the names of its contributors may
+ *    be used to endorse or promote products derived from this software
+ *    without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.impossibl.postgres.stub;
+
+import static com.impossibl.postgres.stub.StubResult.column;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * Type OIDs understood by the stub server, along with their wire
+ * encodings and the <code>pg_type</code> catalog the stub reports to
+ * connecting drivers.
+ *
+ * Values of supported types are encoded in text or binary format, as
+ * requested by the client. Values of any other type are sent using
+ * their {@link Object#toString()} representation in both formats.
+ */
+public final class StubTypes {
+
+  public static final int BOOL = 16;
+  public static final int BYTEA = 17;
+  public static final int CHAR = 18;
+  public static final int NAME = 19;
+  public static final int INT8 = 20;
+  public static final int INT2 = 21;
+  public static final int INT4 = 23;
+  public static final int REGPROC = 24;
+  public static final int TEXT = 25;
+  public static final int OID = 26;
+  public static final int FLOAT4 = 700;
+  public static final int FLOAT8 = 701;
+  public static final int UNKNOWN = 705;
+  public static final int VARCHAR = 1043;
+  public static final int RECORD = 2249;
+  public static final int VOID = 2278;
+
+  private static final String NAMESPACE = "pg_catalog";
+
+  /**
+   * Base types reported by the catalog; each entry is
+   * { oid, name, length, type, category, alignment, array oid, proc prefix, modifier in, modifier out }.
+   */
+  private static final Object[][] BASE_TYPES = {
+    {BOOL, "bool", 1, "b", "B", "c", 1000, "bool", "-", "-"},
+    {BYTEA, "bytea", -1, "b", "U", "i", 1001, "bytea", "-", "-"},
+    {CHAR, "char", 1, "b", "S", "c", 1002, "char", "-", "-"},
+    {NAME, "name", 64, "b", "S", "c", 1003, "name", "-", "-"},
+    {INT8, "int8", 8, "b", "N", "d", 1016, "int8", "-", "-"},
+    {INT2, "int2", 2, "b", "N", "s", 1005, "int2", "-", "-"},
+    {INT4, "int4", 4, "b", "N", "i", 1007, "int4", "-", "-"},
+    {REGPROC, "regproc", 4, "b", "N", "i", 1008, "regproc", "-", "-"},
+    {TEXT, "text", -1, "b", "S", "i", 1009, "text", "-", "-"},
+    {OID, "oid", 4, "b", "N", "i", 1028, "oid", "-", "-"},
+    {FLOAT4, "float4", 4, "b", "N", "i", 1021, "float4", "-", "-"},
+    {FLOAT8, "float8", 8, "b", "N", "d", 1022, "float8", "-", "-"},
+    {UNKNOWN, "unknown", -2, "p", "X", "c", 0, "unknown", "-", "-"},
+    {VARCHAR, "varchar", -1, "b", "S", "i", 1015, "varchar", "varchartypmodin", "varchartypmodout"},
+    {RECORD, "record", -1, "p", "P", "d", 2287, "record_", "-", "-"},
+    {VOID, "void", 4, "p", "P", "i", 0, "void_", "-", "-"},
+  };
+
+  static final StubResult.Column[] CATALOG_COLUMNS = {
+    column("oid", OID), column("typname", NAME), column("typlen", INT2), column("typtype", CHAR),
+    column("typcategory", CHAR), column("typdelim", CHAR), column("typrelid", OID), column("typelem", OID),
+    column("typarray", OID), column("typinput", TEXT), column("typoutput", TEXT), column("typreceive", TEXT),
+    column("typsend", TEXT), column("typmodin", TEXT), column("typmodout", TEXT), column("typalign", CHAR),
+    column("nspname", NAME), column("typbasetype", OID), column("typtypmod", INT4), column("typnotnull", BOOL),
+    column("pg_get_expr", TEXT), column("rngsubtype", OID),
+  };
+
+  private static final List<Object[]> CATALOG = new ArrayList<>();
+
+  static {
+    for (Object[] type : BASE_TYPES) {
+      String procPrefix = (String) type[7];
+      CATALOG.add(new Object[] {
+        type[0], type[1], type[2], type[3], type[4], ",", 0, 0, type[6],
+        procPrefix + "in", procPrefix + "out", procPrefix + "recv", procPrefix + "send", type[8], type[9],
+        type[5], NAMESPACE, 0, -1, false, null, null,
+      });
+    }
+    for (Object[] type : BASE_TYPES) {
+      int arrayOid = (int) type[6];
+      if (arrayOid == 0) continue;
+      CATALOG.add(new Object[] {
+        arrayOid, "_" + type[1], -1, "b", "A", ",", 0, type[0], 0,
+        "array_in", "array_out", "array_recv", "array_send", type[8], type[9],
+        type[5].equals("d") ? "d" : "i", NAMESPACE, 0, -1, false, null, null,
+      });
+    }
+  }
+
+  private StubTypes() {
+  }
+
+  /**
+   * Produces the stub's <code>pg_type</code> catalog, filtered in the manner
+   * of the driver's type loading queries.
+   */
+  static List<Object[]> catalog(String sql, List<String> parameters) {
+
+    if (parameters.isEmpty() || sql.contains("typrelid = $1")) {
+      return sql.contains("$1") ? new ArrayList<>() : CATALOG;
+    }
+
+    String parameter = parameters.get(0);
+    int match = 0;
+    if (sql.contains("::regtype")) {
+      parameter = parameter.replace("\"", "");
+      parameter = parameter.startsWith(NAMESPACE + ".") ? parameter.substring(NAMESPACE.length() + 1) : parameter;
+      match = 1;
+    }
+
+    List<Object[]> rows = new ArrayList<>();
+    for (Object[] row : CATALOG) {
+      if (row[match].toString().equals(parameter)) {
+        rows.add(row);
+      }
+    }
+    return rows;
+  }
+
+  static short length(int typeOid) {
+    for (Object[] type : BASE_TYPES) {
+      if ((int) type[0] == typeOid) {
+        return (short) (int) type[2];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Writes a length prefixed field value in the requested format.
+   */
+  static void encode(int typeOid, boolean binary, Object value, ByteBuf out) {
+
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+
+    int lengthIdx = out.writerIndex();
+    out.writeInt(0);
+
+    if (binary) {
+      encodeBinary(typeOid, value, out);
+    }
+    else {
+      out.writeCharSequence(encodeText(typeOid, value), UTF_8);
+    }
+
+    out.setInt(lengthIdx, out.writerIndex() - lengthIdx - 4);
+  }
+
+  private static void encodeBinary(int typeOid, Object value, ByteBuf out) {
+
+    switch (typeOid) {
+      case BOOL:
+        out.writeBoolean((Boolean) value);
+        break;
+
+      case BYTEA:
+        out.writeBytes((byte[]) value);
+        break;
+
+      case INT8:
+        out.writeLong(((Number) value).longValue());
+        break;
+
+      case INT2:
+        out.writeShort(((Number) value).shortValue());
+        break;
+
+      case INT4:
+      case OID:
+      case REGPROC:
+        out.writeInt(((Number) value).intValue());
+        break;
+
+      case FLOAT4:
+        out.writeFloat(((Number) value).floatValue());
+        break;
+
+      case FLOAT8:
+        out.writeDouble(((Number) value).doubleValue());
+        break;
+
+      default:
+        out.writeCharSequence(value.toString(), UTF_8);
+    }
+  }
+
+  private static String encodeText(int typeOid, Object value) {
+
+    switch (typeOid) {
+      case BOOL:
+        return (Boolean) value ? "t" : "f";
+
+      case BYTEA:
+        return "\\x" + ByteBufUtil.hexDump((byte[]) value);
+
+      default:
+        return value.toString();
+    }
+  }
+
+  /**
+   * Decodes a parameter value, in the given format, to its text form.
+   */
+  static String decode(int typeOid, boolean binary, ByteBuf value) {
+
+    if (!binary) {
+      return value.toString(UTF_8);
+    }
+
+    switch (typeOid) {
+      case BOOL:
+        return value.readBoolean() ? "t" : "f";
+
+      case BYTEA:
+        return "\\x" + ByteBufUtil.hexDump(value);
+
+      case INT8:
+        return Long.toString(value.readLong());
+
+      case INT2:
+        return Short.toString(value.readShort());
+
+      case INT4:
+      case REGPROC:
+        return Integer.toString(value.readInt());
+
+      case OID:
+        return Long.toString(value.readUnsignedInt());
+
+      case FLOAT4:
+        return Float.toString(value.readFloat());
+
+      case FLOAT8:
+        return Double.toString(value.readDouble());
+
+      default:
+        return value.toString(UTF_8);
+    }
+  }
+
+}
@@ -11,4 +11,5 @@ include(":pgjdbc-ng")
 project(":pgjdbc-ng").projectDir = file("driver")
 
 include(":udt-gen")
+include(":benchmarks")
 include(":documentation")
@@ -1,5 +1,6 @@
 
 import com.github.jengelman.gradle.plugins.shadow.tasks.ShadowJar
+import org.gradle.api.component.AdhocComponentWithVariants
 import org.gradle.api.publish.maven.MavenPom
 import java.net.URI
 
@@ -82,6 +83,13 @@ val pomCfg: MavenPom.() -> Unit = {
 
 if (isSnapshot || isRelease) {
 
+  // Test fixtures (e.g. the driver's stub server) are not published
+  (components["java"] as AdhocComponentWithVariants).let { javaComponent ->
+    listOf("testFixturesApiElements", "testFixturesRuntimeElements").forEach { name ->
+      configurations.findByName(name)?.let { javaComponent.withVariantsFromConfiguration(it) { skip() } }
+    }
+  }
+
   configure<PublishingExtension> {
 
     publications {
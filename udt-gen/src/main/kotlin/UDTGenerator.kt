@@ -2,6 +2,8 @@ package com.impossibl.postgres.tools
 
 import com.impossibl.postgres.api.jdbc.PGAnyType
 import com.impossibl.postgres.api.jdbc.PGConnection
+import com.impossibl.postgres.api.jdbc.PGRecordReader
+import com.impossibl.postgres.api.jdbc.PGSQLDataDecoder
 import com.impossibl.postgres.api.jdbc.PGType
 import com.impossibl.postgres.types.QualifiedName
 import com.squareup.javapoet.*
@@ -96,8 +98,12 @@ class UDTGenerator(
 
   private val typesInfo = getTypesInfo(connection, typeNames)
 
+  private val decoderNames = mutableListOf<ClassName>()
+
   fun generate(): List<JavaFile> {
 
+    decoderNames.clear()
+
     return typesInfo.mapNotNull { (sqlTypeName, typeCategory) ->
 
       when (typeCategory) {
@@ -120,6 +126,15 @@ class UDTGenerator(
 
   fun generate(outDirectory: File) {
     generate().forEach { it.writeTo(outDirectory) }
+
+    // Register generated decoders with the driver
+
+    if (decoderNames.isNotEmpty()) {
+      val servicesDirectory = File(outDirectory, "META-INF/services")
+      servicesDirectory.mkdirs()
+      File(servicesDirectory, PGSQLDataDecoder::class.java.name)
+         .writeText(decoderNames.joinToString("\n", postfix = "\n") { it.reflectionName() })
+    }
   }
 
   private fun generateEnum(sqlTypeName: QualifiedName): TypeSpec? {
@@ -296,6 +311,17 @@ class UDTGenerator(
        .addParameter(String::class.java, "typeName")
        .addException(SQLException::class.java)
 
+    val decoderName = className.nestedClass("Decoder")
+
+    val decodeBldr = MethodSpec.methodBuilder("decode")
+       .addAnnotation(Override::class.java)
+       .addModifiers(Modifier.PUBLIC)
+       .returns(className)
+       .addParameter(PGRecordReader::class.java, "in")
+       .addParameter(String::class.java, "typeName")
+       .addException(SQLException::class.java)
+       .addStatement("\$1T value = new \$1T()", className)
+
     val writeSQLBldr = MethodSpec.methodBuilder("writeSQL")
        .addAnnotation(Override::class.java)
        .addException(SQLException::class.java)
@@ -351,6 +377,31 @@ class UDTGenerator(
          }
       )
 
+      decodeBldr.addCode(
+         when {
+           attrTypeName is ArrayTypeName ->
+             CodeBlock.of("value.\$L = in.readObject(\$T.class);\n", attrPropName, attrTypeName)
+
+           attrSqlType.javaType.readerTypeName == "Object" ->
+             CodeBlock.of("value.\$L = in.readObject(\$T.class);\n", attrPropName, attrTypeName)
+
+           typesInfo[attr.typeName] == TypeCategory.Enum ->
+             CodeBlock.of("value.\$L = \$T.valueOfLabel(in.readString());\n", attrPropName, attrTypeName)
+
+           attrTypeName.box().primitiveReaderName != null ->
+             CodeBlock.builder()
+                .addStatement("value.\$L = in.read\$L()", attrPropName, attrTypeName.box().primitiveReaderName)
+                .addStatement("if (in.wasNull()) value.\$L = null", attrPropName)
+                .build()
+
+           attrTypeName == ClassName.get(String::class.java) ->
+             CodeBlock.of("value.\$L = in.readString();\n", attrPropName)
+
+           else ->
+             CodeBlock.of("value.\$L = in.readObject(\$T.class);\n", attrPropName, attrTypeName.box())
+         }
+      )
+
       writeSQLBldr.addCode(
          when {
            attrTypeName is ArrayTypeName ->
@@ -381,6 +432,26 @@ class UDTGenerator(
     classBldr.addMethod(readSQLBldr.build())
     classBldr.addMethod(writeSQLBldr.build())
 
+    decodeBldr.addStatement("return value")
+
+    classBldr.addType(
+       TypeSpec.classBuilder(decoderName)
+          .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+          .addSuperinterface(ParameterizedTypeName.get(ClassName.get(PGSQLDataDecoder::class.java), className))
+          .addMethod(
+             MethodSpec.methodBuilder("getJavaType")
+                .addAnnotation(Override::class.java)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ParameterizedTypeName.get(ClassName.get(Class::class.java), className))
+                .addStatement("return \$T.class", className)
+                .build()
+          )
+          .addMethod(decodeBldr.build())
+          .build()
+    )
+
+    decoderNames.add(decoderName)
+
     return classBldr.build()
   }
 
@@ -550,6 +621,18 @@ private fun String.javaPropertyName(): String {
   return javaTypeName().decapitalize()
 }
 
+private val TypeName.primitiveReaderName: String?
+  get() =
+    when (if (isBoxedPrimitive) unbox() else this) {
+      TypeName.BOOLEAN -> "Boolean"
+      TypeName.SHORT -> "Short"
+      TypeName.INT -> "Int"
+      TypeName.LONG -> "Long"
+      TypeName.FLOAT -> "Float"
+      TypeName.DOUBLE -> "Double"
+      else -> null
+    }
+
 private val TypeName.primitiveJDBCType: JDBCType
   get() =
     when (if (isBoxedPrimitive) unbox() else this) {
@@ -101,6 +101,11 @@ class UDTGeneratorTest {
         assertThat(pkgFileNames.size, equalTo(3))
         assertThat(pkgFileNames, hasItems("Title.java", "Address.java", "VCard.java"))
 
+        val decoderNames = File(outDirectory, "META-INF/services/com.impossibl.postgres.api.jdbc.PGSQLDataDecoder")
+           .readLines()
+
+        assertThat(decoderNames, hasItems("udt.test.Address\$Decoder", "udt.test.VCard\$Decoder"))
+
       }
       finally {
         connection.createStatement().use {